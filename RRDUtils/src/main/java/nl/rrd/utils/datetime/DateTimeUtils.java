@@ -28,6 +28,7 @@ import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
+import java.time.temporal.Temporal;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -77,6 +78,15 @@ public class DateTimeUtils {
 	public static final DateTimeFormatter SQL_DATE_TIME_FORMAT =
 			DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+	private static final DateTimeFormatter ISO_TIME_PARSER =
+			DateTimeFormatter.ofPattern("HH:mm[:ss][.SSS]");
+	private static final DateTimeFormatter LOCAL_ISO_PARSER =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm[:ss][.SSS]");
+	private static final DateTimeFormatter ZONED_ISO_PARSER =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm[:ss][.SSS]XXX");
+	private static final DateTimeFormatter ZONED_ISO_SHORT_OFFSET_PARSER =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm[:ss][.SSS]X");
+
 	/**
 	 * Returns the current date/time with a precision of milliseconds. This
 	 * means that the remainder of the nanoseconds is set to 0. This method uses
@@ -330,9 +340,11 @@ public class DateTimeUtils {
 	 * @throws ParseException if the date string is invalid
 	 */
 	public static LocalDate parseDate(String dateString) throws ParseException {
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+		LocalDate date = FastDateTimeParser.parseDate(dateString);
+		if (date != null)
+			return date;
 		try {
-			return parser.parse(dateString, LocalDate::from);
+			return DATE_FORMAT.parse(dateString, LocalDate::from);
 		} catch (DateTimeParseException ex) {
 			throw new ParseException(
 					"Invalid date string for pattern yyyy-MM-dd: " +
@@ -349,9 +361,11 @@ public class DateTimeUtils {
 	 */
 	public static LocalTime parseSqlTime(String timeString)
 			throws ParseException {
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern("HH:mm:ss");
+		LocalTime time = FastDateTimeParser.parseSqlTime(timeString);
+		if (time != null)
+			return time;
 		try {
-			return parser.parse(timeString, LocalTime::from);
+			return SQL_TIME_FORMAT.parse(timeString, LocalTime::from);
 		} catch (DateTimeParseException ex) {
 			throw new ParseException(
 					"Invalid time string for pattern HH:mm:ss: " + timeString);
@@ -368,10 +382,11 @@ public class DateTimeUtils {
 	 */
 	public static LocalTime parseIsoTime(String timeString)
 			throws ParseException {
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern(
-				"HH:mm[:ss][.SSS]");
+		LocalTime time = FastDateTimeParser.parseIsoTime(timeString);
+		if (time != null)
+			return time;
 		try {
-			return parser.parse(timeString, LocalTime::from);
+			return ISO_TIME_PARSER.parse(timeString, LocalTime::from);
 		} catch (DateTimeParseException ex) {
 			throw new ParseException("Invalid ISO time string: " + timeString);
 		}
@@ -404,15 +419,17 @@ public class DateTimeUtils {
 	 */
 	public static <T> T parseSqlDateTime(String dateTimeString, Class<T> clazz)
 			throws ParseException {
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern(
-				"yyyy-MM-dd HH:mm:ss");
-		LocalDateTime localDateTime;
-		try {
-			localDateTime = parser.parse(dateTimeString, LocalDateTime::from);
-		} catch (DateTimeParseException ex) {
-			throw new ParseException(
-					"Invalid date/time string for pattern yyyy-MM-dd HH:mm:ss: " +
-					dateTimeString);
+		LocalDateTime localDateTime = FastDateTimeParser.parseSqlDateTime(
+				dateTimeString);
+		if (localDateTime == null) {
+			try {
+				localDateTime = SQL_DATE_TIME_FORMAT.parse(dateTimeString,
+						LocalDateTime::from);
+			} catch (DateTimeParseException ex) {
+				throw new ParseException(
+						"Invalid date/time string for pattern yyyy-MM-dd HH:mm:ss: " +
+						dateTimeString);
+			}
 		}
 		return localDateTimeToType(localDateTime, clazz);
 	}
@@ -448,14 +465,16 @@ public class DateTimeUtils {
 	 */
 	public static <T> T parseLocalIsoDateTime(String dateTimeString,
 			Class<T> clazz) throws ParseException {
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern(
-				"yyyy-MM-dd'T'HH:mm[:ss][.SSS]");
-		LocalDateTime localDateTime;
-		try {
-			localDateTime = parser.parse(dateTimeString, LocalDateTime::from);
-		} catch (DateTimeParseException ex) {
-			throw new ParseException("Invalid date/time string: " +
-					dateTimeString + ": " + ex.getMessage(), ex);
+		LocalDateTime localDateTime = FastDateTimeParser.parseLocalIsoDateTime(
+				dateTimeString);
+		if (localDateTime == null) {
+			try {
+				localDateTime = LOCAL_ISO_PARSER.parse(dateTimeString,
+						LocalDateTime::from);
+			} catch (DateTimeParseException ex) {
+				throw new ParseException("Invalid date/time string: " +
+						dateTimeString + ": " + ex.getMessage(), ex);
+			}
 		}
 		try {
 			return localDateTimeToType(localDateTime, clazz);
@@ -512,13 +531,21 @@ public class DateTimeUtils {
 	 */
 	public static <T> T parseIsoDateTime(String dateTimeString, Class<T> clazz)
 			throws ParseException {
-		// try ISO date/time with zone like +01:00
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern(
-				"yyyy-MM-dd'T'HH:mm[:ss][.SSS]XXX");
+		// try the common layouts without a formatter
+		Temporal fastResult = FastDateTimeParser.parseIsoDateTime(
+				dateTimeString);
 		ZonedDateTime zonedDateTime = null;
-		try {
-			zonedDateTime = parser.parse(dateTimeString, ZonedDateTime::from);
-		} catch (DateTimeParseException ex) {}
+		if (fastResult instanceof LocalDateTime) {
+			return parseLocalIsoDateTime(dateTimeString, clazz);
+		} else if (fastResult instanceof ZonedDateTime) {
+			zonedDateTime = (ZonedDateTime)fastResult;
+		} else {
+			// try ISO date/time with zone like +01:00
+			try {
+				zonedDateTime = ZONED_ISO_PARSER.parse(dateTimeString,
+						ZonedDateTime::from);
+			} catch (DateTimeParseException ex) {}
+		}
 		try {
 			if (zonedDateTime != null)
 				return zonedDateTimeToType(zonedDateTime, clazz);
@@ -527,9 +554,9 @@ public class DateTimeUtils {
 					clazz.getName() + ": " + ex.getMessage(), ex);
 		}
 		// try ISO date/time with zone like +01 or +0100
-		parser = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm[:ss][.SSS]X");
 		try {
-			zonedDateTime = parser.parse(dateTimeString, ZonedDateTime::from);
+			zonedDateTime = ZONED_ISO_SHORT_OFFSET_PARSER.parse(dateTimeString,
+					ZonedDateTime::from);
 		} catch (DateTimeParseException ex) {}
 		try {
 			if (zonedDateTime != null)
@@ -669,8 +696,7 @@ public class DateTimeUtils {
 				tz);
 		if (zonedDateTime.toLocalDateTime().isEqual(localDateTime))
 			return zonedDateTime;
-		String timeStr = localDateTime.format(DateTimeFormatter.ofPattern(
-				"yyyy-MM-dd'T'HH:mm:ss.SSS"));
+		String timeStr = localDateTime.format(LOCAL_FORMAT);
 		throw new IllegalArgumentException("Local date/time " + timeStr +
 				" does not exist in timezone " + tz.getId());
 	}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nl.rrd.utils.datetime;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.Temporal;
+
+/**
+ * Parses date/time strings with a fixed layout without going through a
+ * {@link java.time.format.DateTimeFormatter DateTimeFormatter}. This is used
+ * by {@link DateTimeUtils DateTimeUtils} for the common case where a string
+ * has exactly the layout that its formatter would write.
+ *
+ * <p>Each method returns null if the string does not have the expected
+ * layout or if it contains a value that the formatter would resolve or
+ * reject (like a year 0, "2022-02-30" or hour 24). The caller should then
+ * fall back to the formatter, so the result and error messages are the same
+ * as before.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+class FastDateTimeParser {
+	private static final int MAX_OFFSET_SECONDS = 18 * 3600;
+
+	/**
+	 * Parses a date string like "2022-10-17".
+	 *
+	 * @param s the date string
+	 * @return the date or null
+	 */
+	public static LocalDate parseDate(String s) {
+		if (s.length() != 10)
+			return null;
+		return parseDate(s, 0);
+	}
+
+	/**
+	 * Parses an SQL time string like "16:45:23".
+	 *
+	 * @param s the time string
+	 * @return the time or null
+	 */
+	public static LocalTime parseSqlTime(String s) {
+		if (s.length() != 8)
+			return null;
+		long nanoOfDay = parseTime(s, 0, 8);
+		return nanoOfDay == -1 ? null : LocalTime.ofNanoOfDay(nanoOfDay);
+	}
+
+	/**
+	 * Parses an ISO time string like "16:45", "16:45:23" or "16:45:23.768".
+	 *
+	 * @param s the time string
+	 * @return the time or null
+	 */
+	public static LocalTime parseIsoTime(String s) {
+		long nanoOfDay = parseTime(s, 0, s.length());
+		return nanoOfDay == -1 ? null : LocalTime.ofNanoOfDay(nanoOfDay);
+	}
+
+	/**
+	 * Parses an SQL date/time string like "2022-10-17 16:45:23".
+	 *
+	 * @param s the date/time string
+	 * @return the date/time or null
+	 */
+	public static LocalDateTime parseSqlDateTime(String s) {
+		if (s.length() != 19 || s.charAt(10) != ' ')
+			return null;
+		return parseDateTime(s, 19);
+	}
+
+	/**
+	 * Parses a local ISO date/time string like "2022-10-17T16:45",
+	 * "2022-10-17T16:45:23" or "2022-10-17T16:45:23.768".
+	 *
+	 * @param s the date/time string
+	 * @return the date/time or null
+	 */
+	public static LocalDateTime parseLocalIsoDateTime(String s) {
+		if (s.length() < 11 || s.charAt(10) != 'T')
+			return null;
+		return parseDateTime(s, s.length());
+	}
+
+	/**
+	 * Parses an ISO date/time string with or without a timezone. It supports
+	 * the layouts of {@link #parseLocalIsoDateTime(String)
+	 * parseLocalIsoDateTime()}, optionally followed by "Z" or an offset like
+	 * "+01:00". If the string has a timezone, the result is a {@link
+	 * ZonedDateTime ZonedDateTime} with a {@link ZoneOffset ZoneOffset}.
+	 * Otherwise it is a {@link LocalDateTime LocalDateTime}.
+	 *
+	 * @param s the date/time string
+	 * @return the date/time or null
+	 */
+	public static Temporal parseIsoDateTime(String s) {
+		int len = s.length();
+		if (len < 11 || s.charAt(10) != 'T')
+			return null;
+		if (s.charAt(len - 1) == 'Z') {
+			LocalDateTime local = parseDateTime(s, len - 1);
+			return local == null ? null : local.atZone(ZoneOffset.UTC);
+		}
+		int signPos = len - 6;
+		char sign = s.charAt(signPos);
+		if ((sign != '+' && sign != '-') || s.charAt(len - 3) != ':')
+			return parseDateTime(s, len);
+		int hours = parseDigits2(s, signPos + 1);
+		int minutes = parseDigits2(s, len - 2);
+		if (hours == -1 || minutes == -1 || minutes >= 60)
+			return null;
+		int offsetSeconds = hours * 3600 + minutes * 60;
+		if (offsetSeconds > MAX_OFFSET_SECONDS)
+			return null;
+		LocalDateTime local = parseDateTime(s, signPos);
+		if (local == null)
+			return null;
+		return local.atZone(ZoneOffset.ofTotalSeconds(sign == '-' ?
+				-offsetSeconds : offsetSeconds));
+	}
+
+	/**
+	 * Parses a date at the start of the string and a time from position 11
+	 * until "end". The caller should have checked the separator at position
+	 * 10.
+	 *
+	 * @param s the string
+	 * @param end the end position of the time
+	 * @return the date/time or null
+	 */
+	private static LocalDateTime parseDateTime(String s, int end) {
+		LocalDate date = parseDate(s, 0);
+		if (date == null)
+			return null;
+		long nanoOfDay = parseTime(s, 11, end);
+		if (nanoOfDay == -1)
+			return null;
+		return LocalDateTime.of(date, LocalTime.ofNanoOfDay(nanoOfDay));
+	}
+
+	/**
+	 * Parses a date in format yyyy-MM-dd at the specified position.
+	 *
+	 * @param s the string
+	 * @param off the start position
+	 * @return the date or null
+	 */
+	private static LocalDate parseDate(String s, int off) {
+		if (s.charAt(off + 4) != '-' || s.charAt(off + 7) != '-')
+			return null;
+		int yearHigh = parseDigits2(s, off);
+		int yearLow = parseDigits2(s, off + 2);
+		int month = parseDigits2(s, off + 5);
+		int day = parseDigits2(s, off + 8);
+		if (yearHigh == -1 || yearLow == -1 || month == -1 || day == -1)
+			return null;
+		int year = yearHigh * 100 + yearLow;
+		if (year == 0 || month < 1 || month > 12 || day < 1)
+			return null;
+		if (day > 28 && day > lengthOfMonth(year, month))
+			return null;
+		return LocalDate.of(year, month, day);
+	}
+
+	/**
+	 * Parses a time in format HH:mm, HH:mm:ss or HH:mm:ss.SSS between the
+	 * specified positions.
+	 *
+	 * @param s the string
+	 * @param off the start position
+	 * @param end the end position
+	 * @return the nano of day, or -1 if the time can't be parsed
+	 */
+	private static long parseTime(String s, int off, int end) {
+		int len = end - off;
+		if (len != 5 && len != 8 && len != 12)
+			return -1;
+		if (s.charAt(off + 2) != ':')
+			return -1;
+		int hour = parseDigits2(s, off);
+		int minute = parseDigits2(s, off + 3);
+		if (hour == -1 || hour >= 24 || minute == -1 || minute >= 60)
+			return -1;
+		int second = 0;
+		int milli = 0;
+		if (len >= 8) {
+			if (s.charAt(off + 5) != ':')
+				return -1;
+			second = parseDigits2(s, off + 6);
+			if (second == -1 || second >= 60)
+				return -1;
+		}
+		if (len == 12) {
+			if (s.charAt(off + 8) != '.')
+				return -1;
+			int high = parseDigits2(s, off + 9);
+			int low = parseDigit(s.charAt(off + 11));
+			if (high == -1 || low == -1)
+				return -1;
+			milli = high * 10 + low;
+		}
+		long secondOfDay = hour * 3600 + minute * 60 + second;
+		return secondOfDay * 1_000_000_000L + milli * 1_000_000L;
+	}
+
+	/**
+	 * Parses two ASCII digits at the specified position.
+	 *
+	 * @param s the string
+	 * @param off the position of the first digit
+	 * @return the value or -1 if there are no two digits
+	 */
+	private static int parseDigits2(String s, int off) {
+		int high = parseDigit(s.charAt(off));
+		int low = parseDigit(s.charAt(off + 1));
+		if (high == -1 || low == -1)
+			return -1;
+		return high * 10 + low;
+	}
+
+	private static int parseDigit(char c) {
+		if (c < '0' || c > '9')
+			return -1;
+		return c - '0';
+	}
+
+	private static int lengthOfMonth(int year, int month) {
+		return switch (month) {
+			case 2 -> isLeapYear(year) ? 29 : 28;
+			case 4, 6, 9, 11 -> 30;
+			default -> 31;
+		};
+	}
+
+	private static boolean isLeapYear(int year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+}
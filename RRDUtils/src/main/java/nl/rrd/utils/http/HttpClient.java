@@ -26,8 +26,10 @@ import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import nl.rrd.utils.exception.ParseException;
 import nl.rrd.utils.io.FileUtils;
+import nl.rrd.utils.json.ObjectMapperRegistry;
 
 import java.io.*;
 import java.net.*;
@@ -345,8 +347,7 @@ public class HttpClient implements Closeable {
 			urlConn.setRequestProperty("Content-Type", "application/json");
 		}
 		Writer writer = getWriter();
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.writeValue(writer, obj);
+		ObjectMapperRegistry.getDefault().getWriter().writeValue(writer, obj);
 		return this;
 	}
 	
@@ -563,9 +564,10 @@ public class HttpClient implements Closeable {
 	 */
 	public <T> T readJson(Class<T> clazz) throws HttpClientException,
 			ParseException, IOException {
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectReader reader = ObjectMapperRegistry.getDefault().getReader(
+				clazz);
 		try {
-			return mapper.readValue(getReader(), clazz);
+			return reader.readValue(getReader());
 		} catch (JsonParseException ex) {
 			throw new ParseException("Can't parse JSON code: " +
 					ex.getMessage(), ex);
@@ -597,9 +599,10 @@ public class HttpClient implements Closeable {
 	 */
 	public <T> T readJson(TypeReference<T> typeRef) throws HttpClientException,
 			ParseException, IOException {
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectReader reader = ObjectMapperRegistry.getDefault().getReader(
+				typeRef);
 		try {
-			return mapper.readValue(getReader(), typeRef);
+			return reader.readValue(getReader());
 		} catch (JsonParseException ex) {
 			throw new ParseException("Can't parse JSON code: " +
 					ex.getMessage(), ex);
@@ -25,6 +25,7 @@ package nl.rrd.utils.json;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
@@ -45,7 +46,8 @@ extends JsonDeserializer<ZonedDateTime> {
 	@Override
 	public ZonedDateTime deserialize(JsonParser jp, DeserializationContext ctxt)
 			throws IOException, JsonProcessingException {
-		String val = jp.readValueAs(String.class);
+		String val = jp.hasToken(JsonToken.VALUE_STRING) ? jp.getText() :
+				jp.readValueAs(String.class);
 		try {
 			return DateTimeUtils.parseIsoDateTime(val, ZonedDateTime.class);
 		} catch (ParseException ex) {
@@ -30,10 +30,18 @@ import com.fasterxml.jackson.databind.JsonDeserializer;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This deserializer can read an integer value and convert it to an enum using
  * a static method T forCode().
+ *
+ * <p>On first use for an enum class, it builds a table from code to enum
+ * constant, using the method int code() on each constant if it exists. This
+ * is the same method that {@link EnumCodeSerializer EnumCodeSerializer}
+ * uses. Codes that are not in the table are passed to forCode(), so it can
+ * handle them. The method is also looked up only once.</p>
  * 
  * @author Dennis Hofs (RRD)
  *
@@ -41,6 +49,14 @@ import java.lang.reflect.Method;
  */
 public class EnumCodeDeserializer<T extends Enum<?>> extends
 JsonDeserializer<T> {
+	private static final ClassValue<CodeTable> codeTables =
+			new ClassValue<>() {
+		@Override
+		protected CodeTable computeValue(Class<?> type) {
+			return new CodeTable(type);
+		}
+	};
+
 	private Class<T> enumClass;
 	
 	/**
@@ -57,11 +73,16 @@ JsonDeserializer<T> {
 	public T deserialize(JsonParser p, DeserializationContext ctxt)
 			throws IOException, JsonProcessingException {
 		int code = p.getIntValue();
+		CodeTable table = codeTables.get(enumClass);
+		Object constant = table.codeMap.get(code);
+		if (constant != null)
+			return enumClass.cast(constant);
 		Exception exception = null;
 		T result = null;
 		try {
-			Method method = enumClass.getMethod("forCode", Integer.TYPE);
-			Object resultObj = method.invoke(null, code);
+			if (table.forCodeException != null)
+				throw table.forCodeException;
+			Object resultObj = table.forCode.invoke(null, code);
 			result = enumClass.cast(resultObj);
 		} catch (NoSuchMethodException | InvocationTargetException |
 				IllegalAccessException | IllegalArgumentException ex) {
@@ -73,4 +94,34 @@ JsonDeserializer<T> {
 		}
 		return result;
 	}
+
+	/**
+	 * The lookup table and the forCode() method of an enum class.
+	 */
+	private static class CodeTable {
+		public Map<Integer,Object> codeMap = new HashMap<>();
+		public Method forCode = null;
+		public NoSuchMethodException forCodeException = null;
+
+		public CodeTable(Class<?> enumClass) {
+			try {
+				forCode = enumClass.getMethod("forCode", Integer.TYPE);
+			} catch (NoSuchMethodException ex) {
+				forCodeException = ex;
+			}
+			Object[] constants = enumClass.getEnumConstants();
+			if (constants == null)
+				return;
+			try {
+				Method codeMethod = enumClass.getMethod("code");
+				for (Object constant : constants) {
+					codeMap.putIfAbsent((Integer)codeMethod.invoke(constant),
+							constant);
+				}
+			} catch (ReflectiveOperationException | RuntimeException ex) {
+				// without code(), all codes are passed to forCode()
+				codeMap.clear();
+			}
+		}
+	}
 }
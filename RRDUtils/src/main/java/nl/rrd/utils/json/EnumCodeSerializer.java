@@ -33,29 +33,41 @@ import java.lang.reflect.Method;
 
 /**
  * This serializer calls method code() on an enum and writes it as an integer
- * value. The enum class must have a method int code().
+ * value. The enum class must have a method int code(). The codes of an enum
+ * class are collected once on first use.
  * 
  * @author Dennis Hofs (RRD)
  */
 public class EnumCodeSerializer extends JsonSerializer<Enum<?>> {
+	// codes of the enum constants by ordinal
+	private static final ClassValue<int[]> codeTables = new ClassValue<>() {
+		@Override
+		protected int[] computeValue(Class<?> type) {
+			Object[] constants = type.getEnumConstants();
+			int[] codes = new int[constants.length];
+			Exception exception = null;
+			try {
+				Method method = type.getMethod("code");
+				for (int i = 0; i < constants.length; i++) {
+					codes[i] = (Integer)method.invoke(constants[i]);
+				}
+			} catch (NoSuchMethodException | InvocationTargetException |
+					IllegalAccessException | IllegalArgumentException ex) {
+				exception = ex;
+			}
+			if (exception != null) {
+				throw new RuntimeException("Can't invoke code(): " +
+						exception.getMessage(), exception);
+			}
+			return codes;
+		}
+	};
 
 	@Override
 	public void serialize(Enum<?> value, JsonGenerator gen,
 			SerializerProvider serializers) throws IOException,
 			JsonProcessingException {
-		int code = 0;
-		Exception exception = null;
-		try {
-			Method method = value.getClass().getMethod("code");
-			code = (Integer)method.invoke(value);
-		} catch (NoSuchMethodException | InvocationTargetException |
-				IllegalAccessException | IllegalArgumentException ex) {
-			exception = ex;
-		}
-		if (exception != null) {
-			throw new RuntimeException("Can't invoke code(): " +
-					exception.getMessage(), exception);
-		}
-		gen.writeNumber(code);
+		int[] codes = codeTables.get(value.getDeclaringClass());
+		gen.writeNumber(codes[value.ordinal()]);
 	}
 }
@@ -31,10 +31,18 @@ import com.fasterxml.jackson.databind.JsonDeserializer;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This deserializer can read a string value or null and convert it to an enum
  * using a static method T fromStringValue().
+ *
+ * <p>On first use for an enum class, it builds a table from the toString()
+ * value of each constant to the constant. This is the value that {@link
+ * EnumCustomStringSerializer EnumCustomStringSerializer} writes. Strings that
+ * are not in the table are passed to fromStringValue(), so it can handle
+ * them. The method is also looked up only once.</p>
  * 
  * @author Dennis Hofs (RRD)
  *
@@ -42,6 +50,14 @@ import java.lang.reflect.Method;
  */
 public class EnumCustomStringDeserializer<T extends Enum<?>> extends
 JsonDeserializer<T> {
+	private static final ClassValue<StringTable> stringTables =
+			new ClassValue<>() {
+		@Override
+		protected StringTable computeValue(Class<?> type) {
+			return new StringTable(type);
+		}
+	};
+
 	private Class<T> enumClass;
 	
 	/**
@@ -64,12 +80,16 @@ JsonDeserializer<T> {
 		String s = p.getValueAsString();
 		if (s == null)
 			return null;
+		StringTable table = stringTables.get(enumClass);
+		Object constant = table.stringMap.get(s);
+		if (constant != null)
+			return enumClass.cast(constant);
 		Exception exception = null;
 		T result = null;
 		try {
-			Method method = enumClass.getMethod("fromStringValue",
-					String.class);
-			Object resultObj = method.invoke(null, s);
+			if (table.fromStringValueException != null)
+				throw table.fromStringValueException;
+			Object resultObj = table.fromStringValue.invoke(null, s);
 			result = enumClass.cast(resultObj);
 		} catch (NoSuchMethodException | InvocationTargetException |
 				IllegalAccessException | IllegalArgumentException ex) {
@@ -81,4 +101,28 @@ JsonDeserializer<T> {
 		}
 		return result;
 	}
+
+	/**
+	 * The lookup table and the fromStringValue() method of an enum class.
+	 */
+	private static class StringTable {
+		public Map<String,Object> stringMap = new HashMap<>();
+		public Method fromStringValue = null;
+		public NoSuchMethodException fromStringValueException = null;
+
+		public StringTable(Class<?> enumClass) {
+			try {
+				fromStringValue = enumClass.getMethod("fromStringValue",
+						String.class);
+			} catch (NoSuchMethodException ex) {
+				fromStringValueException = ex;
+			}
+			Object[] constants = enumClass.getEnumConstants();
+			if (constants == null)
+				return;
+			for (Object constant : constants) {
+				stringMap.putIfAbsent(constant.toString(), constant);
+			}
+		}
+	}
 }
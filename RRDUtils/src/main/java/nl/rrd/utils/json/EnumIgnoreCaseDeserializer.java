@@ -27,14 +27,29 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import nl.rrd.utils.ReflectionUtils;
 
 import java.io.IOException;
-import java.lang.reflect.Array;
-import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class EnumIgnoreCaseDeserializer<T extends Enum<?>>
 		extends JsonDeserializer<T> {
+	// map from case-folded toString() value to enum constant
+	private static final ClassValue<Map<String,Object>> foldedTables =
+			new ClassValue<>() {
+		@Override
+		protected Map<String,Object> computeValue(Class<?> type) {
+			Map<String,Object> result = new HashMap<>();
+			Object[] constants = type.getEnumConstants();
+			if (constants == null)
+				return result;
+			for (Object constant : constants) {
+				result.putIfAbsent(foldCase(constant.toString()), constant);
+			}
+			return result;
+		}
+	};
+
 	private Class<T> enumClass;
 
 	/**
@@ -57,18 +72,26 @@ public class EnumIgnoreCaseDeserializer<T extends Enum<?>>
 		String s = p.getValueAsString();
 		if (s == null)
 			return null;
-		try {
-			Object array = ReflectionUtils.invokeStaticMethod(enumClass,
-					Object.class, "values");
-			for (int i = 0; i < Array.getLength(array); i++) {
-				T item = enumClass.cast(Array.get(array, i));
-				if (item.toString().equalsIgnoreCase(s))
-					return item;
-			}
+		Object item = foldedTables.get(enumClass).get(foldCase(s));
+		if (item == null)
 			throw new JsonParseException(p, "Value not found: " + s);
-		} catch (NoSuchMethodException | InvocationTargetException ex) {
-			throw new RuntimeException("Can't invoke values(): " +
-					ex.getMessage(), ex);
+		return enumClass.cast(item);
+	}
+
+	/**
+	 * Folds the case of a string in the same way as {@link
+	 * String#equalsIgnoreCase(String) String.equalsIgnoreCase()} compares
+	 * characters. Two strings are equal ignoring case if their folded strings
+	 * are equal.
+	 *
+	 * @param s the string
+	 * @return the folded string
+	 */
+	private static String foldCase(String s) {
+		char[] cs = s.toCharArray();
+		for (int i = 0; i < cs.length; i++) {
+			cs[i] = Character.toLowerCase(Character.toUpperCase(cs[i]));
 		}
+		return new String(cs);
 	}
 }
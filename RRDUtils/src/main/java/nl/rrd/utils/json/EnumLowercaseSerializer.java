@@ -29,9 +29,28 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 import java.io.IOException;
 
 public class EnumLowercaseSerializer extends JsonSerializer<Enum<?>> {
+	// lowercase strings of the enum constants by ordinal
+	private static final ClassValue<String[]> stringTables =
+			new ClassValue<>() {
+		@Override
+		protected String[] computeValue(Class<?> type) {
+			Object[] constants = type.getEnumConstants();
+			String[] result = new String[constants.length];
+			for (int i = 0; i < constants.length; i++) {
+				result[i] = constants[i].toString().toLowerCase();
+			}
+			return result;
+		}
+	};
+
 	@Override
 	public void serialize(Enum<?> value, JsonGenerator gen,
 			SerializerProvider serializers) throws IOException {
-		gen.writeString(value == null ? null : value.toString().toLowerCase());
+		if (value == null) {
+			gen.writeString((String)null);
+			return;
+		}
+		String[] strings = stringTables.get(value.getDeclaringClass());
+		gen.writeString(strings[value.ordinal()]);
 	}
 }
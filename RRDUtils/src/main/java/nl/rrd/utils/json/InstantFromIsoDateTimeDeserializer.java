@@ -25,6 +25,7 @@ package nl.rrd.utils.json;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import nl.rrd.utils.datetime.DateTimeUtils;
@@ -44,7 +45,8 @@ extends JsonDeserializer<Instant> {
 	@Override
 	public Instant deserialize(JsonParser jp, DeserializationContext ctxt)
 			throws IOException, JsonProcessingException {
-		String val = jp.readValueAs(String.class);
+		String val = jp.hasToken(JsonToken.VALUE_STRING) ? jp.getText() :
+				jp.readValueAs(String.class);
 		try {
 			return DateTimeUtils.parseIsoDateTime(val, Instant.class);
 		} catch (ParseException ex) {
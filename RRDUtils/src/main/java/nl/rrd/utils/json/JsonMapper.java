@@ -27,11 +27,23 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import java.io.IOException;
 
 import nl.rrd.utils.exception.ParseException;
 
+/**
+ * This class can parse, convert and generate JSON code with the Jackson
+ * {@link ObjectMapper ObjectMapper}. It uses the shared mapper and the cached
+ * readers and writers from the {@link ObjectMapperRegistry#getDefault()
+ * default ObjectMapperRegistry}. If you want to register modules or change
+ * the configuration, call {@link ObjectMapperRegistry#configure(
+ * java.util.function.Consumer) configure()} on the default registry.
+ *
+ * @author Dennis Hofs (RRD)
+ */
 public class JsonMapper {
 
 	/**
@@ -46,9 +58,10 @@ public class JsonMapper {
 	 */
 	public static <T> T parse(String json, Class<T> clazz)
 			throws ParseException {
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectReader reader = ObjectMapperRegistry.getDefault().getReader(
+				clazz);
 		try {
-			return mapper.readValue(json, clazz);
+			return reader.readValue(json);
 		} catch (JsonParseException ex) {
 			throw new ParseException("Can't parse JSON code: " +
 					ex.getMessage(), ex);
@@ -73,9 +86,10 @@ public class JsonMapper {
 	 */
 	public static <T> T parse(String json, TypeReference<T> typeRef)
 			throws ParseException {
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectReader reader = ObjectMapperRegistry.getDefault().getReader(
+				typeRef);
 		try {
-			return mapper.readValue(json, typeRef);
+			return reader.readValue(json);
 		} catch (JsonParseException ex) {
 			throw new ParseException("Can't parse JSON code: " +
 					ex.getMessage(), ex);
@@ -102,7 +116,7 @@ public class JsonMapper {
 	 */
 	public static <T> T convert(Object json, Class<T> clazz)
 			throws ParseException {
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectMapper mapper = ObjectMapperRegistry.getDefault().getMapper();
 		try {
 			return mapper.convertValue(json, clazz);
 		} catch (IllegalArgumentException ex) {
@@ -125,7 +139,7 @@ public class JsonMapper {
 	 */
 	public static <T> T convert(Object json, TypeReference<T> typeRef)
 			throws ParseException {
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectMapper mapper = ObjectMapperRegistry.getDefault().getMapper();
 		try {
 			return mapper.convertValue(json, typeRef);
 		} catch (IllegalArgumentException ex) {
@@ -143,9 +157,11 @@ public class JsonMapper {
 	 * @return the JSON string
 	 */
 	public static String generate(Object obj) {
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectMapperRegistry registry = ObjectMapperRegistry.getDefault();
+		ObjectWriter writer = obj == null ? registry.getWriter() :
+				registry.getWriter(obj.getClass());
 		try {
-			return mapper.writeValueAsString(obj);
+			return writer.writeValueAsString(obj);
 		} catch (JsonProcessingException ex) {
 			throw new RuntimeException("Can't convert object to JSON: " +
 					ex.getMessage(), ex);
@@ -32,7 +32,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * map and a toString() method that returns the simple class name and the map
  * string. It also implements hashCode() and equals() using the map. Extending
  * this class is an easy way to get a meaningful toString(). If extending is not
- * possible, you may use the static toString() method in this class.
+ * possible, you may use the static toString() method in this class. The
+ * conversion uses the {@link ObjectMapperRegistry#getDefault() default
+ * ObjectMapperRegistry}.
  * 
  * @author Dennis Hofs (RRD)
  */
@@ -71,9 +73,7 @@ public class JsonObject {
 	 * @return the string representation
 	 */
 	public static String toString(Object obj) {
-		ObjectMapper mapper = new ObjectMapper();
-		LinkedHashMap<?,?> map = mapper.convertValue(obj, LinkedHashMap.class);
-		return obj.getClass().getSimpleName() + " " + map;
+		return obj.getClass().getSimpleName() + " " + toMap(obj);
 	}
 
 	/**
@@ -83,7 +83,7 @@ public class JsonObject {
 	 * @return the map
 	 */
 	public static Map<?,?> toMap(Object obj) {
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectMapper mapper = ObjectMapperRegistry.getDefault().getMapper();
 		return mapper.convertValue(obj, LinkedHashMap.class);
 	}
 }
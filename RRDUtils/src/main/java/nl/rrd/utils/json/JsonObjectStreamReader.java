@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * This class can read JSON values and tokens from a stream. This is a
@@ -54,6 +55,18 @@ public class JsonObjectStreamReader implements Closeable {
 		this.reader = new JsonStreamReader(input);
 	}
 	
+	/**
+	 * Constructs a new JSON object stream reader that uses the byte-oriented
+	 * tokenizer. See {@link JsonStreamReader#JsonStreamReader(InputStream,
+	 * int) JsonStreamReader(input, bufferSize)}.
+	 *
+	 * @param input the input stream
+	 * @param bufferSize the buffer size in bytes (at least 16)
+	 */
+	public JsonObjectStreamReader(InputStream input, int bufferSize) {
+		this.reader = new JsonStreamReader(input, bufferSize);
+	}
+	
 	/**
 	 * Constructs a new JSON object stream reader.
 	 * 
@@ -188,18 +201,57 @@ public class JsonObjectStreamReader implements Closeable {
 	 */
 	private JsonAtomicToken validateCurrentToken(JsonAtomicToken.Type type)
 			throws JsonParseException, IOException {
+		validateCurrentTokenType(type);
+		return reader.getToken();
+	}
+
+	/**
+	 * Validates whether the reader is positioned at a token of the specified
+	 * type. Unlike {@link #validateCurrentToken(JsonAtomicToken.Type)
+	 * validateCurrentToken()}, this method does not need a token object, so
+	 * a number can be read without creating one.
+	 *
+	 * @param type the token type
+	 * @throws JsonParseException if the JSON content is invalid, there is no
+	 * more token, or the current token has a different type
+	 * @throws IOException if a reading error occurs
+	 */
+	private void validateCurrentTokenType(JsonAtomicToken.Type type)
+			throws JsonParseException, IOException {
 		if (!moveToToken()) {
 			throw new JsonParseException("Expected token " + type +
 					", found end of document", reader.getDocumentLine(),
 					reader.getDocumentLinePos());
 		}
-		JsonAtomicToken token = reader.getToken();
-		if (token.getType() != type) {
+		JsonAtomicToken.Type currentType = reader.getTokenType();
+		if (currentType != type) {
 			throw new JsonParseException("Expected token " + type +
-					", found " + token.getType(), reader.getDocumentLine(),
+					", found " + currentType, reader.getDocumentLine(),
 					reader.getDocumentLinePos());
 		}
-		return token;
+	}
+
+	/**
+	 * Validates whether the reader is positioned at a number token without a
+	 * fraction or exponent, and returns its value. This method does not
+	 * consume the token.
+	 *
+	 * @param typeName the name of the expected type with an article, for
+	 * example "an int". This is used in the error message.
+	 * @return the number value
+	 * @throws JsonParseException if the JSON content is invalid or the reader
+	 * is not positioned at an integer number
+	 * @throws IOException if a reading error occurs
+	 */
+	private long getCurrentIntegerValue(String typeName)
+			throws JsonParseException, IOException {
+		validateCurrentTokenType(JsonAtomicToken.Type.NUMBER);
+		if (!reader.isIntegerNumber()) {
+			throw new JsonParseException("Number is not " + typeName + ": " +
+					reader.getDoubleValue(), reader.getDocumentLine(),
+					reader.getDocumentLinePos());
+		}
+		return reader.getLongValue();
 	}
 	
 	/**
@@ -238,20 +290,13 @@ public class JsonObjectStreamReader implements Closeable {
 	 * @throws IOException if a reading error occurs
 	 */
 	public byte readByte() throws JsonParseException, IOException {
-		JsonAtomicToken token = validateCurrentToken(
-				JsonAtomicToken.Type.NUMBER);
-		if (token.getValue() instanceof Double) {
-			throw new JsonParseException("Number is not a byte: " +
-					token.getValue(), reader.getDocumentLine(),
-					reader.getDocumentLinePos());
-		}
-		long val = ((Number)token.getValue()).longValue();
+		long val = getCurrentIntegerValue("a byte");
 		if (val < Byte.MIN_VALUE || val > Byte.MAX_VALUE) {
 			throw new JsonParseException("Number value out of byte range: " +
 					val, reader.getDocumentLine(),
 					reader.getDocumentLinePos());
 		}
-		readToken();
+		reader.moveNext();
 		return (byte)val;
 	}
 	
@@ -266,20 +311,13 @@ public class JsonObjectStreamReader implements Closeable {
 	 * @throws IOException if a reading error occurs
 	 */
 	public short readShort() throws JsonParseException, IOException {
-		JsonAtomicToken token = validateCurrentToken(
-				JsonAtomicToken.Type.NUMBER);
-		if (token.getValue() instanceof Double) {
-			throw new JsonParseException("Number is not a short: " +
-					token.getValue(), reader.getDocumentLine(),
-					reader.getDocumentLinePos());
-		}
-		long val = ((Number)token.getValue()).longValue();
+		long val = getCurrentIntegerValue("a short");
 		if (val < Short.MIN_VALUE || val > Short.MAX_VALUE) {
 			throw new JsonParseException("Number value out of short range: " +
 					val, reader.getDocumentLine(),
 					reader.getDocumentLinePos());
 		}
-		readToken();
+		reader.moveNext();
 		return (short)val;
 	}
 	
@@ -294,20 +332,13 @@ public class JsonObjectStreamReader implements Closeable {
 	 * @throws IOException if a reading error occurs
 	 */
 	public int readInt() throws JsonParseException, IOException {
-		JsonAtomicToken token = validateCurrentToken(
-				JsonAtomicToken.Type.NUMBER);
-		if (token.getValue() instanceof Double) {
-			throw new JsonParseException("Number is not an int: " +
-					token.getValue(), reader.getDocumentLine(),
-					reader.getDocumentLinePos());
-		}
-		long val = ((Number)token.getValue()).longValue();
+		long val = getCurrentIntegerValue("an int");
 		if (val < Integer.MIN_VALUE || val > Integer.MAX_VALUE) {
 			throw new JsonParseException("Number value out of int range: " +
 					val, reader.getDocumentLine(),
 					reader.getDocumentLinePos());
 		}
-		readToken();
+		reader.moveNext();
 		return (int)val;
 	}
 	
@@ -322,15 +353,9 @@ public class JsonObjectStreamReader implements Closeable {
 	 * @throws IOException if a reading error occurs
 	 */
 	public long readLong() throws JsonParseException, IOException {
-		JsonAtomicToken token = validateCurrentToken(
-				JsonAtomicToken.Type.NUMBER);
-		if (token.getValue() instanceof Double) {
-			throw new JsonParseException("Number is not a long: " +
-					token.getValue(), reader.getDocumentLine(),
-					reader.getDocumentLinePos());
-		}
-		readToken();
-		return ((Number)token.getValue()).longValue();
+		long val = getCurrentIntegerValue("a long");
+		reader.moveNext();
+		return val;
 	}
 	
 	/**
@@ -343,8 +368,14 @@ public class JsonObjectStreamReader implements Closeable {
 	 * @throws IOException if a reading error occurs
 	 */
 	public float readFloat() throws JsonParseException, IOException {
-		JsonAtomicToken token = readToken(JsonAtomicToken.Type.NUMBER);
-		return ((Number)token.getValue()).floatValue();
+		validateCurrentTokenType(JsonAtomicToken.Type.NUMBER);
+		float val;
+		if (reader.isIntegerNumber())
+			val = (float)reader.getLongValue();
+		else
+			val = (float)reader.getDoubleValue();
+		reader.moveNext();
+		return val;
 	}
 	
 	/**
@@ -357,8 +388,118 @@ public class JsonObjectStreamReader implements Closeable {
 	 * @throws IOException if a reading error occurs
 	 */
 	public double readDouble() throws JsonParseException, IOException {
-		JsonAtomicToken token = readToken(JsonAtomicToken.Type.NUMBER);
-		return ((Number)token.getValue()).doubleValue();
+		validateCurrentTokenType(JsonAtomicToken.Type.NUMBER);
+		double val = reader.getDoubleValue();
+		reader.moveNext();
+		return val;
+	}
+
+	/**
+	 * Reads the next long value in a list. If the reader is positioned at a
+	 * list item separator, it is skipped first. Then this method reads the
+	 * value like {@link #readLong() readLong()}. This can be used as a cursor
+	 * over a list of numbers without creating a token or boxed value for each
+	 * item:
+	 *
+	 * <p><pre>
+	 * reader.readToken(JsonAtomicToken.Type.START_LIST);
+	 * while (reader.getToken().getType() != JsonAtomicToken.Type.END_LIST) {
+	 *     long value = reader.nextLong();
+	 *     ...
+	 * }
+	 * reader.readToken();
+	 * </pre></p>
+	 *
+	 * @return the long value
+	 * @throws JsonParseException if the JSON content is invalid or the reader
+	 * is not positioned at the start of a long value
+	 * @throws IOException if a reading error occurs
+	 */
+	public long nextLong() throws JsonParseException, IOException {
+		skipListItemSeparator();
+		return readLong();
+	}
+
+	/**
+	 * Reads the next double value in a list. If the reader is positioned at
+	 * a list item separator, it is skipped first. Then this method reads the
+	 * value like {@link #readDouble() readDouble()}. See also {@link
+	 * #nextLong() nextLong()}.
+	 *
+	 * @return the double value
+	 * @throws JsonParseException if the JSON content is invalid or the reader
+	 * is not positioned at the start of a number
+	 * @throws IOException if a reading error occurs
+	 */
+	public double nextDouble() throws JsonParseException, IOException {
+		skipListItemSeparator();
+		return readDouble();
+	}
+
+	/**
+	 * Reads a list of numbers into the specified array. The list may not be
+	 * longer than the array. If this method succeeds, the reader will be
+	 * positioned after the list value. Unlike {@link #readList() readList()},
+	 * this method does not create a token or boxed value for each item.
+	 *
+	 * @param dst the array to fill from index 0
+	 * @return the number of items in the list
+	 * @throws JsonParseException if the JSON content is invalid, the reader
+	 * is not positioned at the start of a list of numbers, or the list is
+	 * longer than the array
+	 * @throws IOException if a reading error occurs
+	 */
+	public int readDoubleArray(double[] dst) throws JsonParseException,
+			IOException {
+		readToken(JsonAtomicToken.Type.START_LIST);
+		int count = 0;
+		while (reader.getTokenType() != JsonAtomicToken.Type.END_LIST) {
+			if (count == dst.length)
+				throw listTooLong(dst.length);
+			dst[count++] = nextDouble();
+		}
+		reader.moveNext();
+		return count;
+	}
+
+	/**
+	 * Reads a list of long values into the specified array. The list may not
+	 * be longer than the array. If this method succeeds, the reader will be
+	 * positioned after the list value. Unlike {@link #readList() readList()},
+	 * this method does not create a token or boxed value for each item.
+	 *
+	 * @param dst the array to fill from index 0
+	 * @return the number of items in the list
+	 * @throws JsonParseException if the JSON content is invalid, the reader
+	 * is not positioned at the start of a list of long values, or the list is
+	 * longer than the array
+	 * @throws IOException if a reading error occurs
+	 */
+	public int readLongArray(long[] dst) throws JsonParseException,
+			IOException {
+		readToken(JsonAtomicToken.Type.START_LIST);
+		int count = 0;
+		while (reader.getTokenType() != JsonAtomicToken.Type.END_LIST) {
+			if (count == dst.length)
+				throw listTooLong(dst.length);
+			dst[count++] = nextLong();
+		}
+		reader.moveNext();
+		return count;
+	}
+
+	private void skipListItemSeparator() throws JsonParseException,
+			IOException {
+		if (moveToToken() && reader.getTokenType() ==
+				JsonAtomicToken.Type.LIST_ITEM_SEPARATOR) {
+			reader.moveNext();
+		}
+	}
+
+	private JsonParseException listTooLong(int length) {
+		return new JsonParseException("List has more than " + length +
+				" items", reader.getDocumentLine(),
+				reader.getDocumentLinePos());
 	}
 	
 	/**
@@ -387,12 +528,11 @@ public class JsonObjectStreamReader implements Closeable {
 	public Map<String,?> readObject() throws JsonParseException, IOException {
 		Map<String,Object> result = new LinkedHashMap<>();
 		readToken(JsonAtomicToken.Type.START_OBJECT);
-		while (reader.getToken().getType() !=
-				JsonAtomicToken.Type.END_OBJECT) {
+		while (reader.getTokenType() != JsonAtomicToken.Type.END_OBJECT) {
 			String key = readString();
 			readToken(JsonAtomicToken.Type.OBJECT_KEY_VALUE_SEPARATOR);
 			result.put(key, readValue());
-			if (reader.getToken().getType() ==
+			if (reader.getTokenType() ==
 					JsonAtomicToken.Type.OBJECT_PAIR_SEPARATOR) {
 				readToken();
 			}
@@ -413,9 +553,9 @@ public class JsonObjectStreamReader implements Closeable {
 	public List<?> readList() throws JsonParseException, IOException {
 		List<Object> result = new ArrayList<>();
 		readToken(JsonAtomicToken.Type.START_LIST);
-		while (reader.getToken().getType() != JsonAtomicToken.Type.END_LIST) {
+		while (reader.getTokenType() != JsonAtomicToken.Type.END_LIST) {
 			result.add(readValue());
-			if (reader.getToken().getType() ==
+			if (reader.getTokenType() ==
 					JsonAtomicToken.Type.LIST_ITEM_SEPARATOR) {
 				readToken();
 			}
@@ -473,6 +613,228 @@ public class JsonObjectStreamReader implements Closeable {
 		}
 	}
 	
+	/**
+	 * Skips a JSON value. If this method succeeds, the reader will be
+	 * positioned after the value. Unlike {@link #readValue() readValue()},
+	 * this method does not build the contents of an object or list. If the
+	 * reader was constructed with an input stream and a buffer size, an
+	 * object or list is skipped by scanning the bytes without tokenizing.
+	 * In that case the skipped content is only validated for matching
+	 * brackets and complete strings.
+	 *
+	 * @throws JsonParseException if the JSON content is invalid or the reader
+	 * is not positioned at the start of a value
+	 * @throws IOException if a reading error occurs
+	 */
+	public void skipValue() throws JsonParseException, IOException {
+		if (!moveToToken()) {
+			throw new JsonParseException("End of document",
+					reader.getDocumentLine(), reader.getDocumentLinePos());
+		}
+		JsonAtomicToken.Type type = reader.getTokenType();
+		switch (type) {
+		case START_OBJECT:
+		case START_LIST:
+			reader.skipObjectList();
+			reader.moveNext();
+			break;
+		case START_STRING:
+			while (reader.getTokenType() != JsonAtomicToken.Type.END_STRING) {
+				reader.moveNext();
+			}
+			reader.moveNext();
+			break;
+		case STRING:
+		case NUMBER:
+		case BOOLEAN:
+		case NULL:
+			reader.moveNext();
+			break;
+		default:
+			throw new JsonParseException(
+					"Expected start of value, found token " + type,
+					reader.getDocumentLine(), reader.getDocumentLinePos());
+		}
+	}
+
+	/**
+	 * Reads the values at the specified path in the current JSON value and
+	 * returns them in document order. See {@link #readPath(String, Consumer)
+	 * readPath(path, consumer)}.
+	 *
+	 * @param path the path
+	 * @return the values at the path
+	 * @throws JsonParseException if the JSON content is invalid or the reader
+	 * is not positioned at the start of a value
+	 * @throws IOException if a reading error occurs
+	 */
+	public List<Object> readPath(String path) throws JsonParseException,
+			IOException {
+		List<Object> result = new ArrayList<>();
+		readPath(path, result::add);
+		return result;
+	}
+
+	/**
+	 * Reads the values at the specified path in the current JSON value. Each
+	 * value is read like {@link #readValue() readValue()} and passed to the
+	 * consumer in document order. All other content is skipped with {@link
+	 * #skipValue() skipValue()}. If this method succeeds, the reader will be
+	 * positioned after the current value.
+	 *
+	 * <p>The path starts with "$" for the current value and may be followed
+	 * by any number of these elements:</p>
+	 *
+	 * <p><ul>
+	 * <li>.name: the value of the key "name" in an object</li>
+	 * <li>.*: every value in an object</li>
+	 * <li>[n]: the item at index n in a list</li>
+	 * <li>[*]: every item in a list</li>
+	 * </ul></p>
+	 *
+	 * <p>For example "$.items[*].id" reads the "id" of every item in the list
+	 * "items". Content that doesn't match the path, such as a value of a
+	 * different type, is skipped.</p>
+	 *
+	 * @param path the path
+	 * @param consumer the consumer that receives the values
+	 * @throws IllegalArgumentException if the path is invalid
+	 * @throws JsonParseException if the JSON content is invalid or the reader
+	 * is not positioned at the start of a value
+	 * @throws IOException if a reading error occurs
+	 */
+	public void readPath(String path, Consumer<Object> consumer)
+			throws JsonParseException, IOException {
+		readPath(parsePath(path), 0, consumer);
+	}
+
+	private void readPath(PathElement[] path, int index,
+			Consumer<Object> consumer) throws JsonParseException,
+			IOException {
+		if (index == path.length) {
+			consumer.accept(readValue());
+			return;
+		}
+		if (!moveToToken()) {
+			throw new JsonParseException("End of document",
+					reader.getDocumentLine(), reader.getDocumentLinePos());
+		}
+		PathElement element = path[index];
+		JsonAtomicToken.Type type = reader.getTokenType();
+		if (element.isList && type == JsonAtomicToken.Type.START_LIST) {
+			reader.moveNext();
+			int itemIndex = 0;
+			while (reader.getTokenType() != JsonAtomicToken.Type.END_LIST) {
+				if (element.matches(itemIndex++))
+					readPath(path, index + 1, consumer);
+				else
+					skipValue();
+				if (reader.getTokenType() ==
+						JsonAtomicToken.Type.LIST_ITEM_SEPARATOR) {
+					reader.moveNext();
+				}
+			}
+			reader.moveNext();
+		} else if (!element.isList &&
+				type == JsonAtomicToken.Type.START_OBJECT) {
+			reader.moveNext();
+			while (reader.getTokenType() != JsonAtomicToken.Type.END_OBJECT) {
+				String key = readString();
+				readToken(JsonAtomicToken.Type.OBJECT_KEY_VALUE_SEPARATOR);
+				if (element.matches(key))
+					readPath(path, index + 1, consumer);
+				else
+					skipValue();
+				if (reader.getTokenType() ==
+						JsonAtomicToken.Type.OBJECT_PAIR_SEPARATOR) {
+					reader.moveNext();
+				}
+			}
+			reader.moveNext();
+		} else {
+			skipValue();
+		}
+	}
+
+	/**
+	 * Parses a path for {@link #readPath(String, Consumer) readPath()}.
+	 *
+	 * @param path the path
+	 * @return the path elements
+	 * @throws IllegalArgumentException if the path is invalid
+	 */
+	private static PathElement[] parsePath(String path) {
+		if (!path.startsWith("$"))
+			throw new IllegalArgumentException("Invalid path: " + path);
+		List<PathElement> result = new ArrayList<>();
+		int pos = 1;
+		while (pos < path.length()) {
+			char c = path.charAt(pos);
+			int end;
+			if (c == '.') {
+				end = pos + 1;
+				while (end < path.length() && path.charAt(end) != '.' &&
+						path.charAt(end) != '[') {
+					end++;
+				}
+				String key = path.substring(pos + 1, end);
+				if (key.isEmpty())
+					throw new IllegalArgumentException("Invalid path: " + path);
+				result.add(new PathElement(false, key.equals("*") ? null : key,
+						-1));
+			} else if (c == '[') {
+				end = path.indexOf(']', pos);
+				if (end == -1)
+					throw new IllegalArgumentException("Invalid path: " + path);
+				String indexStr = path.substring(pos + 1, end);
+				end++;
+				int listIndex;
+				if (indexStr.equals("*")) {
+					listIndex = -1;
+				} else {
+					try {
+						listIndex = Integer.parseInt(indexStr);
+					} catch (NumberFormatException ex) {
+						listIndex = -1;
+					}
+					if (listIndex < 0) {
+						throw new IllegalArgumentException("Invalid path: " +
+								path);
+					}
+				}
+				result.add(new PathElement(true, null, listIndex));
+			} else {
+				throw new IllegalArgumentException("Invalid path: " + path);
+			}
+			pos = end;
+		}
+		return result.toArray(new PathElement[0]);
+	}
+
+	/**
+	 * An element in a path for {@link #readPath(String, Consumer)
+	 * readPath()}. A null key or negative index is a wildcard.
+	 */
+	private static class PathElement {
+		public boolean isList;
+		public String key;
+		public int index;
+
+		public PathElement(boolean isList, String key, int index) {
+			this.isList = isList;
+			this.key = key;
+			this.index = index;
+		}
+
+		public boolean matches(String key) {
+			return this.key == null || this.key.equals(key);
+		}
+
+		public boolean matches(int index) {
+			return this.index < 0 || this.index == index;
+		}
+	}
+
 	/**
 	 * If the reader is positioned at the start of the document, it moves the
 	 * reader to the first token. It returns true if the reader is at a token.
@@ -485,7 +847,7 @@ public class JsonObjectStreamReader implements Closeable {
 	 * @throws IOException if a reading error occurs
 	 */
 	private boolean moveToToken() throws JsonParseException, IOException {
-		if (reader.getToken() == null)
+		if (reader.getTokenType() == null)
 			return reader.moveNext();
 		else
 			return true;
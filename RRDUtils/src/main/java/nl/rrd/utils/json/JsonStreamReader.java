@@ -36,11 +36,22 @@ import java.util.List;
  * reader is positioned before the first token. Call {@link #moveNext()
  * moveNext()} to move to the first token. Then you can get the current token
  * with {@link #getToken() getToken()}.
+ *
+ * <p>If you construct the reader with {@link #JsonStreamReader(InputStream,
+ * int) JsonStreamReader(input, bufferSize)}, it uses a byte-oriented
+ * tokenizer. It reads UTF-8 bytes into a byte buffer of the specified size
+ * and only decodes UTF-8 inside strings. Numbers are parsed directly from
+ * the bytes. This is much faster for large documents, such as exports with
+ * newline-delimited JSON. Otherwise the reader reads characters from a
+ * {@link Reader Reader}.</p>
  * 
  * @author Dennis Hofs (RRD)
  */
 public class JsonStreamReader {
 	private static final int BUFFER_SIZE = 1024;
+	static final int MIN_BYTE_BUFFER_SIZE = 16;
+
+	public static final int DEFAULT_BYTE_BUFFER_SIZE = 65536;
 	
 	private boolean isStringAtomic = true;
 	
@@ -63,6 +74,7 @@ public class JsonStreamReader {
 	private StringBuilder stringEscape = null;
 	private StringBuilder parsedString = null;
 	private boolean inObjectKey = false;
+	private Utf8JsonTokenizer utf8Tokenizer = null;
 	
 	/**
 	 * Constructs a new JSON stream reader. It reads UTF-8 characters from the
@@ -74,6 +86,30 @@ public class JsonStreamReader {
 		this.reader = new InputStreamReader(input, StandardCharsets.UTF_8);
 	}
 	
+	/**
+	 * Constructs a new JSON stream reader that uses the byte-oriented
+	 * tokenizer. It reads UTF-8 bytes from the specified input stream into a
+	 * byte buffer of the specified size. The buffer may grow if a number is
+	 * longer than the buffer. See {@link #DEFAULT_BYTE_BUFFER_SIZE
+	 * DEFAULT_BYTE_BUFFER_SIZE}.
+	 *
+	 * <p>The tokens, document positions and error messages are the same as
+	 * with the character-based tokenizer, except that an integer that doesn't
+	 * fit in a long results in a {@link JsonParseException
+	 * JsonParseException}, and a malformed UTF-8 byte in a string is replaced
+	 * with U+FFFD.</p>
+	 *
+	 * @param input the input stream
+	 * @param bufferSize the buffer size in bytes (at least 16)
+	 */
+	public JsonStreamReader(InputStream input, int bufferSize) {
+		if (bufferSize < MIN_BYTE_BUFFER_SIZE) {
+			throw new IllegalArgumentException("Invalid buffer size: " +
+					bufferSize);
+		}
+		utf8Tokenizer = new Utf8JsonTokenizer(input, bufferSize);
+	}
+	
 	/**
 	 * Constructs a new JSON stream reader.
 	 * 
@@ -89,7 +125,10 @@ public class JsonStreamReader {
 	 * @throws IOException if the underlying reader can't be closed
 	 */
 	public void close() throws IOException {
-		reader.close();
+		if (utf8Tokenizer != null)
+			utf8Tokenizer.close();
+		else
+			reader.close();
 	}
 
 	/**
@@ -106,6 +145,8 @@ public class JsonStreamReader {
 	 */
 	public void setIsStringAtomic(boolean isStringAtomic) {
 		this.isStringAtomic = isStringAtomic;
+		if (utf8Tokenizer != null)
+			utf8Tokenizer.setIsStringAtomic(isStringAtomic);
 	}
 	
 	/**
@@ -132,6 +173,8 @@ public class JsonStreamReader {
 	 * @return the current line number
 	 */
 	public int getDocumentLine() {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.getDocumentLine();
 		return documentLine;
 	}
 
@@ -143,6 +186,8 @@ public class JsonStreamReader {
 	 * @return the current character number
 	 */
 	public int getDocumentLinePos() {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.getDocumentLinePos();
 		return documentLinePos;
 	}
 	
@@ -155,6 +200,8 @@ public class JsonStreamReader {
 	 * @return the line number where the current token starts
 	 */
 	public int getTokenStartLine() {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.getTokenStartLine();
 		return tokenStartLine;
 	}
 	
@@ -167,6 +214,8 @@ public class JsonStreamReader {
 	 * @return the character number where the current token starts
 	 */
 	public int getTokenStartLinePos() {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.getTokenStartLinePos();
 		return tokenStartLinePos;
 	}
 	
@@ -181,6 +230,8 @@ public class JsonStreamReader {
 	 * @throws IOException if a reading error occurs
 	 */
 	public boolean moveNext() throws JsonParseException, IOException {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.moveNext();
 		while (true) {
 			if (endOfStream) {
 				if (currentToken != null)
@@ -271,9 +322,96 @@ public class JsonStreamReader {
 	 * @return the current token or null
 	 */
 	public JsonAtomicToken getToken() {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.getToken();
 		return currentToken;
 	}
-	
+
+	/**
+	 * Returns the type of the current token. If the reader is positioned
+	 * before the first token or after the last token, this method returns
+	 * null. Unlike {@link #getToken() getToken()}, this method does not
+	 * create a token object for a number token when reading bytes.
+	 *
+	 * @return the token type or null
+	 */
+	JsonAtomicToken.Type getTokenType() {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.getTokenType();
+		return currentToken == null ? null : currentToken.getType();
+	}
+
+	/**
+	 * Returns whether the current NUMBER token is an integer. That is a
+	 * number without a fraction or exponent.
+	 *
+	 * @return true if the number is an integer, false otherwise
+	 */
+	boolean isIntegerNumber() {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.isIntegerNumber();
+		return !(currentToken.getValue() instanceof Double);
+	}
+
+	/**
+	 * Returns the value of the current NUMBER token as a long. A floating
+	 * point number is truncated.
+	 *
+	 * @return the number value
+	 */
+	long getLongValue() {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.getLongValue();
+		return ((Number)currentToken.getValue()).longValue();
+	}
+
+	/**
+	 * Returns the value of the current NUMBER token as a double.
+	 *
+	 * @return the number value
+	 */
+	double getDoubleValue() {
+		if (utf8Tokenizer != null)
+			return utf8Tokenizer.getDoubleValue();
+		return ((Number)currentToken.getValue()).doubleValue();
+	}
+
+	/**
+	 * Skips the rest of the object or list that was started with the current
+	 * START_OBJECT or START_LIST token. After this method the current token
+	 * is the END_OBJECT or END_LIST token that closes it.
+	 *
+	 * <p>When reading bytes, the content is scanned without tokenizing, so
+	 * strings are not decoded and numbers and literals are not parsed. Only
+	 * matching brackets and complete strings are validated. Otherwise this
+	 * method moves through the tokens.</p>
+	 *
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	void skipObjectList() throws JsonParseException, IOException {
+		if (utf8Tokenizer != null) {
+			utf8Tokenizer.skipObjectList();
+			return;
+		}
+		int depth = 1;
+		while (depth > 0) {
+			moveNext();
+			switch (currentToken.getType()) {
+			case START_OBJECT:
+			case START_LIST:
+				depth++;
+				break;
+			case END_OBJECT:
+			case END_LIST:
+				depth--;
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
 	/**
 	 * Parses a character when the reader is positioned before or in the
 	 * initial token of a JSON value.
@@ -0,0 +1,622 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nl.rrd.utils.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class can write JSON to a stream. It is the counterpart of {@link
+ * JsonStreamReader JsonStreamReader}. You write a JSON value with calls like
+ * {@link #beginObject() beginObject()}, {@link #name(String) name()}, {@link
+ * #value(String) value()} and {@link #endObject() endObject()}. The writer
+ * adds the separators and validates that the calls result in valid JSON. If
+ * not, it throws an {@link IllegalStateException IllegalStateException}.
+ *
+ * <p>The JSON is encoded as UTF-8 into a byte buffer. When the buffer is
+ * full, it's written to the underlying output stream or channel. You can
+ * also write it with {@link #flush() flush()}. This means that you can write
+ * a very large document in constant memory. Buffers of the default size are
+ * taken from a pool and returned when the writer is closed.</p>
+ *
+ * <p>You can write more than one root value. They are separated by a new
+ * line, so you can write newline-delimited JSON (NDJSON).</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public class JsonStreamWriter implements Closeable, Flushable {
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	// space for the longest escape sequence or long value
+	private static final int MIN_BUFFER_SIZE = 32;
+	private static final int MAX_POOLED_BUFFERS = 16;
+	private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+
+	private static final ConcurrentLinkedQueue<byte[]> bufferPool =
+			new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger bufferPoolSize = new AtomicInteger(0);
+
+	// context in the stack of objects and lists
+	private static final byte OBJECT_FIRST_NAME = 0;
+	private static final byte OBJECT_NAME = 1;
+	private static final byte OBJECT_VALUE = 2;
+	private static final byte LIST_FIRST_ITEM = 3;
+	private static final byte LIST_ITEM = 4;
+
+	private OutputStream output = null;
+	private WritableByteChannel channel = null;
+	private byte[] buffer;
+	private int bufferPos = 0;
+	private byte[] stack = new byte[16];
+	private int stackSize = 0;
+	private boolean hasRootValue = false;
+	private boolean closed = false;
+
+	/**
+	 * Constructs a new JSON stream writer with the default buffer size.
+	 *
+	 * @param output the output stream
+	 */
+	public JsonStreamWriter(OutputStream output) {
+		this(output, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a new JSON stream writer.
+	 *
+	 * @param output the output stream
+	 * @param bufferSize the buffer size in bytes (at least 32)
+	 */
+	public JsonStreamWriter(OutputStream output, int bufferSize) {
+		this.output = output;
+		buffer = obtainBuffer(bufferSize);
+	}
+
+	/**
+	 * Constructs a new JSON stream writer with the default buffer size.
+	 *
+	 * @param channel the output channel
+	 */
+	public JsonStreamWriter(WritableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a new JSON stream writer.
+	 *
+	 * @param channel the output channel
+	 * @param bufferSize the buffer size in bytes (at least 32)
+	 */
+	public JsonStreamWriter(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		buffer = obtainBuffer(bufferSize);
+	}
+
+	/**
+	 * Writes the buffered bytes to the underlying output stream or channel
+	 * and flushes the output stream.
+	 *
+	 * @throws IOException if a writing error occurs
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		if (output != null)
+			output.flush();
+	}
+
+	/**
+	 * Flushes the buffer and closes the underlying output stream or channel.
+	 * This method does not validate whether the JSON is complete.
+	 *
+	 * @throws IOException if a writing error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		try {
+			flushBuffer();
+		} finally {
+			closed = true;
+			releaseBuffer(buffer);
+			buffer = null;
+			if (output != null)
+				output.close();
+			else
+				channel.close();
+		}
+	}
+
+	/**
+	 * Writes the start of an object.
+	 *
+	 * @return this writer
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter beginObject() throws IOException {
+		beforeValue();
+		writeByte('{');
+		push(OBJECT_FIRST_NAME);
+		return this;
+	}
+
+	/**
+	 * Writes the end of an object.
+	 *
+	 * @return this writer
+	 * @throws IllegalStateException if the writer is not in an object or it
+	 * expects a value
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter endObject() throws IOException {
+		byte context = currentContext();
+		if (context != OBJECT_FIRST_NAME && context != OBJECT_NAME)
+			throw new IllegalStateException("Can't end object here");
+		stackSize--;
+		writeByte('}');
+		return this;
+	}
+
+	/**
+	 * Writes the start of a list.
+	 *
+	 * @return this writer
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter beginList() throws IOException {
+		beforeValue();
+		writeByte('[');
+		push(LIST_FIRST_ITEM);
+		return this;
+	}
+
+	/**
+	 * Writes the end of a list.
+	 *
+	 * @return this writer
+	 * @throws IllegalStateException if the writer is not in a list
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter endList() throws IOException {
+		byte context = currentContext();
+		if (context != LIST_FIRST_ITEM && context != LIST_ITEM)
+			throw new IllegalStateException("Can't end list here");
+		stackSize--;
+		writeByte(']');
+		return this;
+	}
+
+	/**
+	 * Writes the name of a key/value pair in an object. It should be
+	 * followed by a value.
+	 *
+	 * @param name the name
+	 * @return this writer
+	 * @throws IllegalStateException if the writer does not expect a name in
+	 * an object
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter name(String name) throws IOException {
+		byte context = currentContext();
+		if (context == OBJECT_NAME)
+			writeByte(',');
+		else if (context != OBJECT_FIRST_NAME)
+			throw new IllegalStateException("Can't write name here");
+		writeString(name);
+		writeByte(':');
+		stack[stackSize - 1] = OBJECT_VALUE;
+		return this;
+	}
+
+	/**
+	 * Writes a string value. If the string is null, it writes null.
+	 *
+	 * @param value the string or null
+	 * @return this writer
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter value(String value) throws IOException {
+		if (value == null)
+			return nullValue();
+		beforeValue();
+		writeString(value);
+		return this;
+	}
+
+	/**
+	 * Writes a number value.
+	 *
+	 * @param value the number
+	 * @return this writer
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter value(long value) throws IOException {
+		beforeValue();
+		writeLong(value);
+		return this;
+	}
+
+	/**
+	 * Writes a number value. JSON does not support NaN or infinity.
+	 *
+	 * @param value the number
+	 * @return this writer
+	 * @throws IllegalArgumentException if the value is NaN or infinite
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter value(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			throw new IllegalArgumentException("Invalid number: " + value);
+		beforeValue();
+		if (value == (long)value && Math.abs(value) < 1e7 &&
+				!(value == 0 && 1 / value < 0)) {
+			// write integral values like Double.toString() without a string
+			writeLong((long)value);
+			writeAscii(".0");
+		} else {
+			writeAscii(Double.toString(value));
+		}
+		return this;
+	}
+
+	/**
+	 * Writes a float number value. The number is written with {@link
+	 * Float#toString(float) Float.toString()}, so for example 1.1f is
+	 * written as 1.1 rather than the digits of the widened double. JSON does
+	 * not support NaN or infinity.
+	 *
+	 * @param value the number
+	 * @return this writer
+	 * @throws IllegalArgumentException if the value is NaN or infinite
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter value(float value) throws IOException {
+		if (Float.isNaN(value) || Float.isInfinite(value))
+			throw new IllegalArgumentException("Invalid number: " + value);
+		beforeValue();
+		writeAscii(Float.toString(value));
+		return this;
+	}
+
+	/**
+	 * Writes a boolean value.
+	 *
+	 * @param value the boolean
+	 * @return this writer
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter value(boolean value) throws IOException {
+		beforeValue();
+		writeAscii(value ? "true" : "false");
+		return this;
+	}
+
+	/**
+	 * Writes a null value.
+	 *
+	 * @return this writer
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter nullValue() throws IOException {
+		beforeValue();
+		writeAscii("null");
+		return this;
+	}
+
+	/**
+	 * Writes an arbitrary value. Strings, numbers, booleans, null, maps,
+	 * iterables and object arrays are written by this writer. Maps, iterables
+	 * and arrays are written recursively. The map keys are converted to
+	 * strings. Any other object is serialized with the {@link
+	 * ObjectMapperRegistry#getDefault() default ObjectMapperRegistry}.
+	 *
+	 * @param value the value
+	 * @return this writer
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	public JsonStreamWriter value(Object value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		} else if (value instanceof String) {
+			return value((String)value);
+		} else if (value instanceof Boolean) {
+			return value(((Boolean)value).booleanValue());
+		} else if (value instanceof Integer || value instanceof Long ||
+				value instanceof Short || value instanceof Byte) {
+			return value(((Number)value).longValue());
+		} else if (value instanceof Double) {
+			return value(((Double)value).doubleValue());
+		} else if (value instanceof Float) {
+			return value(((Float)value).floatValue());
+		} else if (value instanceof BigInteger ||
+				value instanceof BigDecimal) {
+			beforeValue();
+			writeAscii(value.toString());
+			return this;
+		} else if (value instanceof Map) {
+			beginObject();
+			for (Map.Entry<?,?> entry : ((Map<?,?>)value).entrySet()) {
+				name(String.valueOf(entry.getKey()));
+				value(entry.getValue());
+			}
+			return endObject();
+		} else if (value instanceof Iterable) {
+			beginList();
+			for (Object item : (Iterable<?>)value) {
+				value(item);
+			}
+			return endList();
+		} else if (value instanceof Object[]) {
+			beginList();
+			for (Object item : (Object[])value) {
+				value(item);
+			}
+			return endList();
+		} else {
+			byte[] bs = ObjectMapperRegistry.getDefault().getWriter(
+					value.getClass()).writeValueAsBytes(value);
+			beforeValue();
+			writeBytes(bs);
+			return this;
+		}
+	}
+
+	/**
+	 * Called before a value is written. It validates whether a value is
+	 * allowed and writes a separator if needed.
+	 *
+	 * @throws IllegalStateException if a value is not allowed here
+	 * @throws IOException if a writing error occurs
+	 */
+	private void beforeValue() throws IOException {
+		if (closed)
+			throw new IllegalStateException("Writer closed");
+		if (stackSize == 0) {
+			if (hasRootValue)
+				writeByte('\n');
+			hasRootValue = true;
+			return;
+		}
+		switch (stack[stackSize - 1]) {
+		case OBJECT_VALUE:
+			stack[stackSize - 1] = OBJECT_NAME;
+			break;
+		case LIST_FIRST_ITEM:
+			stack[stackSize - 1] = LIST_ITEM;
+			break;
+		case LIST_ITEM:
+			writeByte(',');
+			break;
+		default:
+			throw new IllegalStateException(
+					"Expected name in object, found value");
+		}
+	}
+
+	private byte currentContext() {
+		if (closed)
+			throw new IllegalStateException("Writer closed");
+		if (stackSize == 0)
+			throw new IllegalStateException("Not in object or list");
+		return stack[stackSize - 1];
+	}
+
+	private void push(byte context) {
+		if (stackSize == stack.length)
+			stack = Arrays.copyOf(stack, stackSize * 2);
+		stack[stackSize++] = context;
+	}
+
+	/**
+	 * Writes a quoted and escaped string encoded as UTF-8. An unpaired
+	 * surrogate is written as "?".
+	 *
+	 * @param s the string
+	 * @throws IOException if a writing error occurs
+	 */
+	private void writeString(String s) throws IOException {
+		writeByte('"');
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			if (bufferPos + 6 > buffer.length)
+				flushBuffer();
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (c >= 0x20 && c != '"' && c != '\\')
+					buffer[bufferPos++] = (byte)c;
+				else
+					writeEscape(c);
+			} else if (c < 0x800) {
+				buffer[bufferPos++] = (byte)(0xc0 | (c >> 6));
+				buffer[bufferPos++] = (byte)(0x80 | (c & 0x3f));
+			} else if (!Character.isSurrogate(c)) {
+				buffer[bufferPos++] = (byte)(0xe0 | (c >> 12));
+				buffer[bufferPos++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+				buffer[bufferPos++] = (byte)(0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len &&
+					Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buffer[bufferPos++] = (byte)(0xf0 | (cp >> 18));
+				buffer[bufferPos++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+				buffer[bufferPos++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+				buffer[bufferPos++] = (byte)(0x80 | (cp & 0x3f));
+			} else {
+				buffer[bufferPos++] = '?';
+			}
+		}
+		writeByte('"');
+	}
+
+	/**
+	 * Writes the escape sequence for a quote, backslash or control
+	 * character. The buffer should have space for 6 bytes.
+	 *
+	 * @param c the character
+	 */
+	private void writeEscape(char c) {
+		buffer[bufferPos++] = '\\';
+		switch (c) {
+		case '"':
+		case '\\':
+			buffer[bufferPos++] = (byte)c;
+			break;
+		case '\b':
+			buffer[bufferPos++] = 'b';
+			break;
+		case '\f':
+			buffer[bufferPos++] = 'f';
+			break;
+		case '\n':
+			buffer[bufferPos++] = 'n';
+			break;
+		case '\r':
+			buffer[bufferPos++] = 'r';
+			break;
+		case '\t':
+			buffer[bufferPos++] = 't';
+			break;
+		default:
+			buffer[bufferPos++] = 'u';
+			buffer[bufferPos++] = '0';
+			buffer[bufferPos++] = '0';
+			buffer[bufferPos++] = HEX_DIGITS[c >> 4];
+			buffer[bufferPos++] = HEX_DIGITS[c & 0xf];
+			break;
+		}
+	}
+
+	private void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			writeAscii(Long.toString(value));
+			return;
+		}
+		if (bufferPos + 20 > buffer.length)
+			flushBuffer();
+		if (value < 0) {
+			buffer[bufferPos++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long n = value / 10; n > 0; n /= 10) {
+			digits++;
+		}
+		int pos = bufferPos + digits;
+		do {
+			buffer[--pos] = (byte)('0' + (value % 10));
+			value /= 10;
+		} while (value > 0);
+		bufferPos += digits;
+	}
+
+	private void writeAscii(String s) throws IOException {
+		int len = s.length();
+		int i = 0;
+		while (i < len) {
+			if (bufferPos == buffer.length)
+				flushBuffer();
+			int n = Math.min(len - i, buffer.length - bufferPos);
+			for (int j = 0; j < n; j++) {
+				buffer[bufferPos++] = (byte)s.charAt(i++);
+			}
+		}
+	}
+
+	private void writeBytes(byte[] bs) throws IOException {
+		int i = 0;
+		while (i < bs.length) {
+			if (bufferPos == buffer.length)
+				flushBuffer();
+			int n = Math.min(bs.length - i, buffer.length - bufferPos);
+			System.arraycopy(bs, i, buffer, bufferPos, n);
+			bufferPos += n;
+			i += n;
+		}
+	}
+
+	private void writeByte(int b) throws IOException {
+		if (bufferPos == buffer.length)
+			flushBuffer();
+		buffer[bufferPos++] = (byte)b;
+	}
+
+	/**
+	 * Writes the buffered bytes to the underlying output stream or channel.
+	 *
+	 * @throws IOException if a writing error occurs
+	 */
+	private void flushBuffer() throws IOException {
+		if (bufferPos == 0)
+			return;
+		if (output != null) {
+			output.write(buffer, 0, bufferPos);
+		} else {
+			ByteBuffer bb = ByteBuffer.wrap(buffer, 0, bufferPos);
+			while (bb.hasRemaining()) {
+				channel.write(bb);
+			}
+		}
+		bufferPos = 0;
+	}
+
+	private static byte[] obtainBuffer(int size) {
+		if (size < MIN_BUFFER_SIZE)
+			throw new IllegalArgumentException("Invalid buffer size: " + size);
+		if (size == DEFAULT_BUFFER_SIZE) {
+			byte[] result = bufferPool.poll();
+			if (result != null) {
+				bufferPoolSize.decrementAndGet();
+				return result;
+			}
+		}
+		return new byte[size];
+	}
+
+	private static void releaseBuffer(byte[] buffer) {
+		if (buffer.length != DEFAULT_BUFFER_SIZE)
+			return;
+		if (bufferPoolSize.incrementAndGet() <= MAX_POOLED_BUFFERS)
+			bufferPool.offer(buffer);
+		else
+			bufferPoolSize.decrementAndGet();
+	}
+}
@@ -24,13 +24,13 @@ package nl.rrd.utils.json;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import nl.rrd.utils.datetime.DateTimeUtils;
 
 /**
  * This serializer can convert a {@link LocalDateTime LocalDateTime} to a
@@ -48,7 +48,6 @@ public class LocalDateTimeSerializer extends JsonSerializer<Object> {
 					"Can't serialize type to date/time: " +
 					value.getClass().getName(), jgen);
 		}
-		jgen.writeString(time.format(DateTimeFormatter.ofPattern(
-				"yyyy-MM-dd'T'HH:mm:ss.SSS")));
+		jgen.writeString(time.format(DateTimeUtils.LOCAL_FORMAT));
 	}
 }
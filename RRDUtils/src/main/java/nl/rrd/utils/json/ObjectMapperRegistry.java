@@ -0,0 +1,204 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.json;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * This class holds a shared Jackson {@link ObjectMapper ObjectMapper} and
+ * caches an {@link ObjectReader ObjectReader} and {@link ObjectWriter
+ * ObjectWriter} per type. An object mapper is expensive to create, because
+ * it builds its serializer and deserializer caches on first use. The static
+ * methods in {@link JsonMapper JsonMapper} and {@link JsonObject JsonObject}
+ * use the {@link #getDefault() default registry}.
+ *
+ * <p>The registry is thread-safe. You can change the configuration with
+ * {@link #configure(Consumer) configure()} or {@link #registerModule(Module)
+ * registerModule()}, for example to register a module that speeds up
+ * (de)serialization with generated bytecode, such as Afterburner or
+ * Blackbird. This creates a copy of the current mapper, applies the changes
+ * and clears the cached readers and writers. Calls that are in progress
+ * complete with the old configuration. You should not change the mapper
+ * returned by {@link #getMapper() getMapper()} directly.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public class ObjectMapperRegistry {
+	private static final int MAX_CACHED_TYPES = 1024;
+
+	private static final ObjectMapperRegistry DEFAULT =
+			new ObjectMapperRegistry();
+
+	private final Object lock = new Object();
+	private volatile State state;
+
+	/**
+	 * Constructs a new registry with a default object mapper.
+	 */
+	public ObjectMapperRegistry() {
+		this(new ObjectMapper());
+	}
+
+	/**
+	 * Constructs a new registry with the specified object mapper. The mapper
+	 * should not be changed after this call. If you want to use {@link
+	 * #configure(Consumer) configure()}, the mapper must support {@link
+	 * ObjectMapper#copy() copy()}.
+	 *
+	 * @param mapper the object mapper
+	 */
+	public ObjectMapperRegistry(ObjectMapper mapper) {
+		state = new State(mapper);
+	}
+
+	/**
+	 * Returns the default registry. This is used by {@link JsonMapper
+	 * JsonMapper} and {@link JsonObject JsonObject}.
+	 *
+	 * @return the default registry
+	 */
+	public static ObjectMapperRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the current object mapper. You should not change its
+	 * configuration. Use {@link #configure(Consumer) configure()} instead.
+	 *
+	 * @return the object mapper
+	 */
+	public ObjectMapper getMapper() {
+		return state.mapper;
+	}
+
+	/**
+	 * Changes the configuration of the object mapper. This method creates a
+	 * copy of the current mapper and passes it to the specified configurer.
+	 * Then the copy replaces the current mapper and the cached readers and
+	 * writers are cleared.
+	 *
+	 * @param configurer the configurer
+	 */
+	public void configure(Consumer<ObjectMapper> configurer) {
+		synchronized (lock) {
+			ObjectMapper mapper = state.mapper.copy();
+			configurer.accept(mapper);
+			state = new State(mapper);
+		}
+	}
+
+	/**
+	 * Registers a module in the object mapper. See {@link
+	 * #configure(Consumer) configure()}.
+	 *
+	 * @param module the module
+	 */
+	public void registerModule(Module module) {
+		configure(mapper -> mapper.registerModule(module));
+	}
+
+	/**
+	 * Returns an object reader for the specified class.
+	 *
+	 * @param clazz the class
+	 * @return the object reader
+	 */
+	public ObjectReader getReader(Class<?> clazz) {
+		return getReader((Type)clazz);
+	}
+
+	/**
+	 * Returns an object reader for the specified type.
+	 *
+	 * @param typeRef the type
+	 * @return the object reader
+	 */
+	public ObjectReader getReader(TypeReference<?> typeRef) {
+		return getReader(typeRef.getType());
+	}
+
+	private ObjectReader getReader(Type type) {
+		State state = this.state;
+		ObjectReader reader = state.readers.get(type);
+		if (reader != null)
+			return reader;
+		reader = state.mapper.readerFor(state.mapper.constructType(type));
+		if (state.readers.size() < MAX_CACHED_TYPES)
+			state.readers.putIfAbsent(type, reader);
+		return reader;
+	}
+
+	/**
+	 * Returns an object writer that serializes values by their runtime
+	 * type.
+	 *
+	 * @return the object writer
+	 */
+	public ObjectWriter getWriter() {
+		return state.writer;
+	}
+
+	/**
+	 * Returns an object writer for values of the specified class. The
+	 * root serializer is resolved once and cached in the writer.
+	 *
+	 * @param clazz the class
+	 * @return the object writer
+	 */
+	public ObjectWriter getWriter(Class<?> clazz) {
+		State state = this.state;
+		ObjectWriter writer = state.writers.get(clazz);
+		if (writer != null)
+			return writer;
+		writer = state.mapper.writerFor(clazz);
+		if (state.writers.size() < MAX_CACHED_TYPES)
+			state.writers.putIfAbsent(clazz, writer);
+		return writer;
+	}
+
+	/**
+	 * The current mapper with its cached readers and writers. It's replaced
+	 * as a whole when the configuration changes.
+	 */
+	private static class State {
+		public final ObjectMapper mapper;
+		public final ObjectWriter writer;
+		public final Map<Type,ObjectReader> readers =
+				new ConcurrentHashMap<>();
+		public final Map<Class<?>,ObjectWriter> writers =
+				new ConcurrentHashMap<>();
+
+		public State(ObjectMapper mapper) {
+			this.mapper = mapper;
+			this.writer = mapper.writer();
+		}
+	}
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nl.rrd.utils.json;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class reads a file with concatenated JSON objects in parallel. This
+ * includes newline-delimited JSON (NDJSON), but the objects may also be
+ * pretty-printed over multiple lines or follow each other without any
+ * whitespace.
+ *
+ * <p>The file is memory-mapped. A scanner finds the document boundaries
+ * without parsing. It only counts brackets and tracks whether it's inside a
+ * string or escape sequence. It groups the documents into chunks of at least
+ * the chunk size. Then each document is parsed with a {@link
+ * JsonStreamReader JsonStreamReader} that uses the byte-oriented tokenizer.
+ * You get the documents with {@link #stream(boolean) stream()} or {@link
+ * #spliterator() spliterator()}. In a parallel stream, the chunks are parsed
+ * by the threads of the fork-join pool.</p>
+ *
+ * <p>The stream doesn't throw checked exceptions. If a reading error occurs,
+ * it throws an {@link UncheckedIOException UncheckedIOException}. If the file
+ * contains invalid JSON, it throws a {@link RuntimeException
+ * RuntimeException}. If the error was found while parsing a document, the
+ * cause is a {@link JsonParseException JsonParseException} with the line
+ * and character number in that document.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public class ParallelJsonDocumentReader implements Closeable {
+	public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+	private static final int SCAN_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private FileChannel channel;
+	private long fileSize;
+	private int chunkSize;
+
+	/**
+	 * Constructs a new reader with the default chunk size.
+	 *
+	 * @param file the file
+	 * @throws IOException if the file can't be opened
+	 */
+	public ParallelJsonDocumentReader(File file) throws IOException {
+		this(file, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructs a new reader. The chunk size is the minimum number of bytes
+	 * in a chunk of documents, except for the last chunk. A larger chunk size
+	 * means less scheduling overhead, but a worse distribution over the
+	 * threads.
+	 *
+	 * @param file the file
+	 * @param chunkSize the chunk size in bytes
+	 * @throws IOException if the file can't be opened
+	 */
+	public ParallelJsonDocumentReader(File file, int chunkSize)
+			throws IOException {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Invalid chunk size: " +
+					chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		fileSize = channel.size();
+	}
+
+	/**
+	 * Closes the file. Streams that have already been created can still
+	 * read from the memory-mapped chunks that they have mapped, but they
+	 * can't map new chunks.
+	 *
+	 * @throws IOException if an error occurs while closing the file
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Returns a parallel stream of the documents in the file. If "ordered"
+	 * is true, the stream is ordered, so operations like {@link
+	 * Stream#forEachOrdered(Consumer) forEachOrdered()} or {@link
+	 * Stream#collect(java.util.stream.Collector) collect()} to a list return
+	 * the documents in file order. Otherwise the stream is unordered, which
+	 * can be faster. You can call {@link Stream#sequential() sequential()} on
+	 * the stream to read the documents in the current thread.
+	 *
+	 * <p>A parallel stream runs in the common fork-join pool. To use another
+	 * pool, run the terminal operation in a task of that pool.</p>
+	 *
+	 * @param ordered true if the stream should preserve the file order, false
+	 * otherwise
+	 * @return the stream
+	 */
+	public Stream<Map<String,?>> stream(boolean ordered) {
+		Stream<Map<String,?>> stream = StreamSupport.stream(spliterator(),
+				true);
+		if (!ordered)
+			stream = stream.unordered();
+		return stream;
+	}
+
+	/**
+	 * Returns a spliterator for the documents in the file. It scans the file
+	 * from the start. When it's split, it returns a spliterator for the next
+	 * chunk of documents.
+	 *
+	 * @return the spliterator
+	 */
+	public Spliterator<Map<String,?>> spliterator() {
+		return new FileSpliterator();
+	}
+
+	/**
+	 * Spliterator for the entire file. It scans the file for chunks of
+	 * documents and returns a {@link ChunkSpliterator ChunkSpliterator} for
+	 * each chunk.
+	 */
+	private class FileSpliterator implements Spliterator<Map<String,?>> {
+		private DocumentScanner scanner = new DocumentScanner();
+		private ChunkSpliterator current = null;
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Map<String,?>> action) {
+			while (current == null || !current.tryAdvance(action)) {
+				current = scanner.nextChunk();
+				if (current == null)
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		public Spliterator<Map<String,?>> trySplit() {
+			if (current != null && current.estimateSize() > 0) {
+				Spliterator<Map<String,?>> result = current;
+				current = null;
+				return result;
+			}
+			current = null;
+			return scanner.nextChunk();
+		}
+
+		@Override
+		public long estimateSize() {
+			return Long.MAX_VALUE;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | NONNULL | IMMUTABLE;
+		}
+	}
+
+	/**
+	 * Spliterator for a chunk of documents. The boundaries of the documents
+	 * are already known, so it can be split by documents.
+	 */
+	private class ChunkSpliterator implements Spliterator<Map<String,?>> {
+		private ByteBuffer buffer;
+		private long offset;
+		// end of each document relative to the start of the chunk
+		private int[] docEnds;
+		private int index;
+		private int end;
+
+		public ChunkSpliterator(ByteBuffer buffer, long offset, int[] docEnds,
+				int index, int end) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.docEnds = docEnds;
+			this.index = index;
+			this.end = end;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Map<String,?>> action) {
+			if (index == end)
+				return false;
+			int start = index == 0 ? 0 : docEnds[index - 1];
+			int length = docEnds[index] - start;
+			index++;
+			action.accept(parseDocument(buffer.slice(start, length),
+					offset + start));
+			return true;
+		}
+
+		@Override
+		public Spliterator<Map<String,?>> trySplit() {
+			if (end - index < 2)
+				return null;
+			int mid = (index + end) >>> 1;
+			ChunkSpliterator result = new ChunkSpliterator(buffer, offset,
+					docEnds, index, mid);
+			index = mid;
+			return result;
+		}
+
+		@Override
+		public long estimateSize() {
+			return end - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+		}
+	}
+
+	/**
+	 * Parses one document. The buffer may contain whitespace before the
+	 * document.
+	 *
+	 * @param buffer the buffer with the document
+	 * @param offset the offset of the buffer in the file
+	 * @return the document
+	 */
+	private Map<String,?> parseDocument(ByteBuffer buffer, long offset) {
+		int bufferSize = Math.max(JsonStreamReader.MIN_BYTE_BUFFER_SIZE,
+				Math.min(buffer.remaining(),
+				JsonStreamReader.DEFAULT_BYTE_BUFFER_SIZE));
+		JsonObjectStreamReader reader = new JsonObjectStreamReader(
+				new JsonStreamReader(new ByteBufferInputStream(buffer),
+				bufferSize));
+		try {
+			return reader.readObject();
+		} catch (JsonParseException ex) {
+			throw new RuntimeException("Invalid JSON document at offset " +
+					offset + ": " + ex.getMessage(), ex);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Scans the file for document boundaries. It maps a window of the file
+	 * at a time, and maps each chunk that it finds separately.
+	 */
+	private class DocumentScanner {
+		private long pos = 0;
+		private ByteBuffer window = null;
+		private long windowStart = 0;
+
+		/**
+		 * Scans the next chunk of documents. If the end of the file is
+		 * reached, this method returns null.
+		 *
+		 * @return the chunk or null
+		 */
+		public ChunkSpliterator nextChunk() {
+			try {
+				if (skipWhitespace() == -1)
+					return null;
+				long chunkStart = pos;
+				int[] docEnds = new int[16];
+				int count = 0;
+				do {
+					scanDocument();
+					if (pos - chunkStart > Integer.MAX_VALUE) {
+						throw new RuntimeException(
+								"Document too large at offset " + chunkStart);
+					}
+					if (count == docEnds.length)
+						docEnds = Arrays.copyOf(docEnds, count * 2);
+					docEnds[count++] = (int)(pos - chunkStart);
+				} while (pos - chunkStart < chunkSize &&
+						skipWhitespace() != -1);
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+						chunkStart, pos - chunkStart);
+				return new ChunkSpliterator(buffer, chunkStart, docEnds, 0,
+						count);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		/**
+		 * Skips whitespace and returns the next byte without consuming it. At
+		 * the end of the file it returns -1.
+		 *
+		 * @return the next byte or -1
+		 * @throws IOException if a reading error occurs
+		 */
+		private int skipWhitespace() throws IOException {
+			while (pos < fileSize) {
+				ByteBuffer buffer = mapWindow();
+				int i = (int)(pos - windowStart);
+				int limit = buffer.limit();
+				while (i < limit) {
+					byte b = buffer.get(i);
+					if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+						pos = windowStart + i;
+						return b;
+					}
+					i++;
+				}
+				pos = windowStart + limit;
+			}
+			return -1;
+		}
+
+		/**
+		 * Scans a document that starts at the current position. It should be
+		 * an object. After this method the position is after the end of the
+		 * object.
+		 *
+		 * @throws IOException if a reading error occurs
+		 */
+		private void scanDocument() throws IOException {
+			long start = pos;
+			if (mapWindow().get((int)(pos - windowStart)) != '{') {
+				throw new RuntimeException(
+						"Expected start of object at offset " + pos);
+			}
+			int depth = 0;
+			boolean inString = false;
+			boolean escaped = false;
+			while (pos < fileSize) {
+				ByteBuffer buffer = mapWindow();
+				int i = (int)(pos - windowStart);
+				int limit = buffer.limit();
+				while (i < limit) {
+					byte b = buffer.get(i++);
+					if (inString) {
+						if (escaped)
+							escaped = false;
+						else if (b == '\\')
+							escaped = true;
+						else if (b == '"')
+							inString = false;
+					} else if (b == '"') {
+						inString = true;
+					} else if (b == '{' || b == '[') {
+						depth++;
+					} else if ((b == '}' || b == ']') && --depth == 0) {
+						pos = windowStart + i;
+						return;
+					}
+				}
+				pos = windowStart + limit;
+			}
+			throw new RuntimeException(
+					"Incomplete object at end of file, starting at offset " +
+					start);
+		}
+
+		/**
+		 * Maps the window that contains the current position, if it's not
+		 * already mapped.
+		 *
+		 * @return the window
+		 * @throws IOException if a reading error occurs
+		 */
+		private ByteBuffer mapWindow() throws IOException {
+			if (window != null && pos >= windowStart &&
+					pos < windowStart + window.limit()) {
+				return window;
+			}
+			windowStart = pos;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+					Math.min(SCAN_WINDOW_SIZE, fileSize - pos));
+			return window;
+		}
+	}
+
+	/**
+	 * Input stream that reads from a byte buffer.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		private ByteBuffer buffer;
+
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			if (!buffer.hasRemaining())
+				return -1;
+			return buffer.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining())
+				return -1;
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -28,10 +28,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import nl.rrd.utils.datetime.DateTimeUtils;
 
 import java.io.IOException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 
 /**
  * This serializer can convert a {@link LocalDate LocalDate} to a string in
@@ -49,7 +49,6 @@ public class SqlDateSerializer extends JsonSerializer<Object> {
 					"Can't serialize type to date: " +
 					value.getClass().getName(), jgen);
 		}
-		jgen.writeString(date.format(DateTimeFormatter.ofPattern(
-				"yyyy-MM-dd")));
+		jgen.writeString(date.format(DateTimeUtils.DATE_FORMAT));
 	}
 }
@@ -24,13 +24,15 @@ package nl.rrd.utils.json;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
+import nl.rrd.utils.datetime.DateTimeUtils;
+import nl.rrd.utils.exception.ParseException;
 
 /**
  * This deserializer can convert a string in format yyyy-MM-dd HH:mm:ss to a
@@ -43,12 +45,11 @@ extends JsonDeserializer<LocalDateTime> {
 	@Override
 	public LocalDateTime deserialize(JsonParser jp, DeserializationContext ctxt)
 			throws IOException, JsonProcessingException {
-		String val = jp.readValueAs(String.class);
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern(
-				"yyyy-MM-dd HH:mm:ss");
+		String val = jp.hasToken(JsonToken.VALUE_STRING) ? jp.getText() :
+				jp.readValueAs(String.class);
 		try {
-			return parser.parse(val, LocalDateTime::from);
-		} catch (IllegalArgumentException ex) {
+			return DateTimeUtils.parseSqlDateTime(val, LocalDateTime.class);
+		} catch (ParseException ex) {
 			throw new JsonParseException(jp, "Invalid date/time string: " +
 					val + ": " + ex.getMessage(), jp.currentTokenLocation(),
 					ex);
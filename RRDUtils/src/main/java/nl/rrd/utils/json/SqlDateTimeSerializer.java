@@ -24,13 +24,13 @@ package nl.rrd.utils.json;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import nl.rrd.utils.datetime.DateTimeUtils;
 
 /**
  * This serializer can convert a {@link LocalDateTime LocalDateTime} to a
@@ -49,7 +49,6 @@ public class SqlDateTimeSerializer extends JsonSerializer<Object> {
 					value.getClass().getName(), jgen);
 		}
 		LocalDateTime time = (LocalDateTime)value;
-		jgen.writeString(time.format(DateTimeFormatter.ofPattern(
-				"yyyy-MM-dd HH:mm:ss")));
+		jgen.writeString(time.format(DateTimeUtils.SQL_DATE_TIME_FORMAT));
 	}
 }
@@ -25,12 +25,14 @@ package nl.rrd.utils.json;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
+import nl.rrd.utils.datetime.DateTimeUtils;
+import nl.rrd.utils.exception.ParseException;
 
 import java.io.IOException;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * This deserializer can convert a string in format HH:mm:ss to a {@link
@@ -43,11 +45,11 @@ extends JsonDeserializer<LocalTime> {
 	@Override
 	public LocalTime deserialize(JsonParser jp, DeserializationContext ctxt)
 			throws IOException, JsonProcessingException {
-		String val = jp.readValueAs(String.class);
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern("HH:mm:ss");
+		String val = jp.hasToken(JsonToken.VALUE_STRING) ? jp.getText() :
+				jp.readValueAs(String.class);
 		try {
-			return parser.parse(val, LocalTime::from);
-		} catch (IllegalArgumentException ex) {
+			return DateTimeUtils.parseSqlTime(val);
+		} catch (ParseException ex) {
 			throw new JsonParseException(jp, "Invalid time string: " + val +
 					": " + ex.getMessage(), jp.currentTokenLocation(), ex);
 		}
@@ -28,10 +28,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import nl.rrd.utils.datetime.DateTimeUtils;
 
 import java.io.IOException;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * This serializer can convert a {@link LocalTime LocalTime} to a string in
@@ -49,6 +49,6 @@ public class SqlTimeSerializer extends JsonSerializer<Object> {
 					"Can't serialize type to time: " +
 					value.getClass().getName(), jgen);
 		}
-		jgen.writeString(time.format(DateTimeFormatter.ofPattern("HH:mm:ss")));
+		jgen.writeString(time.format(DateTimeUtils.SQL_TIME_FORMAT));
 	}
 }
@@ -0,0 +1,1035 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte-oriented tokenizer for {@link JsonStreamReader JsonStreamReader}. It
+ * reads UTF-8 bytes from an input stream into a byte buffer and decodes
+ * UTF-8 only inside string tokens. Numbers are parsed directly from the bytes
+ * into a long or double, and whitespace and structural characters are
+ * handled without decoding. The tokens, document positions and error
+ * messages are the same as in the character-based tokenizer of {@link
+ * JsonStreamReader JsonStreamReader}, with two exceptions: an integer that
+ * doesn't fit in a long results in a {@link JsonParseException
+ * JsonParseException}, and each malformed UTF-8 byte in a string is replaced
+ * with U+FFFD.
+ *
+ * @author Dennis Hofs (RRD)
+ */
+class Utf8JsonTokenizer {
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final int MAX_FAST_DIGITS = 15;
+	private static final int MAX_LONG_DIGITS = 18;
+
+	private boolean isStringAtomic = true;
+
+	private InputStream input;
+	private byte[] buffer;
+	private int bufferPos = 0;
+	private int bufferLimit = 0;
+	private boolean endOfStream = false;
+	// currentToken is null for a NUMBER token or the end of a skipped object
+	// or list until getToken() is called
+	private JsonAtomicToken.Type currentType = null;
+	private JsonAtomicToken currentToken = null;
+	private boolean numberIsInteger = false;
+	private long longValue = 0;
+	private double doubleValue = 0;
+	private int documentLine = 1;
+	private int documentLinePos = 1;
+	private int tokenStartLine = 1;
+	private int tokenStartLinePos = 1;
+	private boolean consumedCR = false;
+	private boolean inObjectKey = false;
+	// true for a list, false for an object
+	private boolean[] objectListStack = new boolean[16];
+	private int stackSize = 0;
+	private char[] stringChars = new char[64];
+	private int stringLen = 0;
+	private char pendingLowSurrogate = 0;
+
+	/**
+	 * Constructs a new tokenizer.
+	 *
+	 * @param input the input stream
+	 * @param bufferSize the size of the byte buffer
+	 */
+	public Utf8JsonTokenizer(InputStream input, int bufferSize) {
+		this.input = input;
+		buffer = new byte[bufferSize];
+	}
+
+	public void close() throws IOException {
+		input.close();
+	}
+
+	public void setIsStringAtomic(boolean isStringAtomic) {
+		this.isStringAtomic = isStringAtomic;
+	}
+
+	public int getDocumentLine() {
+		return documentLine;
+	}
+
+	public int getDocumentLinePos() {
+		return documentLinePos;
+	}
+
+	public int getTokenStartLine() {
+		return tokenStartLine;
+	}
+
+	public int getTokenStartLinePos() {
+		return tokenStartLinePos;
+	}
+
+	public JsonAtomicToken getToken() {
+		if (currentToken == null && currentType == JsonAtomicToken.Type.NUMBER)
+			currentToken = new JsonAtomicToken(currentType, getNumberValue());
+		else if (currentToken == null && currentType != null)
+			currentToken = new JsonAtomicToken(currentType);
+		return currentToken;
+	}
+
+	public JsonAtomicToken.Type getTokenType() {
+		return currentType;
+	}
+
+	public boolean isIntegerNumber() {
+		return numberIsInteger;
+	}
+
+	public long getLongValue() {
+		return longValue;
+	}
+
+	public double getDoubleValue() {
+		return doubleValue;
+	}
+
+	private Number getNumberValue() {
+		if (!numberIsInteger)
+			return doubleValue;
+		if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE)
+			return (int)longValue;
+		return longValue;
+	}
+
+	private void setToken(JsonAtomicToken token) {
+		currentType = token.getType();
+		currentToken = token;
+	}
+
+	/**
+	 * Moves to the next token. See {@link JsonStreamReader#moveNext()
+	 * JsonStreamReader.moveNext()}.
+	 *
+	 * @return true if there is another token, false if the end of the document
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	public boolean moveNext() throws JsonParseException, IOException {
+		if (endOfStream && currentType == null && bufferPos == bufferLimit)
+			return false;
+		if (currentType == JsonAtomicToken.Type.START_STRING ||
+				currentType == JsonAtomicToken.Type.STRING_CHARACTER) {
+			return parseStringCharToken();
+		}
+		int b = skipWhitespace();
+		if (b == -1)
+			return finishStream();
+		if (currentType == null)
+			return parseValue(b);
+		switch (currentType) {
+		case START_OBJECT:
+			if (b == '"')
+				return parseStringStart(true);
+			if (b == '}')
+				return parseEndObjectList(JsonAtomicToken.Type.END_OBJECT);
+			throw new JsonParseException(
+					"Invalid character after start object: " + currentChar(),
+					documentLine, documentLinePos);
+		case OBJECT_PAIR_SEPARATOR:
+			if (b == '"')
+				return parseStringStart(true);
+			throw new JsonParseException(
+					"Expected start of object key, found: " + currentChar(),
+					documentLine, documentLinePos);
+		case START_LIST:
+			if (b == ']')
+				return parseEndObjectList(JsonAtomicToken.Type.END_LIST);
+			return parseValue(b);
+		case OBJECT_KEY_VALUE_SEPARATOR:
+		case LIST_ITEM_SEPARATOR:
+			return parseValue(b);
+		case END_STRING:
+		case STRING:
+			if (!inObjectKey)
+				return parseAfterValue(b);
+			if (b == ':') {
+				inObjectKey = false;
+				return parseSeparator(
+						JsonAtomicToken.Type.OBJECT_KEY_VALUE_SEPARATOR);
+			}
+			throw new JsonParseException(
+					"Invalid character after object key: " + currentChar(),
+					documentLine, documentLinePos);
+		default:
+			return parseAfterValue(b);
+		}
+	}
+
+	/**
+	 * Skips the rest of the object or list that was started with the current
+	 * token. After this method the current token is the END_OBJECT or
+	 * END_LIST token that closes it. The content is scanned without
+	 * tokenizing: strings are not decoded and numbers and literals are not
+	 * parsed. It only validates that brackets match, that strings are
+	 * complete and that strings don't contain control characters.
+	 *
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	public void skipObjectList() throws JsonParseException, IOException {
+		int endDepth = stackSize - 1;
+		boolean inString = false;
+		boolean escaped = false;
+		while (true) {
+			if (bufferPos == bufferLimit && !fill())
+				throw inString ? incompleteString() : incompleteObjectList();
+			int b = buffer[bufferPos];
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+					consumeByte(b);
+				} else if (b == '"') {
+					inString = false;
+					consumeAscii(1);
+				} else if (b == '\\') {
+					escaped = true;
+					consumeAscii(1);
+				} else if (b >= 0 && (b < 0x20 || b == 0x7f)) {
+					throw controlCharacter(b);
+				} else {
+					consumeByte(b);
+				}
+				continue;
+			}
+			switch (b) {
+			case '"':
+				inString = true;
+				consumeAscii(1);
+				break;
+			case '{':
+			case '[':
+				push(b == '[');
+				consumeAscii(1);
+				break;
+			case '}':
+			case ']':
+				boolean isList = objectListStack[stackSize - 1];
+				if (isList != (b == ']')) {
+					throw new JsonParseException("Invalid character in " +
+							(isList ? "list" : "object") + ": " +
+							currentChar(), documentLine, documentLinePos);
+				}
+				tokenStartLine = documentLine;
+				tokenStartLinePos = documentLinePos;
+				consumeAscii(1);
+				stackSize--;
+				if (stackSize == endDepth) {
+					currentType = isList ? JsonAtomicToken.Type.END_LIST :
+							JsonAtomicToken.Type.END_OBJECT;
+					currentToken = null;
+					return;
+				}
+				break;
+			case '\r':
+				bufferPos++;
+				documentLine++;
+				documentLinePos = 1;
+				consumedCR = true;
+				break;
+			case '\n':
+				bufferPos++;
+				if (consumedCR) {
+					consumedCR = false;
+				} else {
+					documentLine++;
+					documentLinePos = 1;
+				}
+				break;
+			default:
+				consumeByte(b);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Parses the start of a JSON value. The first byte of the value is at the
+	 * current buffer position.
+	 *
+	 * @param b the first byte
+	 * @return true if a new token was completed, false otherwise
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean parseValue(int b) throws JsonParseException,
+			IOException {
+		tokenStartLine = documentLine;
+		tokenStartLinePos = documentLinePos;
+		switch (b) {
+		case '{':
+			consumeAscii(1);
+			push(false);
+			setToken(new JsonAtomicToken(
+					JsonAtomicToken.Type.START_OBJECT));
+			return true;
+		case '[':
+			consumeAscii(1);
+			push(true);
+			setToken(new JsonAtomicToken(
+					JsonAtomicToken.Type.START_LIST));
+			return true;
+		case '"':
+			return parseStringStart(false);
+		case 't':
+			return parseLiteral("true", JsonAtomicToken.Type.BOOLEAN, true);
+		case 'f':
+			return parseLiteral("false", JsonAtomicToken.Type.BOOLEAN,
+					false);
+		case 'n':
+			return parseLiteral("null", JsonAtomicToken.Type.NULL, null);
+		default:
+			return parseNumber(b);
+		}
+	}
+
+	private boolean parseSeparator(JsonAtomicToken.Type type) {
+		tokenStartLine = documentLine;
+		tokenStartLinePos = documentLinePos;
+		consumeAscii(1);
+		setToken(new JsonAtomicToken(type));
+		return true;
+	}
+
+	private boolean parseEndObjectList(JsonAtomicToken.Type type) {
+		tokenStartLine = documentLine;
+		tokenStartLinePos = documentLinePos;
+		consumeAscii(1);
+		stackSize--;
+		setToken(new JsonAtomicToken(type));
+		return true;
+	}
+
+	/**
+	 * Parses a character after a JSON value. This can be after a list item,
+	 * an object value, or the root value of the document.
+	 *
+	 * @param b the current byte
+	 * @return true if a new token was completed, false otherwise
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean parseAfterValue(int b) throws JsonParseException,
+			IOException {
+		if (stackSize == 0) {
+			throw new JsonParseException(
+					"Unxpected character after root value: " + currentChar(),
+					documentLine, documentLinePos);
+		}
+		if (objectListStack[stackSize - 1]) {
+			if (b == ',')
+				return parseSeparator(JsonAtomicToken.Type.LIST_ITEM_SEPARATOR);
+			if (b == ']')
+				return parseEndObjectList(JsonAtomicToken.Type.END_LIST);
+			throw new JsonParseException(
+					"Invalid character after list item: " + currentChar(),
+					documentLine, documentLinePos);
+		} else {
+			if (b == ',') {
+				return parseSeparator(
+						JsonAtomicToken.Type.OBJECT_PAIR_SEPARATOR);
+			}
+			if (b == '}')
+				return parseEndObjectList(JsonAtomicToken.Type.END_OBJECT);
+			throw new JsonParseException(
+					"Invalid character after key/value pair in object: " +
+					currentChar(), documentLine, documentLinePos);
+		}
+	}
+
+	/**
+	 * Parses a boolean or null literal. The first byte of the literal is at
+	 * the current buffer position.
+	 *
+	 * @param expected the expected literal
+	 * @param type the token type
+	 * @param value the token value
+	 * @return true
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean parseLiteral(String expected, JsonAtomicToken.Type type,
+			Object value) throws JsonParseException, IOException {
+		consumeAscii(1);
+		for (int i = 1; i < expected.length(); i++) {
+			if (bufferPos == bufferLimit && !fill()) {
+				throw new JsonParseException(
+						"Incomplete token at end of document: " +
+						expected.substring(0, i), documentLine,
+						documentLinePos);
+			}
+			if (buffer[bufferPos] != expected.charAt(i)) {
+				throw new JsonParseException("Invalid token: " +
+						expected.substring(0, i) + currentChar(),
+						documentLine, documentLinePos);
+			}
+			consumeAscii(1);
+		}
+		setToken(new JsonAtomicToken(type, value));
+		return true;
+	}
+
+	/**
+	 * Parses a number token. The first byte of the number is at the current
+	 * buffer position. The number is parsed directly from the bytes. Only if
+	 * it can't be represented exactly with the fast path, it's parsed from a
+	 * string.
+	 *
+	 * @param first the first byte
+	 * @return true
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean parseNumber(int first) throws JsonParseException,
+			IOException {
+		if (first != '-' && (first < '0' || first > '9')) {
+			throw new JsonParseException(
+					"Invalid character at start of value: " + currentChar(),
+					documentLine, documentLinePos);
+		}
+		boolean negative = first == '-';
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean isInteger = true;
+		boolean expNegative = false;
+		int exp = 0;
+		// 0: after sign, 1: after leading 0, 2: in main, 3: after point,
+		// 4: in fraction, 5: after e, 6: after exp sign, 7: in exp
+		int state = negative ? 0 : (first == '0' ? 1 : 2);
+		if (!negative) {
+			mantissa = first - '0';
+			digits = mantissa == 0 ? 0 : 1;
+		}
+		int len = 1;
+		while (true) {
+			if (bufferPos + len == bufferLimit && !ensure(len + 1))
+				break;
+			int c = buffer[bufferPos + len];
+			boolean accept;
+			if (c >= '0' && c <= '9') {
+				accept = state != 1;
+				if (state == 0) {
+					state = c == '0' ? 1 : 2;
+				} else if (state == 3) {
+					state = 4;
+				} else if (state == 5 || state == 6) {
+					state = 7;
+				}
+				if (accept && state <= 4) {
+					if (state == 4)
+						fractionDigits++;
+					if (digits > 0 || c != '0') {
+						if (digits < MAX_LONG_DIGITS)
+							mantissa = mantissa * 10 + (c - '0');
+						digits++;
+					}
+				} else if (accept && state == 7 && exp < 100000) {
+					exp = exp * 10 + (c - '0');
+				}
+			} else if (c == '.') {
+				accept = state == 1 || state == 2;
+				if (accept) {
+					state = 3;
+					isInteger = false;
+				}
+			} else if (c == 'e' || c == 'E') {
+				accept = state == 1 || state == 2 || state == 4;
+				if (accept) {
+					state = 5;
+					isInteger = false;
+				}
+			} else if (c == '+' || c == '-') {
+				accept = state == 5;
+				if (accept) {
+					state = 6;
+					expNegative = c == '-';
+				}
+			} else {
+				accept = false;
+			}
+			if (!accept)
+				break;
+			len++;
+		}
+		if (state == 0 || state == 3 || state == 5 || state == 6) {
+			String text = new String(buffer, bufferPos, len,
+					StandardCharsets.ISO_8859_1);
+			if (bufferPos + len == bufferLimit) {
+				consumeAscii(len);
+				throw new JsonParseException("Invalid number: " + text,
+						documentLine, documentLinePos);
+			}
+			consumeAscii(len);
+			throw new JsonParseException("Invalid number: " + text +
+					currentChar(), documentLine, documentLinePos);
+		}
+		if (isInteger) {
+			if (digits <= MAX_LONG_DIGITS) {
+				longValue = negative ? -mantissa : mantissa;
+			} else {
+				String text = new String(buffer, bufferPos, len,
+						StandardCharsets.ISO_8859_1);
+				try {
+					longValue = Long.parseLong(text);
+				} catch (NumberFormatException ex) {
+					consumeAscii(len);
+					throw new JsonParseException("Invalid number: " + text,
+							documentLine, documentLinePos);
+				}
+			}
+		} else {
+			int exp10 = (expNegative ? -exp : exp) - fractionDigits;
+			if (digits <= MAX_FAST_DIGITS && exp10 >= -22 && exp10 <= 22) {
+				double d = mantissa;
+				if (exp10 >= 0)
+					d *= POW10[exp10];
+				else
+					d /= POW10[-exp10];
+				doubleValue = negative ? -d : d;
+			} else {
+				doubleValue = Double.parseDouble(new String(buffer, bufferPos,
+						len, StandardCharsets.ISO_8859_1));
+			}
+		}
+		consumeAscii(len);
+		// the token object is only created if getToken() is called
+		numberIsInteger = isInteger;
+		if (isInteger)
+			doubleValue = longValue;
+		else
+			longValue = (long)doubleValue;
+		currentType = JsonAtomicToken.Type.NUMBER;
+		currentToken = null;
+		return true;
+	}
+
+	/**
+	 * Parses the start of a string. The opening quote is at the current
+	 * buffer position. If strings are atomic, this method parses the
+	 * complete string.
+	 *
+	 * @param objectKey true if the string is an object key
+	 * @return true if a new token was completed, false otherwise
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean parseStringStart(boolean objectKey)
+			throws JsonParseException, IOException {
+		tokenStartLine = documentLine;
+		tokenStartLinePos = documentLinePos;
+		consumeAscii(1);
+		if (objectKey)
+			inObjectKey = true;
+		if (!isStringAtomic) {
+			setToken(new JsonAtomicToken(
+					JsonAtomicToken.Type.START_STRING));
+			return true;
+		}
+		stringLen = 0;
+		while (true) {
+			if (bufferPos == bufferLimit && !fill())
+				throw incompleteString();
+			// copy a run of plain ASCII characters
+			int start = bufferPos;
+			int end = bufferLimit;
+			int pos = start;
+			while (pos < end) {
+				byte b = buffer[pos];
+				if (b < 0x20 || b == '"' || b == '\\' || b == 0x7f)
+					break;
+				pos++;
+			}
+			if (pos > start) {
+				int n = pos - start;
+				ensureStringCapacity(n);
+				for (int i = start; i < pos; i++) {
+					stringChars[stringLen++] = (char)buffer[i];
+				}
+				consumeAscii(n);
+			}
+			if (pos == end)
+				continue;
+			int b = buffer[pos];
+			if (b == '"') {
+				consumeAscii(1);
+				setToken(new JsonAtomicToken(
+						JsonAtomicToken.Type.STRING,
+						new String(stringChars, 0, stringLen)));
+				return true;
+			} else if (b == '\\') {
+				ensureStringCapacity(1);
+				stringChars[stringLen++] = parseEscape();
+			} else if (b >= 0) {
+				throw controlCharacter(b);
+			} else {
+				int codePoint = parseUtf8();
+				ensureStringCapacity(2);
+				stringLen += Character.toChars(codePoint, stringChars,
+						stringLen);
+			}
+		}
+	}
+
+	/**
+	 * Parses the next character token if strings are not atomic. The current
+	 * token is START_STRING or STRING_CHARACTER.
+	 *
+	 * @return true
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean parseStringCharToken() throws JsonParseException,
+			IOException {
+		tokenStartLine = documentLine;
+		tokenStartLinePos = documentLinePos;
+		char c;
+		if (pendingLowSurrogate != 0) {
+			c = pendingLowSurrogate;
+			pendingLowSurrogate = 0;
+			consumeChars(1);
+		} else {
+			if (bufferPos == bufferLimit && !fill()) {
+				endOfStream = true;
+				return finishStream();
+			}
+			int b = buffer[bufferPos];
+			if (b == '"') {
+				consumeAscii(1);
+				setToken(new JsonAtomicToken(
+						JsonAtomicToken.Type.END_STRING));
+				return true;
+			} else if (b == '\\') {
+				c = parseEscape();
+			} else if (b >= 0x20 && b != 0x7f) {
+				c = (char)b;
+				consumeAscii(1);
+			} else if (b >= 0) {
+				throw controlCharacter(b);
+			} else {
+				int codePoint = parseUtf8();
+				if (Character.isSupplementaryCodePoint(codePoint)) {
+					// parseUtf8() consumed one character, the low surrogate
+					// is consumed with the next token
+					c = Character.highSurrogate(codePoint);
+					pendingLowSurrogate = Character.lowSurrogate(codePoint);
+				} else {
+					c = (char)codePoint;
+				}
+			}
+		}
+		setToken(new JsonAtomicToken(
+				JsonAtomicToken.Type.STRING_CHARACTER, Character.toString(c)));
+		return true;
+	}
+
+	/**
+	 * Parses an escape sequence in a string. The backslash is at the current
+	 * buffer position.
+	 *
+	 * @return the escaped character
+	 * @throws JsonParseException if the JSON content is invalid
+	 * @throws IOException if a reading error occurs
+	 */
+	private char parseEscape() throws JsonParseException, IOException {
+		consumeAscii(1);
+		if (bufferPos == bufferLimit && !fill())
+			throw incompleteString();
+		int b = buffer[bufferPos];
+		char escapedChar;
+		switch (b) {
+		case '"':
+		case '\\':
+		case '/':
+			escapedChar = (char)b;
+			break;
+		case 'b':
+			escapedChar = '\b';
+			break;
+		case 'f':
+			escapedChar = '\f';
+			break;
+		case 'n':
+			escapedChar = '\n';
+			break;
+		case 'r':
+			escapedChar = '\r';
+			break;
+		case 't':
+			escapedChar = '\t';
+			break;
+		case 'u':
+			consumeAscii(1);
+			char[] hex = new char[4];
+			for (int i = 0; i < 4; i++) {
+				if (bufferPos == bufferLimit && !fill())
+					throw incompleteString();
+				int h = buffer[bufferPos];
+				if (h < 0 || Character.digit(h, 16) == -1) {
+					throw new JsonParseException(
+							"Invalid string escape sequence: \\u" +
+							new String(hex, 0, i) + currentChar(),
+							documentLine, documentLinePos);
+				}
+				hex[i] = (char)h;
+				consumeAscii(1);
+			}
+			return (char)Integer.parseInt(new String(hex), 16);
+		default:
+			throw new JsonParseException(
+					"Invalid string escape sequence: \\" + currentChar(),
+					documentLine, documentLinePos);
+		}
+		consumeAscii(1);
+		return escapedChar;
+	}
+
+	/**
+	 * Decodes a UTF-8 multi-byte sequence in a string. The first byte is at
+	 * the current buffer position and has the high bit set. A malformed byte
+	 * is consumed and replaced with U+FFFD. This method consumes the
+	 * characters in the document position.
+	 *
+	 * @return the code point
+	 * @throws JsonParseException if the character is a control character
+	 * @throws IOException if a reading error occurs
+	 */
+	private int parseUtf8() throws JsonParseException, IOException {
+		int b = buffer[bufferPos] & 0xff;
+		int len;
+		int codePoint;
+		int min;
+		if (b >= 0xc2 && b <= 0xdf) {
+			len = 2;
+			codePoint = b & 0x1f;
+			min = 0x80;
+		} else if (b >= 0xe0 && b <= 0xef) {
+			len = 3;
+			codePoint = b & 0x0f;
+			min = 0x800;
+		} else if (b >= 0xf0 && b <= 0xf4) {
+			len = 4;
+			codePoint = b & 0x07;
+			min = 0x10000;
+		} else {
+			return malformedUtf8();
+		}
+		if (!ensure(len))
+			return malformedUtf8();
+		for (int i = 1; i < len; i++) {
+			int next = buffer[bufferPos + i] & 0xff;
+			if ((next & 0xc0) != 0x80)
+				return malformedUtf8();
+			codePoint = (codePoint << 6) | (next & 0x3f);
+		}
+		if (codePoint < min || codePoint > Character.MAX_CODE_POINT ||
+				(codePoint >= Character.MIN_SURROGATE &&
+				codePoint <= Character.MAX_SURROGATE)) {
+			return malformedUtf8();
+		}
+		if (Character.isISOControl(codePoint)) {
+			throw new JsonParseException(String.format(
+					"Control character not allowed: 0x%02x", codePoint),
+					documentLine, documentLinePos);
+		}
+		bufferPos += len;
+		if (isStringAtomic)
+			consumeChars(Character.charCount(codePoint));
+		else
+			consumeChars(1);
+		return codePoint;
+	}
+
+	private int malformedUtf8() {
+		bufferPos++;
+		consumeChars(1);
+		return 0xfffd;
+	}
+
+	/**
+	 * Called when the end of the stream is reached. It checks whether the
+	 * document is complete. If so it clears the current token and returns
+	 * false. Otherwise it throws an exception.
+	 *
+	 * @return false
+	 * @throws JsonParseException if the document is incomplete
+	 */
+	private boolean finishStream() throws JsonParseException {
+		if (stackSize > 0)
+			throw incompleteObjectList();
+		if (currentType == null) {
+			throw new JsonParseException("Empty document", documentLine,
+					documentLinePos);
+		}
+		if (currentType == JsonAtomicToken.Type.START_STRING ||
+				currentType == JsonAtomicToken.Type.STRING_CHARACTER) {
+			throw incompleteString();
+		}
+		tokenStartLine = documentLine;
+		tokenStartLinePos = documentLinePos;
+		currentType = null;
+		currentToken = null;
+		return false;
+	}
+
+	/**
+	 * Skips whitespace and returns the next byte without consuming it. At
+	 * the end of the stream it returns -1.
+	 *
+	 * @return the next byte or -1
+	 * @throws IOException if a reading error occurs
+	 */
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			if (bufferPos == bufferLimit && !fill())
+				return -1;
+			int b = buffer[bufferPos] & 0xff;
+			switch (b) {
+			case ' ':
+			case '\t':
+			case 0x0b:
+			case '\f':
+			case 0x1c:
+			case 0x1d:
+			case 0x1e:
+			case 0x1f:
+				consumeAscii(1);
+				break;
+			case '\r':
+				bufferPos++;
+				documentLine++;
+				documentLinePos = 1;
+				consumedCR = true;
+				break;
+			case '\n':
+				bufferPos++;
+				if (consumedCR) {
+					consumedCR = false;
+				} else {
+					documentLine++;
+					documentLinePos = 1;
+				}
+				break;
+			default:
+				if (b < 0x80 || !Character.isWhitespace(currentChar()))
+					return b;
+				// Unicode whitespace is in the BMP
+				int len = b >= 0xf0 ? 4 : (b >= 0xe0 ? 3 : 2);
+				bufferPos += len;
+				consumeChars(1);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the character at the current buffer position without consuming
+	 * it. If it's a multi-byte character, it's decoded. This is used for
+	 * error messages and for Unicode whitespace.
+	 *
+	 * @return the character
+	 * @throws IOException if a reading error occurs
+	 */
+	private char currentChar() throws IOException {
+		int b = buffer[bufferPos] & 0xff;
+		if (b < 0x80)
+			return (char)b;
+		int len = b >= 0xf0 ? 4 : (b >= 0xe0 ? 3 : 2);
+		if (!ensure(len))
+			len = bufferLimit - bufferPos;
+		String s = new String(buffer, bufferPos, len,
+				StandardCharsets.UTF_8);
+		return s.charAt(0);
+	}
+
+	private JsonParseException controlCharacter(int c) {
+		return new JsonParseException(String.format(
+				"Control character not allowed: 0x%02x", c), documentLine,
+				documentLinePos);
+	}
+
+	private JsonParseException incompleteObjectList() {
+		if (objectListStack[stackSize - 1]) {
+			return new JsonParseException(
+					"Incomplete list at end of document", documentLine,
+					documentLinePos);
+		} else {
+			return new JsonParseException(
+					"Incomplete object at end of document", documentLine,
+					documentLinePos);
+		}
+	}
+
+	/**
+	 * Returns the exception when the end of the stream is reached inside a
+	 * string. If strings are not atomic, the string is not the current token,
+	 * so like {@link #finishStream() finishStream()}, an incomplete list or
+	 * object is reported first.
+	 *
+	 * @return the exception
+	 */
+	private JsonParseException incompleteString() {
+		if (!isStringAtomic && stackSize > 0)
+			return incompleteObjectList();
+		return new JsonParseException(
+				"Incomplete string at end of document", documentLine,
+				documentLinePos);
+	}
+
+	private void push(boolean isList) {
+		if (stackSize == objectListStack.length) {
+			objectListStack = Arrays.copyOf(objectListStack,
+					stackSize * 2);
+		}
+		objectListStack[stackSize++] = isList;
+	}
+
+	private void ensureStringCapacity(int n) {
+		if (stringLen + n > stringChars.length) {
+			stringChars = Arrays.copyOf(stringChars, Math.max(
+					stringLen + n, stringChars.length * 2));
+		}
+	}
+
+	/**
+	 * Consumes the specified number of ASCII characters that are not a new
+	 * line, from the buffer and in the document position.
+	 *
+	 * @param n the number of characters
+	 */
+	private void consumeAscii(int n) {
+		bufferPos += n;
+		consumeChars(n);
+	}
+
+	/**
+	 * Consumes one byte that is not a new line, from the buffer and in the
+	 * document position. This is used when bytes are skipped without
+	 * decoding. A UTF-8 continuation byte doesn't move the position, and the
+	 * first byte of a 4-byte sequence counts as two characters (a surrogate
+	 * pair).
+	 *
+	 * @param b the byte
+	 */
+	private void consumeByte(int b) {
+		bufferPos++;
+		if ((b & 0xc0) != 0x80)
+			consumeChars((b & 0xf8) == 0xf0 ? 2 : 1);
+	}
+
+	/**
+	 * Updates the document position for the specified number of characters
+	 * that are not a new line. Just like {@link JsonStreamReader
+	 * JsonStreamReader}, the first character after a carriage return doesn't
+	 * move the position.
+	 *
+	 * @param n the number of characters
+	 */
+	private void consumeChars(int n) {
+		if (consumedCR) {
+			consumedCR = false;
+			n--;
+		}
+		documentLinePos += n;
+	}
+
+	/**
+	 * Reads more bytes if the buffer has been consumed.
+	 *
+	 * @return true if there are bytes available, false if the end of the
+	 * stream is reached
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean fill() throws IOException {
+		if (bufferPos < bufferLimit)
+			return true;
+		bufferPos = 0;
+		bufferLimit = 0;
+		return ensure(1);
+	}
+
+	/**
+	 * Ensures that at least the specified number of bytes is available from
+	 * the current buffer position. If needed, it moves the remaining bytes to
+	 * the start of the buffer, grows the buffer and reads more bytes.
+	 *
+	 * @param n the number of bytes
+	 * @return true if the bytes are available, false if the end of the stream
+	 * is reached before
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean ensure(int n) throws IOException {
+		if (bufferLimit - bufferPos >= n)
+			return true;
+		if (endOfStream)
+			return false;
+		if (bufferPos > 0) {
+			System.arraycopy(buffer, bufferPos, buffer, 0,
+					bufferLimit - bufferPos);
+			bufferLimit -= bufferPos;
+			bufferPos = 0;
+		}
+		if (n > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(n, buffer.length * 2));
+		while (bufferLimit < n) {
+			int len = input.read(buffer, bufferLimit,
+					buffer.length - bufferLimit);
+			if (len < 0) {
+				endOfStream = true;
+				return false;
+			}
+			bufferLimit += len;
+		}
+		return true;
+	}
+}
@@ -23,28 +23,35 @@
 package nl.rrd.utils.json.rpc;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.StringWriter;
-import java.io.Writer;
-import java.net.HttpURLConnection;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import nl.rrd.utils.AppComponents;
 import nl.rrd.utils.exception.ParseException;
+import nl.rrd.utils.json.ObjectMapperRegistry;
 
 /**
  * This class provides JSON-RPC over a HTTP connection. It can only be used for
@@ -54,40 +61,179 @@ import nl.rrd.utils.exception.ParseException;
  * return it as soon as it's received. In case of an error, they throw an
  * exception. Notifications are like void methods. You can send notifications
  * with the <code>notify()</code> methods.
+ *
+ * <p>If you don't want to wait for the response, you can call one of the
+ * <code>requestAsync()</code> methods. They return a {@link CompletableFuture
+ * CompletableFuture} that is completed with the result, or with an {@link
+ * IOException IOException}, {@link JsonRpcException JsonRpcException} or
+ * {@link ParseException ParseException}. If you cancel the future of a call
+ * that is not part of a batch, a queued call is removed from the queue and
+ * the HTTP request of a running call is cancelled.</p>
+ *
+ * <p>All calls share one HTTP client that keeps connections to the endpoint
+ * alive, so subsequent calls don't need to set up a new connection. The
+ * number of HTTP requests that are in flight at the same time is limited
+ * (see {@link #JsonRpcHttp(URL, int) JsonRpcHttp(URL, int)}). Further calls
+ * are queued until a previous call has completed.</p>
+ *
+ * <p>To send several calls in one HTTP request, you can create a JSON-RPC
+ * batch with {@link #createBatch() createBatch()}. Alternatively you can
+ * enable automatic coalescing with {@link #enableCoalescing(long, int)
+ * enableCoalescing()}. Then calls that are made within a short time window
+ * are sent together in one batch, while each call still gets its own
+ * result.</p>
  * 
  * @author Dennis Hofs
  */
 public class JsonRpcHttp {
 	public static final String LOGTAG = "JsonRpc";
+
+	/**
+	 * The default maximum number of HTTP requests that are in flight at the
+	 * same time.
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 8;
 	
 	private URL url;
+	private URI uri;
+	private int maxInFlight;
+	private HttpClient client;
 	private final Object lock = new Object();
 	private int nextID = 1;
 	private boolean closed = false;
-	private List<HttpURLConnection> connections = new ArrayList<>();
+	private List<Call<?>> activeCalls = new ArrayList<>();
+	private Deque<Call<?>> queuedCalls = new ArrayDeque<>();
+	private long coalesceWindow = 0;
+	private int coalesceMaxSize = 0;
+	private Batch pendingBatch = null;
 	
 	/**
-	 * Constructs a new instance.
+	 * Constructs a new instance with at most {@link #DEFAULT_MAX_IN_FLIGHT
+	 * DEFAULT_MAX_IN_FLIGHT} HTTP requests in flight.
 	 * 
 	 * @param url the URL (e.g. http://localhost:8080/jsonrpc)
 	 */
 	public JsonRpcHttp(URL url) {
+		this(url, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Constructs a new instance. If more than "maxInFlight" calls are made at
+	 * the same time, the remaining calls are queued until a previous call has
+	 * completed. This also limits the number of connections to the endpoint.
+	 *
+	 * @param url the URL (e.g. http://localhost:8080/jsonrpc)
+	 * @param maxInFlight the maximum number of HTTP requests in flight
+	 */
+	public JsonRpcHttp(URL url, int maxInFlight) {
+		if (maxInFlight <= 0) {
+			throw new IllegalArgumentException(
+					"Invalid maximum number of requests in flight: " +
+					maxInFlight);
+		}
 		this.url = url;
+		try {
+			this.uri = url.toURI();
+		} catch (URISyntaxException ex) {
+			throw new IllegalArgumentException("Invalid URL: " + url, ex);
+		}
+		this.maxInFlight = maxInFlight;
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
 	}
 
 	/**
-	 * Closes any open connections.
+	 * Closes this instance. Any queued or running calls are completed with an
+	 * {@link IOException IOException}.
 	 */
 	public void close() {
+		List<Call<?>> calls = new ArrayList<>();
+		List<CompletableFuture<?>> httpFutures = new ArrayList<>();
+		Batch batch;
 		synchronized (lock) {
 			if (closed)
 				return;
 			closed = true;
-			while (!connections.isEmpty()) {
-				HttpURLConnection conn = connections.remove(0);
-				conn.disconnect();
+			batch = pendingBatch;
+			pendingBatch = null;
+			calls.addAll(queuedCalls);
+			calls.addAll(activeCalls);
+			queuedCalls.clear();
+			activeCalls.clear();
+			for (Call<?> call : calls) {
+				if (call.httpFuture != null)
+					httpFutures.add(call.httpFuture);
 			}
 		}
+		// complete the results before cancelling, so callers get an
+		// IOException rather than a CancellationException
+		for (Call<?> call : calls) {
+			call.result.completeExceptionally(new IOException(
+					"JsonRpcHttp closed"));
+		}
+		for (CompletableFuture<?> httpFuture : httpFutures) {
+			httpFuture.cancel(true);
+		}
+		// this completes the calls in the batch with an IOException
+		if (batch != null)
+			batch.send();
+	}
+
+	/**
+	 * Enables automatic coalescing of calls into JSON-RPC batches. When a
+	 * request or notification is made and there is no pending batch, a new
+	 * batch is started. Calls within the next "windowMs" milliseconds are
+	 * added to the same batch. The batch is sent when the time window ends or
+	 * when it contains "maxBatchSize" calls, whichever comes first. A batch
+	 * with only one call is sent as a normal request or notification.
+	 *
+	 * <p>The blocking <code>request()</code> and <code>notify()</code>
+	 * methods wait until the batch has been sent and the response has been
+	 * received, so coalescing is mainly useful for calls from different
+	 * threads or with <code>requestAsync()</code>.</p>
+	 *
+	 * @param windowMs the time window in milliseconds
+	 * @param maxBatchSize the maximum number of calls in a batch
+	 */
+	public void enableCoalescing(long windowMs, int maxBatchSize) {
+		if (windowMs < 0)
+			throw new IllegalArgumentException("Invalid window: " + windowMs);
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("Invalid maximum batch size: " +
+					maxBatchSize);
+		}
+		synchronized (lock) {
+			coalesceWindow = windowMs;
+			coalesceMaxSize = maxBatchSize;
+		}
+	}
+
+	/**
+	 * Disables automatic coalescing of calls. If there is a pending batch, it
+	 * is sent immediately.
+	 */
+	public void disableCoalescing() {
+		Batch batch;
+		synchronized (lock) {
+			coalesceMaxSize = 0;
+			batch = pendingBatch;
+			pendingBatch = null;
+		}
+		if (batch != null)
+			batch.send();
+	}
+
+	/**
+	 * Creates a new JSON-RPC batch. You can add requests and notifications
+	 * to the batch and then send them in one HTTP request with {@link
+	 * Batch#send() send()}.
+	 *
+	 * @return the batch
+	 */
+	public Batch createBatch() {
+		return new Batch();
 	}
 	
 	/**
@@ -102,12 +248,7 @@ public class JsonRpcHttp {
 	 */
 	public Object request(String methodName) throws IOException,
 	JsonRpcException, ParseException {
-		int id;
-		synchronized (lock) {
-			id = nextID++;
-		}
-		JsonRpcRequest request = JsonRpcRequest.create(methodName, id);
-		return sendRequest(request);
+		return waitForResult(requestAsync(methodName));
 	}
 
 	/**
@@ -124,12 +265,7 @@ public class JsonRpcHttp {
 	 */
 	public Object request(String methodName, Map<String,?> params) throws
 	IOException, JsonRpcException, ParseException {
-		int id;
-		synchronized (lock) {
-			id = nextID++;
-		}
-		JsonRpcRequest request = JsonRpcRequest.create(methodName, params, id);
-		return sendRequest(request);
+		return waitForResult(requestAsync(methodName, params));
 	}
 
 	/**
@@ -146,48 +282,149 @@ public class JsonRpcHttp {
 	 */
 	public Object request(String methodName, Object... params) throws
 	IOException, JsonRpcException, ParseException {
-		int id;
+		return waitForResult(requestAsync(methodName, params));
+	}
+
+	/**
+	 * Sends a request without parameters and returns immediately. The
+	 * returned future is completed with the result, or with an {@link
+	 * IOException IOException}, {@link JsonRpcException JsonRpcException} or
+	 * {@link ParseException ParseException}.
+	 *
+	 * @param methodName the method name
+	 * @return the future result
+	 */
+	public CompletableFuture<Object> requestAsync(String methodName) {
+		return sendRequest(JsonRpcRequest.create(methodName, createID()));
+	}
+
+	/**
+	 * Sends a request with parameters as a JSON object and returns
+	 * immediately. The returned future is completed with the result, or with
+	 * an {@link IOException IOException}, {@link JsonRpcException
+	 * JsonRpcException} or {@link ParseException ParseException}.
+	 *
+	 * @param methodName the method name
+	 * @param params the parameters
+	 * @return the future result
+	 */
+	public CompletableFuture<Object> requestAsync(String methodName,
+			Map<String,?> params) {
+		return sendRequest(JsonRpcRequest.create(methodName, params,
+				createID()));
+	}
+
+	/**
+	 * Sends a request with parameters as a JSON array and returns
+	 * immediately. The returned future is completed with the result, or with
+	 * an {@link IOException IOException}, {@link JsonRpcException
+	 * JsonRpcException} or {@link ParseException ParseException}.
+	 *
+	 * @param methodName the method name
+	 * @param params the parameters
+	 * @return the future result
+	 */
+	public CompletableFuture<Object> requestAsync(String methodName,
+			Object... params) {
+		List<Object> list = Arrays.asList(params);
+		return sendRequest(JsonRpcRequest.create(methodName, list,
+				createID()));
+	}
+
+	/**
+	 * Returns a new request ID.
+	 *
+	 * @return the request ID
+	 */
+	private int createID() {
 		synchronized (lock) {
-			id = nextID++;
+			return nextID++;
+		}
+	}
+
+	/**
+	 * Waits until the specified future is completed and returns the result.
+	 * If the future was completed with an exception, this method throws that
+	 * exception. If the thread is interrupted, this method cancels the future
+	 * and restores the interrupted status of the thread.
+	 *
+	 * @param future the future
+	 * @return the result
+	 * @throws IOException if an error occurs while sending or receiving, or
+	 * if the thread is interrupted
+	 * @throws JsonRpcException if the remote method returned an error response
+	 * @throws ParseException if the server response can't be parsed
+	 */
+	private Object waitForResult(CompletableFuture<Object> future)
+			throws IOException, JsonRpcException, ParseException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for JSON-RPC response");
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException ioEx)
+				throw ioEx;
+			if (cause instanceof JsonRpcException rpcEx)
+				throw rpcEx;
+			if (cause instanceof ParseException parseEx)
+				throw parseEx;
+			if (cause instanceof RuntimeException runtimeEx)
+				throw runtimeEx;
+			if (cause instanceof Error error)
+				throw error;
+			throw new RuntimeException(cause.getMessage(), cause);
 		}
-		List<Object> list = Arrays.asList(params);
-		JsonRpcRequest request = JsonRpcRequest.create(methodName, list, id);
-		return sendRequest(request);
 	}
 	
 	/**
-	 * Sends the specified JSON-RPC request and returns the response.
+	 * Sends the specified JSON-RPC request and returns a future for the
+	 * result.
 	 * 
 	 * @param request the request
-	 * @return the response
-	 * @throws IOException if an error occurs while sending or receiving
+	 * @return the future result
+	 */
+	private CompletableFuture<Object> sendRequest(JsonRpcRequest request) {
+		if (isCoalescing())
+			return sendCoalesced(request);
+		CompletableFuture<HttpResponse<byte[]>> httpResult = sendMessage(
+				request, HttpResponse.BodyHandlers.ofByteArray());
+		return cancelWith(httpResult.thenApply(response -> {
+			try {
+				return readResult(response.body());
+			} catch (JsonRpcException | ParseException ex) {
+				throw new CompletionException(ex);
+			}
+		}), httpResult);
+	}
+
+	/**
+	 * Parses the body of an HTTP response as a JSON-RPC response and returns
+	 * the result.
+	 *
+	 * @param body the response body
+	 * @return the result
 	 * @throws JsonRpcException if the remote method returned an error response
 	 * @throws ParseException if the server response can't be parsed
 	 */
-	private Object sendRequest(JsonRpcRequest request) throws IOException,
-	JsonRpcException, ParseException {
-		String responseStr = sendMessage(request);
-		Logger logger = AppComponents.getLogger(LOGTAG);
-		if (logger.isTraceEnabled()) {
-			logger.trace("Received message: " + responseStr);
-		}
-		ObjectMapper mapper = new ObjectMapper();
-		Map<?,?> map;
-		try {
-			map = mapper.readValue(responseStr, Map.class);
-		} catch (JsonParseException ex) {
+	private Object readResult(byte[] body) throws JsonRpcException,
+			ParseException {
+		logReceivedMessage(body);
+		JsonRpcResponse response;
+		try (JsonParser parser = ObjectMapperRegistry.getDefault().getMapper()
+				.createParser(body)) {
+			response = JsonRpcResponse.read(parser);
+		} catch (JsonProcessingException ex) {
 			throw new ParseException("Can't parse JSON string: " +
 					ex.getMessage(), ex);
-		} catch (JsonMappingException ex) {
-			throw new ParseException("Can't convert JSON string to map: " +
+		} catch (IOException ex) {
+			// reading from a byte array does not throw other I/O errors
+			throw new ParseException("Can't read JSON string: " +
 					ex.getMessage(), ex);
 		}
-		JsonRpcMessage recvMsg = JsonRpcMessage.read(map);
-		if (!(recvMsg instanceof JsonRpcResponse)) {
-			throw new ParseException("Expected JSONRPCResponse, received " +
-					recvMsg.getClass().getName());
-		}
-		JsonRpcResponse response = (JsonRpcResponse)recvMsg;
 		if (response.getError() != null) {
 			JsonRpcResponse.Error error = response.getError();
 			throw new JsonRpcException(error.getMessage(), error.getCode(),
@@ -195,65 +432,232 @@ public class JsonRpcHttp {
 		}
 		return response.getResult();
 	}
+
+	/**
+	 * Writes the specified response body to the trace log.
+	 *
+	 * @param body the response body
+	 */
+	private void logReceivedMessage(byte[] body) {
+		Logger logger = AppComponents.getLogger(LOGTAG);
+		if (logger.isTraceEnabled()) {
+			logger.trace("Received message: " + new String(body,
+					StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Returns whether automatic coalescing of calls is enabled.
+	 *
+	 * @return true if automatic coalescing is enabled, false otherwise
+	 */
+	private boolean isCoalescing() {
+		synchronized (lock) {
+			return coalesceMaxSize > 0;
+		}
+	}
+
+	/**
+	 * Adds the specified request or notification to the pending batch. If
+	 * there is no pending batch, this method starts a new one and schedules
+	 * it to be sent at the end of the time window. If the batch is full, it
+	 * is sent immediately.
+	 *
+	 * @param message the request or notification
+	 * @return the future result (null for a notification)
+	 */
+	private CompletableFuture<Object> sendCoalesced(JsonRpcMessage message) {
+		CompletableFuture<Object> result;
+		Batch fullBatch = null;
+		synchronized (lock) {
+			if (pendingBatch == null) {
+				Batch batch = new Batch();
+				pendingBatch = batch;
+				CompletableFuture.delayedExecutor(coalesceWindow,
+						TimeUnit.MILLISECONDS).execute(
+								() -> sendPendingBatch(batch));
+			}
+			result = pendingBatch.add(message);
+			if (pendingBatch.size() >= coalesceMaxSize) {
+				fullBatch = pendingBatch;
+				pendingBatch = null;
+			}
+		}
+		if (fullBatch != null)
+			fullBatch.send();
+		return result;
+	}
+
+	/**
+	 * Sends the specified batch at the end of its time window, unless it has
+	 * already been sent because it was full.
+	 *
+	 * @param batch the batch
+	 */
+	private void sendPendingBatch(Batch batch) {
+		synchronized (lock) {
+			if (pendingBatch != batch)
+				return;
+			pendingBatch = null;
+		}
+		batch.send();
+	}
 	
 	/**
-	 * Sends the specified JSON-RPC request or notification and returns the
-	 * string response. For a request the result will be the JSON string for
-	 * a JSON-RPC response. For a notification the result can be ignored.
+	 * Sends the specified JSON-RPC request or notification as an HTTP POST
+	 * request. The returned future is completed with the HTTP response when
+	 * the response body has been received. If the HTTP request fails or the
+	 * server returns an error status, it is completed with an {@link
+	 * IOException IOException}.
 	 * 
 	 * @param message the request or notification
-	 * @return the string response
-	 * @throws IOException if an error occurs while sending or receiving
+	 * @param bodyHandler the handler for the response body
+	 * @param <T> the type of the response body
+	 * @return the future HTTP response
+	 */
+	private <T> CompletableFuture<HttpResponse<T>> sendMessage(
+			JsonRpcMessage message, HttpResponse.BodyHandler<T> bodyHandler) {
+		return sendJson(message.toString(), bodyHandler);
+	}
+
+	/**
+	 * Sends the specified JSON string as an HTTP POST request. The returned
+	 * future is completed with the HTTP response when the response body has
+	 * been received. If the HTTP request fails or the server returns an error
+	 * status, it is completed with an {@link IOException IOException}.
+	 *
+	 * @param json the JSON string with a message or batch
+	 * @param bodyHandler the handler for the response body
+	 * @param <T> the type of the response body
+	 * @return the future HTTP response
 	 */
-	private String sendMessage(JsonRpcMessage message) throws IOException {
-		if (closed)
-			throw new IOException("JsonRpcHttp closed");
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+	private <T> CompletableFuture<HttpResponse<T>> sendJson(String json,
+			HttpResponse.BodyHandler<T> bodyHandler) {
+		Logger logger = AppComponents.getLogger(LOGTAG);
+		if (logger.isTraceEnabled())
+			logger.trace("Sent message: " + json);
+		HttpRequest request = HttpRequest.newBuilder(uri)
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(json,
+						StandardCharsets.UTF_8))
+				.build();
+		Call<T> call = new Call<>(request, bodyHandler);
+		call.result.whenComplete((response, exception) -> {
+			if (call.result.isCancelled())
+				cancelCall(call);
+		});
 		synchronized (lock) {
 			if (closed) {
-				conn.disconnect();
-				throw new IOException("JsonRpcHttp closed");
+				call.result.completeExceptionally(new IOException(
+						"JsonRpcHttp closed"));
+				return call.result;
 			}
-			this.connections.add(conn);
+			if (activeCalls.size() >= maxInFlight) {
+				queuedCalls.add(call);
+				return call.result;
+			}
+			activeCalls.add(call);
 		}
+		startCall(call);
+		return call.result;
+	}
+
+	/**
+	 * Starts the HTTP request for the specified call. The call should already
+	 * have been added to the active calls.
+	 *
+	 * @param call the call
+	 * @param <T> the type of the response body
+	 */
+	private <T> void startCall(Call<T> call) {
+		CompletableFuture<HttpResponse<T>> httpFuture;
 		try {
-			StringBuilder buf = new StringBuilder();
-			conn.setRequestProperty("Content-Type", "application/json");
-			conn.setRequestMethod("POST");
-			conn.setDoOutput(true);
-			OutputStream out = conn.getOutputStream();
-			Writer writer = null;
-			try {
-				writer = new OutputStreamWriter(out, "UTF-8");
-				message.write(writer);
-				Logger logger = AppComponents.getLogger(LOGTAG);
-				if (logger.isTraceEnabled()) {
-					StringWriter strWriter = new StringWriter();
-					message.write(strWriter);
-					logger.trace("Sent message: " + strWriter.toString());
-				}
-			} finally {
-				if (writer != null)
-					writer.close();
-				else
-					out.close();
-			}
-			InputStream in = conn.getInputStream();
-			Reader reader = new InputStreamReader(in, "UTF-8");
-			char[] cs = new char[2048];
-			int len;
-			while ((len = reader.read(cs)) > 0) {
-				buf.append(cs, 0, len);
-			}
-			return buf.toString();
-		} finally {
-			synchronized (lock) {
-				if (!closed) {
-					conn.disconnect();
-					this.connections.remove(conn);
+			httpFuture = client.sendAsync(call.request, call.bodyHandler);
+		} catch (RuntimeException ex) {
+			finishCall(call);
+			call.result.completeExceptionally(ex);
+			return;
+		}
+		synchronized (lock) {
+			if (closed || call.result.isCancelled())
+				httpFuture.cancel(true);
+			call.httpFuture = httpFuture;
+		}
+		httpFuture.whenComplete((response, exception) -> {
+			finishCall(call);
+			if (exception != null) {
+				if (exception instanceof CompletionException &&
+						exception.getCause() != null) {
+					exception = exception.getCause();
 				}
+				call.result.completeExceptionally(exception);
+			} else if (response.statusCode() >= 400) {
+				call.result.completeExceptionally(new IOException(
+						"Server returned HTTP response code: " +
+						response.statusCode() + " for URL: " + url));
+			} else {
+				call.result.complete(response);
 			}
+		});
+	}
+
+	/**
+	 * Removes the specified call from the active calls and starts the next
+	 * queued call if there is one.
+	 *
+	 * @param call the call that has completed
+	 */
+	private void finishCall(Call<?> call) {
+		Call<?> next;
+		synchronized (lock) {
+			if (!activeCalls.remove(call))
+				return;
+			next = queuedCalls.poll();
+			if (next == null)
+				return;
+			activeCalls.add(next);
+		}
+		startCall(next);
+	}
+
+	/**
+	 * Cancels the specified call after its result was cancelled. If the call
+	 * is still queued, it is removed from the queue. Otherwise its HTTP
+	 * request is cancelled, which ends the call through {@link
+	 * #finishCall(Call) finishCall()}. If the HTTP request has not been
+	 * started yet, {@link #startCall(Call) startCall()} cancels it.
+	 *
+	 * @param call the call
+	 */
+	private void cancelCall(Call<?> call) {
+		CompletableFuture<?> httpFuture;
+		synchronized (lock) {
+			if (queuedCalls.remove(call))
+				return;
+			httpFuture = call.httpFuture;
 		}
+		if (httpFuture != null)
+			httpFuture.cancel(true);
+	}
+
+	/**
+	 * Makes sure that the specified source future is cancelled when the
+	 * specified future is cancelled. This is used for futures that are
+	 * derived from the result of a call, so that cancelling them also
+	 * cancels the call.
+	 *
+	 * @param future the future
+	 * @param source the source future
+	 * @param <T> the type of the future result
+	 * @return the future
+	 */
+	private static <T> CompletableFuture<T> cancelWith(
+			CompletableFuture<T> future, CompletableFuture<?> source) {
+		future.whenComplete((result, exception) -> {
+			if (future.isCancelled())
+				source.cancel(true);
+		});
+		return future;
 	}
 	
 	/**
@@ -263,7 +667,7 @@ public class JsonRpcHttp {
 	 * @throws IOException if an error occurs while sending the notification
 	 */
 	public void notify(String methodName) throws IOException {
-		sendMessage(JsonRpcNotification.create(methodName));
+		sendNotification(JsonRpcNotification.create(methodName));
 	}
 	
 	/**
@@ -275,7 +679,7 @@ public class JsonRpcHttp {
 	 */
 	public void notify(String methodName, Map<String,?> params)
 	throws IOException {
-		sendMessage(JsonRpcNotification.create(methodName, params));
+		sendNotification(JsonRpcNotification.create(methodName, params));
 	}
 	
 	/**
@@ -288,6 +692,301 @@ public class JsonRpcHttp {
 	public void notify(String methodName, Object... params)
 	throws IOException {
 		List<Object> list = Arrays.asList(params);
-		sendMessage(JsonRpcNotification.create(methodName, list));
+		sendNotification(JsonRpcNotification.create(methodName, list));
+	}
+
+	/**
+	 * Sends the specified notification and waits until the server has
+	 * received it. The response body is ignored.
+	 *
+	 * @param notification the notification
+	 * @throws IOException if an error occurs while sending the notification
+	 */
+	private void sendNotification(JsonRpcNotification notification)
+			throws IOException {
+		CompletableFuture<Object> future;
+		if (isCoalescing()) {
+			future = sendCoalesced(notification);
+		} else {
+			CompletableFuture<HttpResponse<Void>> httpResult = sendMessage(
+					notification, HttpResponse.BodyHandlers.discarding());
+			future = cancelWith(httpResult.thenApply(response -> null),
+					httpResult);
+		}
+		try {
+			waitForResult(future);
+		} catch (JsonRpcException | ParseException ex) {
+			// the response is not parsed, so this does not happen
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Sends the specified batch and completes the futures of its calls when
+	 * the response has been received.
+	 *
+	 * @param batch the batch
+	 */
+	private void sendBatch(Batch batch) {
+		String json;
+		if (batch.messages.size() == 1) {
+			json = batch.messages.get(0).toString();
+		} else {
+			StringBuilder builder = new StringBuilder("[");
+			for (int i = 0; i < batch.messages.size(); i++) {
+				if (i > 0)
+					builder.append(',');
+				builder.append(batch.messages.get(i).toString());
+			}
+			builder.append(']');
+			json = builder.toString();
+		}
+		if (batch.results.isEmpty()) {
+			sendJson(json, HttpResponse.BodyHandlers.discarding())
+					.whenComplete((response, exception) -> {
+						if (exception != null)
+							batch.sent.completeExceptionally(exception);
+						else
+							batch.sent.complete(null);
+					});
+			return;
+		}
+		sendJson(json, HttpResponse.BodyHandlers.ofByteArray())
+				.whenComplete((response, exception) -> {
+					if (exception != null) {
+						for (CompletableFuture<Object> result :
+								batch.results.values()) {
+							result.completeExceptionally(exception);
+						}
+						batch.sent.completeExceptionally(exception);
+					} else {
+						completeBatch(batch, response.body());
+						batch.sent.complete(null);
+					}
+				});
+	}
+
+	/**
+	 * Parses the body of the HTTP response to a batch and completes the
+	 * futures of the requests in the batch. The responses are matched to the
+	 * requests by ID. If the server returned an error response without an ID
+	 * (for example because it does not support batches), then requests
+	 * without a response are completed with that error.
+	 *
+	 * @param batch the batch
+	 * @param body the response body
+	 */
+	private void completeBatch(Batch batch, byte[] body) {
+		logReceivedMessage(body);
+		List<JsonRpcResponse> responses;
+		try (JsonParser parser = ObjectMapperRegistry.getDefault().getMapper()
+				.createParser(body)) {
+			responses = JsonRpcResponse.readBatch(parser);
+		} catch (IOException | ParseException ex) {
+			ParseException parseEx = new ParseException(
+					"Can't parse JSON-RPC batch response: " + ex.getMessage(),
+					ex);
+			for (CompletableFuture<Object> result : batch.results.values()) {
+				result.completeExceptionally(parseEx);
+			}
+			return;
+		}
+		Map<Object,CompletableFuture<Object>> pending = new HashMap<>(
+				batch.results);
+		JsonRpcResponse.Error batchError = null;
+		for (JsonRpcResponse response : responses) {
+			Object id = response.getID();
+			if (id instanceof Number number)
+				id = number.intValue();
+			CompletableFuture<Object> result = pending.remove(id);
+			JsonRpcResponse.Error error = response.getError();
+			if (result == null) {
+				if (id == null && error != null)
+					batchError = error;
+			} else if (error != null) {
+				result.completeExceptionally(new JsonRpcException(
+						error.getMessage(), error.getCode(), error.getData()));
+			} else {
+				result.complete(response.getResult());
+			}
+		}
+		for (Map.Entry<Object,CompletableFuture<Object>> entry :
+				pending.entrySet()) {
+			if (batchError != null) {
+				entry.getValue().completeExceptionally(new JsonRpcException(
+						batchError.getMessage(), batchError.getCode(),
+						batchError.getData()));
+			} else {
+				entry.getValue().completeExceptionally(new ParseException(
+						"No response for request with ID " + entry.getKey()));
+			}
+		}
+	}
+
+	/**
+	 * A JSON-RPC 2.0 batch. It collects requests and notifications that are
+	 * sent together in one HTTP request when you call {@link #send() send()}.
+	 * The server response is matched to the requests by ID, so each request
+	 * gets its own result. You can create a batch with {@link
+	 * JsonRpcHttp#createBatch() createBatch()}.
+	 */
+	public class Batch {
+		private final List<JsonRpcMessage> messages = new ArrayList<>();
+		private final Map<Object,CompletableFuture<Object>> results =
+				new LinkedHashMap<>();
+		private final CompletableFuture<Void> sent =
+				new CompletableFuture<>();
+		private boolean started = false;
+
+		/**
+		 * Constructs a new batch through {@link JsonRpcHttp#createBatch()
+		 * createBatch()}.
+		 */
+		private Batch() {
+		}
+
+		/**
+		 * Adds a request without parameters. The returned future is
+		 * completed with the result, or with an {@link IOException
+		 * IOException}, {@link JsonRpcException JsonRpcException} or {@link
+		 * ParseException ParseException}, after the batch has been sent.
+		 *
+		 * @param methodName the method name
+		 * @return the future result
+		 */
+		public CompletableFuture<Object> request(String methodName) {
+			return add(JsonRpcRequest.create(methodName, createID()));
+		}
+
+		/**
+		 * Adds a request with parameters as a JSON object. The returned future
+		 * is completed with the result, or with an {@link IOException
+		 * IOException}, {@link JsonRpcException JsonRpcException} or {@link
+		 * ParseException ParseException}, after the batch has been sent.
+		 *
+		 * @param methodName the method name
+		 * @param params the parameters
+		 * @return the future result
+		 */
+		public CompletableFuture<Object> request(String methodName,
+				Map<String,?> params) {
+			return add(JsonRpcRequest.create(methodName, params, createID()));
+		}
+
+		/**
+		 * Adds a request with parameters as a JSON array. The returned future
+		 * is completed with the result, or with an {@link IOException
+		 * IOException}, {@link JsonRpcException JsonRpcException} or {@link
+		 * ParseException ParseException}, after the batch has been sent.
+		 *
+		 * @param methodName the method name
+		 * @param params the parameters
+		 * @return the future result
+		 */
+		public CompletableFuture<Object> request(String methodName,
+				Object... params) {
+			List<Object> list = Arrays.asList(params);
+			return add(JsonRpcRequest.create(methodName, list, createID()));
+		}
+
+		/**
+		 * Adds a notification without parameters.
+		 *
+		 * @param methodName the method name
+		 */
+		public void notify(String methodName) {
+			add(JsonRpcNotification.create(methodName));
+		}
+
+		/**
+		 * Adds a notification with parameters as a JSON object.
+		 *
+		 * @param methodName the method name
+		 * @param params the parameters
+		 */
+		public void notify(String methodName, Map<String,?> params) {
+			add(JsonRpcNotification.create(methodName, params));
+		}
+
+		/**
+		 * Adds a notification with parameters as a JSON array.
+		 *
+		 * @param methodName the method name
+		 * @param params the parameters
+		 */
+		public void notify(String methodName, Object... params) {
+			List<Object> list = Arrays.asList(params);
+			add(JsonRpcNotification.create(methodName, list));
+		}
+
+		/**
+		 * Returns the number of requests and notifications in this batch.
+		 *
+		 * @return the number of requests and notifications
+		 */
+		public synchronized int size() {
+			return messages.size();
+		}
+
+		/**
+		 * Sends this batch. The returned future is completed when the HTTP
+		 * response has been received and the futures of the requests have
+		 * been completed. If the HTTP request fails, it is completed with an
+		 * {@link IOException IOException}. A batch can only be sent once.
+		 *
+		 * @return the future that is completed when the batch has been sent
+		 */
+		public CompletableFuture<Void> send() {
+			synchronized (this) {
+				if (started)
+					throw new IllegalStateException("Batch already sent");
+				started = true;
+			}
+			if (messages.isEmpty())
+				sent.complete(null);
+			else
+				sendBatch(this);
+			return sent;
+		}
+
+		/**
+		 * Adds the specified request or notification. For a request it
+		 * returns the future result. For a notification it returns a future
+		 * that is completed with null when the batch has been sent.
+		 *
+		 * @param message the request or notification
+		 * @return the future result
+		 */
+		private synchronized CompletableFuture<Object> add(
+				JsonRpcMessage message) {
+			if (started)
+				throw new IllegalStateException("Batch already sent");
+			messages.add(message);
+			if (message instanceof JsonRpcRequest request) {
+				CompletableFuture<Object> result = new CompletableFuture<>();
+				results.put(request.getID(), result);
+				return result;
+			}
+			return sent.thenApply(result -> null);
+		}
+	}
+
+	/**
+	 * A JSON-RPC message that is queued or sent as an HTTP request.
+	 *
+	 * @param <T> the type of the response body
+	 */
+	private static class Call<T> {
+		private HttpRequest request;
+		private HttpResponse.BodyHandler<T> bodyHandler;
+		private CompletableFuture<HttpResponse<T>> result =
+				new CompletableFuture<>();
+		private CompletableFuture<HttpResponse<T>> httpFuture = null;
+
+		private Call(HttpRequest request,
+				HttpResponse.BodyHandler<T> bodyHandler) {
+			this.request = request;
+			this.bodyHandler = bodyHandler;
+		}
 	}
 }
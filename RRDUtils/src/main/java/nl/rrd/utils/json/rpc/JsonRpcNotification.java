@@ -29,9 +29,10 @@ import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import nl.rrd.utils.exception.ParseException;
+import nl.rrd.utils.json.ObjectMapperRegistry;
 
 /**
  * This class models a JSON-RPC Notification.
@@ -191,9 +192,9 @@ public class JsonRpcNotification extends JsonRpcMessage {
 			map.put("params", mapParams);
 		else if (listParams != null)
 			map.put("params", listParams);
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectWriter writer = ObjectMapperRegistry.getDefault().getWriter();
 		try {
-			return mapper.writeValueAsString(map);
+			return writer.writeValueAsString(map);
 		} catch (JsonProcessingException ex) {
 			throw new RuntimeException("Can't write JSON string: " +
 					ex.getMessage(), ex);
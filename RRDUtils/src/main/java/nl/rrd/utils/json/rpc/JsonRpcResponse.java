@@ -24,14 +24,20 @@ package nl.rrd.utils.json.rpc;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import nl.rrd.utils.exception.ParseException;
+import nl.rrd.utils.json.ObjectMapperRegistry;
 
 /**
  * This class models a JSON-RPC Response.
@@ -95,6 +101,153 @@ public class JsonRpcResponse extends JsonRpcMessage {
 		}
 		return response;
 	}
+
+	/**
+	 * Reads a JSON-RPC response from the specified JSON parser. The next token
+	 * should be the start of the JSON object. This method reads the members
+	 * directly from the parser, so the response does not have to be read into
+	 * a string or map first. It validates the response in the same way as
+	 * {@link #read(Map) read(Map)}. After this method returns, the parser is
+	 * positioned at the end of the JSON object.
+	 *
+	 * @param parser the JSON parser
+	 * @return the response
+	 * @throws IOException if a reading error occurs or the JSON content is
+	 * invalid
+	 * @throws ParseException if the JSON object is not a valid JSON-RPC
+	 * response
+	 */
+	public static JsonRpcResponse read(JsonParser parser) throws IOException,
+			ParseException {
+		JsonToken token = parser.nextToken();
+		if (token != JsonToken.START_OBJECT) {
+			throw new ParseException("Expected JSON object, found: " +
+					(token == null ? "end of input" : token));
+		}
+		return readObject(parser);
+	}
+
+	/**
+	 * Reads the response to a JSON-RPC batch from the specified JSON parser.
+	 * The next token should be the start of a JSON array with response
+	 * objects. If the server could not handle the batch as a whole, it may
+	 * return a single response object instead. In that case the returned list
+	 * contains that response. Each response is validated in the same way as
+	 * {@link #read(JsonParser) read(JsonParser)}.
+	 *
+	 * @param parser the JSON parser
+	 * @return the responses
+	 * @throws IOException if a reading error occurs or the JSON content is
+	 * invalid
+	 * @throws ParseException if the JSON content is not a valid JSON-RPC batch
+	 * response
+	 */
+	public static List<JsonRpcResponse> readBatch(JsonParser parser)
+			throws IOException, ParseException {
+		List<JsonRpcResponse> result = new ArrayList<>();
+		JsonToken token = parser.nextToken();
+		if (token == JsonToken.START_OBJECT) {
+			result.add(readObject(parser));
+			return result;
+		}
+		if (token != JsonToken.START_ARRAY) {
+			throw new ParseException("Expected JSON array, found: " +
+					(token == null ? "end of input" : token));
+		}
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+			if (token != JsonToken.START_OBJECT) {
+				throw new ParseException("Expected JSON object, found: " +
+						(token == null ? "end of input" : token));
+			}
+			result.add(readObject(parser));
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the members of a JSON-RPC response. The parser should be
+	 * positioned at the start of the JSON object.
+	 *
+	 * @param parser the JSON parser
+	 * @return the response
+	 * @throws IOException if a reading error occurs or the JSON content is
+	 * invalid
+	 * @throws ParseException if the JSON object is not a valid JSON-RPC
+	 * response
+	 */
+	private static JsonRpcResponse readObject(JsonParser parser)
+			throws IOException, ParseException {
+		ObjectReader reader = ObjectMapperRegistry.getDefault().getReader(
+				Object.class);
+		JsonRpcResponse response = new JsonRpcResponse();
+		boolean hasJsonrpc = false;
+		Object jsonrpc = null;
+		boolean hasMethod = false;
+		boolean hasResult = false;
+		Object error = null;
+		boolean hasError = false;
+		boolean hasId = false;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.currentName();
+			parser.nextToken();
+			switch (name) {
+				case "jsonrpc" -> {
+					hasJsonrpc = true;
+					jsonrpc = reader.readValue(parser);
+				}
+				case "method" -> {
+					hasMethod = true;
+					parser.skipChildren();
+				}
+				case "result" -> {
+					hasResult = true;
+					response.result = reader.readValue(parser);
+				}
+				case "error" -> {
+					hasError = true;
+					error = reader.readValue(parser);
+				}
+				case "id" -> {
+					hasId = true;
+					response.id = reader.readValue(parser);
+				}
+				default -> parser.skipChildren();
+			}
+		}
+		if (!hasJsonrpc)
+			throw new ParseException("Member \"jsonrpc\" not found");
+		if (hasMethod) {
+			throw new ParseException(
+					"Expected JSON-RPC response, found request");
+		}
+		if (!"2.0".equals(jsonrpc)) {
+			throw new ParseException(
+					"Value of member \"jsonrpc\" is not \"2.0\": " + jsonrpc);
+		}
+		if (!hasResult && !hasError) {
+			throw new ParseException(
+					"Member \"result\" or \"error\" not found");
+		}
+		if (hasResult && hasError) {
+			throw new ParseException(
+					"Found both member \"result\" and \"error\"");
+		}
+		if (hasError) {
+			if (!(error instanceof Map)) {
+				throw new ParseException(
+						"Invalid value for member \"error\": " + error);
+			}
+			response.error = Error.read((Map<?,?>)error);
+		}
+		if (!hasId)
+			throw new ParseException("Member \"id\" not found");
+		if (response.id != null && !(response.id instanceof Number) &&
+				!(response.id instanceof String)) {
+			throw new ParseException("Invalid value for member \"id\": " +
+				response.id);
+		}
+		return response;
+	}
 	
 	/**
 	 * Creates a JSON-RPC response with a result.
@@ -194,9 +347,9 @@ public class JsonRpcResponse extends JsonRpcMessage {
 		else if (error != null)
 			map.put("error", error.write());
 		map.put("id", id);
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectWriter writer = ObjectMapperRegistry.getDefault().getWriter();
 		try {
-			return mapper.writeValueAsString(map);
+			return writer.writeValueAsString(map);
 		} catch (JsonProcessingException ex) {
 			throw new RuntimeException("Can't write JSON string: " +
 					ex.getMessage(), ex);
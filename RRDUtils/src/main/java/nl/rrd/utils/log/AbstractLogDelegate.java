@@ -36,7 +36,9 @@ import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -68,6 +70,18 @@ import org.xml.sax.InputSource;
  * <li>Log files. All log messages can be written to log files using a {@link
  * FileLogger FileLogger}. This feature can be enabled with {@link
  * #setFileLogger(FileLogger) setFileLogger()}.</li>
+ * <li>Ring buffer. By default log messages are tagged and written to the
+ * console on the calling thread inside a lock. With {@link
+ * #enableRingBuffer(int, OverflowPolicy) enableRingBuffer()} the calling
+ * thread only publishes the message to a preallocated ring buffer without
+ * taking a lock, and one consumer thread tags the messages and writes them
+ * to the console and the file logger. The {@link OverflowPolicy
+ * OverflowPolicy} determines what happens when the buffer is full.</li>
+ * <li>Structured output. With {@link #setOutputFormat(OutputFormat)
+ * setOutputFormat(OutputFormat.JSON)} every log message is written as one
+ * JSON object on one line, with the log level, message tag, date and time,
+ * thread name, extra tags from an {@link ExtraTagLogger ExtraTagLogger} and
+ * the message. This is intended for log collectors.</li>
  * </ul>
  * 
  * <p>The first time an instance of this class is constructed, it will store
@@ -111,14 +125,64 @@ public abstract class AbstractLogDelegate implements LogDelegate {
 	 * codes is possible.
 	 */
 	protected static int ERROR_BASE = 1 << 16;
+
+	public static final int DEFAULT_RING_BUFFER_SIZE = 8192;
+	public static final int DEFAULT_SAMPLE_RATE = 10;
+
+	/**
+	 * Defines what happens if a log message is written while the ring buffer
+	 * is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The calling thread waits until there is space in the buffer.
+		 */
+		BLOCK,
+
+		/**
+		 * The message is dropped.
+		 */
+		DROP,
+
+		/**
+		 * When the buffer is almost full, only one out of every N messages
+		 * below level {@link Logger#WARN WARN} is accepted. Messages at
+		 * level {@link Logger#WARN WARN} and higher are accepted until the
+		 * buffer is full. When the buffer is full, messages are dropped.
+		 */
+		SAMPLE
+	}
+
+	/**
+	 * The format of the log output.
+	 */
+	public enum OutputFormat {
+		/**
+		 * Every line of a message is tagged with the log level, message tag
+		 * and date and time. See {@link LogLineTagger LogLineTagger}.
+		 */
+		TEXT,
+
+		/**
+		 * Every message is written as one JSON object on one line. See
+		 * {@link #setOutputFormat(OutputFormat) setOutputFormat()}.
+		 */
+		JSON
+	}
 	
-	private int defaultLevel = Logger.INFO;
-	private Map<String, Integer> levelMap = new HashMap<>();
+	private volatile LogLevelConfig levelConfig = new LogLevelConfig(
+			Logger.INFO, new HashMap<>());
 	private static PrintStream oldStdOut = null;
 	private static PrintStream oldStdErr = null;
 	private FileLogger fileLogger = null;
 	private SerialJobRunner fileLogRunner = new SerialJobRunner();
 	private final Object lock = new Object();
+	// guards replacing the ring buffer; this can't be "lock", because the
+	// consumer thread needs that lock to drain the old buffer
+	private final Object ringBufferLock = new Object();
+	private volatile LogRingBuffer ringBuffer = null;
+	private volatile OutputFormat outputFormat = OutputFormat.TEXT;
+	private LogJsonWriter jsonWriter = null;
 	
 	/**
 	 * Constructs a new abstract log delegate. The first time an abstract log
@@ -158,8 +222,9 @@ public abstract class AbstractLogDelegate implements LogDelegate {
 		SimpleSAXParser<LogLevelMap> parser = new SimpleSAXParser<>(
 				new XMLHandler());
 		LogLevelMap map = parser.parse(new InputSource(in));
-		defaultLevel = map.defaultLevel;
-		levelMap = map.levelMap;
+		synchronized (lock) {
+			levelConfig = new LogLevelConfig(map.defaultLevel, map.levelMap);
+		}
 	}
 	
 	/**
@@ -171,18 +236,28 @@ public abstract class AbstractLogDelegate implements LogDelegate {
 	 * @param level the log level
 	 */
 	public void setLogLevel(int level) {
-		defaultLevel = level;
+		synchronized (lock) {
+			levelConfig = levelConfig.withDefaultLevel(level);
+		}
 	}
 	
 	/**
 	 * Sets the log level for messages with the specified tag. The logger will
 	 * not write log messages at a lower level than the specified level.
+	 *
+	 * <p>The tag can also be a hierarchical prefix that ends with ".*", for
+	 * example "nl.rrd.utils.http.*". This matches "nl.rrd.utils.http" and all
+	 * tags that start with "nl.rrd.utils.http.". The tag "*" matches all
+	 * tags. An exact tag has precedence over a prefix, and a longer prefix
+	 * has precedence over a shorter prefix.</p>
 	 * 
-	 * @param tag the message tag
+	 * @param tag the message tag or tag prefix
 	 * @param level the log level
 	 */
 	public void setLogLevel(String tag, int level) {
-		levelMap.put(tag, level);
+		synchronized (lock) {
+			levelConfig = levelConfig.withLevel(tag, level);
+		}
 	}
 
 	/**
@@ -211,6 +286,48 @@ public abstract class AbstractLogDelegate implements LogDelegate {
 			System.setErr(oldStdErr);
 	}
 	
+	/**
+	 * Sets the format of the log output. The default is {@link
+	 * OutputFormat#TEXT OutputFormat.TEXT}. With {@link OutputFormat#JSON
+	 * OutputFormat.JSON} every message is written as one JSON object on one
+	 * line, both to the console and to the file logger. The object has the
+	 * following fields:
+	 *
+	 * <p><ul>
+	 * <li>level: the log level, for example "INFO"</li>
+	 * <li>tag: the message tag</li>
+	 * <li>time: the date and time</li>
+	 * <li>thread: the name of the thread that logged the message</li>
+	 * <li>tags: an object with the extra tags from an {@link ExtraTagLogger
+	 * ExtraTagLogger} (see {@link ExtraTagLogger#getExtraTags()
+	 * getExtraTags()})</li>
+	 * <li>message: the formatted message</li>
+	 * <li>exception: the stack trace (only if there is an exception)</li>
+	 * </ul></p>
+	 *
+	 * <p>The JSON is written with one reused generator, so messages are
+	 * serialized inside the lock of this delegate.</p>
+	 *
+	 * @param format the output format
+	 */
+	public void setOutputFormat(OutputFormat format) {
+		synchronized (lock) {
+			if (format == OutputFormat.JSON && jsonWriter == null)
+				jsonWriter = new LogJsonWriter(this);
+			outputFormat = format;
+		}
+	}
+
+	/**
+	 * Returns the format of the log output. The default is {@link
+	 * OutputFormat#TEXT OutputFormat.TEXT}.
+	 *
+	 * @return the output format
+	 */
+	public OutputFormat getOutputFormat() {
+		return outputFormat;
+	}
+
 	/**
 	 * Sets a file logger to which log messages should be written. You may set
 	 * this to null to disable logging to files (that is the default).
@@ -231,6 +348,90 @@ public abstract class AbstractLogDelegate implements LogDelegate {
 		return fileLogger;
 	}
 	
+	/**
+	 * Enables the ring buffer with the specified capacity and overflow
+	 * policy. If the policy is {@link OverflowPolicy#SAMPLE SAMPLE}, it uses
+	 * sample rate {@link #DEFAULT_SAMPLE_RATE DEFAULT_SAMPLE_RATE}. See the
+	 * documentation at the top of this class. If the ring buffer was already
+	 * enabled, it will be replaced.
+	 *
+	 * @param capacity the number of messages in the buffer (rounded up to a
+	 * power of two)
+	 * @param policy the overflow policy
+	 */
+	public void enableRingBuffer(int capacity, OverflowPolicy policy) {
+		enableRingBuffer(capacity, policy, DEFAULT_SAMPLE_RATE);
+	}
+
+	/**
+	 * Enables the ring buffer with the specified capacity and overflow
+	 * policy. See the documentation at the top of this class. If the ring
+	 * buffer was already enabled, it will be replaced. All messages in the
+	 * old buffer are written before the new buffer accepts messages, so the
+	 * messages stay in order.
+	 *
+	 * @param capacity the number of messages in the buffer (rounded up to a
+	 * power of two)
+	 * @param policy the overflow policy
+	 * @param sampleRate if the policy is {@link OverflowPolicy#SAMPLE
+	 * SAMPLE}, one out of this number of messages is accepted when the buffer
+	 * is almost full
+	 */
+	public void enableRingBuffer(int capacity, OverflowPolicy policy,
+			int sampleRate) {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException(
+					"Invalid ring buffer capacity: " + capacity);
+		}
+		if (sampleRate < 1) {
+			throw new IllegalArgumentException(
+					"Invalid sample rate: " + sampleRate);
+		}
+		synchronized (ringBufferLock) {
+			LogRingBuffer oldBuffer = ringBuffer;
+			if (oldBuffer != null)
+				oldBuffer.close();
+			ringBuffer = new LogRingBuffer(capacity, policy, sampleRate,
+					this::writeMessage);
+		}
+	}
+
+	/**
+	 * Disables the ring buffer. This method waits until all messages in the
+	 * buffer have been written. If the ring buffer is not enabled, this
+	 * method has no effect.
+	 */
+	public void disableRingBuffer() {
+		synchronized (ringBufferLock) {
+			LogRingBuffer oldBuffer = ringBuffer;
+			if (oldBuffer != null)
+				oldBuffer.close();
+			ringBuffer = null;
+		}
+	}
+
+	/**
+	 * Returns the number of messages that were dropped by the current ring
+	 * buffer because of the overflow policy. If the ring buffer is not
+	 * enabled, this method returns 0.
+	 *
+	 * @return the number of dropped messages
+	 */
+	public long getDroppedCount() {
+		LogRingBuffer buffer = ringBuffer;
+		return buffer == null ? 0 : buffer.getDroppedCount();
+	}
+
+	/**
+	 * Returns the default system value of {@link System#err System.err}. This
+	 * is used by the ring buffer to report unexpected errors.
+	 *
+	 * @return the default standard error
+	 */
+	static PrintStream getSystemStdErr() {
+		return oldStdErr;
+	}
+
 	/**
 	 * Returns the default system value of {@link System#out System.out}.
 	 * Subclasses must use this value if they want to print to standard output,
@@ -265,13 +466,7 @@ public abstract class AbstractLogDelegate implements LogDelegate {
 	 * @return 0 if no error occurred, an error code otherwise
 	 */
 	private int println(int priority, String tag, String msg, Throwable tr) {
-		if (!isLoggable(tag, priority))
-			return 0;
-		String newline = System.getProperty("line.separator");
-		String errMsg = msg;
-		if (tr != null)
-			errMsg += newline + getStackTraceString(tr);
-		return println(priority, tag, errMsg);
+		return printFormatted(priority, tag, String.valueOf(msg), null, tr);
 	}
 	
 	/**
@@ -283,28 +478,166 @@ public abstract class AbstractLogDelegate implements LogDelegate {
 	 * @return 0 if no error occurred, an error code otherwise
 	 */
 	private int println(int priority, String tag, Throwable tr) {
-		if (!isLoggable(tag, priority))
-			return 0;
-		String errMsg = tr != null ? getStackTraceString(tr) : "null";
-		return println(priority, tag, errMsg);
+		return printFormatted(priority, tag, null, null, tr);
 	}
 
 	@Override
 	public int println(int priority, String tag, String msg) {
+		return printFormatted(priority, tag, msg, null, null);
+	}
+
+	@Override
+	public int printFormatted(int priority, String tag, String format,
+			Object[] args, Throwable tr) {
+		return printFormatted(priority, tag, format, args, tr, null);
+	}
+
+	/**
+	 * Writes a log message with SLF4J-style {} placeholders and extra tags.
+	 * If the ring buffer is enabled, the message is formatted and the stack
+	 * trace is created on the consumer thread of the ring buffer. Otherwise
+	 * this is done on the calling thread. The extra tags are always taken on
+	 * the calling thread.
+	 *
+	 * @param priority the log level
+	 * @param tag the tag
+	 * @param format the message or format string
+	 * @param args the arguments or null
+	 * @param tr an exception or null
+	 * @param extraTags extra tags or null
+	 * @return 0 if no error occurred, an error code otherwise
+	 */
+	@Override
+	public int printFormatted(int priority, String tag, String format,
+			Object[] args, Throwable tr, ExtraTags extraTags) {
 		if (!isLoggable(tag, priority))
 			return 0;
 		ZonedDateTime time = DateTimeUtils.nowMs();
-		String taggedMsg = LogLineTagger.tagLines(priority, tag, time, msg);
+		String thread = Thread.currentThread().getName();
+		LogRingBuffer buffer = ringBuffer;
+		if (buffer != null) {
+			ExtraTags capturedTags = extraTags == null ? null :
+					new CapturedExtraTags(extraTags, format, outputFormat);
+			if (buffer.publish(priority, tag, time, thread, format, args, tr,
+					capturedTags)) {
+				return 0;
+			}
+			// the buffer is being closed, so wait until its messages have
+			// been written before this message is written
+			buffer.close();
+		}
+		OutputFormat outputFormat = this.outputFormat;
+		String line = null;
+		if (outputFormat == OutputFormat.TEXT) {
+			line = buildTextLine(priority, tag, time, format, args, tr,
+					extraTags);
+		}
 		synchronized (lock) {
-			int result = printTaggedMessage(priority, tag, taggedMsg);
+			if (line == null) {
+				line = jsonWriter.write(priority, tag, time, thread, format,
+						args, tr, extraTags);
+			}
+			int result = printTaggedMessage(priority, tag, line);
 			if (fileLogger != null) {
 				fileLogRunner.postJob(new FileLogJob(priority, tag,
-						time.toLocalDate(), taggedMsg), null);
+						time.toLocalDate(), line), null);
 			}
 			return result;
 		}
 	}
 
+	/**
+	 * Writes a message from the ring buffer. This is called on the consumer
+	 * thread of the ring buffer. It writes the message to the file logger
+	 * directly, because it's already running on a separate thread.
+	 *
+	 * @param priority the log level
+	 * @param tag the tag
+	 * @param time the time of the message
+	 * @param thread the name of the thread that logged the message
+	 * @param format the message or format string
+	 * @param args the arguments or null
+	 * @param tr an exception or null
+	 * @param extraTags extra tags or null
+	 */
+	private void writeMessage(int priority, String tag, ZonedDateTime time,
+			String thread, String format, Object[] args, Throwable tr,
+			ExtraTags extraTags) {
+		OutputFormat outputFormat = this.outputFormat;
+		String line = null;
+		if (outputFormat == OutputFormat.TEXT) {
+			line = buildTextLine(priority, tag, time, format, args, tr,
+					extraTags);
+		}
+		synchronized (lock) {
+			if (line == null) {
+				line = jsonWriter.write(priority, tag, time, thread, format,
+						args, tr, extraTags);
+			}
+			printTaggedMessage(priority, tag, line);
+		}
+		FileLogger fileLogger = this.fileLogger;
+		if (fileLogger != null) {
+			fileLogger.printTaggedMessage(priority, tag, time.toLocalDate(),
+					line);
+		}
+	}
+
+	private String buildTextLine(int priority, String tag, ZonedDateTime time,
+			String format, Object[] args, Throwable tr, ExtraTags extraTags) {
+		if (format != null && extraTags != null)
+			format = extraTags.tagMessage(format);
+		String msg;
+		if (format != null && args == null && tr == null)
+			msg = format;
+		else
+			msg = LogMessageFormatter.buildMessage(this, format, args, tr);
+		return LogLineTagger.tagLines(priority, tag, time, msg);
+	}
+
+	/**
+	 * Extra tags that are taken on the thread that logs a message, so they
+	 * can be passed to the ring buffer. For text output it only tags the
+	 * message. For JSON output it copies the tags, or it tags the message if
+	 * there are no tags. If the output format changes before the message is
+	 * written, the original extra tags are called on the consumer thread.
+	 */
+	private static class CapturedExtraTags implements ExtraTags {
+		private ExtraTags extraTags;
+		private String format;
+		private boolean json;
+		private String taggedFormat = null;
+		private Map<String,?> tags = null;
+
+		public CapturedExtraTags(ExtraTags extraTags, String format,
+				OutputFormat outputFormat) {
+			this.extraTags = extraTags;
+			this.format = format;
+			json = outputFormat == OutputFormat.JSON;
+			if (json) {
+				Map<String,?> tags = extraTags.getTags();
+				if (tags != null) {
+					this.tags = Collections.unmodifiableMap(
+							new LinkedHashMap<>(tags));
+				}
+			}
+			if (format != null && tags == null)
+				taggedFormat = extraTags.tagMessage(format);
+		}
+
+		@Override
+		public String tagMessage(String msg) {
+			if (taggedFormat != null && msg.equals(format))
+				return taggedFormat;
+			return extraTags.tagMessage(msg);
+		}
+
+		@Override
+		public Map<String,?> getTags() {
+			return json ? tags : extraTags.getTags();
+		}
+	}
+
 	private class FileLogJob implements Job {
 		private int priority;
 		private String tag;
@@ -333,7 +666,9 @@ public abstract class AbstractLogDelegate implements LogDelegate {
 	 * Writes a log message. Every line in the message text has already been
 	 * tagged with the log level, message tag (identifier of the source of the
 	 * log message) and the current date and time. Every line ends with a new
-	 * line character, including the last line.
+	 * line character, including the last line. If the output format is
+	 * {@link OutputFormat#JSON OutputFormat.JSON}, the message is one JSON
+	 * object on one line.
 	 * 
 	 * <p>This method is only called if {@link #isLoggable(String, int)
 	 * isLoggable()} returns true. It's called inside a lock, so it's thread
@@ -360,13 +695,7 @@ public abstract class AbstractLogDelegate implements LogDelegate {
 
 	@Override
 	public boolean isLoggable(String tag, int level) {
-		if (level < Logger.VERBOSE || level > Logger.ASSERT)
-			return false;
-		Integer tagLevel = levelMap.get(tag);
-		if (tagLevel == null)
-			return level >= defaultLevel;
-		else
-			return level >= tagLevel;
+		return levelConfig.isLoggable(tag, level);
 	}
 
 	@Override
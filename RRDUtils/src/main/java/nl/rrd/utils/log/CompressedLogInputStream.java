@@ -0,0 +1,225 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the compressed log data written by {@link FileLogger FileLogger}.
+ * The data consists of concatenated gzip members. This stream decompresses
+ * one member at a time and only returns its data after the complete member
+ * including the gzip trailer has been read and verified. If the last member
+ * was only partly written, the stream ends after the previous member,
+ * instead of throwing an exception like {@link java.util.zip.GZIPInputStream
+ * GZIPInputStream}.
+ *
+ * <p>It only supports gzip headers without optional fields, as written by
+ * the file logger.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+class CompressedLogInputStream extends InputStream {
+	private static final int HEADER_SIZE = 10;
+	private static final int TRAILER_SIZE = 8;
+
+	private final InputStream in;
+	private final Inflater inflater = new Inflater(true);
+	private final CRC32 crc = new CRC32();
+
+	private final byte[] input = new byte[8192];
+	private int inputPos = 0;
+	private int inputLimit = 0;
+
+	private byte[] member = new byte[8192];
+	private int memberPos = 0;
+	private int memberLimit = 0;
+
+	private boolean end = false;
+
+	/**
+	 * Constructs a new stream. The input stream should be positioned at the
+	 * start of a gzip member.
+	 *
+	 * @param in the compressed input stream
+	 */
+	public CompressedLogInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (memberPos == memberLimit && !readMember())
+			return -1;
+		return member[memberPos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (memberPos == memberLimit && !readMember())
+			return -1;
+		int n = Math.min(len, memberLimit - memberPos);
+		System.arraycopy(member, memberPos, b, off, n);
+		memberPos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return memberLimit - memberPos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		end = true;
+		inflater.end();
+		in.close();
+	}
+
+	/**
+	 * Reads the next member that is not empty.
+	 *
+	 * @return true if a member was read, false if the end of the stream was
+	 * reached
+	 * @throws IOException if a reading error occurs or the data is corrupt
+	 */
+	private boolean readMember() throws IOException {
+		while (!end) {
+			memberPos = 0;
+			memberLimit = 0;
+			if (!readMemberData()) {
+				end = true;
+				memberLimit = 0;
+				return false;
+			}
+			if (memberLimit > 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads and decompresses the next member into the member buffer.
+	 *
+	 * @return true if a complete member was read, false if the end of the
+	 * input or an incomplete member was reached
+	 * @throws IOException if a reading error occurs or the data is corrupt
+	 */
+	private boolean readMemberData() throws IOException {
+		byte[] header = new byte[HEADER_SIZE];
+		if (!readInput(header))
+			return false;
+		if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b ||
+				header[2] != 8) {
+			throw new ZipException("Invalid gzip header");
+		}
+		if (header[3] != 0) {
+			throw new ZipException("Unsupported gzip header flags: " +
+					header[3]);
+		}
+		inflater.reset();
+		while (!inflater.finished()) {
+			if (inflater.needsInput()) {
+				if (!fillInput())
+					return false;
+				inflater.setInput(input, inputPos, inputLimit - inputPos);
+				inputPos = inputLimit;
+			}
+			if (memberLimit == member.length)
+				member = Arrays.copyOf(member, member.length * 2);
+			try {
+				memberLimit += inflater.inflate(member, memberLimit,
+						member.length - memberLimit);
+			} catch (DataFormatException ex) {
+				throw new ZipException("Invalid compressed data: " +
+						ex.getMessage());
+			}
+			if (inflater.needsDictionary())
+				throw new ZipException("Unsupported preset dictionary");
+		}
+		inputPos = inputLimit - inflater.getRemaining();
+		byte[] trailer = new byte[TRAILER_SIZE];
+		if (!readInput(trailer))
+			return false;
+		crc.reset();
+		crc.update(member, 0, memberLimit);
+		if (readIntLE(trailer, 0) != (int)crc.getValue())
+			throw new ZipException("Invalid gzip CRC");
+		if (readIntLE(trailer, 4) != memberLimit)
+			throw new ZipException("Invalid gzip size");
+		return true;
+	}
+
+	/**
+	 * Fills the specified array with bytes from the input.
+	 *
+	 * @param b the array
+	 * @return true if the array was filled, false if the end of the input
+	 * was reached
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean readInput(byte[] b) throws IOException {
+		int off = 0;
+		while (off < b.length) {
+			if (!fillInput())
+				return false;
+			int n = Math.min(b.length - off, inputLimit - inputPos);
+			System.arraycopy(input, inputPos, b, off, n);
+			inputPos += n;
+			off += n;
+		}
+		return true;
+	}
+
+	/**
+	 * Makes sure that the input buffer contains data.
+	 *
+	 * @return true if the input buffer contains data, false if the end of
+	 * the input was reached
+	 * @throws IOException if a reading error occurs
+	 */
+	private boolean fillInput() throws IOException {
+		if (inputPos < inputLimit)
+			return true;
+		int n;
+		do {
+			n = in.read(input);
+		} while (n == 0);
+		if (n < 0)
+			return false;
+		inputPos = 0;
+		inputLimit = n;
+		return true;
+	}
+
+	private static int readIntLE(byte[] b, int off) {
+		return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 |
+				(b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+	}
+}
@@ -24,19 +24,46 @@ package nl.rrd.utils.log;
 
 import org.slf4j.Logger;
 import org.slf4j.Marker;
+import org.slf4j.event.Level;
+
+import java.util.Map;
 
 /**
  * This is a wrapper around another logger. It can prepend extra tags to each
  * log message. Subclasses need only implement {@link #tagMessage(String)
- * tagMessage()}.
+ * tagMessage()}. The message is only tagged if the level is enabled in the
+ * wrapped logger. The format arguments are passed unchanged, so the wrapped
+ * logger can defer formatting.
+ *
+ * <p>If the wrapped logger is a {@link Slf4jLogger Slf4jLogger}, the extra
+ * tags are passed to the log delegate with the message, so a delegate that
+ * writes structured output can write them as separate fields. See {@link
+ * #getExtraTags() getExtraTags()}. If the log delegate writes messages on
+ * another thread (see {@link AbstractLogDelegate#enableRingBuffer(int,
+ * AbstractLogDelegate.OverflowPolicy) enableRingBuffer()}), it calls these
+ * methods on the thread that logs the message.</p>
  * 
  * @author Dennis Hofs (RRD)
  */
 public abstract class ExtraTagLogger implements Logger {
 	private Logger logger;
+	private Slf4jLogger slf4jLogger;
+	private ExtraTags extraTags = new ExtraTags() {
+		@Override
+		public String tagMessage(String msg) {
+			return ExtraTagLogger.this.tagMessage(msg);
+		}
+
+		@Override
+		public Map<String,?> getTags() {
+			return getExtraTags();
+		}
+	};
 	
 	public ExtraTagLogger(Logger logger) {
 		this.logger = logger;
+		if (logger instanceof Slf4jLogger)
+			slf4jLogger = (Slf4jLogger)logger;
 	}
 	
 	/**
@@ -49,104 +76,233 @@ public abstract class ExtraTagLogger implements Logger {
 	 */
 	protected abstract String tagMessage(String msg);
 
+	/**
+	 * Returns the extra tags as a map from name to value. This is used if
+	 * the wrapped logger is a {@link Slf4jLogger Slf4jLogger} and the log
+	 * delegate writes structured output (see {@link
+	 * AbstractLogDelegate.OutputFormat#JSON OutputFormat.JSON}). Then the
+	 * tags are written as separate fields and the message is not tagged with
+	 * {@link #tagMessage(String) tagMessage()}. The values are written as
+	 * strings. This method is called for every message, so it should return
+	 * a map that is created once. If the log delegate uses a ring buffer, the
+	 * map is copied when the message is logged.
+	 *
+	 * <p>The default implementation returns null. Then the message is tagged
+	 * with {@link #tagMessage(String) tagMessage()} in structured output as
+	 * well.</p>
+	 *
+	 * @return the extra tags or null
+	 */
+	protected Map<String,?> getExtraTags() {
+		return null;
+	}
+
 	@Override
 	public void debug(String msg) {
-		logger.debug(tagMessage(msg));
+		if (!logger.isDebugEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, msg, null, null, extraTags);
+		else
+			logger.debug(tagMessage(msg));
 	}
 
 	@Override
 	public void debug(String format, Object... argArray) {
-		logger.debug(tagMessage(format), argArray);
+		if (!logger.isDebugEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, format, argArray, null, extraTags);
+		else
+			logger.debug(tagMessage(format), argArray);
 	}
 
 	@Override
 	public void debug(String format, Object arg) {
-		logger.debug(tagMessage(format), arg);
+		if (!logger.isDebugEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.debug(tagMessage(format), arg);
 	}
 
 	@Override
 	public void debug(String format, Object arg1, Object arg2) {
-		logger.debug(tagMessage(format), arg1, arg2);
+		if (!logger.isDebugEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.debug(tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void debug(String msg, Throwable t) {
-		logger.debug(tagMessage(msg), t);
+		if (!logger.isDebugEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, msg, null, t, extraTags);
+		else
+			logger.debug(tagMessage(msg), t);
 	}
 
 	@Override
 	public void debug(Marker marker, String msg) {
-		logger.debug(marker, tagMessage(msg));
+		if (!logger.isDebugEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, msg, null, null, extraTags);
+		else
+			logger.debug(marker, tagMessage(msg));
 	}
 
 	@Override
 	public void debug(Marker marker, String format, Object... argArray) {
-		logger.debug(marker, tagMessage(format), argArray);
+		if (!logger.isDebugEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, format, argArray, null, extraTags);
+		else
+			logger.debug(marker, tagMessage(format), argArray);
 	}
 
 	@Override
 	public void debug(Marker marker, String format, Object arg) {
-		logger.debug(marker, tagMessage(format), arg);
+		if (!logger.isDebugEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.debug(marker, tagMessage(format), arg);
 	}
 
 	@Override
 	public void debug(Marker marker, String format, Object arg1, Object arg2) {
-		logger.debug(marker, tagMessage(format), arg1, arg2);
+		if (!logger.isDebugEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.debug(marker, tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void debug(Marker marker, String format, Throwable t) {
-		logger.debug(marker, tagMessage(format), t);
+		if (!logger.isDebugEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.DEBUG, format, null, t, extraTags);
+		else
+			logger.debug(marker, tagMessage(format), t);
 	}
 
 	@Override
 	public void error(String msg) {
-		logger.error(tagMessage(msg));
+		if (!logger.isErrorEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, msg, null, null, extraTags);
+		else
+			logger.error(tagMessage(msg));
 	}
 
 	@Override
 	public void error(String format, Object... argArray) {
-		logger.error(tagMessage(format), argArray);
+		if (!logger.isErrorEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, format, argArray, null, extraTags);
+		else
+			logger.error(tagMessage(format), argArray);
 	}
 
 	@Override
 	public void error(String format, Object arg) {
-		logger.error(tagMessage(format), arg);
+		if (!logger.isErrorEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.error(tagMessage(format), arg);
 	}
 
 	@Override
 	public void error(String format, Object arg1, Object arg2) {
-		logger.error(tagMessage(format), arg1, arg2);
+		if (!logger.isErrorEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.error(tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void error(String msg, Throwable t) {
-		logger.error(tagMessage(msg), t);
+		if (!logger.isErrorEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, msg, null, t, extraTags);
+		else
+			logger.error(tagMessage(msg), t);
 	}
 
 	@Override
 	public void error(Marker marker, String msg) {
-		logger.error(marker, tagMessage(msg));
+		if (!logger.isErrorEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, msg, null, null, extraTags);
+		else
+			logger.error(marker, tagMessage(msg));
 	}
 
 	@Override
 	public void error(Marker marker, String format, Object... argArray) {
-		logger.error(marker, tagMessage(format), argArray);
+		if (!logger.isErrorEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, format, argArray, null, extraTags);
+		else
+			logger.error(marker, tagMessage(format), argArray);
 	}
 
 	@Override
 	public void error(Marker marker, String format, Object arg) {
-		logger.error(marker, tagMessage(format), arg);
+		if (!logger.isErrorEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.error(marker, tagMessage(format), arg);
 	}
 
 	@Override
 	public void error(Marker marker, String format, Object arg1, Object arg2) {
-		logger.error(marker, tagMessage(format), arg1, arg2);
+		if (!logger.isErrorEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.error(marker, tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void error(Marker marker, String msg, Throwable t) {
-		logger.error(marker, tagMessage(msg), t);
+		if (!logger.isErrorEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.ERROR, msg, null, t, extraTags);
+		else
+			logger.error(marker, tagMessage(msg), t);
 	}
 
 	@Override
@@ -156,52 +312,106 @@ public abstract class ExtraTagLogger implements Logger {
 
 	@Override
 	public void info(String msg) {
-		logger.info(tagMessage(msg));
+		if (!logger.isInfoEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, msg, null, null, extraTags);
+		else
+			logger.info(tagMessage(msg));
 	}
 
 	@Override
 	public void info(String format, Object... argArray) {
-		logger.info(tagMessage(format), argArray);
+		if (!logger.isInfoEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, format, argArray, null, extraTags);
+		else
+			logger.info(tagMessage(format), argArray);
 	}
 
 	@Override
 	public void info(String format, Object arg) {
-		logger.info(tagMessage(format), arg);
+		if (!logger.isInfoEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.info(tagMessage(format), arg);
 	}
 
 	@Override
 	public void info(String format, Object arg1, Object arg2) {
-		logger.info(tagMessage(format), arg1, arg2);
+		if (!logger.isInfoEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.info(tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void info(String msg, Throwable t) {
-		logger.info(tagMessage(msg), t);
+		if (!logger.isInfoEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, msg, null, t, extraTags);
+		else
+			logger.info(tagMessage(msg), t);
 	}
 
 	@Override
 	public void info(Marker marker, String msg) {
-		logger.info(marker, tagMessage(msg));
+		if (!logger.isInfoEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, msg, null, null, extraTags);
+		else
+			logger.info(marker, tagMessage(msg));
 	}
 
 	@Override
 	public void info(Marker marker, String format, Object... argArray) {
-		logger.info(marker, tagMessage(format), argArray);
+		if (!logger.isInfoEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, format, argArray, null, extraTags);
+		else
+			logger.info(marker, tagMessage(format), argArray);
 	}
 
 	@Override
 	public void info(Marker marker, String format, Object arg) {
-		logger.info(marker, tagMessage(format), arg);
+		if (!logger.isInfoEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.info(marker, tagMessage(format), arg);
 	}
 
 	@Override
 	public void info(Marker marker, String format, Object arg1, Object arg2) {
-		logger.info(marker, tagMessage(format), arg1, arg2);
+		if (!logger.isInfoEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.info(marker, tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void info(Marker marker, String msg, Throwable t) {
-		logger.info(marker, tagMessage(msg), t);
+		if (!logger.isInfoEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.INFO, msg, null, t, extraTags);
+		else
+			logger.info(marker, tagMessage(msg), t);
 	}
 
 	@Override
@@ -256,101 +466,209 @@ public abstract class ExtraTagLogger implements Logger {
 
 	@Override
 	public void trace(String msg) {
-		logger.trace(tagMessage(msg));
+		if (!logger.isTraceEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, msg, null, null, extraTags);
+		else
+			logger.trace(tagMessage(msg));
 	}
 
 	@Override
 	public void trace(String format, Object... argArray) {
-		logger.trace(tagMessage(format), argArray);
+		if (!logger.isTraceEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, format, argArray, null, extraTags);
+		else
+			logger.trace(tagMessage(format), argArray);
 	}
 
 	@Override
 	public void trace(String format, Object arg) {
-		logger.trace(tagMessage(format), arg);
+		if (!logger.isTraceEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.trace(tagMessage(format), arg);
 	}
 
 	@Override
 	public void trace(String format, Object arg1, Object arg2) {
-		logger.trace(tagMessage(format), arg1, arg2);
+		if (!logger.isTraceEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.trace(tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void trace(String msg, Throwable t) {
-		logger.trace(tagMessage(msg), t);
+		if (!logger.isTraceEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, msg, null, t, extraTags);
+		else
+			logger.trace(tagMessage(msg), t);
 	}
 
 	@Override
 	public void trace(Marker marker, String msg) {
-		logger.trace(marker, tagMessage(msg));
+		if (!logger.isTraceEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, msg, null, null, extraTags);
+		else
+			logger.trace(marker, tagMessage(msg));
 	}
 
 	@Override
 	public void trace(Marker marker, String format, Object... argArray) {
-		logger.trace(marker, tagMessage(format), argArray);
+		if (!logger.isTraceEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, format, argArray, null, extraTags);
+		else
+			logger.trace(marker, tagMessage(format), argArray);
 	}
 
 	@Override
 	public void trace(Marker marker, String format, Object arg) {
-		logger.trace(marker, tagMessage(format), arg);
+		if (!logger.isTraceEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.trace(marker, tagMessage(format), arg);
 	}
 
 	@Override
 	public void trace(Marker marker, String format, Object arg1, Object arg2) {
-		logger.trace(marker, tagMessage(format), arg1, arg2);
+		if (!logger.isTraceEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.trace(marker, tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void trace(Marker marker, String msg, Throwable t) {
-		logger.trace(marker, tagMessage(msg), t);
+		if (!logger.isTraceEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.TRACE, msg, null, t, extraTags);
+		else
+			logger.trace(marker, tagMessage(msg), t);
 	}
 
 	@Override
 	public void warn(String msg) {
-		logger.warn(tagMessage(msg));
+		if (!logger.isWarnEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, msg, null, null, extraTags);
+		else
+			logger.warn(tagMessage(msg));
 	}
 
 	@Override
 	public void warn(String format, Object... argArray) {
-		logger.warn(tagMessage(format), argArray);
+		if (!logger.isWarnEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, format, argArray, null, extraTags);
+		else
+			logger.warn(tagMessage(format), argArray);
 	}
 
 	@Override
 	public void warn(String format, Object arg) {
-		logger.warn(tagMessage(format), arg);
+		if (!logger.isWarnEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.warn(tagMessage(format), arg);
 	}
 
 	@Override
 	public void warn(String format, Object arg1, Object arg2) {
-		logger.warn(tagMessage(format), arg1, arg2);
+		if (!logger.isWarnEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.warn(tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void warn(String msg, Throwable t) {
-		logger.warn(tagMessage(msg), t);
+		if (!logger.isWarnEnabled())
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, msg, null, t, extraTags);
+		else
+			logger.warn(tagMessage(msg), t);
 	}
 
 	@Override
 	public void warn(Marker marker, String msg) {
-		logger.warn(marker, tagMessage(msg));
+		if (!logger.isWarnEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, msg, null, null, extraTags);
+		else
+			logger.warn(marker, tagMessage(msg));
 	}
 
 	@Override
 	public void warn(Marker marker, String format, Object... argArray) {
-		logger.warn(marker, tagMessage(format), argArray);
+		if (!logger.isWarnEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, format, argArray, null, extraTags);
+		else
+			logger.warn(marker, tagMessage(format), argArray);
 	}
 
 	@Override
 	public void warn(Marker marker, String format, Object arg) {
-		logger.warn(marker, tagMessage(format), arg);
+		if (!logger.isWarnEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, format,
+					new Object[] { arg }, null, extraTags);
+		else
+			logger.warn(marker, tagMessage(format), arg);
 	}
 
 	@Override
 	public void warn(Marker marker, String format, Object arg1, Object arg2) {
-		logger.warn(marker, tagMessage(format), arg1, arg2);
+		if (!logger.isWarnEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, format,
+					new Object[] { arg1, arg2 }, null, extraTags);
+		else
+			logger.warn(marker, tagMessage(format), arg1, arg2);
 	}
 
 	@Override
 	public void warn(Marker marker, String msg, Throwable t) {
-		logger.warn(marker, tagMessage(msg), t);
+		if (!logger.isWarnEnabled(marker))
+			return;
+		if (slf4jLogger != null)
+			slf4jLogger.log(Level.WARN, msg, null, t, extraTags);
+		else
+			logger.warn(marker, tagMessage(msg), t);
 	}
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.log;
+
+import java.util.Map;
+
+/**
+ * Extra tags that are added to log messages. They are passed with a log
+ * message to {@link LogDelegate#printFormatted(int, String, String, Object[],
+ * Throwable, ExtraTags) LogDelegate.printFormatted()}. A log delegate that
+ * writes plain text calls {@link #tagMessage(String) tagMessage()}, while a
+ * delegate that writes structured output calls {@link #getTags() getTags()}.
+ * See also {@link ExtraTagLogger ExtraTagLogger}.
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public interface ExtraTags {
+
+	/**
+	 * Prepends the tags to the specified message. This is done before
+	 * formatting anchors {} have been replaced.
+	 *
+	 * @param msg the message
+	 * @return the tagged message
+	 */
+	String tagMessage(String msg);
+
+	/**
+	 * Returns the tags as a map from name to value. The values are written
+	 * as strings. This should return the same map for every message, so no
+	 * map is created per message.
+	 *
+	 * @return the tags
+	 */
+	Map<String,?> getTags();
+}
@@ -23,33 +23,75 @@
 package nl.rrd.utils.log;
 
 import nl.rrd.utils.io.FileUtils;
-import nl.rrd.utils.io.ZipUtils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 /**
  * This class can write log messages to log files. It is constructed with a log
  * directory. In this directory, the file logger will automatically create log
  * files. Each log file will get a name with the current date.
+ *
+ * <p>By default each log message is written by opening the log file, writing
+ * the message and closing the file again. If many messages are logged, you
+ * can enable async mode with {@link #setAsyncMode(boolean) setAsyncMode()}.
+ * In that mode messages are queued and written by a writer thread, which
+ * keeps the log file of the current date open and collects messages in a
+ * buffer. The buffer is written to the file when it's full or when the flush
+ * interval has passed. When you no longer need the file logger, you should
+ * call {@link #close() close()} to write all queued messages. This is also
+ * done at shutdown of the virtual machine.</p>
+ *
+ * <p>In async mode you can also enable compression with {@link
+ * #setCompressionMode(boolean) setCompressionMode()}. Then the log data is
+ * compressed as it is written. Every time the buffer is written, it's
+ * appended to the file "yyyyMMdd.log.gz" as a separate gzip member, so the
+ * file is always a valid gzip file and no archiving is needed afterwards.
+ * For every member, a line is added to the block index "yyyyMMdd.idx" with
+ * the time of the first message and the file offset. Every member starts at
+ * the start of a message, unless a single message is larger than the buffer.
+ * Such a message is split across members. You can read the log from a
+ * specific time with {@link #openCompressedLog(LocalDate, long)
+ * openCompressedLog()}.</p>
+ *
+ * <p>Old log files can be archived and purged (see {@link
+ * #setArchiveDelay(int) setArchiveDelay()} and {@link #setPurgeDelay(int)
+ * setPurgeDelay()}). This is done by a housekeeping thread when the date of
+ * the log messages changes and at a fixed interval (see {@link
+ * #setHousekeepingInterval(long) setHousekeepingInterval()}). The
+ * housekeeping keeps an index of the files in the log directory, so writing
+ * a log message doesn't need to scan the directory.</p>
  * 
  * @author Dennis Hofs
  */
 public class FileLogger {
 	public static final Object ARCHIVE_LOCK = new Object();
 
+	public static final int DEFAULT_FLUSH_SIZE = 65536;
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
 	private File logDir;
 	private final Object lock = new Object();
-	private int archiveDelay = 0;
-	private int purgeDelay = 0;
-	private LocalDate archivedUntil = null;
-	private LocalDate purgedUntil = null;
+	private LogHousekeeper housekeeper;
+	private LocalDate currentDate = null;
+	private File currentFile = null;
+
+	private int flushSize = DEFAULT_FLUSH_SIZE;
+	private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+	private boolean compress = false;
+	private AsyncWriter asyncWriter = null;
 	
 	/**
 	 * Constructs a new file logger. The specified log directory will be
@@ -61,17 +103,7 @@ public class FileLogger {
 	public FileLogger(File logDir) throws IOException {
 		this.logDir = logDir;
 		FileUtils.mkdir(logDir);
-		String[] zipFiles = logDir.list((dir, filename) ->
-				filename.matches("[0-9]{8}\\.zip"));
-		if (zipFiles.length > 0) {
-			List<String> zipFileList = new ArrayList<>(Arrays.asList(
-					zipFiles));
-			Collections.sort(zipFileList);
-			String lastFile = zipFileList.get(zipFileList.size() - 1);
-			DateTimeFormatter parser = DateTimeFormatter.ofPattern("yyyyMMdd");
-			archivedUntil = parser.parse(lastFile.substring(0, 8),
-					LocalDate::from);
-		}
+		housekeeper = new LogHousekeeper(logDir);
 	}
 	
 	/**
@@ -83,7 +115,10 @@ public class FileLogger {
 	 * @param days the number of days after which log files should be archived
 	 */
 	public void setArchiveDelay(int days) {
-		this.archiveDelay = days;
+		housekeeper.setArchiveDelay(days);
+		synchronized (lock) {
+			currentDate = null;
+		}
 	}
 
 	/**
@@ -95,7 +130,154 @@ public class FileLogger {
 	 * @param days the number of days after which log files should be purged
 	 */
 	public void setPurgeDelay(int days) {
-		this.purgeDelay = days;
+		housekeeper.setPurgeDelay(days);
+		synchronized (lock) {
+			currentDate = null;
+		}
+	}
+
+	/**
+	 * Sets the interval at which the housekeeping thread checks whether log
+	 * files should be archived or purged, even if no messages are logged. The
+	 * default is one hour.
+	 *
+	 * @param interval the interval in milliseconds
+	 */
+	public void setHousekeepingInterval(long interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException(
+					"Invalid housekeeping interval: " + interval);
+		}
+		housekeeper.setCheckInterval(interval);
+	}
+
+	/**
+	 * Sets whether messages should be written asynchronously. See the
+	 * documentation at the top of this class. If you disable async mode,
+	 * this method waits until all queued messages have been written. The
+	 * default is false.
+	 *
+	 * @param async true if messages should be written asynchronously, false
+	 * otherwise
+	 */
+	public void setAsyncMode(boolean async) {
+		AsyncWriter closeWriter = null;
+		synchronized (lock) {
+			if (async && asyncWriter == null) {
+				asyncWriter = new AsyncWriter(flushSize, flushInterval,
+						compress);
+				asyncWriter.start();
+			} else if (!async && asyncWriter != null) {
+				closeWriter = asyncWriter;
+				asyncWriter = null;
+			}
+		}
+		if (closeWriter != null)
+			closeWriter.close();
+	}
+
+	/**
+	 * Sets the thresholds at which buffered messages are written to the log
+	 * file in async mode. The buffer is written when it contains at least
+	 * "size" bytes or when the oldest message in the buffer is older than
+	 * "interval" milliseconds. This should be called before you enable async
+	 * mode. The defaults are {@link #DEFAULT_FLUSH_SIZE DEFAULT_FLUSH_SIZE}
+	 * and {@link #DEFAULT_FLUSH_INTERVAL DEFAULT_FLUSH_INTERVAL}.
+	 *
+	 * @param size the buffer size in bytes
+	 * @param interval the flush interval in milliseconds
+	 */
+	public void setFlushThresholds(int size, long interval) {
+		if (size < 1024)
+			throw new IllegalArgumentException("Invalid flush size: " + size);
+		if (interval < 1) {
+			throw new IllegalArgumentException("Invalid flush interval: " +
+					interval);
+		}
+		synchronized (lock) {
+			flushSize = size;
+			flushInterval = interval;
+		}
+	}
+
+	/**
+	 * Sets whether log data should be compressed as it is written in async
+	 * mode. See the documentation at the top of this class. This should be
+	 * called before you enable async mode. In sync mode messages are always
+	 * written to uncompressed log files. The default is false.
+	 *
+	 * @param compress true if log data should be compressed, false otherwise
+	 */
+	public void setCompressionMode(boolean compress) {
+		synchronized (lock) {
+			this.compress = compress;
+		}
+	}
+
+	/**
+	 * Opens the compressed log file of the specified date for reading. The
+	 * stream starts at the last block that was started at or before the
+	 * specified time, according to the block index. So the stream may start
+	 * with some messages before the specified time. If there is no block
+	 * index, the stream starts at the beginning of the file. The stream ends
+	 * with the last block that was completely written. If the last block was
+	 * only partly written (for example because the application crashed),
+	 * that block is skipped.
+	 *
+	 * @param date the date
+	 * @param fromTime the time in milliseconds from where to start reading
+	 * @return the uncompressed log data
+	 * @throws IOException if the file can't be opened or a reading error
+	 * occurs
+	 */
+	public InputStream openCompressedLog(LocalDate date, long fromTime)
+			throws IOException {
+		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd");
+		String dateStr = formatter.format(date);
+		File file = new File(logDir, dateStr + ".log.gz");
+		File indexFile = new File(logDir, dateStr + ".idx");
+		long offset = 0;
+		if (indexFile.exists()) {
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(new FileInputStream(indexFile),
+					StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] parts = line.split(" ");
+					if (parts.length != 2)
+						break;
+					long blockTime;
+					long blockOffset;
+					try {
+						blockTime = Long.parseLong(parts[0]);
+						blockOffset = Long.parseLong(parts[1]);
+					} catch (NumberFormatException ex) {
+						break;
+					}
+					if (blockTime > fromTime)
+						break;
+					offset = blockOffset;
+				}
+			}
+		}
+		FileInputStream in = new FileInputStream(file);
+		try {
+			in.getChannel().position(offset);
+			return new CompressedLogInputStream(in);
+		} catch (IOException ex) {
+			in.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Writes all queued messages in async mode to the log file, forces them
+	 * to the storage device and closes the file. After this method the file
+	 * logger can still be used in sync mode, or you can enable async mode
+	 * again. In sync mode this method has no effect.
+	 */
+	public void close() {
+		setAsyncMode(false);
 	}
 	
 	/**
@@ -116,6 +298,10 @@ public class FileLogger {
 	public int printTaggedMessage(int priority, String tag, LocalDate date,
 			String msg) {
 		synchronized (lock) {
+			if (asyncWriter != null) {
+				asyncWriter.post(date, msg);
+				return 0;
+			}
 			try {
 				Writer out = openLogFile(date);
 				if (out == null)
@@ -139,197 +325,372 @@ public class FileLogger {
 	 * @throws IOException if the file can't be opened
 	 */
 	private Writer openLogFile(LocalDate date) throws IOException {
-		purgeFiles(date);
-		archiveFiles(date);
-		if ((archivedUntil != null && !archivedUntil.isBefore(date)) ||
-				(purgedUntil != null && !purgedUntil.isBefore(date))) {
+		File file = getLogFile(date);
+		if (file == null)
 			return null;
-		}
-		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd");
-		String filename = formatter.format(date) + ".log";
-		File file = new File(logDir, filename);
 		return new OutputStreamWriter(new FileOutputStream(file, true),
 				StandardCharsets.UTF_8);
 	}
 
 	/**
-	 * Purges all log files until and including the specified date.
+	 * Returns the log file for the specified date. If the date has already
+	 * been archived or purged, this method returns null. This method should be
+	 * called inside the lock.
+	 *
+	 * <p>If the date is different from the previous call, it lets the
+	 * housekeeper check whether files should be archived or purged. It
+	 * doesn't access the log directory.</p>
 	 *
 	 * @param date the date
+	 * @return the log file or null
 	 */
-	private void purgeFiles(LocalDate date) {
-		if (purgeDelay <= 0)
-			return;
-		LocalDate minDate = null;
-		if (purgedUntil != null)
-			minDate = purgedUntil.plusDays(1);
-		final LocalDate maxDate = date.minusDays(purgeDelay);
-		if (minDate != null && minDate.isAfter(maxDate))
-			return;
-		purgedUntil = maxDate;
-		synchronized (ARCHIVE_LOCK) {
-			File[] files = logDir.listFiles(new PurgeFilter(maxDate));
-			for (File file : files) {
-				if (!file.delete()) {
-					System.err.println("Can't purge log file: " +
-							file.getAbsolutePath());
-				}
+	private File getLogFile(LocalDate date) {
+		if (!date.equals(currentDate)) {
+			housekeeper.checkDate(date);
+			currentDate = date;
+			currentFile = null;
+			if (housekeeper.isWritable(date)) {
+				DateTimeFormatter formatter = DateTimeFormatter.ofPattern(
+						"yyyyMMdd");
+				String filename = formatter.format(date) + ".log";
+				currentFile = new File(logDir, filename);
+				housekeeper.addLogFile(date);
 			}
+		} else if (currentFile != null && !housekeeper.isWritable(date)) {
+			currentFile = null;
 		}
+		return currentFile;
 	}
 
 	/**
-	 * Archives log files that should be archived at the specified date. It
-	 * will determine the dates that should be archived and then create a ZIP
-	 * file for each of those dates. This method uses a minimum and maximum
-	 * date. The minimum date is the last date that was archived plus one day,
-	 * so it won't archive any dates that have already been archived or
-	 * attempted to archive. The maximum date is the current date minus
-	 * "archiveDelay" days.
-	 * 
-	 * @param date the current date
-	 */
-	private void archiveFiles(LocalDate date) {
-		if (archiveDelay <= 0)
-			return;
-		LocalDate minDate = null;
-		if (archivedUntil != null)
-			minDate = archivedUntil.plusDays(1);
-		LocalDate maxDate = date.minusDays(archiveDelay);
-		if (minDate != null && minDate.isAfter(maxDate))
-			return;
-		archivedUntil = maxDate;
-		new ArchiveFilesThread(minDate, maxDate).start();
-	}
-	
-	/**
-	 * This thread will archive files between the two specified dates.
+	 * The writer thread for async mode. It takes messages from a queue and
+	 * writes them to the log file of their date. It keeps the current log
+	 * file open and encodes the messages into a direct buffer, which is
+	 * written when it's full or when the flush interval has passed. If a
+	 * message has a different date than the current log file, the buffer is
+	 * written and the file is closed before the new file is opened.
+	 *
+	 * <p>If compression is enabled, every time the buffer is written, it's
+	 * compressed into a gzip member and a line is added to the block
+	 * index.</p>
 	 */
-	private class ArchiveFilesThread extends Thread {
-		private LocalDate minDate;
-		private LocalDate maxDate;
-		
+	private class AsyncWriter extends Thread {
+		private final Object queueLock = new Object();
+		private final int flushSize;
+		private final long flushInterval;
+		private ArrayDeque<QueuedMessage> queue = new ArrayDeque<>();
+		private boolean closed = false;
+
+		private final ByteBuffer buffer;
+		private final CharsetEncoder encoder =
+				StandardCharsets.UTF_8.newEncoder();
+		private final Thread shutdownHook;
+
+		private LocalDate openDate = null;
+		private FileChannel channel = null;
+		private long firstBufferedTime = 0;
+
+		private final boolean compress;
+		private Deflater deflater = null;
+		private CRC32 crc = null;
+		private ByteBuffer zipBuffer = null;
+		private FileChannel indexChannel = null;
+
+		public AsyncWriter(int flushSize, long flushInterval,
+				boolean compress) {
+			super(FileLogger.class.getSimpleName() + "-writer");
+			setDaemon(true);
+			this.flushSize = flushSize;
+			this.flushInterval = flushInterval;
+			this.compress = compress;
+			buffer = ByteBuffer.allocateDirect(flushSize);
+			if (compress) {
+				deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+				crc = new CRC32();
+				zipBuffer = ByteBuffer.allocateDirect(flushSize);
+				zipBuffer.order(ByteOrder.LITTLE_ENDIAN);
+			}
+			shutdownHook = new Thread(this::close);
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+		}
+
 		/**
-		 * Constructs a new archive files thread.
-		 * 
-		 * @param minDate the minimum date (inclusive) or null
-		 * @param maxDate the maximum date (inclusive)
+		 * Adds a message to the queue.
+		 *
+		 * @param date the date of the message
+		 * @param msg the tagged message
 		 */
-		public ArchiveFilesThread(LocalDate minDate, LocalDate maxDate) {
-			this.minDate = minDate;
-			this.maxDate = maxDate;
+		public void post(LocalDate date, String msg) {
+			long time = System.currentTimeMillis();
+			synchronized (queueLock) {
+				queue.add(new QueuedMessage(date, time, msg));
+				if (queue.size() == 1)
+					queueLock.notifyAll();
+			}
+		}
+
+		/**
+		 * Writes all queued messages and closes the log file. This method
+		 * waits until the writer thread has finished.
+		 */
+		public void close() {
+			synchronized (queueLock) {
+				closed = true;
+				queueLock.notifyAll();
+			}
+			if (Thread.currentThread() != this) {
+				try {
+					join();
+				} catch (InterruptedException ex) {
+					return;
+				}
+			}
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException ex) {
+				// shutdown in progress
+			}
 		}
-		
+
 		@Override
 		public void run() {
-			File[] files = logDir.listFiles(new ArchiveFilter(minDate,
-					maxDate));
-			if (files.length == 0)
-				return;
-			List<File> fileList = new ArrayList<>(Arrays.asList(files));
-			Collections.sort(fileList);
-			for (File file : fileList) {
-				String dateStr = file.getName().substring(0, 8);
-				synchronized (ARCHIVE_LOCK) {
-					File zipFile = new File(logDir, dateStr + ".zip");
-					try {
-						ZipUtils.zipFile(file, zipFile);
-					} catch (IOException ex) {
-						System.err.println("Can't archive log file \"" +
-								file.getAbsolutePath() + "\": " +
-								ex.getMessage());
-						ex.printStackTrace();
+			ArrayDeque<QueuedMessage> messages = new ArrayDeque<>();
+			while (true) {
+				boolean stop;
+				synchronized (queueLock) {
+					while (!closed && queue.isEmpty()) {
+						long wait;
+						if (buffer.position() == 0) {
+							wait = 0;
+						} else {
+							wait = firstBufferedTime + flushInterval -
+									System.currentTimeMillis();
+							if (wait <= 0)
+								break;
+						}
+						try {
+							queueLock.wait(wait);
+						} catch (InterruptedException ex) {
+							closed = true;
+						}
+					}
+					stop = closed;
+					ArrayDeque<QueuedMessage> swap = queue;
+					queue = messages;
+					messages = swap;
+				}
+				try {
+					for (QueuedMessage msg : messages) {
+						write(msg);
+					}
+					messages.clear();
+					if (buffer.position() > 0 && (stop ||
+							System.currentTimeMillis() - firstBufferedTime >=
+							flushInterval)) {
+						flushBuffer();
+					}
+					if (stop) {
+						closeChannel();
+						if (deflater != null)
+							deflater.end();
 						return;
 					}
-					if (!file.delete()) {
-						System.err.println("Can't delete archived log file: " +
-								file.getAbsolutePath());
+				} catch (IOException ex) {
+					messages.clear();
+					buffer.clear();
+					System.err.println("Can't write log file: " +
+							ex.getMessage());
+					try {
+						closeChannel();
+					} catch (IOException closeEx) {}
+					if (stop) {
+						if (deflater != null)
+							deflater.end();
 						return;
 					}
 				}
 			}
 		}
-	}
 
-	/**
-	 * This filter matches files that should be archived between two specified
-	 * dates.
-	 */
-	private class ArchiveFilter implements FileFilter {
-		private LocalDate minDate;
-		private LocalDate maxDate;
-		
 		/**
-		 * Constructs a new archive filter.
-		 * 
-		 * @param minDate the minimum date (inclusive) or null
-		 * @param maxDate the maximum date (inclusive)
+		 * Encodes a message into the buffer. If the message has a different
+		 * date than the current log file, the current file is closed and the
+		 * new file is opened. If the message doesn't fit in the rest of the
+		 * buffer, the buffer is written to the file first, so every block
+		 * starts at the start of a message. Only a message that is larger
+		 * than the whole buffer is split across blocks.
+		 *
+		 * @param msg the message
+		 * @throws IOException if a writing error occurs
 		 */
-		public ArchiveFilter(LocalDate minDate, LocalDate maxDate) {
-			this.minDate = minDate;
-			this.maxDate = maxDate;
+		private void write(QueuedMessage msg) throws IOException {
+			if (!msg.date.equals(openDate)) {
+				flushBuffer();
+				closeChannel();
+				File file;
+				synchronized (lock) {
+					file = getLogFile(msg.date);
+				}
+				openDate = msg.date;
+				if (file != null)
+					openChannel(msg.date, file);
+			}
+			if (channel == null)
+				return;
+			if (buffer.position() == 0)
+				firstBufferedTime = msg.time;
+			int start = buffer.position();
+			CharBuffer chars = CharBuffer.wrap(msg.msg);
+			encoder.reset();
+			while (true) {
+				CoderResult result = encoder.encode(chars, buffer, true);
+				if (result.isOverflow()) {
+					if (start > 0) {
+						// discard the partial message and write it again
+						// at the start of a new block
+						buffer.position(start);
+						start = 0;
+						chars.rewind();
+						encoder.reset();
+					}
+					flushBuffer();
+					firstBufferedTime = msg.time;
+				} else if (result.isError()) {
+					result.throwException();
+				} else {
+					break;
+				}
+			}
+			if (buffer.position() >= flushSize)
+				flushBuffer();
 		}
-		
-		@Override
-		public boolean accept(File pathname) {
-			if (archiveDelay <= 0)
-				return false;
-			if (!pathname.isFile())
-				return false;
-			String filename = pathname.getName();
-			if (!filename.matches("[0-9]{8}\\.log"))
-				return false;
-			String dateStr = filename.substring(0, 8);
-			DateTimeFormatter parser = DateTimeFormatter.ofPattern("yyyyMMdd");
-			LocalDate fileDate;
+
+		/**
+		 * Opens the log file for the specified date. If compression is
+		 * enabled, it opens the compressed log file and the block index.
+		 *
+		 * @param date the date
+		 * @param file the uncompressed log file
+		 * @throws IOException if the file can't be opened
+		 */
+		private void openChannel(LocalDate date, File file)
+				throws IOException {
+			if (!compress) {
+				channel = openAppend(file);
+				return;
+			}
+			String dateStr = file.getName().substring(0, 8);
+			File zipFile = new File(logDir, dateStr + ".log.gz");
+			File indexFile = new File(logDir, dateStr + ".idx");
+			housekeeper.addLogFile(date, zipFile.getName());
+			housekeeper.addLogFile(date, indexFile.getName());
+			channel = openAppend(zipFile);
 			try {
-				fileDate = parser.parse(dateStr, LocalDate::from);
-			} catch (IllegalArgumentException ex) {
-				return false;
+				indexChannel = openAppend(indexFile);
+			} catch (IOException ex) {
+				channel.close();
+				channel = null;
+				throw ex;
 			}
-			if (minDate != null && fileDate.isBefore(minDate))
-				return false;
-			if (fileDate.isAfter(maxDate))
-				return false;
-			return true;
 		}
-	}
 
-	/**
-	 * This filter matches files that should be purged.
-	 */
-	private class PurgeFilter implements FileFilter {
-		private LocalDate maxDate;
+		private FileChannel openAppend(File file) throws IOException {
+			return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+
+		private void flushBuffer() throws IOException {
+			if (buffer.position() == 0)
+				return;
+			buffer.flip();
+			try {
+				if (compress)
+					writeGzipMember();
+				else
+					writeFully(channel, buffer);
+			} finally {
+				buffer.clear();
+			}
+		}
 
 		/**
-		 * Constructs a new purge filter.
+		 * Compresses the content of the buffer into a gzip member, appends
+		 * it to the compressed log file and adds a line to the block index.
+		 * The buffer should be ready for reading.
 		 *
-		 * @param maxDate the maximum date (inclusive)
+		 * @throws IOException if a writing error occurs
 		 */
-		public PurgeFilter(LocalDate maxDate) {
-			this.maxDate = maxDate;
+		private void writeGzipMember() throws IOException {
+			long offset = channel.size();
+			int size = buffer.remaining();
+			crc.reset();
+			crc.update(buffer.duplicate());
+			zipBuffer.clear();
+			zipBuffer.put(GZIP_HEADER);
+			deflater.reset();
+			deflater.setInput(buffer);
+			deflater.finish();
+			while (!deflater.finished()) {
+				if (!zipBuffer.hasRemaining())
+					writeZipBuffer();
+				deflater.deflate(zipBuffer);
+			}
+			if (zipBuffer.remaining() < 8)
+				writeZipBuffer();
+			zipBuffer.putInt((int)crc.getValue());
+			zipBuffer.putInt(size);
+			writeZipBuffer();
+			String indexLine = firstBufferedTime + " " + offset + "\n";
+			writeFully(indexChannel, ByteBuffer.wrap(indexLine.getBytes(
+					StandardCharsets.UTF_8)));
 		}
 
-		@Override
-		public boolean accept(File pathname) {
-			if (purgeDelay <= 0)
-				return false;
-			if (!pathname.isFile())
-				return false;
-			String filename = pathname.getName();
-			if (!filename.matches("[0-9]{8}\\..*"))
-				return false;
-			String dateStr = filename.substring(0, 8);
-			DateTimeFormatter parser = DateTimeFormatter.ofPattern("yyyyMMdd");
-			LocalDate fileDate;
-			try {
-				fileDate = parser.parse(dateStr, LocalDate::from);
-			} catch (IllegalArgumentException ex) {
-				return false;
+		private void writeZipBuffer() throws IOException {
+			zipBuffer.flip();
+			writeFully(channel, zipBuffer);
+			zipBuffer.clear();
+		}
+
+		private void writeFully(FileChannel channel, ByteBuffer data)
+				throws IOException {
+			while (data.hasRemaining()) {
+				channel.write(data);
 			}
-			if (fileDate.isAfter(maxDate))
-				return false;
-			return true;
+		}
+
+		private void closeChannel() throws IOException {
+			if (channel == null)
+				return;
+			FileChannel closeChannel = channel;
+			FileChannel closeIndexChannel = indexChannel;
+			channel = null;
+			indexChannel = null;
+			openDate = null;
+			try (closeChannel) {
+				closeChannel.force(true);
+			} finally {
+				if (closeIndexChannel != null) {
+					try (closeIndexChannel) {
+						closeIndexChannel.force(true);
+					}
+				}
+			}
+		}
+	}
+
+	private static final byte[] GZIP_HEADER = new byte[] {
+		0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte)0xff
+	};
+
+	private static class QueuedMessage {
+		public LocalDate date;
+		public long time;
+		public String msg;
+
+		public QueuedMessage(LocalDate date, long time, String msg) {
+			this.date = date;
+			this.time = time;
+			this.msg = msg;
 		}
 	}
 }
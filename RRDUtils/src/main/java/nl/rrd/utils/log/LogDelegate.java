@@ -117,6 +117,57 @@ public interface LogDelegate {
 	 */
 	public int println(int priority, String tag, String msg);
 
+	/**
+	 * Writes a log message with SLF4J-style {} placeholders. If "args" is not
+	 * null, the placeholders in "format" are replaced with the arguments. If
+	 * "tr" is not null, or if the last argument is a {@link Throwable
+	 * Throwable} that is not used by a placeholder, the stack trace is
+	 * appended to the message.
+	 *
+	 * <p>The delegate may format the message later on another thread, so the
+	 * caller should not change the arguments after this call. The default
+	 * implementation formats the message immediately and calls {@link
+	 * #println(int, String, String) println()}.</p>
+	 *
+	 * @param priority the log level
+	 * @param tag the tag
+	 * @param format the message or format string
+	 * @param args the arguments or null
+	 * @param tr an exception or null
+	 * @return 0 if no error occurred, an error code otherwise
+	 */
+	default int printFormatted(int priority, String tag, String format,
+			Object[] args, Throwable tr) {
+		if (!isLoggable(tag, priority))
+			return 0;
+		return println(priority, tag, LogMessageFormatter.buildMessage(this,
+				format, args, tr));
+	}
+
+	/**
+	 * Writes a log message with SLF4J-style {} placeholders and extra tags
+	 * from an {@link ExtraTagLogger ExtraTagLogger}. The default
+	 * implementation prepends the extra tags to the format string with
+	 * {@link ExtraTags#tagMessage(String) ExtraTags.tagMessage()} and calls
+	 * {@link #printFormatted(int, String, String, Object[], Throwable)
+	 * printFormatted()}. A log delegate that writes structured output can
+	 * override this to write the extra tags as separate fields.
+	 *
+	 * @param priority the log level
+	 * @param tag the tag
+	 * @param format the message or format string
+	 * @param args the arguments or null
+	 * @param tr an exception or null
+	 * @param extraTags the extra tags or null
+	 * @return 0 if no error occurred, an error code otherwise
+	 */
+	default int printFormatted(int priority, String tag, String format,
+			Object[] args, Throwable tr, ExtraTags extraTags) {
+		if (extraTags != null && format != null)
+			format = extraTags.tagMessage(format);
+		return printFormatted(priority, tag, format, args, tr);
+	}
+
 	/**
 	 * Writes a message at level {@link Logger#VERBOSE VERBOSE}.
 	 * 
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.log;
+
+import nl.rrd.utils.io.ZipUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * This class archives and purges the log files of a {@link FileLogger
+ * FileLogger}. It scans the log directory only once at construction and then
+ * keeps an index of the log files and zip files per date. The file logger
+ * should call {@link #checkDate(LocalDate) checkDate()} when the date of the
+ * log messages changes, and {@link #addLogFile(LocalDate) addLogFile()} when
+ * it creates a new log file. Archiving and purging are done on a
+ * housekeeping thread, which also checks the current date at a fixed
+ * interval, so old files are archived and purged even if no messages are
+ * logged. This means that writing a log message never touches the directory.
+ *
+ * <p>The methods of this class are thread-safe.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+class LogHousekeeper {
+	public static final long DEFAULT_CHECK_INTERVAL = 3600000;
+
+	private static final DateTimeFormatter DATE_FORMAT =
+			DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	private final File logDir;
+	private final Object lock = new Object();
+	private int archiveDelay = 0;
+	private int purgeDelay = 0;
+	private long checkInterval = DEFAULT_CHECK_INTERVAL;
+	private LocalDate archivedUntil = null;
+	private LocalDate purgedUntil = null;
+
+	// map from date to the names of the files for that date
+	private TreeMap<LocalDate,TreeSet<String>> fileIndex = new TreeMap<>();
+
+	private Thread thread = null;
+	private List<Runnable> pendingWork = new ArrayList<>();
+
+	/**
+	 * Constructs a new housekeeper. It scans the log directory to build the
+	 * file index.
+	 *
+	 * @param logDir the log directory
+	 */
+	public LogHousekeeper(File logDir) {
+		this.logDir = logDir;
+		String[] files = logDir.list((dir, filename) ->
+				filename.matches("[0-9]{8}\\..*"));
+		if (files == null)
+			files = new String[0];
+		for (String filename : files) {
+			LocalDate date = parseFileDate(filename);
+			if (date == null)
+				continue;
+			addFile(date, filename);
+			if (filename.endsWith(".zip") && (archivedUntil == null ||
+					date.isAfter(archivedUntil))) {
+				archivedUntil = date;
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of days after which log files should be archived to a
+	 * zip file. See {@link FileLogger#setArchiveDelay(int)
+	 * FileLogger.setArchiveDelay()}.
+	 *
+	 * @param days the number of days after which log files should be archived
+	 */
+	public void setArchiveDelay(int days) {
+		synchronized (lock) {
+			archiveDelay = days;
+		}
+	}
+
+	/**
+	 * Sets the number of days after which log files should be purged. See
+	 * {@link FileLogger#setPurgeDelay(int) FileLogger.setPurgeDelay()}.
+	 *
+	 * @param days the number of days after which log files should be purged
+	 */
+	public void setPurgeDelay(int days) {
+		synchronized (lock) {
+			purgeDelay = days;
+		}
+	}
+
+	/**
+	 * Sets the interval at which the housekeeping thread checks the current
+	 * date. The default is {@link #DEFAULT_CHECK_INTERVAL
+	 * DEFAULT_CHECK_INTERVAL}.
+	 *
+	 * @param interval the interval in milliseconds
+	 */
+	public void setCheckInterval(long interval) {
+		synchronized (lock) {
+			checkInterval = interval;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns whether messages can be written to the log file of the
+	 * specified date. This is false if the date has already been archived or
+	 * purged.
+	 *
+	 * @param date the date
+	 * @return true if messages can be written, false otherwise
+	 */
+	public boolean isWritable(LocalDate date) {
+		synchronized (lock) {
+			return (archivedUntil == null || archivedUntil.isBefore(date)) &&
+					(purgedUntil == null || purgedUntil.isBefore(date));
+		}
+	}
+
+	/**
+	 * Adds the log file for the specified date to the index. This should be
+	 * called when the file logger writes to a date for the first time.
+	 *
+	 * @param date the date
+	 */
+	public void addLogFile(LocalDate date) {
+		addLogFile(date, DATE_FORMAT.format(date) + ".log");
+	}
+
+	/**
+	 * Adds a file with the specified name for the specified date to the
+	 * index. The name should start with the date as "yyyyMMdd.". Files in the
+	 * index are purged when their date is purged. Only files named
+	 * "yyyyMMdd.log" are archived.
+	 *
+	 * @param date the date
+	 * @param filename the filename
+	 */
+	public void addLogFile(LocalDate date, String filename) {
+		synchronized (lock) {
+			addFile(date, filename);
+		}
+	}
+
+	/**
+	 * Determines what files should be purged and archived at the specified
+	 * date. The dates are marked immediately, so no more messages are written
+	 * to them (see {@link #isWritable(LocalDate) isWritable()}). The files are
+	 * purged and archived on the housekeeping thread.
+	 *
+	 * @param date the current date
+	 */
+	public void checkDate(LocalDate date) {
+		synchronized (lock) {
+			LocalDate purgeMax = getPurgeMaxDate(date);
+			if (purgeMax != null) {
+				purgedUntil = purgeMax;
+				pendingWork.add(() -> purgeFiles(purgeMax));
+			}
+			LocalDate archiveMin = archivedUntil == null ? null :
+					archivedUntil.plusDays(1);
+			LocalDate archiveMax = getArchiveMaxDate(date);
+			if (archiveMax != null) {
+				archivedUntil = archiveMax;
+				pendingWork.add(() -> archiveFiles(archiveMin, archiveMax));
+			}
+			if (thread == null && (archiveDelay > 0 || purgeDelay > 0)) {
+				thread = new Thread(this::runThread,
+						getClass().getSimpleName());
+				thread.setDaemon(true);
+				thread.start();
+			} else if (!pendingWork.isEmpty()) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum date until which files should be purged at the
+	 * specified date, or null if no files should be purged. This method should
+	 * be called inside the lock.
+	 *
+	 * @param date the current date
+	 * @return the maximum date (inclusive) or null
+	 */
+	private LocalDate getPurgeMaxDate(LocalDate date) {
+		if (purgeDelay <= 0)
+			return null;
+		LocalDate maxDate = date.minusDays(purgeDelay);
+		if (purgedUntil != null && !purgedUntil.isBefore(maxDate))
+			return null;
+		return maxDate;
+	}
+
+	/**
+	 * Returns the maximum date until which files should be archived at the
+	 * specified date, or null if no files should be archived. This method
+	 * should be called inside the lock.
+	 *
+	 * @param date the current date
+	 * @return the maximum date (inclusive) or null
+	 */
+	private LocalDate getArchiveMaxDate(LocalDate date) {
+		if (archiveDelay <= 0)
+			return null;
+		LocalDate maxDate = date.minusDays(archiveDelay);
+		if (archivedUntil != null && !archivedUntil.isBefore(maxDate))
+			return null;
+		return maxDate;
+	}
+
+	/**
+	 * Runs the housekeeping thread. It runs pending work and checks the
+	 * current date at every check interval. The thread exits when archiving
+	 * and purging are both disabled.
+	 */
+	private void runThread() {
+		long nextCheck = System.currentTimeMillis() + checkInterval;
+		while (true) {
+			List<Runnable> work;
+			synchronized (lock) {
+				long now = System.currentTimeMillis();
+				while (pendingWork.isEmpty() && now < nextCheck) {
+					if (archiveDelay <= 0 && purgeDelay <= 0) {
+						thread = null;
+						return;
+					}
+					try {
+						lock.wait(Math.min(nextCheck - now, checkInterval));
+					} catch (InterruptedException ex) {
+						thread = null;
+						return;
+					}
+					now = System.currentTimeMillis();
+				}
+				work = pendingWork;
+				pendingWork = new ArrayList<>();
+			}
+			for (Runnable runnable : work) {
+				runnable.run();
+			}
+			if (System.currentTimeMillis() >= nextCheck) {
+				nextCheck = System.currentTimeMillis() + checkInterval;
+				checkDate(LocalDate.now());
+			}
+		}
+	}
+
+	/**
+	 * Purges all files until and including the specified date.
+	 *
+	 * @param maxDate the maximum date (inclusive)
+	 */
+	private void purgeFiles(LocalDate maxDate) {
+		List<String> files = new ArrayList<>();
+		synchronized (lock) {
+			Map<LocalDate,TreeSet<String>> dates = fileIndex.headMap(maxDate,
+					true);
+			for (TreeSet<String> dateFiles : dates.values()) {
+				files.addAll(dateFiles);
+			}
+			dates.clear();
+		}
+		synchronized (FileLogger.ARCHIVE_LOCK) {
+			for (String filename : files) {
+				File file = new File(logDir, filename);
+				if (!file.delete() && file.exists()) {
+					System.err.println("Can't purge log file: " +
+							file.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Archives the log files between the two specified dates. It creates a
+	 * zip file for each log file and then deletes the log file.
+	 *
+	 * @param minDate the minimum date (inclusive) or null
+	 * @param maxDate the maximum date (inclusive)
+	 */
+	private void archiveFiles(LocalDate minDate, LocalDate maxDate) {
+		List<LocalDate> dates = new ArrayList<>();
+		synchronized (lock) {
+			Map<LocalDate,TreeSet<String>> range = minDate == null ?
+					fileIndex.headMap(maxDate, true) :
+					fileIndex.subMap(minDate, true, maxDate, true);
+			for (Map.Entry<LocalDate,TreeSet<String>> entry :
+					range.entrySet()) {
+				String logName = DATE_FORMAT.format(entry.getKey()) + ".log";
+				if (entry.getValue().contains(logName))
+					dates.add(entry.getKey());
+			}
+		}
+		for (LocalDate date : dates) {
+			String dateStr = DATE_FORMAT.format(date);
+			File file = new File(logDir, dateStr + ".log");
+			File zipFile = new File(logDir, dateStr + ".zip");
+			synchronized (FileLogger.ARCHIVE_LOCK) {
+				if (!file.isFile()) {
+					// the file was never created, for example because the
+					// messages were written to a compressed log file
+					synchronized (lock) {
+						removeFile(date, file.getName());
+					}
+					continue;
+				}
+				try {
+					ZipUtils.zipFile(file, zipFile);
+				} catch (IOException ex) {
+					System.err.println("Can't archive log file \"" +
+							file.getAbsolutePath() + "\": " +
+							ex.getMessage());
+					ex.printStackTrace();
+					return;
+				}
+				synchronized (lock) {
+					addFile(date, zipFile.getName());
+				}
+				if (!file.delete()) {
+					System.err.println("Can't delete archived log file: " +
+							file.getAbsolutePath());
+					return;
+				}
+				synchronized (lock) {
+					removeFile(date, file.getName());
+				}
+			}
+		}
+	}
+
+	private void addFile(LocalDate date, String filename) {
+		fileIndex.computeIfAbsent(date, key -> new TreeSet<>()).add(filename);
+	}
+
+	private void removeFile(LocalDate date, String filename) {
+		TreeSet<String> files = fileIndex.get(date);
+		if (files == null)
+			return;
+		files.remove(filename);
+		if (files.isEmpty())
+			fileIndex.remove(date);
+	}
+
+	/**
+	 * Parses the date from a filename that starts with "yyyyMMdd.". If the
+	 * filename doesn't start with a valid date, this method returns null.
+	 *
+	 * @param filename the filename
+	 * @return the date or null
+	 */
+	private static LocalDate parseFileDate(String filename) {
+		if (!filename.matches("[0-9]{8}\\..*"))
+			return null;
+		try {
+			return DATE_FORMAT.parse(filename.substring(0, 8),
+					LocalDate::from);
+		} catch (DateTimeParseException ex) {
+			return null;
+		}
+	}
+}
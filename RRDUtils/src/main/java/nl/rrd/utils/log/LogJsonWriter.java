@@ -0,0 +1,186 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.log;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * This class writes log messages as JSON objects on one line. It's used by
+ * {@link AbstractLogDelegate AbstractLogDelegate} when the output format is
+ * {@link AbstractLogDelegate.OutputFormat#JSON OutputFormat.JSON}. An object
+ * has the following fields:
+ *
+ * <p><ul>
+ * <li>level: the log level, for example "INFO"</li>
+ * <li>tag: the message tag</li>
+ * <li>time: the date and time in the same format as {@link LogLineTagger
+ * LogLineTagger}</li>
+ * <li>thread: the name of the thread that logged the message</li>
+ * <li>tags: an object with the extra tags from an {@link ExtraTagLogger
+ * ExtraTagLogger} (only if there are extra tags)</li>
+ * <li>message: the formatted message</li>
+ * <li>exception: the stack trace (only if there is an exception)</li>
+ * </ul></p>
+ *
+ * <p>The writer reuses one {@link JsonGenerator JsonGenerator} that writes
+ * to a reusable character buffer, and the message is formatted into a
+ * reusable string builder. So the only string that is created per message is
+ * the resulting line. This class is not thread-safe. The caller should
+ * synchronize.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+class LogJsonWriter {
+	private static final JsonFactory FACTORY = new JsonFactory();
+	private static final String NEWLINE = System.lineSeparator();
+	private static final int MAX_RETAINED_SIZE = 65536;
+
+	private final LogDelegate delegate;
+	private final StringBuilder msgBuffer = new StringBuilder();
+	private char[] msgChars = new char[256];
+	private CharArrayWriter out;
+	private JsonGenerator generator;
+
+	/**
+	 * Constructs a new JSON writer.
+	 *
+	 * @param delegate the log delegate that creates stack trace strings
+	 */
+	public LogJsonWriter(LogDelegate delegate) {
+		this.delegate = delegate;
+		createGenerator();
+	}
+
+	/**
+	 * Writes a log message as a JSON object. The result ends with a new line
+	 * character.
+	 *
+	 * @param priority the log level
+	 * @param tag the message tag
+	 * @param time the time of the message
+	 * @param thread the name of the thread that logged the message
+	 * @param format the message or format string or null
+	 * @param args the arguments or null
+	 * @param tr an exception or null
+	 * @param extraTags extra tags or null
+	 * @return the JSON line
+	 */
+	public String write(int priority, String tag, ZonedDateTime time,
+			String thread, String format, Object[] args, Throwable tr,
+			ExtraTags extraTags) {
+		// format before writing anything, so an exception in toString()
+		// doesn't leave the generator halfway an object
+		Map<String,?> tags = extraTags == null ? null : extraTags.getTags();
+		if (format != null && extraTags != null && tags == null)
+			format = extraTags.tagMessage(format);
+		tr = LogMessageFormatter.getThrowable(format, args, tr);
+		String stackTrace = tr == null ? null :
+				delegate.getStackTraceString(tr);
+		int msgLen = formatMessage(format, args);
+		try {
+			generator.writeStartObject();
+			generator.writeStringField("level",
+					LogLineTagger.levelToString(priority));
+			generator.writeStringField("tag", tag);
+			generator.writeStringField("time",
+					LogLineTagger.formatTime(time));
+			generator.writeStringField("thread", thread);
+			if (tags != null && !tags.isEmpty()) {
+				generator.writeObjectFieldStart("tags");
+				for (Map.Entry<String,?> entry : tags.entrySet()) {
+					generator.writeStringField(entry.getKey(),
+							String.valueOf(entry.getValue()));
+				}
+				generator.writeEndObject();
+			}
+			generator.writeFieldName("message");
+			if (msgLen < 0)
+				generator.writeNull();
+			else
+				generator.writeString(msgChars, 0, msgLen);
+			if (stackTrace != null)
+				generator.writeStringField("exception", stackTrace);
+			generator.writeEndObject();
+			generator.flush();
+		} catch (IOException ex) {
+			createGenerator();
+			throw new RuntimeException("I/O error when writing to buffer: " +
+					ex.getMessage(), ex);
+		} catch (RuntimeException ex) {
+			createGenerator();
+			throw ex;
+		}
+		out.write(NEWLINE, 0, NEWLINE.length());
+		String result = out.toString();
+		if (out.size() > MAX_RETAINED_SIZE)
+			createGenerator();
+		else
+			out.reset();
+		return result;
+	}
+
+	/**
+	 * Formats the message into "msgChars".
+	 *
+	 * @param format the message or format string or null
+	 * @param args the arguments or null
+	 * @return the length of the message or -1 if the format is null
+	 */
+	private int formatMessage(String format, Object[] args) {
+		if (format == null)
+			return -1;
+		msgBuffer.setLength(0);
+		LogMessageFormatter.format(msgBuffer, format, args);
+		int len = msgBuffer.length();
+		if (len > msgChars.length || (msgChars.length > MAX_RETAINED_SIZE &&
+				len <= MAX_RETAINED_SIZE)) {
+			msgChars = new char[Math.max(len, 256)];
+		}
+		msgBuffer.getChars(0, len, msgChars, 0);
+		if (msgBuffer.capacity() > MAX_RETAINED_SIZE) {
+			msgBuffer.setLength(0);
+			msgBuffer.trimToSize();
+		}
+		return len;
+	}
+
+	/**
+	 * Creates a new buffer and generator. This is done at construction, after
+	 * an error and when the buffer has grown too large.
+	 */
+	private void createGenerator() {
+		out = new CharArrayWriter(256);
+		try {
+			generator = FACTORY.createGenerator(out);
+		} catch (IOException ex) {
+			throw new RuntimeException("Can't create JSON generator: " +
+					ex.getMessage(), ex);
+		}
+		generator.setRootValueSeparator(null);
+	}
+}
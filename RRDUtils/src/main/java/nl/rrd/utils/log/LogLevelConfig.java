@@ -0,0 +1,171 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, compiled log level configuration. It consists of a default log
+ * level and log levels for specific tags. A tag can also be a hierarchical
+ * prefix that ends with ".*", such as "nl.rrd.utils.http.*". This matches
+ * the tag "nl.rrd.utils.http" and all tags that start with
+ * "nl.rrd.utils.http.". The tag "*" matches all tags. If a tag matches an
+ * exact tag and several prefixes, the exact tag has precedence over the
+ * longest prefix.
+ *
+ * <p>The configuration is resolved once per tag. The result is an array
+ * indexed by log level, which is cached per tag, so {@link
+ * #isLoggable(String, int) isLoggable()} only needs a map lookup and an
+ * array lookup. If the configuration changes, a new instance should be
+ * created, which starts with an empty cache.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+class LogLevelConfig {
+	private static final int MAX_CACHE_SIZE = 10000;
+
+	// LEVEL_MASKS[minLevel][level] is true if level >= minLevel
+	private static final boolean[][] LEVEL_MASKS;
+	static {
+		LEVEL_MASKS = new boolean[Logger.ASSERT + 2][Logger.ASSERT + 1];
+		for (int min = 0; min < LEVEL_MASKS.length; min++) {
+			for (int level = Logger.VERBOSE; level <= Logger.ASSERT;
+					level++) {
+				LEVEL_MASKS[min][level] = level >= min;
+			}
+		}
+	}
+
+	private final int defaultLevel;
+	private final Map<String,Integer> levels;
+	private final Map<String,Integer> exactLevels = new HashMap<>();
+	// prefixes without "*", sorted by length from long to short
+	private final String[] prefixes;
+	private final int[] prefixLevels;
+	private final ConcurrentHashMap<String,boolean[]> cache =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new configuration.
+	 *
+	 * @param defaultLevel the default log level
+	 * @param levels map from tags or tag prefixes to log levels
+	 */
+	public LogLevelConfig(int defaultLevel, Map<String,Integer> levels) {
+		this.defaultLevel = defaultLevel;
+		this.levels = new HashMap<>(levels);
+		List<String> prefixList = new ArrayList<>();
+		for (String tag : levels.keySet()) {
+			if (tag.equals("*"))
+				prefixList.add("");
+			else if (tag.endsWith(".*"))
+				prefixList.add(tag.substring(0, tag.length() - 1));
+			else
+				exactLevels.put(tag, levels.get(tag));
+		}
+		prefixList.sort((a, b) -> b.length() - a.length());
+		prefixes = prefixList.toArray(new String[0]);
+		prefixLevels = new int[prefixes.length];
+		for (int i = 0; i < prefixes.length; i++) {
+			String tag = prefixes[i].isEmpty() ? "*" : prefixes[i] + "*";
+			prefixLevels[i] = levels.get(tag);
+		}
+	}
+
+	/**
+	 * Returns a new configuration with a different default log level.
+	 *
+	 * @param level the default log level
+	 * @return the new configuration
+	 */
+	public LogLevelConfig withDefaultLevel(int level) {
+		return new LogLevelConfig(level, levels);
+	}
+
+	/**
+	 * Returns a new configuration with a different log level for the
+	 * specified tag or tag prefix.
+	 *
+	 * @param tag the tag or tag prefix
+	 * @param level the log level
+	 * @return the new configuration
+	 */
+	public LogLevelConfig withLevel(String tag, int level) {
+		Map<String,Integer> newLevels = new HashMap<>(levels);
+		newLevels.put(tag, level);
+		return new LogLevelConfig(defaultLevel, newLevels);
+	}
+
+	/**
+	 * Returns whether messages with the specified tag and level should be
+	 * logged.
+	 *
+	 * @param tag the tag
+	 * @param level the log level
+	 * @return true if the message should be logged, false otherwise
+	 */
+	public boolean isLoggable(String tag, int level) {
+		if (level < Logger.VERBOSE || level > Logger.ASSERT)
+			return false;
+		if (tag == null)
+			return level >= resolveLevel("");
+		boolean[] mask = cache.get(tag);
+		if (mask == null) {
+			mask = LEVEL_MASKS[clampLevel(resolveLevel(tag))];
+			if (cache.size() < MAX_CACHE_SIZE)
+				cache.put(tag, mask);
+		}
+		return mask[level];
+	}
+
+	/**
+	 * Resolves the minimum log level for the specified tag.
+	 *
+	 * @param tag the tag
+	 * @return the minimum log level
+	 */
+	private int resolveLevel(String tag) {
+		Integer level = exactLevels.get(tag);
+		if (level != null)
+			return level;
+		for (int i = 0; i < prefixes.length; i++) {
+			String prefix = prefixes[i];
+			if (tag.startsWith(prefix) || (tag.length() ==
+					prefix.length() - 1 && prefix.startsWith(tag))) {
+				return prefixLevels[i];
+			}
+		}
+		return defaultLevel;
+	}
+
+	private static int clampLevel(int level) {
+		if (level < 0)
+			return 0;
+		if (level >= LEVEL_MASKS.length)
+			return LEVEL_MASKS.length - 1;
+		return level;
+	}
+}
@@ -22,8 +22,9 @@
 
 package nl.rrd.utils.log;
 
+import java.io.IOException;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 
 import nl.rrd.utils.datetime.DateTimeUtils;
 
@@ -31,10 +32,21 @@ import nl.rrd.utils.datetime.DateTimeUtils;
  * This class can tag lines in a log message before the message is written. The
  * tags include the log level, the message tag (identification of the source)
  * and the current date and time.
+ *
+ * <p>If you want to avoid creating intermediate strings, you can use {@link
+ * #tagLines(int, String, ZonedDateTime, CharSequence, Appendable)
+ * tagLines()} with an {@link Appendable Appendable} such as a {@link
+ * StringBuilder StringBuilder} or {@link java.nio.CharBuffer CharBuffer}. It
+ * finds the line breaks without a regular expression and it reuses the
+ * formatted time if the previous message was logged in the same
+ * millisecond.</p>
  * 
  * @author Dennis Hofs
  */
 public class LogLineTagger {
+	private static final String NEWLINE = System.lineSeparator();
+
+	private static volatile TimeCache timeCache = null;
 
 	/**
 	 * Tags every line in the specified message. It will prefix every line with
@@ -49,24 +61,83 @@ public class LogLineTagger {
 	 */
 	public static String tagLines(int level, String tag, ZonedDateTime time,
 			String msg) {
-		String newline = System.getProperty("line.separator");
-		DateTimeFormatter formatter = DateTimeUtils.ZONED_FORMAT;
-		String timeStr = formatter.format(time);
-		String[] lines = msg.split("\r\n|\r|\n", -1);
-		StringBuilder buf = new StringBuilder();
-		for (String line : lines) {
-			buf.append("[");
-			buf.append(levelToString(level));
-			buf.append("] [");
-			buf.append(tag);
-			buf.append("] [");
-			buf.append(timeStr);
-			buf.append("] ");
-			buf.append(line);
-			buf.append(newline);
+		StringBuilder buf = new StringBuilder(msg.length() + 64);
+		try {
+			tagLines(level, tag, time, msg, buf);
+		} catch (IOException ex) {
+			throw new RuntimeException("I/O error when writing to string: " +
+					ex.getMessage(), ex);
 		}
 		return buf.toString();
 	}
+
+	/**
+	 * Tags every line in the specified message and writes the result to the
+	 * specified output. It will prefix every line with the log level, the tag
+	 * and the current date and time. Every line will end with a new line
+	 * character, including the last line. The result is the same as {@link
+	 * #tagLines(int, String, ZonedDateTime, String) tagLines()} that returns
+	 * a string.
+	 *
+	 * @param level the log level
+	 * @param tag the tag
+	 * @param time the current date and time
+	 * @param msg the log message
+	 * @param out the output
+	 * @throws IOException if a writing error occurs
+	 */
+	public static void tagLines(int level, String tag, ZonedDateTime time,
+			CharSequence msg, Appendable out) throws IOException {
+		String levelStr = levelToString(level);
+		String timeStr = formatTime(time);
+		int len = msg.length();
+		int start = 0;
+		int i = 0;
+		while (true) {
+			while (i < len && msg.charAt(i) != '\r' && msg.charAt(i) != '\n') {
+				i++;
+			}
+			out.append('[');
+			out.append(levelStr);
+			out.append("] [");
+			out.append(tag);
+			out.append("] [");
+			out.append(timeStr);
+			out.append("] ");
+			out.append(msg, start, i);
+			out.append(NEWLINE);
+			if (i == len)
+				return;
+			if (msg.charAt(i) == '\r' && i + 1 < len &&
+					msg.charAt(i + 1) == '\n') {
+				i++;
+			}
+			i++;
+			start = i;
+		}
+	}
+
+	/**
+	 * Formats the specified time with {@link DateTimeUtils#ZONED_FORMAT
+	 * DateTimeUtils.ZONED_FORMAT}. If the previous call had the same
+	 * millisecond and offset, it returns the cached result.
+	 *
+	 * @param time the time
+	 * @return the formatted time
+	 */
+	static String formatTime(ZonedDateTime time) {
+		long epochMilli = time.toEpochSecond() * 1000 +
+				time.getNano() / 1000000;
+		ZoneOffset offset = time.getOffset();
+		TimeCache cache = timeCache;
+		if (cache != null && cache.epochMilli == epochMilli &&
+				cache.offset.equals(offset)) {
+			return cache.formatted;
+		}
+		String formatted = DateTimeUtils.ZONED_FORMAT.format(time);
+		timeCache = new TimeCache(epochMilli, offset, formatted);
+		return formatted;
+	}
 	
 	/**
 	 * Returns a string representation of the specified log level.
@@ -74,7 +145,7 @@ public class LogLineTagger {
 	 * @param level the log level
 	 * @return the string representation
 	 */
-	private static String levelToString(int level) {
+	static String levelToString(int level) {
 		switch (level) {
 		case Logger.ASSERT:
 			return "ASSERT";
@@ -92,4 +163,17 @@ public class LogLineTagger {
 			return "UNKNOWN";
 		}
 	}
+
+	private static class TimeCache {
+		public final long epochMilli;
+		public final ZoneOffset offset;
+		public final String formatted;
+
+		public TimeCache(long epochMilli, ZoneOffset offset,
+				String formatted) {
+			this.epochMilli = epochMilli;
+			this.offset = offset;
+			this.formatted = formatted;
+		}
+	}
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.log;
+
+/**
+ * Formats log messages with SLF4J-style {} placeholders. This is used by
+ * {@link LogDelegate#printFormatted(int, String, String, Object[], Throwable)
+ * LogDelegate.printFormatted()}, which may call it on another thread than
+ * the thread that logged the message.
+ *
+ * @author Dennis Hofs (RRD)
+ */
+class LogMessageFormatter {
+
+	/**
+	 * Builds the complete log message. If "args" is not null, the
+	 * placeholders in "msg" are replaced with the arguments. If there is an
+	 * exception (see {@link #getThrowable(String, Object[], Throwable)
+	 * getThrowable()}), its stack trace is appended on a new line.
+	 *
+	 * <p>If "msg" is null, the result is the stack trace of the exception, or
+	 * "null" if there is no exception.</p>
+	 *
+	 * @param delegate the log delegate that creates the stack trace string
+	 * @param msg the message or format string or null
+	 * @param args the arguments or null
+	 * @param tr the exception or null
+	 * @return the log message
+	 */
+	public static String buildMessage(LogDelegate delegate, String msg,
+			Object[] args, Throwable tr) {
+		if (msg == null)
+			return tr != null ? delegate.getStackTraceString(tr) : "null";
+		String result = format(msg, args);
+		tr = getThrowable(msg, args, tr);
+		if (tr == null)
+			return result;
+		return result + System.lineSeparator() +
+				delegate.getStackTraceString(tr);
+	}
+
+	/**
+	 * Replaces the placeholders in the format string with the specified
+	 * arguments. If "args" is null or empty, this method returns the format
+	 * string itself.
+	 *
+	 * @param format the format string
+	 * @param args the arguments or null
+	 * @return the formatted string
+	 */
+	public static String format(String format, Object[] args) {
+		if (args == null || args.length == 0)
+			return format;
+		StringBuilder builder = new StringBuilder(format.length() + 32);
+		format(builder, format, args);
+		return builder.toString();
+	}
+
+	/**
+	 * Replaces the placeholders in the format string with the specified
+	 * arguments and appends the result to a string builder. If "args" is
+	 * null, the format string is appended unchanged.
+	 *
+	 * @param builder the string builder
+	 * @param format the format string
+	 * @param args the arguments or null
+	 */
+	public static void format(StringBuilder builder, String format,
+			Object[] args) {
+		int start = 0;
+		if (args != null) {
+			for (Object arg : args) {
+				int index = format.indexOf("{}", start);
+				if (index == -1)
+					break;
+				builder.append(format, start, index);
+				builder.append(arg == null ? "null" : arg.toString());
+				start = index + 2;
+			}
+		}
+		builder.append(format, start, format.length());
+	}
+
+	/**
+	 * Returns the exception of a log message. If "tr" is not null, it
+	 * returns "tr". Otherwise, if the last argument is a {@link Throwable
+	 * Throwable} that is not used by a placeholder in the format string, it
+	 * returns that argument. Otherwise it returns null.
+	 *
+	 * @param format the format string or null
+	 * @param args the arguments or null
+	 * @param tr the exception or null
+	 * @return the exception or null
+	 */
+	public static Throwable getThrowable(String format, Object[] args,
+			Throwable tr) {
+		if (tr != null || format == null || args == null || args.length == 0)
+			return tr;
+		Object last = args[args.length - 1];
+		if (!(last instanceof Throwable))
+			return null;
+		int count = 0;
+		int index = format.indexOf("{}");
+		while (index != -1 && count < args.length) {
+			count++;
+			index = format.indexOf("{}", index + 2);
+		}
+		return count < args.length ? (Throwable)last : null;
+	}
+}
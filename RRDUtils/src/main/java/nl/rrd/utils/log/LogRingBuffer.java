@@ -0,0 +1,282 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.log;
+
+import java.io.PrintStream;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring buffer of log events with multiple producers and one consumer thread.
+ * The buffer is preallocated with a fixed number of reusable event slots. A
+ * producer claims a slot with a compare-and-set on the head sequence, fills
+ * it and then publishes it by writing the sequence number into the slot. So
+ * producers don't take a lock. The consumer thread reads the published slots
+ * in order and passes them to an {@link EventHandler EventHandler}. An
+ * event can contain a format string with unformatted arguments and an
+ * exception, so formatting can be done on the consumer thread.
+ *
+ * <p>If the buffer is full, the {@link AbstractLogDelegate.OverflowPolicy
+ * OverflowPolicy} determines what happens.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+class LogRingBuffer {
+	private static final int SAMPLE_THRESHOLD_DIVISOR = 4;
+
+	private final Event[] slots;
+	private final int mask;
+	private final AbstractLogDelegate.OverflowPolicy policy;
+	private final int sampleRate;
+	private final EventHandler handler;
+
+	// next sequence to claim by a producer
+	private final AtomicLong head = new AtomicLong();
+	// next sequence to read by the consumer
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicInteger activeProducers = new AtomicInteger();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong sampleCounter = new AtomicLong();
+	private volatile boolean closed = false;
+	private volatile boolean consumerWaiting = false;
+	private final Thread consumer;
+
+	/**
+	 * Constructs a new ring buffer and starts the consumer thread. The
+	 * capacity is rounded up to a power of two.
+	 *
+	 * @param capacity the number of event slots
+	 * @param policy the policy when the buffer is full
+	 * @param sampleRate if the policy is SAMPLE: the rate at which events are
+	 * accepted when the buffer is almost full
+	 * @param handler the handler that is called on the consumer thread
+	 */
+	public LogRingBuffer(int capacity,
+			AbstractLogDelegate.OverflowPolicy policy, int sampleRate,
+			EventHandler handler) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		slots = new Event[size];
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Event(i - size);
+		}
+		mask = size - 1;
+		this.policy = policy;
+		this.sampleRate = sampleRate;
+		this.handler = handler;
+		consumer = new Thread(this::runConsumer,
+				LogRingBuffer.class.getSimpleName());
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Returns the number of events that were dropped because the buffer was
+	 * full or because of sampling.
+	 *
+	 * @return the number of dropped events
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Publishes an event. If the buffer has been closed, or it's closed while
+	 * this method waits for a free slot, this method returns false and the
+	 * caller should write the event itself. If the event is
+	 * dropped because of the overflow policy, this method returns true.
+	 *
+	 * @param priority the log level
+	 * @param tag the message tag
+	 * @param time the time of the message
+	 * @param thread the name of the thread that logged the message
+	 * @param msg the message or format string
+	 * @param args the format arguments or null
+	 * @param tr an exception or null
+	 * @param extraTags extra tags or null
+	 * @return true if the event was published or dropped, false if the buffer
+	 * has been closed
+	 */
+	public boolean publish(int priority, String tag, ZonedDateTime time,
+			String thread, String msg, Object[] args, Throwable tr,
+			ExtraTags extraTags) {
+		activeProducers.incrementAndGet();
+		try {
+			if (closed)
+				return false;
+			long seq = claim(priority);
+			if (seq < 0 && closed) {
+				// the buffer was closed while waiting for a free slot
+				return false;
+			} else if (seq < 0) {
+				droppedCount.incrementAndGet();
+				return true;
+			}
+			Event event = slots[(int)(seq & mask)];
+			event.priority = priority;
+			event.tag = tag;
+			event.time = time;
+			event.thread = thread;
+			event.msg = msg;
+			event.args = args;
+			event.tr = tr;
+			event.extraTags = extraTags;
+			event.sequence = seq;
+			if (consumerWaiting)
+				LockSupport.unpark(consumer);
+			return true;
+		} finally {
+			activeProducers.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Claims the next slot. If the buffer is full, this method applies the
+	 * overflow policy. If the event should be dropped, it returns -1.
+	 *
+	 * @param priority the log level
+	 * @return the claimed sequence or -1
+	 */
+	private long claim(int priority) {
+		while (true) {
+			long next = head.get();
+			long used = next - tail.get();
+			if (used >= slots.length) {
+				if (policy != AbstractLogDelegate.OverflowPolicy.BLOCK ||
+						closed) {
+					return -1;
+				}
+				LockSupport.unpark(consumer);
+				LockSupport.parkNanos(10000);
+				continue;
+			}
+			if (policy == AbstractLogDelegate.OverflowPolicy.SAMPLE &&
+					priority < Logger.WARN &&
+					used >= slots.length - slots.length /
+					SAMPLE_THRESHOLD_DIVISOR &&
+					sampleCounter.getAndIncrement() % sampleRate != 0) {
+				return -1;
+			}
+			if (head.compareAndSet(next, next + 1))
+				return next;
+		}
+	}
+
+	/**
+	 * Closes the buffer. New events are rejected, and this method waits
+	 * until the consumer thread has handled all published events.
+	 */
+	public void close() {
+		closed = true;
+		LockSupport.unpark(consumer);
+		if (Thread.currentThread() == consumer)
+			return;
+		try {
+			consumer.join();
+		} catch (InterruptedException ex) {
+		}
+	}
+
+	private void runConsumer() {
+		long seq = tail.get();
+		while (true) {
+			Event event = slots[(int)(seq & mask)];
+			if (event.sequence == seq) {
+				try {
+					handler.handleEvent(event.priority, event.tag, event.time,
+							event.thread, event.msg, event.args, event.tr,
+							event.extraTags);
+				} catch (Throwable ex) {
+					// catch errors as well: if the consumer thread ended,
+					// producers with overflow policy BLOCK would wait forever
+					printError(ex);
+				}
+				event.tag = null;
+				event.time = null;
+				event.thread = null;
+				event.msg = null;
+				event.args = null;
+				event.tr = null;
+				event.extraTags = null;
+				seq++;
+				tail.set(seq);
+				continue;
+			}
+			if (closed && activeProducers.get() == 0 && seq == head.get())
+				return;
+			if (closed) {
+				Thread.onSpinWait();
+				continue;
+			}
+			consumerWaiting = true;
+			if (event.sequence != seq && !closed)
+				LockSupport.parkNanos(1000000);
+			consumerWaiting = false;
+		}
+	}
+
+	/**
+	 * Prints an unexpected error from the event handler to the default
+	 * standard error.
+	 *
+	 * @param error the error
+	 */
+	private void printError(Throwable error) {
+		PrintStream err = AbstractLogDelegate.getSystemStdErr();
+		if (err == null)
+			err = System.err;
+		try {
+			error.printStackTrace(err);
+		} catch (Throwable ex) {
+		}
+	}
+
+	/**
+	 * Handler of events on the consumer thread.
+	 */
+	public interface EventHandler {
+		void handleEvent(int priority, String tag, ZonedDateTime time,
+				String thread, String msg, Object[] args, Throwable tr,
+				ExtraTags extraTags);
+	}
+
+	private static class Event {
+		public volatile long sequence;
+		public int priority;
+		public String tag;
+		public ZonedDateTime time;
+		public String thread;
+		public String msg;
+		public Object[] args;
+		public Throwable tr;
+		public ExtraTags extraTags;
+
+		public Event(long sequence) {
+			this.sequence = sequence;
+		}
+	}
+}
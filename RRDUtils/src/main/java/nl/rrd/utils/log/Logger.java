@@ -189,6 +189,43 @@ public class Logger {
 		return delegate.println(priority, tag, msg);
 	}
 
+	/**
+	 * Writes a log message with SLF4J-style {} placeholders. The message may
+	 * be formatted later on another thread. See {@link
+	 * LogDelegate#printFormatted(int, String, String, Object[], Throwable)
+	 * LogDelegate.printFormatted()}.
+	 *
+	 * @param priority the log level
+	 * @param tag the tag
+	 * @param format the message or format string
+	 * @param args the arguments or null
+	 * @param tr an exception or null
+	 * @return 0 if no error occurred, an error code otherwise
+	 */
+	public static int printFormatted(int priority, String tag, String format,
+			Object[] args, Throwable tr) {
+		return delegate.printFormatted(priority, tag, format, args, tr);
+	}
+
+	/**
+	 * Writes a log message with SLF4J-style {} placeholders and extra tags.
+	 * See {@link LogDelegate#printFormatted(int, String, String, Object[],
+	 * Throwable, ExtraTags) LogDelegate.printFormatted()}.
+	 *
+	 * @param priority the log level
+	 * @param tag the tag
+	 * @param format the message or format string
+	 * @param args the arguments or null
+	 * @param tr an exception or null
+	 * @param extraTags the extra tags or null
+	 * @return 0 if no error occurred, an error code otherwise
+	 */
+	public static int printFormatted(int priority, String tag, String format,
+			Object[] args, Throwable tr, ExtraTags extraTags) {
+		return delegate.printFormatted(priority, tag, format, args, tr,
+				extraTags);
+	}
+
 	/**
 	 * Writes a message at level {@link #VERBOSE VERBOSE}.
 	 * 
@@ -23,6 +23,7 @@
 package nl.rrd.utils.log;
 
 import org.slf4j.Marker;
+import org.slf4j.event.Level;
 
 /**
  * This SLF4J logger forwards calls to the RRD {@link Logger Logger}. It
@@ -62,6 +63,14 @@ import org.slf4j.Marker;
  * <td>{@link Logger#ERROR ERROR}</td>
  * </tr></tbody>
  * </table></p>
+ *
+ * <p>Messages with {} placeholders are passed to {@link
+ * Logger#printFormatted(int, String, String, Object[], Throwable)
+ * Logger.printFormatted()} with the unformatted arguments, after the level
+ * check. So if the log delegate writes messages asynchronously, the
+ * formatting is done on the writer thread. As in SLF4J, if the last argument
+ * is a {@link Throwable Throwable} that is not used by a placeholder, its
+ * stack trace is logged.</p>
  * 
  * @author Dennis Hofs (RRD)
  */
@@ -83,6 +92,48 @@ public class Slf4jLogger implements org.slf4j.Logger {
 		return name;
 	}
 
+	/**
+	 * Writes a log message with extra tags. This is used by {@link
+	 * ExtraTagLogger ExtraTagLogger}, so a log delegate that writes
+	 * structured output can write the extra tags as separate fields. The
+	 * message is only written if the level is enabled.
+	 *
+	 * @param level the SLF4J level
+	 * @param format the message or format string
+	 * @param args the arguments or null
+	 * @param tr an exception or null
+	 * @param extraTags the extra tags or null
+	 */
+	public void log(Level level, String format, Object[] args, Throwable tr,
+			ExtraTags extraTags) {
+		int priority = toPriority(level);
+		if (Logger.isLoggable(name, priority)) {
+			Logger.printFormatted(priority, name, format, args, tr,
+					extraTags);
+		}
+	}
+
+	/**
+	 * Returns the RRD Logger level for the specified SLF4J level.
+	 *
+	 * @param level the SLF4J level
+	 * @return the RRD Logger level
+	 */
+	private static int toPriority(Level level) {
+		switch (level) {
+		case TRACE:
+			return Logger.VERBOSE;
+		case DEBUG:
+			return Logger.DEBUG;
+		case INFO:
+			return Logger.INFO;
+		case WARN:
+			return Logger.WARN;
+		default:
+			return Logger.ERROR;
+		}
+	}
+
 	@Override
 	public boolean isTraceEnabled() {
 		return Logger.isLoggable(name, Logger.VERBOSE);
@@ -95,20 +146,26 @@ public class Slf4jLogger implements org.slf4j.Logger {
 
 	@Override
 	public void trace(String format, Object arg) {
-		if (isTraceEnabled())
-			Logger.v(name, formatString(format, arg));
+		if (isTraceEnabled()) {
+			Logger.printFormatted(Logger.VERBOSE, name, format,
+					new Object[] { arg }, null);
+		}
 	}
 
 	@Override
 	public void trace(String format, Object arg1, Object arg2) {
-		if (isTraceEnabled())
-			Logger.v(name, formatString(format, arg1, arg2));
+		if (isTraceEnabled()) {
+			Logger.printFormatted(Logger.VERBOSE, name, format,
+					new Object[] { arg1, arg2 }, null);
+		}
 	}
 
 	@Override
 	public void trace(String format, Object... arguments) {
-		if (isTraceEnabled())
-			Logger.v(name, formatString(format, arguments));
+		if (isTraceEnabled()) {
+			Logger.printFormatted(Logger.VERBOSE, name, format,
+					arguments, null);
+		}
 	}
 
 	@Override
@@ -158,17 +215,26 @@ public class Slf4jLogger implements org.slf4j.Logger {
 
 	@Override
 	public void debug(String format, Object arg) {
-		Logger.d(name, formatString(format, arg));
+		if (isDebugEnabled()) {
+			Logger.printFormatted(Logger.DEBUG, name, format,
+					new Object[] { arg }, null);
+		}
 	}
 
 	@Override
 	public void debug(String format, Object arg1, Object arg2) {
-		Logger.d(name, formatString(format, arg1, arg2));
+		if (isDebugEnabled()) {
+			Logger.printFormatted(Logger.DEBUG, name, format,
+					new Object[] { arg1, arg2 }, null);
+		}
 	}
 
 	@Override
 	public void debug(String format, Object... arguments) {
-		Logger.d(name, formatString(format, arguments));
+		if (isDebugEnabled()) {
+			Logger.printFormatted(Logger.DEBUG, name, format,
+					arguments, null);
+		}
 	}
 
 	@Override
@@ -218,17 +284,26 @@ public class Slf4jLogger implements org.slf4j.Logger {
 
 	@Override
 	public void info(String format, Object arg) {
-		Logger.i(name, formatString(format, arg));
+		if (isInfoEnabled()) {
+			Logger.printFormatted(Logger.INFO, name, format,
+					new Object[] { arg }, null);
+		}
 	}
 
 	@Override
 	public void info(String format, Object arg1, Object arg2) {
-		Logger.i(name, formatString(format, arg1, arg2));
+		if (isInfoEnabled()) {
+			Logger.printFormatted(Logger.INFO, name, format,
+					new Object[] { arg1, arg2 }, null);
+		}
 	}
 
 	@Override
 	public void info(String format, Object... arguments) {
-		Logger.i(name, formatString(format, arguments));
+		if (isInfoEnabled()) {
+			Logger.printFormatted(Logger.INFO, name, format,
+					arguments, null);
+		}
 	}
 
 	@Override
@@ -278,17 +353,26 @@ public class Slf4jLogger implements org.slf4j.Logger {
 
 	@Override
 	public void warn(String format, Object arg) {
-		Logger.w(name, formatString(format, arg));
+		if (isWarnEnabled()) {
+			Logger.printFormatted(Logger.WARN, name, format,
+					new Object[] { arg }, null);
+		}
 	}
 
 	@Override
 	public void warn(String format, Object arg1, Object arg2) {
-		Logger.w(name, formatString(format, arg1, arg2));
+		if (isWarnEnabled()) {
+			Logger.printFormatted(Logger.WARN, name, format,
+					new Object[] { arg1, arg2 }, null);
+		}
 	}
 
 	@Override
 	public void warn(String format, Object... arguments) {
-		Logger.w(name, formatString(format, arguments));
+		if (isWarnEnabled()) {
+			Logger.printFormatted(Logger.WARN, name, format,
+					arguments, null);
+		}
 	}
 
 	@Override
@@ -338,17 +422,26 @@ public class Slf4jLogger implements org.slf4j.Logger {
 
 	@Override
 	public void error(String format, Object arg) {
-		Logger.e(name, formatString(format, arg));
+		if (isErrorEnabled()) {
+			Logger.printFormatted(Logger.ERROR, name, format,
+					new Object[] { arg }, null);
+		}
 	}
 
 	@Override
 	public void error(String format, Object arg1, Object arg2) {
-		Logger.e(name, formatString(format, arg1, arg2));
+		if (isErrorEnabled()) {
+			Logger.printFormatted(Logger.ERROR, name, format,
+					new Object[] { arg1, arg2 }, null);
+		}
 	}
 
 	@Override
 	public void error(String format, Object... arguments) {
-		Logger.e(name, formatString(format, arguments));
+		if (isErrorEnabled()) {
+			Logger.printFormatted(Logger.ERROR, name, format,
+					arguments, null);
+		}
 	}
 
 	@Override
@@ -385,70 +478,4 @@ public class Slf4jLogger implements org.slf4j.Logger {
 	public void error(Marker marker, String msg, Throwable t) {
 		error(msg, t);
 	}
-
-	/**
-	 * Replaces the first occurrence of {} (if any) with arg.
-	 * 
-	 * @param format the format string
-	 * @param arg the argument or null
-	 * @return the formatted string
-	 */
-	private String formatString(String format, Object arg) {
-		int index = format.indexOf("{}");
-		if (index == -1)
-			return format;
-		return format.substring(0, index) +
-				(arg == null ? "null" : arg.toString()) +
-				format.substring(index + 2);
-	}
-	
-	/**
-	 * Replaces the first and second occurrence of {} (if any) with arg1 and
-	 * arg2.
-	 * 
-	 * @param format the format string
-	 * @param arg1 the first argument or null
-	 * @param arg2 the second argument or null
-	 * @return the formatted string
-	 */
-	private String formatString(String format, Object arg1, Object arg2) {
-		StringBuilder builder = new StringBuilder();
-		int index = format.indexOf("{}");
-		if (index == -1)
-			return format;
-		builder.append(format.substring(0, index));
-		builder.append(arg1 == null ? "null" : arg1.toString());
-		int start = index + 2;
-		index = format.indexOf("{}", start);
-		if (index == -1) {
-			builder.append(format.substring(start));
-			return builder.toString();
-		}
-		builder.append(format.substring(start, index));
-		builder.append(arg2 == null ? "null" : arg2.toString());
-		builder.append(format.substring(index + 2));
-		return builder.toString();
-	}
-	
-	/**
-	 * Replaces occurrences of {} with the specified arguments.
-	 * 
-	 * @param format the format string
-	 * @param arguments the arguments (each argument may be null)
-	 * @return the formatted string
-	 */
-	private String formatString(String format, Object... arguments) {
-		StringBuilder builder = new StringBuilder();
-		int start = 0;
-		for (Object arg : arguments) {
-			int index = format.indexOf("{}", start);
-			if (index == -1)
-				break;
-			builder.append(format.substring(start, index));
-			builder.append(arg == null ? "null" : arg.toString());
-			start = index + 2;
-		}
-		builder.append(format.substring(start));
-		return builder.toString();
-	}
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nl.rrd.utils.schedule;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.rrd.utils.datetime.DateTimeUtils;
+
+/**
+ * Implementation of {@link TaskScheduler TaskScheduler} that keeps all
+ * scheduled task instances in one priority heap ordered by due time. Unlike
+ * {@link DefaultTaskScheduler DefaultTaskScheduler}, it does not create a
+ * {@link java.util.Timer Timer} (and thread) per task instance. Instead a
+ * single dispatcher thread waits until the first task in the heap is due and
+ * then hands it to a bounded pool of worker threads, which call {@link
+ * #onTriggerTask(Object, ScheduledTaskSpec) onTriggerTask()}.
+ *
+ * <p>Scheduling and cancelling a task instance take O(log n) time. The
+ * dispatcher thread only runs as long as there are scheduled task instances,
+ * and idle worker threads are stopped after a while.</p>
+ *
+ * <p>Just like {@link DefaultTaskScheduler DefaultTaskScheduler}, this is not
+ * a reliable way for task scheduling in Android, because Android devices may
+ * pause the CPU clock when they go to sleep.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public class HeapTaskScheduler extends TaskScheduler {
+	private final Object lock = new Object();
+	private final WorkerExecutor workers;
+	private Thread dispatcher = null;
+
+	// min-heap ordered by due time and then by insertion order
+	private Entry[] heap = new Entry[16];
+	private int heapSize = 0;
+	private long nextSeq = 0;
+
+	// map from task ID to heap entry
+	private Map<String,Entry> entryMap = new HashMap<>();
+
+	/**
+	 * Constructs a new scheduler with as many worker threads as there are
+	 * available processors.
+	 */
+	public HeapTaskScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a new scheduler with the specified maximum number of worker
+	 * threads.
+	 *
+	 * @param workerCount the maximum number of worker threads
+	 */
+	public HeapTaskScheduler(int workerCount) {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException(
+					"Invalid worker count: " + workerCount);
+		}
+		workers = WorkerExecutor.newBounded(
+				getClass().getSimpleName() + "-trigger", workerCount,
+				Integer.MAX_VALUE, WorkerExecutor.RejectionPolicy.DISCARD);
+	}
+
+	/**
+	 * Returns the number of task instances that are currently scheduled.
+	 *
+	 * @return the number of scheduled task instances
+	 */
+	public int getScheduledCount() {
+		synchronized (lock) {
+			return heapSize;
+		}
+	}
+
+	@Override
+	protected void scheduleTask(Object context, ScheduledTaskSpec taskSpec) {
+		ZonedDateTime time;
+		ScheduleParams scheduleParams = taskSpec.getScheduleParams();
+		if (scheduleParams.getLocalTime() != null) {
+			time = DateTimeUtils.localToUtcWithGapCorrection(
+					scheduleParams.getLocalTime(), ZoneId.systemDefault());
+		} else {
+			time = ZonedDateTime.ofInstant(Instant.ofEpochMilli(
+					scheduleParams.getUtcTime()), ZoneId.systemDefault());
+		}
+		synchronized (lock) {
+			Entry entry = entryMap.remove(taskSpec.getId());
+			if (entry != null)
+				removeAt(entry.index);
+			entry = new Entry(taskSpec, time.toInstant().toEpochMilli(),
+					nextSeq++);
+			entryMap.put(taskSpec.getId(), entry);
+			insert(entry);
+			if (dispatcher == null) {
+				dispatcher = new Thread(this::runDispatcher,
+						getClass().getSimpleName() + "-dispatcher");
+				dispatcher.start();
+			} else if (entry.index == 0) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	protected void cancelScheduledTask(Object context, String taskId) {
+		synchronized (lock) {
+			Entry entry = entryMap.remove(taskId);
+			if (entry == null)
+				return;
+			boolean first = entry.index == 0;
+			removeAt(entry.index);
+			if (first)
+				lock.notifyAll();
+		}
+	}
+
+	@Override
+	protected void runOnUiThread(Runnable runnable) {
+		runnable.run();
+	}
+
+	@Override
+	protected boolean canRunTaskOnMainThread() {
+		return false;
+	}
+
+	/**
+	 * Cancels all scheduled task instances and stops the worker threads. Task
+	 * runs that have already been handed to a worker thread are completed.
+	 * After this method the scheduler can no longer be used.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			for (int i = 0; i < heapSize; i++) {
+				heap[i] = null;
+			}
+			heapSize = 0;
+			entryMap.clear();
+			lock.notifyAll();
+		}
+		workers.shutdown();
+	}
+
+	/**
+	 * Runs the dispatcher thread. It waits until the first task instance in
+	 * the heap is due and then posts it to the worker pool. The thread exits
+	 * when the heap is empty.
+	 */
+	private void runDispatcher() {
+		while (true) {
+			final ScheduledTaskSpec taskSpec;
+			synchronized (lock) {
+				Entry first = null;
+				while (first == null) {
+					if (heapSize == 0) {
+						dispatcher = null;
+						return;
+					}
+					long wait = heap[0].time - System.currentTimeMillis();
+					if (wait <= 0) {
+						first = heap[0];
+					} else {
+						try {
+							lock.wait(wait);
+						} catch (InterruptedException ex) {
+							dispatcher = null;
+							return;
+						}
+					}
+				}
+				removeAt(0);
+				entryMap.remove(first.taskSpec.getId());
+				taskSpec = first.taskSpec;
+			}
+			workers.execute(() -> onTriggerTask(null, taskSpec));
+		}
+	}
+
+	private void insert(Entry entry) {
+		if (heapSize == heap.length)
+			heap = Arrays.copyOf(heap, heapSize * 2);
+		entry.index = heapSize;
+		heap[heapSize++] = entry;
+		siftUp(entry.index);
+	}
+
+	private void removeAt(int index) {
+		Entry removed = heap[index];
+		removed.index = -1;
+		heapSize--;
+		if (index == heapSize) {
+			heap[heapSize] = null;
+			return;
+		}
+		Entry last = heap[heapSize];
+		heap[heapSize] = null;
+		last.index = index;
+		heap[index] = last;
+		if (!siftUp(index))
+			siftDown(index);
+	}
+
+	/**
+	 * Moves the entry at the specified index up until the heap property is
+	 * restored.
+	 *
+	 * @param index the index
+	 * @return true if the entry was moved, false otherwise
+	 */
+	private boolean siftUp(int index) {
+		int start = index;
+		Entry entry = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			Entry parentEntry = heap[parent];
+			if (parentEntry.compareTo(entry) <= 0)
+				break;
+			parentEntry.index = index;
+			heap[index] = parentEntry;
+			index = parent;
+		}
+		entry.index = index;
+		heap[index] = entry;
+		return index != start;
+	}
+
+	private void siftDown(int index) {
+		Entry entry = heap[index];
+		int half = heapSize / 2;
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < heapSize && heap[right].compareTo(heap[child]) < 0)
+				child = right;
+			Entry childEntry = heap[child];
+			if (entry.compareTo(childEntry) <= 0)
+				break;
+			childEntry.index = index;
+			heap[index] = childEntry;
+			index = child;
+		}
+		entry.index = index;
+		heap[index] = entry;
+	}
+
+	private static class Entry implements Comparable<Entry> {
+		public ScheduledTaskSpec taskSpec;
+		public long time;
+		public long seq;
+		public int index = -1;
+
+		public Entry(ScheduledTaskSpec taskSpec, long time, long seq) {
+			this.taskSpec = taskSpec;
+			this.time = time;
+			this.seq = seq;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			int result = Long.compare(time, other.time);
+			if (result != 0)
+				return result;
+			return Long.compare(seq, other.seq);
+		}
+	}
+}
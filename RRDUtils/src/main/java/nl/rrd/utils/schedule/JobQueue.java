@@ -0,0 +1,251 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.schedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queue of pending jobs for {@link SerialJobRunner SerialJobRunner} and
+ * {@link PartitionedJobRunner PartitionedJobRunner}. The jobs are kept in a
+ * priority heap that is ordered by priority and then by posting order, so
+ * adding and removing a job takes O(log n) time. Jobs are also indexed by
+ * identity, so a pending job can be found without scanning the queue.
+ *
+ * <p>This class is not thread-safe. The job runners synchronize access.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+class JobQueue {
+	// max-heap ordered by priority and then by posting order
+	private JobDetails[] heap = new JobDetails[16];
+	private int size = 0;
+	private long nextSeq = 0;
+
+	// map from job to its pending instances (usually one)
+	private Map<Job,List<JobDetails>> index = new IdentityHashMap<>();
+
+	/**
+	 * Returns the number of pending jobs.
+	 *
+	 * @return the number of pending jobs
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns whether the queue is empty.
+	 *
+	 * @return true if the queue is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Adds a job to the queue. It will be polled after previously added jobs
+	 * with the same or higher priority, but before jobs with lower priority.
+	 *
+	 * @param job the job
+	 * @param priority the priority
+	 * @param listener the job listener or null
+	 * @return the job details
+	 */
+	public JobDetails add(Job job, int priority, JobListener listener) {
+		JobDetails details = new JobDetails(job, priority, listener,
+				nextSeq++);
+		insert(details);
+		index.computeIfAbsent(job, key -> new ArrayList<>(1)).add(details);
+		return details;
+	}
+
+	/**
+	 * Removes and returns the first job in the queue. If the queue is empty,
+	 * this method returns null.
+	 *
+	 * @return the first job or null
+	 */
+	public JobDetails poll() {
+		if (size == 0)
+			return null;
+		JobDetails first = heap[0];
+		removeFromIndex(first);
+		removeAt(0);
+		return first;
+	}
+
+	/**
+	 * Removes the first pending instance of the specified job from the queue.
+	 * If the job is not pending, this method returns null.
+	 *
+	 * @param job the job
+	 * @return the removed job details or null
+	 */
+	public JobDetails remove(Job job) {
+		List<JobDetails> instances = index.get(job);
+		if (instances == null)
+			return null;
+		JobDetails first = instances.get(0);
+		for (int i = 1; i < instances.size(); i++) {
+			JobDetails other = instances.get(i);
+			if (other.compareTo(first) < 0)
+				first = other;
+		}
+		removeFromIndex(first);
+		removeAt(first.index);
+		return first;
+	}
+
+	/**
+	 * Removes all jobs from the queue and returns them in the order in which
+	 * they would have been polled.
+	 *
+	 * @return the removed jobs
+	 */
+	public List<JobDetails> clear() {
+		List<JobDetails> result = toSortedList();
+		for (int i = 0; i < size; i++) {
+			heap[i] = null;
+		}
+		size = 0;
+		index.clear();
+		return result;
+	}
+
+	/**
+	 * Returns the pending jobs in the order in which they will be polled.
+	 *
+	 * @return the pending jobs
+	 */
+	public List<JobDetails> toSortedList() {
+		List<JobDetails> result = new ArrayList<>(
+				Arrays.asList(heap).subList(0, size));
+		Collections.sort(result);
+		return result;
+	}
+
+	private void removeFromIndex(JobDetails details) {
+		List<JobDetails> instances = index.get(details.job);
+		if (instances.size() == 1)
+			index.remove(details.job);
+		else
+			instances.remove(details);
+	}
+
+	private void insert(JobDetails details) {
+		if (size == heap.length)
+			heap = Arrays.copyOf(heap, size * 2);
+		details.index = size;
+		heap[size++] = details;
+		siftUp(details.index);
+	}
+
+	private void removeAt(int index) {
+		JobDetails removed = heap[index];
+		removed.index = -1;
+		size--;
+		if (index == size) {
+			heap[size] = null;
+			return;
+		}
+		JobDetails last = heap[size];
+		heap[size] = null;
+		last.index = index;
+		heap[index] = last;
+		if (!siftUp(index))
+			siftDown(index);
+	}
+
+	/**
+	 * Moves the job at the specified index up until the heap property is
+	 * restored.
+	 *
+	 * @param index the index
+	 * @return true if the job was moved, false otherwise
+	 */
+	private boolean siftUp(int index) {
+		int start = index;
+		JobDetails details = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			JobDetails parentDetails = heap[parent];
+			if (parentDetails.compareTo(details) <= 0)
+				break;
+			parentDetails.index = index;
+			heap[index] = parentDetails;
+			index = parent;
+		}
+		details.index = index;
+		heap[index] = details;
+		return index != start;
+	}
+
+	private void siftDown(int index) {
+		JobDetails details = heap[index];
+		int half = size / 2;
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < size && heap[right].compareTo(heap[child]) < 0)
+				child = right;
+			JobDetails childDetails = heap[child];
+			if (details.compareTo(childDetails) <= 0)
+				break;
+			childDetails.index = index;
+			heap[index] = childDetails;
+			index = child;
+		}
+		details.index = index;
+		heap[index] = details;
+	}
+
+	public static class JobDetails implements Comparable<JobDetails> {
+		public Job job;
+		public int priority;
+		public JobListener listener;
+		public long seq;
+		public int index = -1;
+		public long postTime;
+
+		public JobDetails(Job job, int priority, JobListener listener,
+				long seq) {
+			this.job = job;
+			this.priority = priority;
+			this.listener = listener;
+			this.seq = seq;
+			postTime = System.nanoTime();
+		}
+
+		@Override
+		public int compareTo(JobDetails other) {
+			int result = Integer.compare(other.priority, priority);
+			if (result != 0)
+				return result;
+			return Long.compare(seq, other.seq);
+		}
+	}
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nl.rrd.utils.schedule;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import nl.rrd.utils.AppComponents;
+import nl.rrd.utils.datetime.DateTimeUtils;
+import nl.rrd.utils.exception.ParseException;
+import nl.rrd.utils.json.JsonMapper;
+
+/**
+ * Implementation of {@link ScheduledTaskStore ScheduledTaskStore} that writes
+ * an append-only journal file. Each line in the file is a record that adds
+ * or replaces a task instance ("+" followed by the JSON code of the {@link
+ * ScheduledTaskSpec ScheduledTaskSpec}) or that removes a task instance ("-"
+ * followed by the task ID).
+ *
+ * <p>When the store is opened, it reads the journal once and only keeps a
+ * small index in memory with the task ID, due time and file position of each
+ * task instance. The full task instances are read from the file when they are
+ * requested with {@link #readDueBefore(long) readDueBefore()}. If the last
+ * record in the file is incomplete because the application crashed while
+ * writing it, the record is discarded.</p>
+ *
+ * <p>Records are buffered in memory and written and synced to disk in
+ * batches: when the number of buffered records reaches a maximum, when the
+ * time since the last sync exceeds a maximum (checked on every write), or
+ * when you call {@link #flush() flush()} or {@link #close() close()}. This
+ * means that a crash may lose the most recent records.</p>
+ *
+ * <p>Records that are overwritten or removed remain in the journal until it
+ * is compacted. This happens automatically when the number of obsolete
+ * records exceeds the number of live task instances (with a minimum of
+ * {@link #COMPACT_MIN_GARBAGE COMPACT_MIN_GARBAGE}). The compacted journal is
+ * written to a temporary file that then replaces the journal atomically.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public class JournalScheduledTaskStore implements ScheduledTaskStore {
+	public static final String LOGTAG =
+			JournalScheduledTaskStore.class.getSimpleName();
+
+	public static final int DEFAULT_SYNC_BATCH_SIZE = 100;
+	public static final long DEFAULT_SYNC_INTERVAL = 1000;
+	public static final int COMPACT_MIN_GARBAGE = 1000;
+
+	private static final byte RECORD_PUT = '+';
+	private static final byte RECORD_REMOVE = '-';
+
+	private final Object lock = new Object();
+	private final File file;
+	private final int syncBatchSize;
+	private final long syncInterval;
+
+	private FileChannel channel;
+	private long fileSize;
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private int pendingRecords = 0;
+	private long lastSyncTime;
+	private int garbageCount = 0;
+
+	// map from task ID to index entry
+	private Map<String,IndexEntry> indexMap = new HashMap<>();
+
+	// index entries ordered by due time
+	private TreeSet<IndexEntry> dueIndex = new TreeSet<>();
+
+	/**
+	 * Opens a journal with the default sync batch size and sync interval. If
+	 * the file does not exist, it will be created.
+	 *
+	 * @param file the journal file
+	 * @throws IOException if a reading or writing error occurs
+	 */
+	public JournalScheduledTaskStore(File file) throws IOException {
+		this(file, DEFAULT_SYNC_BATCH_SIZE, DEFAULT_SYNC_INTERVAL);
+	}
+
+	/**
+	 * Opens a journal. If the file does not exist, it will be created.
+	 *
+	 * @param file the journal file
+	 * @param syncBatchSize the maximum number of records that are buffered
+	 * before they are written and synced to disk. Specify 1 to sync every
+	 * record.
+	 * @param syncInterval the maximum time in milliseconds since the last
+	 * sync. When this time has passed, the next record is synced immediately.
+	 * @throws IOException if a reading or writing error occurs
+	 */
+	public JournalScheduledTaskStore(File file, int syncBatchSize,
+			long syncInterval) throws IOException {
+		if (syncBatchSize < 1) {
+			throw new IllegalArgumentException(
+					"Invalid sync batch size: " + syncBatchSize);
+		}
+		this.file = file;
+		this.syncBatchSize = syncBatchSize;
+		this.syncInterval = syncInterval;
+		long validSize = readJournal();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (channel.size() > validSize) {
+			Logger logger = AppComponents.getLogger(LOGTAG);
+			logger.warn("Discard incomplete record at end of journal " +
+					file.getAbsolutePath());
+			channel.truncate(validSize);
+			channel.force(true);
+		}
+		fileSize = validSize;
+		channel.position(fileSize);
+		lastSyncTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Reads the journal file and builds the index. It returns the size of the
+	 * valid part of the file. If the last record is incomplete, it is not
+	 * included.
+	 *
+	 * @return the size of the valid part of the file
+	 * @throws IOException if a reading error occurs
+	 */
+	private long readJournal() throws IOException {
+		if (!file.exists())
+			return 0;
+		Logger logger = AppComponents.getLogger(LOGTAG);
+		long offset = 0;
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		try (InputStream input = new BufferedInputStream(
+				new FileInputStream(file))) {
+			int b;
+			while ((b = input.read()) != -1) {
+				if (b != '\n') {
+					line.write(b);
+					continue;
+				}
+				byte[] record = line.toByteArray();
+				line.reset();
+				try {
+					readRecord(record, offset);
+				} catch (ParseException ex) {
+					logger.error("Skip invalid record at position " + offset +
+							" in journal " + file.getAbsolutePath() + ": " +
+							ex.getMessage());
+					garbageCount++;
+				}
+				offset += record.length + 1;
+			}
+		}
+		return offset;
+	}
+
+	private void readRecord(byte[] record, long offset) throws ParseException {
+		if (record.length == 0)
+			throw new ParseException("Empty record");
+		String data = new String(record, 1, record.length - 1,
+				StandardCharsets.UTF_8);
+		if (record[0] == RECORD_PUT) {
+			ScheduledTaskSpec taskSpec = JsonMapper.parse(data,
+					ScheduledTaskSpec.class);
+			if (indexPut(taskSpec, offset, record.length))
+				garbageCount++;
+		} else if (record[0] == RECORD_REMOVE) {
+			// the remove record itself is garbage as well
+			garbageCount++;
+			if (indexRemove(data))
+				garbageCount++;
+		} else {
+			throw new ParseException("Unknown record type: " + (char)record[0]);
+		}
+	}
+
+	/**
+	 * Adds an index entry.
+	 *
+	 * @param taskSpec the task instance
+	 * @param offset the position of the record in the file
+	 * @param length the length of the record, excluding the new line
+	 * @return true if an existing entry was replaced, false otherwise
+	 */
+	private boolean indexPut(ScheduledTaskSpec taskSpec, long offset,
+			int length) {
+		boolean replaced = indexRemove(taskSpec.getId());
+		IndexEntry entry = new IndexEntry(taskSpec.getId(),
+				getDueTime(taskSpec), offset, length);
+		indexMap.put(entry.taskId, entry);
+		dueIndex.add(entry);
+		return replaced;
+	}
+
+	/**
+	 * Removes an index entry.
+	 *
+	 * @param taskId the task ID
+	 * @return true if an entry was removed, false otherwise
+	 */
+	private boolean indexRemove(String taskId) {
+		IndexEntry entry = indexMap.remove(taskId);
+		if (entry == null)
+			return false;
+		dueIndex.remove(entry);
+		return true;
+	}
+
+	/**
+	 * Returns the due time of the specified task instance as a unix time in
+	 * milliseconds. A local time is converted with the system default time
+	 * zone.
+	 *
+	 * @param taskSpec the task instance
+	 * @return the due time
+	 */
+	public static long getDueTime(ScheduledTaskSpec taskSpec) {
+		ScheduleParams scheduleParams = taskSpec.getScheduleParams();
+		if (scheduleParams.getLocalTime() != null) {
+			return DateTimeUtils.localToUtcWithGapCorrection(
+					scheduleParams.getLocalTime(), ZoneId.systemDefault())
+					.toInstant().toEpochMilli();
+		} else {
+			return scheduleParams.getUtcTime();
+		}
+	}
+
+	@Override
+	public void put(ScheduledTaskSpec taskSpec) throws IOException {
+		byte[] json = JsonMapper.generate(taskSpec).getBytes(
+				StandardCharsets.UTF_8);
+		synchronized (lock) {
+			long offset = fileSize + pending.size();
+			pending.write(RECORD_PUT);
+			pending.write(json);
+			pending.write('\n');
+			if (indexPut(taskSpec, offset, json.length + 1))
+				garbageCount++;
+			onRecordWritten();
+			compactIfNeeded();
+		}
+	}
+
+	@Override
+	public void remove(String taskId) throws IOException {
+		synchronized (lock) {
+			if (!indexRemove(taskId))
+				return;
+			pending.write(RECORD_REMOVE);
+			pending.write(taskId.getBytes(StandardCharsets.UTF_8));
+			pending.write('\n');
+			garbageCount += 2;
+			onRecordWritten();
+			compactIfNeeded();
+		}
+	}
+
+	/**
+	 * Compacts the journal if there are at least {@link
+	 * #COMPACT_MIN_GARBAGE COMPACT_MIN_GARBAGE} garbage records and more
+	 * garbage records than live records. This should be called with the lock
+	 * after a record was written. Replacing a task instance with {@link
+	 * #put(ScheduledTaskSpec) put()} creates garbage as well, so repeating
+	 * tasks don't make the journal grow without bound.
+	 *
+	 * @throws IOException if a reading or writing error occurs
+	 */
+	private void compactIfNeeded() throws IOException {
+		if (garbageCount >= COMPACT_MIN_GARBAGE &&
+				garbageCount > indexMap.size()) {
+			compact();
+		}
+	}
+
+	private void onRecordWritten() throws IOException {
+		pendingRecords++;
+		if (pendingRecords >= syncBatchSize ||
+				System.currentTimeMillis() - lastSyncTime >= syncInterval) {
+			flush();
+		}
+	}
+
+	@Override
+	public int size() {
+		synchronized (lock) {
+			return indexMap.size();
+		}
+	}
+
+	@Override
+	public List<ScheduledTaskSpec> readDueBefore(long until)
+			throws IOException {
+		synchronized (lock) {
+			writePending();
+			List<ScheduledTaskSpec> result = new ArrayList<>();
+			for (IndexEntry entry : dueIndex) {
+				if (entry.dueTime >= until)
+					break;
+				byte[] record = readRecordAt(entry);
+				String json = new String(record, 1, record.length - 1,
+						StandardCharsets.UTF_8);
+				try {
+					result.add(JsonMapper.parse(json,
+							ScheduledTaskSpec.class));
+				} catch (ParseException ex) {
+					throw new IOException("Invalid record at position " +
+							entry.offset + " in journal " +
+							file.getAbsolutePath() + ": " + ex.getMessage(),
+							ex);
+				}
+			}
+			return result;
+		}
+	}
+
+	@Override
+	public Long getNextDueTime(long from) {
+		synchronized (lock) {
+			IndexEntry entry = dueIndex.ceiling(new IndexEntry("", from, 0, 0));
+			return entry == null ? null : entry.dueTime;
+		}
+	}
+
+	private byte[] readRecordAt(IndexEntry entry) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+		long position = entry.offset;
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0) {
+				throw new IOException("Unexpected end of journal " +
+						file.getAbsolutePath());
+			}
+			position += n;
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Writes the pending records to the file channel without syncing.
+	 *
+	 * @throws IOException if a writing error occurs
+	 */
+	private void writePending() throws IOException {
+		if (pending.size() == 0)
+			return;
+		ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		fileSize += pending.size();
+		pending.reset();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		synchronized (lock) {
+			writePending();
+			if (pendingRecords > 0)
+				channel.force(false);
+			pendingRecords = 0;
+			lastSyncTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Rewrites the journal so it only contains the records of the current
+	 * task instances. The new journal is written to a temporary file that
+	 * then replaces the current journal. The current journal stays open until
+	 * it has been replaced, so if this method fails, the store can still be
+	 * used.
+	 *
+	 * @throws IOException if a reading or writing error occurs
+	 */
+	public void compact() throws IOException {
+		synchronized (lock) {
+			flush();
+			File tempFile = new File(file.getAbsolutePath() + ".tmp");
+			List<IndexEntry> entries = new ArrayList<>(dueIndex);
+			long[] offsets = new long[entries.size()];
+			long offset = 0;
+			// the channel on the temporary file becomes the journal channel
+			// after the move
+			FileChannel tempChannel = FileChannel.open(tempFile.toPath(),
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				for (int i = 0; i < entries.size(); i++) {
+					IndexEntry entry = entries.get(i);
+					ByteBuffer buffer = ByteBuffer.allocate(entry.length + 1);
+					buffer.put(readRecordAt(entry));
+					buffer.put((byte)'\n');
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						tempChannel.write(buffer);
+					}
+					offsets[i] = offset;
+					offset += entry.length + 1;
+				}
+				tempChannel.force(true);
+				Files.move(tempFile.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException ex) {
+				tempChannel.close();
+				Files.deleteIfExists(tempFile.toPath());
+				throw ex;
+			}
+			FileChannel oldChannel = channel;
+			channel = tempChannel;
+			channel.position(offset);
+			oldChannel.close();
+			fileSize = offset;
+			for (int i = 0; i < entries.size(); i++) {
+				entries.get(i).offset = offsets[i];
+			}
+			garbageCount = 0;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			flush();
+			channel.close();
+		}
+	}
+
+	private static class IndexEntry implements Comparable<IndexEntry> {
+		public String taskId;
+		public long dueTime;
+		public long offset;
+
+		// length of the record excluding the new line
+		public int length;
+
+		public IndexEntry(String taskId, long dueTime, long offset,
+				int length) {
+			this.taskId = taskId;
+			this.dueTime = dueTime;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int compareTo(IndexEntry other) {
+			int result = Long.compare(dueTime, other.dueTime);
+			if (result != 0)
+				return result;
+			return taskId.compareTo(other.taskId);
+		}
+	}
+}
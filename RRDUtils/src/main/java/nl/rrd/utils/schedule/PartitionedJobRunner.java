@@ -0,0 +1,566 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nl.rrd.utils.schedule;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.rrd.utils.AppComponents;
+import nl.rrd.utils.schedule.JobQueue.JobDetails;
+
+/**
+ * This class can be used to run jobs on a fixed number of worker threads,
+ * while jobs with the same key are still run sequentially. Each job is posted
+ * with a key. The key is mapped to one of the partitions, and each partition
+ * runs its jobs just like a {@link SerialJobRunner SerialJobRunner}: a job is
+ * only started after any previous job in the partition has been completed
+ * (including notification of the listener) or the previous job has been
+ * cancelled. Jobs with different keys may end up in the same partition, but
+ * jobs with the same key always do.
+ *
+ * <p>Within a partition, jobs are ordered by priority and then by posting
+ * order. Each partition has its own thread, which only runs as long as there
+ * are jobs in the partition. Listeners are notified of cancelled jobs on one
+ * shared notification thread. If a job throws an exception, it's logged and
+ * the listener is not notified. The partition then continues with the next
+ * job.</p>
+ *
+ * <p>You can monitor the partitions with {@link #getPartitionStats()
+ * getPartitionStats()}, which returns the queue depth and the wait times and
+ * run times of the jobs per partition.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public class PartitionedJobRunner {
+	private final String logtag;
+	private final Partition[] partitions;
+	private final WorkerExecutor notifyExecutor;
+
+	/**
+	 * Constructs a new runner with as many partitions as there are available
+	 * processors.
+	 */
+	public PartitionedJobRunner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a new runner with the specified number of partitions. This
+	 * is the maximum number of jobs that can run in parallel.
+	 *
+	 * @param partitionCount the number of partitions
+	 */
+	public PartitionedJobRunner(int partitionCount) {
+		if (partitionCount < 1) {
+			throw new IllegalArgumentException(
+					"Invalid partition count: " + partitionCount);
+		}
+		logtag = getClass().getSimpleName();
+		partitions = new Partition[partitionCount];
+		for (int i = 0; i < partitionCount; i++) {
+			partitions[i] = new Partition(i);
+		}
+		notifyExecutor = WorkerExecutor.newBounded(logtag + "-notify", 1,
+				Integer.MAX_VALUE, WorkerExecutor.RejectionPolicy.ABORT);
+	}
+
+	/**
+	 * Returns the number of partitions.
+	 *
+	 * @return the number of partitions
+	 */
+	public int getPartitionCount() {
+		return partitions.length;
+	}
+
+	/**
+	 * Returns the index of the partition where jobs with the specified key
+	 * are run.
+	 *
+	 * @param key the key (can be null)
+	 * @return the partition index
+	 */
+	public int getPartition(Object key) {
+		if (key == null)
+			return 0;
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return Math.floorMod(hash, partitions.length);
+	}
+
+	/**
+	 * Returns all jobs that have been posted and have not yet been completed.
+	 * This includes the current jobs and pending jobs. The jobs are returned
+	 * per partition.
+	 *
+	 * @return the jobs
+	 */
+	public List<Job> getJobs() {
+		List<Job> result = new ArrayList<>();
+		for (Partition partition : partitions) {
+			synchronized (partition.lock) {
+				if (partition.currentJob != null)
+					result.add(partition.currentJob.job);
+				for (JobDetails job : partition.pendingJobs.toSortedList()) {
+					result.add(job.job);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Posts a job with priority {@link SerialJobRunner#PRIORITY_MEDIUM
+	 * PRIORITY_MEDIUM}.
+	 *
+	 * @param key the key that determines the partition (can be null)
+	 * @param job the job
+	 * @param listener the job listener or null
+	 */
+	public void postJob(Object key, Job job, JobListener listener) {
+		postJob(key, job, SerialJobRunner.PRIORITY_MEDIUM, listener);
+	}
+
+	/**
+	 * Posts a job that will be run after previously posted jobs in the same
+	 * partition with the same or higher priority, but before posted jobs in
+	 * the same partition with lower priority.
+	 *
+	 * <p>You may use one of the PRIORITY_* constants defined in {@link
+	 * SerialJobRunner SerialJobRunner}. A higher number indicates a higher
+	 * priority.</p>
+	 *
+	 * @param key the key that determines the partition (can be null)
+	 * @param job the job
+	 * @param priority the priority
+	 * @param listener the job listener or null
+	 */
+	public void postJob(Object key, Job job, int priority,
+			JobListener listener) {
+		Partition partition = partitions[getPartition(key)];
+		synchronized (partition.lock) {
+			partition.pendingJobs.add(job, priority, listener);
+			if (partition.thread == null)
+				startThread(partition);
+		}
+	}
+
+	/**
+	 * Starts the thread of the specified partition. This should be called
+	 * with the lock of the partition.
+	 *
+	 * @param partition the partition
+	 */
+	private void startThread(Partition partition) {
+		partition.thread = new Thread(() -> runThread(partition),
+				logtag + "-" + partition.index);
+		partition.thread.start();
+	}
+
+	/**
+	 * Cancels all running and pending jobs.
+	 */
+	public void cancelJobs() {
+		List<JobDetails> cancelledJobs = new ArrayList<>();
+		for (Partition partition : partitions) {
+			synchronized (partition.lock) {
+				if (partition.currentJob != null) {
+					JobDetails details = partition.currentJob;
+					partition.currentJob = null;
+					details.job.cancel();
+					cancelledJobs.add(details);
+					partition.cancelledCount++;
+				}
+				for (JobDetails details : partition.pendingJobs.clear()) {
+					details.job.cancel();
+					cancelledJobs.add(details);
+					partition.cancelledCount++;
+				}
+			}
+		}
+		notifyJobsCancelled(cancelledJobs);
+	}
+
+	/**
+	 * Cancels the specified jobs.
+	 *
+	 * @param jobs the jobs
+	 */
+	public void cancelJobs(Job... jobs) {
+		cancelJobs(Arrays.asList(jobs));
+	}
+
+	/**
+	 * Cancels the specified jobs.
+	 *
+	 * @param jobs the jobs
+	 */
+	public void cancelJobs(List<? extends Job> jobs) {
+		List<JobDetails> cancelledJobs = new ArrayList<>();
+		for (Job job : jobs) {
+			for (Partition partition : partitions) {
+				synchronized (partition.lock) {
+					JobDetails details = partition.pendingJobs.remove(job);
+					if (details != null) {
+						details.job.cancel();
+						cancelledJobs.add(details);
+						partition.cancelledCount++;
+					}
+					if (partition.currentJob != null &&
+							partition.currentJob.job == job) {
+						details = partition.currentJob;
+						partition.currentJob = null;
+						job.cancel();
+						cancelledJobs.add(details);
+						partition.cancelledCount++;
+					}
+				}
+			}
+		}
+		notifyJobsCancelled(cancelledJobs);
+	}
+
+	/**
+	 * Returns statistics for each partition.
+	 *
+	 * @return the statistics per partition
+	 */
+	public List<PartitionStats> getPartitionStats() {
+		List<PartitionStats> result = new ArrayList<>();
+		for (Partition partition : partitions) {
+			synchronized (partition.lock) {
+				result.add(new PartitionStats(partition));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Resets the counters and times in the statistics of all partitions. The
+	 * queue depth is not affected.
+	 */
+	public void resetPartitionStats() {
+		for (Partition partition : partitions) {
+			synchronized (partition.lock) {
+				partition.completedCount = 0;
+				partition.failedCount = 0;
+				partition.cancelledCount = 0;
+				partition.totalWaitTime = 0;
+				partition.maxWaitTime = 0;
+				partition.totalRunTime = 0;
+				partition.maxRunTime = 0;
+			}
+		}
+	}
+
+	/**
+	 * Posts the specified runnable to be run on the notify thread. In Android
+	 * it will run on the UI thread. This method does not wait until the
+	 * runnable is completed.
+	 *
+	 * @param runnable the runnable
+	 */
+	protected void postOnNotifyThread(Runnable runnable) {
+		runnable.run();
+	}
+
+	/**
+	 * Runs the specified runnable on the notify thread and waits until it is
+	 * completed. In Android it will run on the UI thread. This method should
+	 * always be called from a worker thread to avoid a deadlock.
+	 *
+	 * @param runnable the runnable
+	 */
+	protected void runOnNotifyThread(Runnable runnable) {
+		runnable.run();
+	}
+
+	private void notifyJobCompleted(JobDetails job) {
+		if (job.listener != null)
+			job.listener.jobCompleted(job.job);
+	}
+
+	private void notifyJobsCancelled(final List<JobDetails> jobs) {
+		if (jobs.isEmpty())
+			return;
+		notifyExecutor.execute(() -> postOnNotifyThread(() -> {
+			for (JobDetails job : jobs) {
+				if (job.listener != null)
+					job.listener.jobCancelled(job.job);
+			}
+		}));
+	}
+
+	private void runThread(Partition partition) {
+		while (true) {
+			final JobDetails job;
+			long startTime;
+			synchronized (partition.lock) {
+				if (partition.pendingJobs.isEmpty()) {
+					partition.thread = null;
+					return;
+				}
+				job = partition.pendingJobs.poll();
+				partition.currentJob = job;
+				startTime = System.nanoTime();
+			}
+			boolean failed = false;
+			Error error = null;
+			try {
+				job.job.run();
+			} catch (RuntimeException ex) {
+				failed = true;
+				Logger logger = AppComponents.getLogger(logtag);
+				logger.error("UNEXPECTED ERROR: " + ex.getMessage(), ex);
+			} catch (Error ex) {
+				failed = true;
+				error = ex;
+			}
+			long waitTime = (startTime - job.postTime) / 1000000;
+			long runTime = (System.nanoTime() - startTime) / 1000000;
+			synchronized (partition.lock) {
+				// a job that was cancelled while running has already been
+				// counted by cancelJobs()
+				if (partition.currentJob == job && failed) {
+					partition.failedCount++;
+					// a failed job is not reported as completed
+					partition.currentJob = null;
+				} else if (partition.currentJob == job) {
+					partition.completedCount++;
+					partition.totalWaitTime += waitTime;
+					if (waitTime > partition.maxWaitTime)
+						partition.maxWaitTime = waitTime;
+					partition.totalRunTime += runTime;
+					if (runTime > partition.maxRunTime)
+						partition.maxRunTime = runTime;
+				}
+				if (error != null) {
+					// this thread ends with the error, so start a new thread
+					// for the pending jobs
+					partition.thread = null;
+					if (!partition.pendingJobs.isEmpty())
+						startThread(partition);
+				}
+			}
+			if (error != null)
+				throw error;
+			if (failed)
+				continue;
+			try {
+				runOnNotifyThread(() -> finishCompletedJob(partition, job));
+			} catch (RuntimeException ex) {
+				// keep the partition running if a listener fails
+				Logger logger = AppComponents.getLogger(logtag);
+				logger.error("UNEXPECTED ERROR in job listener: " +
+						ex.getMessage(), ex);
+			}
+		}
+	}
+
+	private void finishCompletedJob(Partition partition, JobDetails job) {
+		boolean notify = false;
+		synchronized (partition.lock) {
+			if (partition.currentJob == job) {
+				notify = true;
+				partition.currentJob = null;
+			}
+		}
+		if (notify)
+			notifyJobCompleted(job);
+	}
+
+	private static class Partition {
+		public final Object lock = new Object();
+		public final int index;
+		public Thread thread = null;
+		public JobQueue pendingJobs = new JobQueue();
+		public JobDetails currentJob = null;
+
+		public long completedCount = 0;
+		public long failedCount = 0;
+		public long cancelledCount = 0;
+		public long totalWaitTime = 0;
+		public long maxWaitTime = 0;
+		public long totalRunTime = 0;
+		public long maxRunTime = 0;
+
+		public Partition(int index) {
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Statistics of one partition of a {@link PartitionedJobRunner
+	 * PartitionedJobRunner}. The wait time of a job is the time between
+	 * posting the job and starting it. The run time is the time that the
+	 * {@link Job#run() run()} method took. Only jobs that were run to completion
+	 * are included in the times. Jobs that failed or were cancelled are
+	 * counted separately. All times are in milliseconds.
+	 */
+	public static class PartitionStats {
+		private int partition;
+		private int queueDepth;
+		private boolean running;
+		private long completedCount;
+		private long failedCount;
+		private long cancelledCount;
+		private long totalWaitTime;
+		private long maxWaitTime;
+		private long totalRunTime;
+		private long maxRunTime;
+
+		private PartitionStats(Partition partition) {
+			this.partition = partition.index;
+			queueDepth = partition.pendingJobs.size();
+			running = partition.currentJob != null;
+			completedCount = partition.completedCount;
+			failedCount = partition.failedCount;
+			cancelledCount = partition.cancelledCount;
+			totalWaitTime = partition.totalWaitTime;
+			maxWaitTime = partition.maxWaitTime;
+			totalRunTime = partition.totalRunTime;
+			maxRunTime = partition.maxRunTime;
+		}
+
+		/**
+		 * Returns the partition index.
+		 *
+		 * @return the partition index
+		 */
+		public int getPartition() {
+			return partition;
+		}
+
+		/**
+		 * Returns the number of pending jobs in the partition. This does not
+		 * include the current job.
+		 *
+		 * @return the number of pending jobs
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * Returns whether a job is currently running in the partition.
+		 *
+		 * @return true if a job is running, false otherwise
+		 */
+		public boolean isRunning() {
+			return running;
+		}
+
+		/**
+		 * Returns the number of jobs that were run to completion. This does
+		 * not include jobs that failed or were cancelled.
+		 *
+		 * @return the number of completed jobs
+		 */
+		public long getCompletedCount() {
+			return completedCount;
+		}
+
+		/**
+		 * Returns the number of jobs whose {@link Job#run() run()} method
+		 * threw an exception. Jobs that were cancelled while running are not
+		 * included.
+		 *
+		 * @return the number of failed jobs
+		 */
+		public long getFailedCount() {
+			return failedCount;
+		}
+
+		/**
+		 * Returns the number of jobs that were cancelled, either while they
+		 * were pending or while they were running.
+		 *
+		 * @return the number of cancelled jobs
+		 */
+		public long getCancelledCount() {
+			return cancelledCount;
+		}
+
+		/**
+		 * Returns the total wait time of the completed jobs.
+		 *
+		 * @return the total wait time in milliseconds
+		 */
+		public long getTotalWaitTime() {
+			return totalWaitTime;
+		}
+
+		/**
+		 * Returns the maximum wait time of a completed job.
+		 *
+		 * @return the maximum wait time in milliseconds
+		 */
+		public long getMaxWaitTime() {
+			return maxWaitTime;
+		}
+
+		/**
+		 * Returns the average wait time of the completed jobs. If no jobs
+		 * were completed, this method returns 0.
+		 *
+		 * @return the average wait time in milliseconds
+		 */
+		public double getAverageWaitTime() {
+			if (completedCount == 0)
+				return 0;
+			return (double)totalWaitTime / completedCount;
+		}
+
+		/**
+		 * Returns the total run time of the completed jobs.
+		 *
+		 * @return the total run time in milliseconds
+		 */
+		public long getTotalRunTime() {
+			return totalRunTime;
+		}
+
+		/**
+		 * Returns the maximum run time of a completed job.
+		 *
+		 * @return the maximum run time in milliseconds
+		 */
+		public long getMaxRunTime() {
+			return maxRunTime;
+		}
+
+		/**
+		 * Returns the average run time of the completed jobs. If no jobs were
+		 * completed, this method returns 0.
+		 *
+		 * @return the average run time in milliseconds
+		 */
+		public double getAverageRunTime() {
+			if (completedCount == 0)
+				return 0;
+			return (double)totalRunTime / completedCount;
+		}
+	}
+}
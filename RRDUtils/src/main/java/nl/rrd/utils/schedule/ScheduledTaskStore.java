@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nl.rrd.utils.schedule;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A durable store of {@link ScheduledTaskSpec ScheduledTaskSpec}s. If you set
+ * a store in the {@link TaskScheduler TaskScheduler} with {@link
+ * TaskScheduler#setTaskStore(ScheduledTaskStore) setTaskStore()}, it will
+ * save every scheduled task instance and remove it when the instance is
+ * triggered or cancelled. After a restart you can restore the tasks with
+ * {@link TaskScheduler#restoreScheduledTasks(Object, long)
+ * restoreScheduledTasks()}.
+ *
+ * <p>The store should be able to return the task instances that are due
+ * before a specified time without loading all other instances in memory. See
+ * {@link JournalScheduledTaskStore JournalScheduledTaskStore} for a
+ * file-based implementation.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public interface ScheduledTaskStore {
+
+	/**
+	 * Saves a task instance. If the store already contains an instance with
+	 * the same task ID, it will be replaced.
+	 *
+	 * @param taskSpec the task instance
+	 * @throws IOException if a writing error occurs
+	 */
+	void put(ScheduledTaskSpec taskSpec) throws IOException;
+
+	/**
+	 * Removes the task instance with the specified task ID. If the store does
+	 * not contain such an instance, this method has no effect.
+	 *
+	 * @param taskId the task ID
+	 * @throws IOException if a writing error occurs
+	 */
+	void remove(String taskId) throws IOException;
+
+	/**
+	 * Returns the number of task instances in the store.
+	 *
+	 * @return the number of task instances
+	 */
+	int size();
+
+	/**
+	 * Reads the task instances that are due before the specified time. They
+	 * are returned in order of due time.
+	 *
+	 * @param until the unix time in milliseconds (exclusive)
+	 * @return the task instances
+	 * @throws IOException if a reading error occurs
+	 */
+	List<ScheduledTaskSpec> readDueBefore(long until) throws IOException;
+
+	/**
+	 * Returns the due time of the first task instance that is due at or after
+	 * the specified time. If there is no such instance, this method returns
+	 * null.
+	 *
+	 * @param from the unix time in milliseconds (inclusive)
+	 * @return the unix time in milliseconds or null
+	 */
+	Long getNextDueTime(long from);
+
+	/**
+	 * Writes any buffered changes to durable storage.
+	 *
+	 * @throws IOException if a writing error occurs
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * Flushes any buffered changes and closes the store.
+	 *
+	 * @throws IOException if a writing error occurs
+	 */
+	void close() throws IOException;
+}
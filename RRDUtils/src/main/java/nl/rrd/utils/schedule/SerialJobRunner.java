@@ -29,6 +29,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import nl.rrd.utils.AppComponents;
+import nl.rrd.utils.schedule.JobQueue.JobDetails;
 
 /**
  * This class can be used to run jobs sequentially on a separate thread. A job
@@ -36,6 +37,14 @@ import nl.rrd.utils.AppComponents;
  * notification of the listener) or the previous job has been cancelled. The
  * thread will only run as long as there are jobs in the queue.
  *
+ * <p>The pending jobs are kept in a priority heap that is ordered by priority
+ * and then by posting order, so posting a job takes O(log n) time. Jobs are
+ * also indexed by identity, so a pending job can be found and cancelled
+ * without scanning the queue.</p>
+ *
+ * <p>If you want to run independent jobs in parallel, see {@link
+ * PartitionedJobRunner PartitionedJobRunner}.</p>
+ *
  * @author Dennis Hofs (RRD)
  */
 public class SerialJobRunner {
@@ -47,7 +56,7 @@ public class SerialJobRunner {
 	private final Object lock = new Object();
 	private final String logtag;
 	private Thread thread = null;
-	private List<JobDetails> pendingJobs = new ArrayList<>();
+	private JobQueue pendingJobs = new JobQueue();
 	private JobDetails currentJob = null;
 
 	public SerialJobRunner() {
@@ -65,7 +74,7 @@ public class SerialJobRunner {
 			List<Job> result = new ArrayList<>();
 			if (currentJob != null)
 				result.add(currentJob.job);
-			for (JobDetails job : pendingJobs) {
+			for (JobDetails job : pendingJobs.toSortedList()) {
 				result.add(job.job);
 			}
 			return result;
@@ -95,15 +104,7 @@ public class SerialJobRunner {
 	 */
 	public void postJob(Job job, int priority, JobListener listener) {
 		synchronized (lock) {
-			Integer index = null;
-			for (int i = pendingJobs.size() - 1; index == null && i >= 0; i--) {
-				JobDetails other = pendingJobs.get(i);
-				if (other.priority >= priority)
-					index = i + 1;
-			}
-			if (index == null)
-				index = 0;
-			pendingJobs.add(index, new JobDetails(job, priority, listener));
+			pendingJobs.add(job, priority, listener);
 			if (thread == null) {
 				thread = new Thread(this::runThread);
 				thread.start();
@@ -123,11 +124,10 @@ public class SerialJobRunner {
 				details.job.cancel();
 				cancelledJobs.add(details);
 			}
-			for (JobDetails details : pendingJobs) {
+			for (JobDetails details : pendingJobs.clear()) {
 				details.job.cancel();
 				cancelledJobs.add(details);
 			}
-			pendingJobs.clear();
 			new Thread(() -> notifyJobsCancelled(cancelledJobs)).start();
 		}
 	}
@@ -150,9 +150,8 @@ public class SerialJobRunner {
 		synchronized (lock) {
 			final List<JobDetails> cancelledJobs = new ArrayList<>();
 			for (Job job : jobs) {
-				JobDetails details = findPendingJob(job);
+				JobDetails details = pendingJobs.remove(job);
 				if (details != null) {
-					pendingJobs.remove(details);
 					details.job.cancel();
 					cancelledJobs.add(details);
 				}
@@ -167,16 +166,6 @@ public class SerialJobRunner {
 		}
 	}
 
-	private JobDetails findPendingJob(Job job) {
-		synchronized (lock) {
-			for (JobDetails other : pendingJobs) {
-				if (other.job == job)
-					return other;
-			}
-			return null;
-		}
-	}
-
 	/**
 	 * Posts the specified runnable to be run on the notify thread. In Android
 	 * it will run on the UI thread. This method does not wait until the
@@ -221,7 +210,7 @@ public class SerialJobRunner {
 					thread = null;
 					return;
 				}
-				job = pendingJobs.remove(0);
+				job = pendingJobs.poll();
 				currentJob = job;
 			}
 			try {
@@ -251,16 +240,4 @@ public class SerialJobRunner {
 		if (notify)
 			notifyJobCompleted(job);
 	}
-
-	private static class JobDetails {
-		public Job job;
-		public int priority;
-		public JobListener listener;
-
-		public JobDetails(Job job, int priority, JobListener listener) {
-			this.job = job;
-			this.priority = priority;
-			this.listener = listener;
-		}
-	}
 }
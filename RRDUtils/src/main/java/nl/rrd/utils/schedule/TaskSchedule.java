@@ -22,9 +22,21 @@
 
 package nl.rrd.utils.schedule;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import nl.rrd.utils.datetime.DateTimeUtils;
 
 /**
  * Base class for a task schedule. This is part of a {@link ScheduledTask
@@ -282,6 +294,324 @@ public abstract class TaskSchedule {
 		public void setRepeatTime(TimeDuration repeatTime) {
 			this.repeatTime = repeatTime;
 		}
+
+		/**
+		 * Returns the first scheduled date/time at or after "start". If there
+		 * is no such date/time, this method returns null.
+		 *
+		 * @param start the time from where to start searching
+		 * @return the next date/time or null
+		 */
+		public LocalDateTime getNextDateTime(LocalDateTime start) {
+			OccurrenceIterator it = iterator(start, null);
+			return it.hasNext() ? it.next() : null;
+		}
+
+		/**
+		 * Returns an iterator over the scheduled date/times at or after
+		 * "from" and before "to". Each occurrence is computed directly from
+		 * the start date/time and the repeat intervals, so the iterator does
+		 * not search.
+		 *
+		 * @param from the start of the range (inclusive)
+		 * @param to the end of the range (exclusive) or null if the iterator
+		 * should continue until the end of the schedule
+		 * @return the iterator
+		 */
+		public OccurrenceIterator iterator(LocalDateTime from,
+				LocalDateTime to) {
+			return new OccurrenceIterator(this, from, to);
+		}
+
+		/**
+		 * Returns all scheduled date/times at or after "from" and before "to".
+		 *
+		 * @param from the start of the range (inclusive)
+		 * @param to the end of the range (exclusive)
+		 * @return the scheduled date/times
+		 */
+		public List<LocalDateTime> expand(LocalDateTime from,
+				LocalDateTime to) {
+			List<LocalDateTime> result = new ArrayList<>();
+			OccurrenceIterator it = iterator(from, to);
+			while (it.hasNext()) {
+				result.add(it.next());
+			}
+			return result;
+		}
+
+		/**
+		 * Returns all scheduled date/times at or after "from" and before "to"
+		 * as unix times in milliseconds. The local times are converted in the
+		 * specified time zone. If a local time is in a DST gap, it will be
+		 * moved forward by the length of the gap. This method does not create
+		 * an object per occurrence.
+		 *
+		 * @param from the start of the range (inclusive)
+		 * @param to the end of the range (exclusive)
+		 * @param tz the time zone
+		 * @return the scheduled times in milliseconds
+		 */
+		public long[] expandEpochMillis(LocalDateTime from, LocalDateTime to,
+				ZoneId tz) {
+			long[] result = new long[16];
+			int size = 0;
+			OccurrenceIterator it = iterator(from, to);
+			while (it.hasNext()) {
+				if (size == result.length)
+					result = Arrays.copyOf(result, size * 2);
+				result[size++] = it.nextEpochMilli(tz);
+			}
+			return Arrays.copyOf(result, size);
+		}
+
+		/**
+		 * Returns the number of days between the repeated dates if the date
+		 * repeat is defined in days or weeks. Otherwise it returns 0.
+		 *
+		 * @return the number of days or 0
+		 */
+		private int getRepeatDays() {
+			if (repeatDate == null)
+				return 0;
+			if (repeatDate.getUnit() == DateUnit.DAY)
+				return repeatDate.getCount();
+			if (repeatDate.getUnit() == DateUnit.WEEK)
+				return 7 * repeatDate.getCount();
+			return 0;
+		}
+
+		/**
+		 * Returns the scheduled date with the specified index. Index 0 is the
+		 * start date. The date is always computed from the start date, so
+		 * month and year repeats don't drift at the end of a month.
+		 *
+		 * @param index the date index
+		 * @return the date
+		 */
+		private LocalDate getDateAt(long index) {
+			if (index == 0)
+				return startDate;
+			long count = index * repeatDate.getCount();
+			if (repeatDate.getUnit() == DateUnit.YEAR)
+				return startDate.plusYears(count);
+			else if (repeatDate.getUnit() == DateUnit.MONTH)
+				return startDate.plusMonths(count);
+			else
+				return startDate.plusDays(index * getRepeatDays());
+		}
+
+		/**
+		 * Returns the index of the first scheduled date at or after the
+		 * specified date. It does not check the end date. If there is no date
+		 * repeat and the specified date is after the start date, this method
+		 * returns -1.
+		 *
+		 * @param date the date
+		 * @return the date index or -1
+		 */
+		private long getFirstDateIndex(LocalDate date) {
+			if (!date.isAfter(startDate))
+				return 0;
+			if (repeatDate == null)
+				return -1;
+			long index;
+			int count = repeatDate.getCount();
+			if (repeatDate.getUnit() == DateUnit.YEAR) {
+				long years = ChronoUnit.YEARS.between(startDate, date);
+				index = years / count;
+			} else if (repeatDate.getUnit() == DateUnit.MONTH) {
+				long months = ChronoUnit.MONTHS.between(startDate, date);
+				index = months / count;
+			} else {
+				long days = ChronoUnit.DAYS.between(startDate, date);
+				index = days / getRepeatDays();
+			}
+			// the estimate is at most a few steps too low, because dates at
+			// the end of a month may be clamped
+			while (getDateAt(index).isBefore(date)) {
+				index++;
+			}
+			return index;
+		}
+
+		/**
+		 * Returns whether the date with the specified index is before the end
+		 * date. The start date (index 0) is always valid.
+		 *
+		 * @param index the date index
+		 * @param date the date at the index (see {@link #getDateAt(long)
+		 * getDateAt()})
+		 * @return true if the date is valid, false otherwise
+		 */
+		private boolean isValidDateIndex(long index, LocalDate date) {
+			return index == 0 || endDate == null || date.isBefore(endDate);
+		}
+
+		/**
+		 * Returns the first scheduled time at or after the specified time as
+		 * milliseconds of the day. If there is no such time, this method
+		 * returns -1.
+		 *
+		 * @param ms the time as milliseconds of the day
+		 * @return the scheduled time or -1
+		 */
+		private int getFirstTimeMs(int ms) {
+			int startMs = startTime.get(ChronoField.MILLI_OF_DAY);
+			if (ms <= startMs)
+				return startMs;
+			if (repeatTime == null)
+				return -1;
+			long repeatMs = repeatTime.getDuration();
+			long it = (ms - startMs + repeatMs - 1) / repeatMs;
+			long nextMs = startMs + it * repeatMs;
+			if (nextMs >= getTimeLimitMs())
+				return -1;
+			return (int)nextMs;
+		}
+
+		/**
+		 * Returns the time as milliseconds of the day at and after which no
+		 * repeated times are scheduled. This is the end time or the end of
+		 * the day.
+		 *
+		 * @return the time limit in milliseconds of the day
+		 */
+		private int getTimeLimitMs() {
+			if (endTime == null)
+				return 86400000;
+			return endTime.get(ChronoField.MILLI_OF_DAY);
+		}
+
+		/**
+		 * Iterator over the scheduled date/times of a {@link TimeSchedule
+		 * TimeSchedule}. Besides the standard {@link Iterator Iterator}
+		 * methods, it has {@link #nextEpochMilli(ZoneId) nextEpochMilli()},
+		 * which returns the next occurrence as a unix time without creating a
+		 * {@link LocalDateTime LocalDateTime}. You can obtain an instance
+		 * with {@link TimeSchedule#iterator(LocalDateTime, LocalDateTime)
+		 * TimeSchedule.iterator()}.
+		 */
+		public static class OccurrenceIterator
+				implements Iterator<LocalDateTime> {
+			private final TimeSchedule schedule;
+			private final LocalDate toDate;
+			private final int toMs;
+			private final int startMs;
+			private final long repeatMs;
+			private final int limitMs;
+
+			private boolean hasNext = false;
+			private long dateIndex;
+			private LocalDate date;
+			private int timeMs;
+
+			private OccurrenceIterator(TimeSchedule schedule,
+					LocalDateTime from, LocalDateTime to) {
+				this.schedule = schedule;
+				toDate = to == null ? null : to.toLocalDate();
+				toMs = to == null ? 0 : to.get(ChronoField.MILLI_OF_DAY);
+				startMs = schedule.startTime.get(ChronoField.MILLI_OF_DAY);
+				repeatMs = schedule.repeatTime == null ? 0 :
+						schedule.repeatTime.getDuration();
+				limitMs = schedule.getTimeLimitMs();
+				LocalDate fromDate = from.toLocalDate();
+				dateIndex = schedule.getFirstDateIndex(fromDate);
+				if (dateIndex < 0)
+					return;
+				date = schedule.getDateAt(dateIndex);
+				if (!schedule.isValidDateIndex(dateIndex, date))
+					return;
+				int fromMs = date.isEqual(fromDate) ?
+						from.get(ChronoField.MILLI_OF_DAY) : 0;
+				timeMs = schedule.getFirstTimeMs(fromMs);
+				if (timeMs < 0 && !moveToNextDate())
+					return;
+				hasNext = true;
+				checkRange();
+			}
+
+			@Override
+			public boolean hasNext() {
+				return hasNext;
+			}
+
+			@Override
+			public LocalDateTime next() {
+				if (!hasNext)
+					throw new NoSuchElementException();
+				LocalDateTime result = LocalDateTime.of(date,
+						java.time.LocalTime.ofNanoOfDay(timeMs * 1000000L));
+				moveToNext();
+				return result;
+			}
+
+			/**
+			 * Returns the next occurrence as a unix time in milliseconds. The
+			 * local time is converted in the specified time zone. If the
+			 * local time is in a DST gap, it will be moved forward by the
+			 * length of the gap. For time zones with a fixed offset, this
+			 * method does not create any objects.
+			 *
+			 * @param tz the time zone
+			 * @return the unix time in milliseconds
+			 * @throws NoSuchElementException if there is no next occurrence
+			 */
+			public long nextEpochMilli(ZoneId tz)
+					throws NoSuchElementException {
+				if (!hasNext)
+					throw new NoSuchElementException();
+				long result;
+				ZoneRules rules = tz.getRules();
+				if (rules.isFixedOffset()) {
+					int offsetSecs = rules.getOffset(Instant.EPOCH)
+							.getTotalSeconds();
+					result = date.toEpochDay() * 86400000L + timeMs -
+							offsetSecs * 1000L;
+				} else {
+					result = DateTimeUtils.localToUtcWithGapCorrection(
+							LocalDateTime.of(date, java.time.LocalTime
+							.ofNanoOfDay(timeMs * 1000000L)), tz)
+							.toInstant().toEpochMilli();
+				}
+				moveToNext();
+				return result;
+			}
+
+			private void moveToNext() {
+				if (repeatMs > 0 && timeMs + repeatMs < limitMs) {
+					timeMs += (int)repeatMs;
+				} else if (!moveToNextDate()) {
+					hasNext = false;
+					return;
+				}
+				checkRange();
+			}
+
+			/**
+			 * Moves to the start time at the next scheduled date.
+			 *
+			 * @return true if there is a next date, false otherwise
+			 */
+			private boolean moveToNextDate() {
+				if (schedule.repeatDate == null)
+					return false;
+				dateIndex++;
+				date = schedule.getDateAt(dateIndex);
+				if (!schedule.isValidDateIndex(dateIndex, date))
+					return false;
+				timeMs = startMs;
+				return true;
+			}
+
+			private void checkRange() {
+				if (toDate == null)
+					return;
+				int cmp = date.compareTo(toDate);
+				if (cmp > 0 || (cmp == 0 && timeMs >= toMs))
+					hasNext = false;
+			}
+		}
 	}
 
 	/**
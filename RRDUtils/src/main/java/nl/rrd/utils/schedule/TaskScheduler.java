@@ -30,11 +30,14 @@ import nl.rrd.utils.exception.HandledException;
 import nl.rrd.utils.exception.ParseException;
 import org.slf4j.Logger;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.time.*;
-import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The task scheduler can be used to schedule one-time or repeating tasks to
@@ -75,28 +78,201 @@ import java.util.*;
 public abstract class TaskScheduler {
 	public static final String LOGTAG = TaskScheduler.class.getSimpleName();
 
-	private final Object lock = new Object();
+	private static final int LOCK_STRIPES = 64;
+
+	// Locks are striped by task ID. All state of one task is guarded by the
+	// lock returned by lockFor(). A thread never holds more than one stripe.
+	private final Object[] locks = new Object[LOCK_STRIPES];
 
 	// map from task ID to running task
-	private Map<String,ScheduledTask> runningTasks = new HashMap<>();
+	private Map<String,ScheduledTask> runningTasks = new ConcurrentHashMap<>();
 
 	// map from task ID to scheduled task
 	// This map contains tasks that have been scheduled and that have not been
 	// cancelled or completed. Repeating tasks stay in this map until the final
 	// run has been completed.
-	private Map<String,ScheduledTask> scheduledTasks = new HashMap<>();
+	private Map<String,ScheduledTask> scheduledTasks =
+			new ConcurrentHashMap<>();
 
 	// map from task ID to scheduled task instance
 	// This map contains single task instances that have been scheduled to run
 	// at a specific time. An instance is removed when the task is cancelled or
 	// when it's triggered.
 	private Map<String,ScheduledTaskSpec> scheduledTaskInstances =
-			new HashMap<>();
+			new ConcurrentHashMap<>();
 
 	private Logger logger;
 
+	private volatile WorkerExecutor workerExecutor =
+			WorkerExecutor.newThreadPerTask(LOGTAG);
+
+	private volatile ScheduledTaskStore taskStore = null;
+
+	// ID of the internal task that restores the next window from the store
+	private final AtomicReference<String> restoreTaskId =
+			new AtomicReference<>();
+
 	public TaskScheduler() {
 		logger = AppComponents.getLogger(LOGTAG);
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Returns the lock that guards the state of the task with the specified
+	 * ID.
+	 *
+	 * @param taskId the task ID
+	 * @return the lock
+	 */
+	private Object lockFor(String taskId) {
+		int hash = taskId.hashCode();
+		hash ^= hash >>> 16;
+		return locks[hash & (locks.length - 1)];
+	}
+
+	/**
+	 * Returns the executor that runs tasks on worker threads. By default this
+	 * is an executor that starts a new thread for every task run. See {@link
+	 * WorkerExecutor WorkerExecutor}.
+	 *
+	 * @return the worker executor
+	 */
+	public WorkerExecutor getWorkerExecutor() {
+		return workerExecutor;
+	}
+
+	/**
+	 * Sets the executor that runs tasks on worker threads. By default this
+	 * is an executor that starts a new thread for every task run. You may
+	 * set a bounded executor or a virtual thread executor. See {@link
+	 * WorkerExecutor WorkerExecutor}. The previous executor is not shut down.
+	 *
+	 * @param workerExecutor the worker executor
+	 */
+	public void setWorkerExecutor(WorkerExecutor workerExecutor) {
+		this.workerExecutor = workerExecutor;
+	}
+
+	/**
+	 * Returns the store where scheduled task instances are saved. If no store
+	 * has been set, this method returns null.
+	 *
+	 * @return the task store or null
+	 */
+	public ScheduledTaskStore getTaskStore() {
+		return taskStore;
+	}
+
+	/**
+	 * Sets the store where scheduled task instances should be saved. Every
+	 * task instance that is scheduled after this call is saved in the store,
+	 * and it's removed when it's triggered or cancelled. After a restart you
+	 * can call {@link #restoreScheduledTasks(Object, long)
+	 * restoreScheduledTasks()} to restore the task instances. The default is
+	 * null, which means that task instances are not saved.
+	 *
+	 * @param taskStore the task store or null
+	 */
+	public void setTaskStore(ScheduledTaskStore taskStore) {
+		this.taskStore = taskStore;
+	}
+
+	/**
+	 * Restores the task instances from the task store (see {@link
+	 * #setTaskStore(ScheduledTaskStore) setTaskStore()}) that are due within
+	 * the specified time window from now. Task instances that are due later
+	 * are not loaded in memory yet. If there are such instances, this method
+	 * schedules an internal task that restores the next window before the
+	 * first of those instances is due.
+	 *
+	 * <p>Each task is rebuilt as described at the top of this page. If a
+	 * task can't be rebuilt, it's removed from the store. In Android this
+	 * method is called on the UI thread.</p>
+	 *
+	 * @param context the context (only set in Android)
+	 * @param window the time window in milliseconds
+	 */
+	public void restoreScheduledTasks(Object context, long window) {
+		ScheduledTaskStore store = taskStore;
+		if (store == null)
+			throw new IllegalStateException("Task store not set");
+		long now = System.currentTimeMillis();
+		long until = now + window;
+		List<ScheduledTaskSpec> storedSpecs;
+		try {
+			storedSpecs = store.readDueBefore(until);
+		} catch (IOException ex) {
+			logger.error("Can't read scheduled tasks from task store: " +
+					ex.getMessage(), ex);
+			return;
+		}
+		List<ScheduledTaskSpec> taskSpecs = new ArrayList<>();
+		for (ScheduledTaskSpec taskSpec : storedSpecs) {
+			if (!scheduledTaskInstances.containsKey(taskSpec.getId()))
+				taskSpecs.add(taskSpec);
+		}
+		initScheduledTasks(context, taskSpecs);
+		Long next = store.getNextDueTime(until);
+		String prevRestoreTaskId = restoreTaskId.getAndSet(null);
+		if (prevRestoreTaskId != null)
+			cancelTask(context, prevRestoreTaskId);
+		if (next == null)
+			return;
+		StoreRestoreTask restoreTask = new StoreRestoreTask(window);
+		restoreTask.setSchedule(new TaskSchedule.UtcTime(
+				ZonedDateTime.ofInstant(Instant.ofEpochMilli(
+				Math.max(now, next - window / 2)), ZoneId.systemDefault()),
+				true));
+		String taskId = generateTaskId();
+		restoreTaskId.set(taskId);
+		scheduleTask(context, restoreTask, taskId);
+	}
+
+	/**
+	 * Adds a task instance to the map of scheduled task instances and saves
+	 * it in the task store if there is one. This should be called with the
+	 * lock of the task.
+	 *
+	 * @param task the task
+	 * @param taskSpec the task instance
+	 */
+	private void putTaskInstance(ScheduledTask task,
+			ScheduledTaskSpec taskSpec) {
+		scheduledTaskInstances.put(taskSpec.getId(), taskSpec);
+		ScheduledTaskStore store = taskStore;
+		if (store == null || task instanceof StoreRestoreTask)
+			return;
+		try {
+			store.put(taskSpec);
+		} catch (IOException ex) {
+			logger.error(String.format(
+					"Can't save task \"%s\" (%s) in task store",
+					taskSpec.getName(), taskSpec.getId()) + ": " +
+					ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Removes a task instance from the map of scheduled task instances and
+	 * from the task store if there is one. This should be called with the
+	 * lock of the task.
+	 *
+	 * @param taskId the task ID
+	 */
+	private void removeTaskInstance(String taskId) {
+		scheduledTaskInstances.remove(taskId);
+		ScheduledTaskStore store = taskStore;
+		if (store == null)
+			return;
+		try {
+			store.remove(taskId);
+		} catch (IOException ex) {
+			logger.error(String.format(
+					"Can't remove task (%s) from task store", taskId) + ": " +
+					ex.getMessage(), ex);
+		}
 	}
 
 	/**
@@ -109,22 +285,29 @@ public abstract class TaskScheduler {
 	 */
 	public void initScheduledTasks(Object context,
 			List<ScheduledTaskSpec> taskSpecs) {
-		synchronized (lock) {
-			for (ScheduledTaskSpec taskSpec : taskSpecs) {
-				cancelScheduledTask(context, taskSpec.getId());
-				ScheduledTask task;
-				try {
-					task = buildTask(context, taskSpec.getClassName(),
-							taskSpec.getId(), taskSpec.getTaskData());
-				} catch (HandledException ex) {
-					continue;
+		for (ScheduledTaskSpec taskSpec : taskSpecs) {
+			String taskId = taskSpec.getId();
+			synchronized (lockFor(taskId)) {
+				cancelScheduledTask(context, taskId);
+			}
+			ScheduledTask task;
+			try {
+				task = buildTask(context, taskSpec.getClassName(), taskId,
+						taskSpec.getTaskData());
+			} catch (HandledException ex) {
+				// the task can never be run, so remove it from the store
+				synchronized (lockFor(taskId)) {
+					removeTaskInstance(taskId);
 				}
-				logger.info("Restore scheduled task " +
-						getScheduledTaskSpecLog(taskSpec));
-				scheduledTasks.put(taskSpec.getId(), task);
-				scheduledTaskInstances.put(taskSpec.getId(), taskSpec);
+				continue;
+			}
+			synchronized (lockFor(taskId)) {
+				scheduledTasks.put(taskId, task);
+				scheduledTaskInstances.put(taskId, taskSpec);
 				scheduleTask(context, taskSpec);
 			}
+			logger.info("Restore scheduled task " +
+					getScheduledTaskSpecLog(taskSpec));
 		}
 	}
 
@@ -156,18 +339,14 @@ public abstract class TaskScheduler {
 	 */
 	public <T extends ScheduledTask> List<T> findTasksWithClass(
 			Class<T> taskClass) {
-		synchronized (lock) {
-			List<T> result = new ArrayList<>();
-			Map<String,ScheduledTask> tasks = new LinkedHashMap<>(
-					runningTasks);
-			tasks.putAll(scheduledTasks);
-			for (String taskId : tasks.keySet()) {
-				ScheduledTask task = tasks.get(taskId);
-				if (taskClass.isInstance(task))
-					result.add(taskClass.cast(task));
-			}
-			return result;
+		List<T> result = new ArrayList<>();
+		Map<String,ScheduledTask> tasks = new LinkedHashMap<>(runningTasks);
+		tasks.putAll(scheduledTasks);
+		for (ScheduledTask task : tasks.values()) {
+			if (taskClass.isInstance(task))
+				result.add(taskClass.cast(task));
 		}
+		return result;
 	}
 
 	/**
@@ -189,26 +368,31 @@ public abstract class TaskScheduler {
 	 */
 	public void scheduleTask(Object context, ScheduledTask task,
 			String taskId) {
-		synchronized (lock) {
+		synchronized (lockFor(taskId)) {
 			task.setId(taskId);
 			scheduledTasks.put(taskId, task);
-			ZonedDateTime now = DateTimeUtils.nowMs();
-			TaskSchedule schedule = task.getSchedule();
-			if (schedule instanceof TaskSchedule.Immediate) {
-				startImmediate(context, task, now);
-			} else if (schedule instanceof TaskSchedule.FixedDelay) {
-				startFixedDelay(context, task, now, new ScheduleParams(
-						now.toInstant().toEpochMilli(), false));
-			} else if (schedule instanceof TaskSchedule.FixedRate) {
-				startFixedRate(context, task, now, new ScheduleParams(
-						now.toInstant().toEpochMilli(), true));
-			} else if (schedule instanceof TaskSchedule.TimeSchedule) {
-				scheduleTimeSchedule(context, task, now.toLocalDateTime());
-			} else if (schedule instanceof TaskSchedule.LocalTime) {
-				scheduleLocalTime(context, task);
-			} else if (schedule instanceof TaskSchedule.UtcTime) {
-				scheduleUtcTime(context, task);
-			}
+		}
+		// the start and schedule methods check under the lock whether this
+		// task is still scheduled, so they can be called outside the lock.
+		// They compare the task itself rather than the ID, because the task
+		// may have been cancelled and replaced by another task with the same
+		// ID.
+		ZonedDateTime now = DateTimeUtils.nowMs();
+		TaskSchedule schedule = task.getSchedule();
+		if (schedule instanceof TaskSchedule.Immediate) {
+			startImmediate(context, task, now);
+		} else if (schedule instanceof TaskSchedule.FixedDelay) {
+			startFixedDelay(context, task, now, new ScheduleParams(
+					now.toInstant().toEpochMilli(), false));
+		} else if (schedule instanceof TaskSchedule.FixedRate) {
+			startFixedRate(context, task, now, new ScheduleParams(
+					now.toInstant().toEpochMilli(), true));
+		} else if (schedule instanceof TaskSchedule.TimeSchedule) {
+			scheduleTimeSchedule(context, task, now.toLocalDateTime());
+		} else if (schedule instanceof TaskSchedule.LocalTime) {
+			scheduleLocalTime(context, task);
+		} else if (schedule instanceof TaskSchedule.UtcTime) {
+			scheduleUtcTime(context, task);
 		}
 	}
 
@@ -220,22 +404,25 @@ public abstract class TaskScheduler {
 	 * @param taskId the task ID
 	 */
 	public void cancelTask(Object context, String taskId) {
-		synchronized (lock) {
-			scheduledTaskInstances.remove(taskId);
+		ScheduledTask scheduledTask;
+		ScheduledTask runningTask;
+		synchronized (lockFor(taskId)) {
+			removeTaskInstance(taskId);
 			cancelScheduledTask(context, taskId);
-			ScheduledTask task = scheduledTasks.remove(taskId);
-			if (task != null) {
-				logger.info(String.format(
-						"Cancelled scheduled task \"%s\" (%s)",
-						task.getName(), taskId));
-			}
-			task = runningTasks.remove(taskId);
-			if (task != null) {
-				task.cancel(context);
-				logger.info(String.format(
-						"Cancelled running task \"%s\" (%s)",
-						task.getName(), taskId));
-			}
+			scheduledTask = scheduledTasks.remove(taskId);
+			runningTask = runningTasks.remove(taskId);
+			if (runningTask != null)
+				runningTask.cancel(context);
+		}
+		if (scheduledTask != null) {
+			logger.info(String.format(
+					"Cancelled scheduled task \"%s\" (%s)",
+					scheduledTask.getName(), taskId));
+		}
+		if (runningTask != null) {
+			logger.info(String.format(
+					"Cancelled running task \"%s\" (%s)",
+					runningTask.getName(), taskId));
 		}
 	}
 
@@ -248,11 +435,9 @@ public abstract class TaskScheduler {
 	 */
 	public void cancelTasksWithClass(Object context,
 			Class<? extends ScheduledTask> taskClass) {
-		synchronized (lock) {
-			List<? extends ScheduledTask> tasks = findTasksWithClass(taskClass);
-			for (ScheduledTask task : tasks) {
-				cancelTask(context, task.getId());
-			}
+		List<? extends ScheduledTask> tasks = findTasksWithClass(taskClass);
+		for (ScheduledTask task : tasks) {
+			cancelTask(context, task.getId());
 		}
 	}
 
@@ -295,6 +480,52 @@ public abstract class TaskScheduler {
 	 */
 	protected abstract boolean canRunTaskOnMainThread();
 
+	/**
+	 * Runs code for the specified task on the worker executor. If the
+	 * executor rejects or discards the run (see {@link
+	 * WorkerExecutor#executeOrReject(Runnable)
+	 * WorkerExecutor.executeOrReject()}), this method logs an error and
+	 * returns false.
+	 * The caller should then remove the task or schedule its next instance,
+	 * so that the task doesn't stay in the scheduler without ever being run.
+	 *
+	 * @param task the task
+	 * @param runnable the code to run
+	 * @return true if the run was accepted, false if it was rejected
+	 */
+	private boolean runOnWorkerThread(ScheduledTask task, Runnable runnable) {
+		try {
+			workerExecutor.executeOrReject(runnable);
+			return true;
+		} catch (RejectedExecutionException ex) {
+			logger.error(String.format(
+					"Worker executor rejected run of task \"%s\" (%s)",
+					task.getName(), task.getId()) + ": " + ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Removes a task whose run was rejected by the worker executor. This is
+	 * called for tasks that don't have a next instance. It removes the task
+	 * and any task instance from the task store, unless the task has been
+	 * cancelled or replaced in the meantime. In Android this method is called
+	 * on the UI thread.
+	 *
+	 * @param task the task
+	 */
+	private void removeRejectedTask(ScheduledTask task) {
+		String taskId = task.getId();
+		synchronized (lockFor(taskId)) {
+			if (!scheduledTasks.remove(taskId, task))
+				return;
+			removeTaskInstance(taskId);
+		}
+		logger.info(String.format(
+				"Removed task \"%s\" (%s) after rejected run",
+				task.getName(), taskId));
+	}
+
 	/**
 	 * Starts a task with schedule {@link TaskSchedule.Immediate
 	 * TaskSchedule.Immediate}. In Android this method is called on the UI
@@ -307,7 +538,10 @@ public abstract class TaskScheduler {
 	private void startImmediate(final Object context, final ScheduledTask task,
 			final ZonedDateTime now) {
 		if (!canRunTaskOnMainThread() || task.isRunOnWorkerThread()) {
-			new Thread(() -> runImmediate(context, task, now)).start();
+			if (!runOnWorkerThread(task, () ->
+					runImmediate(context, task, now))) {
+				removeRejectedTask(task);
+			}
 		} else {
 			runImmediate(context, task, now);
 		}
@@ -326,13 +560,13 @@ public abstract class TaskScheduler {
 	private void runImmediate(Object context, ScheduledTask task,
 			ZonedDateTime now) {
 		String taskId = task.getId();
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			logger.info(String.format("Start immediate task \"%s\" (%s)",
-					task.getName(), taskId));
 			runningTasks.put(taskId, task);
 		}
+		logger.info(String.format("Start immediate task \"%s\" (%s)",
+				task.getName(), taskId));
 		ScheduleParams scheduleParams = new ScheduleParams(
 				now.toInstant().toEpochMilli(), true);
 		Throwable exception = null;
@@ -341,21 +575,21 @@ public abstract class TaskScheduler {
 		} catch (Throwable ex) {
 			exception = ex;
 		}
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
 			runningTasks.remove(taskId);
 			scheduledTasks.remove(taskId);
-			if (exception == null) {
-				logger.info(String.format(
-						"Immediate task \"%s\" (%s) completed",
-						task.getName(), taskId));
-			} else {
-				logger.error(String.format(
-						"Error in immediate task \"%s\" (%s)",
-						task.getName(), taskId) + ": " + exception.getMessage(),
-						exception);
-			}
+		}
+		if (exception == null) {
+			logger.info(String.format(
+					"Immediate task \"%s\" (%s) completed",
+					task.getName(), taskId));
+		} else {
+			logger.error(String.format(
+					"Error in immediate task \"%s\" (%s)",
+					task.getName(), taskId) + ": " + exception.getMessage(),
+					exception);
 		}
 	}
 
@@ -370,21 +604,21 @@ public abstract class TaskScheduler {
 	 */
 	private void scheduleFixedDelay(Object context, ScheduledTask task,
 			ZonedDateTime time) {
-		synchronized (lock) {
-			String taskId = task.getId();
-			if (!scheduledTasks.containsKey(taskId))
+		String taskId = task.getId();
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			logger.info(String.format(
-					"Schedule fixed delay task \"%s\" (%s) at %s",
-					task.getName(), taskId,
-					time.format(DateTimeUtils.ZONED_FORMAT)));
 			ScheduleParams scheduleParams = new ScheduleParams(
 					time.toInstant().toEpochMilli(), false);
 			ScheduledTaskSpec taskSpec = new ScheduledTaskSpec(taskId, task,
 					scheduleParams);
-			scheduledTaskInstances.put(taskId, taskSpec);
+			putTaskInstance(task, taskSpec);
 			scheduleTask(context, taskSpec);
 		}
+		logger.info(String.format(
+				"Schedule fixed delay task \"%s\" (%s) at %s",
+				task.getName(), taskId,
+				time.format(DateTimeUtils.ZONED_FORMAT)));
 	}
 
 	/**
@@ -400,8 +634,11 @@ public abstract class TaskScheduler {
 	private void startFixedDelay(final Object context, final ScheduledTask task,
 			final ZonedDateTime now, final ScheduleParams scheduleParams) {
 		if (!canRunTaskOnMainThread() || task.isRunOnWorkerThread()) {
-			new Thread(() -> runFixedDelay(context, task, now, scheduleParams))
-					.start();
+			if (!runOnWorkerThread(task, () ->
+					runFixedDelay(context, task, now, scheduleParams))) {
+				// skip this run and keep the chain going
+				scheduleFixedDelay(context, task, getNextFixedDelayTime(task));
+			}
 		} else {
 			runFixedDelay(context, task, now, scheduleParams);
 		}
@@ -421,47 +658,58 @@ public abstract class TaskScheduler {
 	private void runFixedDelay(final Object context, final ScheduledTask task,
 			ZonedDateTime now, ScheduleParams scheduleParams) {
 		String taskId = task.getId();
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			ZonedDateTime time = ZonedDateTime.ofInstant(
-					Instant.ofEpochMilli(scheduleParams.getUtcTime()),
-					ZoneId.systemDefault());
-			logger.info(String.format(
-					"Start fixed delay task \"%s\" (%s) scheduled at %s",
-					task.getName(), taskId,
-					time.format(DateTimeUtils.ZONED_FORMAT)));
 			runningTasks.put(taskId, task);
 		}
+		ZonedDateTime time = ZonedDateTime.ofInstant(
+				Instant.ofEpochMilli(scheduleParams.getUtcTime()),
+				ZoneId.systemDefault());
+		logger.info(String.format(
+				"Start fixed delay task \"%s\" (%s) scheduled at %s",
+				task.getName(), taskId,
+				time.format(DateTimeUtils.ZONED_FORMAT)));
 		Throwable exception = null;
 		try {
 			task.run(context, taskId, now, scheduleParams);
 		} catch (Throwable ex) {
 			exception = ex;
 		}
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			now = DateTimeUtils.nowMs();
 			runningTasks.remove(taskId);
-			if (exception == null) {
-				logger.info(String.format(
-						"Fixed delay task \"%s\" (%s) completed",
-						task.getName(), taskId));
-			} else {
-				logger.error(String.format(
-						"Error in fixed delay task \"%s\" (%s)",
-						task.getName(), taskId) + ": " + exception.getMessage(),
-						exception);
-			}
-			TaskSchedule.FixedDelay schedule =
-					(TaskSchedule.FixedDelay)task.getSchedule();
-			final long next = now.toInstant().toEpochMilli() +
-					schedule.getDelay();
-			runOnUiThread(() ->
-					scheduleFixedDelay(context, task, ZonedDateTime.ofInstant(
-					Instant.ofEpochMilli(next), ZoneId.systemDefault())));
 		}
+		if (exception == null) {
+			logger.info(String.format(
+					"Fixed delay task \"%s\" (%s) completed",
+					task.getName(), taskId));
+		} else {
+			logger.error(String.format(
+					"Error in fixed delay task \"%s\" (%s)",
+					task.getName(), taskId) + ": " + exception.getMessage(),
+					exception);
+		}
+		// scheduleFixedDelay() checks whether the task has been cancelled
+		final ZonedDateTime next = getNextFixedDelayTime(task);
+		runOnUiThread(() -> scheduleFixedDelay(context, task, next));
+	}
+
+	/**
+	 * Returns the time of the next run of a task with schedule {@link
+	 * TaskSchedule.FixedDelay TaskSchedule.FixedDelay}, which is the delay
+	 * from now.
+	 *
+	 * @param task the task
+	 * @return the time of the next run
+	 */
+	private ZonedDateTime getNextFixedDelayTime(ScheduledTask task) {
+		TaskSchedule.FixedDelay schedule =
+				(TaskSchedule.FixedDelay)task.getSchedule();
+		long next = System.currentTimeMillis() + schedule.getDelay();
+		return ZonedDateTime.ofInstant(Instant.ofEpochMilli(next),
+				ZoneId.systemDefault());
 	}
 
 	/**
@@ -475,21 +723,21 @@ public abstract class TaskScheduler {
 	 */
 	private void scheduleFixedRate(Object context, ScheduledTask task,
 			ZonedDateTime time) {
-		synchronized (lock) {
-			String taskId = task.getId();
-			if (!scheduledTasks.containsKey(taskId))
+		String taskId = task.getId();
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			logger.info(String.format(
-					"Schedule fixed rate task \"%s\" (%s) at %s",
-					task.getName(), taskId,
-					time.format(DateTimeUtils.ZONED_FORMAT)));
 			ScheduleParams scheduleParams = new ScheduleParams(
 					time.toInstant().toEpochMilli(), true);
 			ScheduledTaskSpec taskSpec = new ScheduledTaskSpec(taskId, task,
 					scheduleParams);
-			scheduledTaskInstances.put(taskId, taskSpec);
+			putTaskInstance(task, taskSpec);
 			scheduleTask(context, taskSpec);
 		}
+		logger.info(String.format(
+				"Schedule fixed rate task \"%s\" (%s) at %s",
+				task.getName(), taskId,
+				time.format(DateTimeUtils.ZONED_FORMAT)));
 	}
 
 	/**
@@ -505,8 +753,12 @@ public abstract class TaskScheduler {
 	private void startFixedRate(final Object context, final ScheduledTask task,
 			final ZonedDateTime now, final ScheduleParams scheduleParams) {
 		if (!canRunTaskOnMainThread() || task.isRunOnWorkerThread()) {
-			new Thread(() -> runFixedRate(context, task, now, scheduleParams))
-					.start();
+			if (!runOnWorkerThread(task, () ->
+					runFixedRate(context, task, now, scheduleParams))) {
+				// skip this run and keep the chain going
+				scheduleFixedRate(context, task, getNextFixedRateTime(task,
+						scheduleParams.getUtcTime()));
+			}
 		} else {
 			runFixedRate(context, task, now, scheduleParams);
 		}
@@ -529,46 +781,63 @@ public abstract class TaskScheduler {
 		ZonedDateTime time = ZonedDateTime.ofInstant(
 				Instant.ofEpochMilli(scheduleParams.getUtcTime()),
 				ZoneId.systemDefault());
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			logger.info(String.format(
-					"Start fixed rate task \"%s\" (%s) scheduled at %s",
-					task.getName(), taskId,
-					time.format(DateTimeUtils.ZONED_FORMAT)));
 			runningTasks.put(taskId, task);
 		}
+		logger.info(String.format(
+				"Start fixed rate task \"%s\" (%s) scheduled at %s",
+				task.getName(), taskId,
+				time.format(DateTimeUtils.ZONED_FORMAT)));
 		Throwable exception = null;
 		try {
 			task.run(context, taskId, now, scheduleParams);
 		} catch (Throwable ex) {
 			exception = ex;
 		}
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
 			runningTasks.remove(taskId);
-			if (exception == null) {
-				logger.info(String.format(
-						"Fixed rate task \"%s\" (%s) completed",
-						task.getName(), taskId));
-			} else {
-				logger.error(String.format(
-						"Error in fixed rate task \"%s\" (%s)",
-						task.getName(), taskId) + ": " + exception.getMessage(),
-						exception);
-			}
-			TaskSchedule.FixedRate schedule =
-					(TaskSchedule.FixedRate)task.getSchedule();
-			long interval = schedule.getInterval();
-			long nowMs = System.currentTimeMillis();
-			long timeMs = time.toInstant().toEpochMilli();
-			long iter = (nowMs - timeMs) / interval;
-			final long next = timeMs + (iter + 1) * interval;
-			runOnUiThread(() -> scheduleFixedRate(context, task,
-					ZonedDateTime.ofInstant(Instant.ofEpochMilli(next),
-					ZoneId.systemDefault())));
 		}
+		if (exception == null) {
+			logger.info(String.format(
+					"Fixed rate task \"%s\" (%s) completed",
+					task.getName(), taskId));
+		} else {
+			logger.error(String.format(
+					"Error in fixed rate task \"%s\" (%s)",
+					task.getName(), taskId) + ": " + exception.getMessage(),
+					exception);
+		}
+		// scheduleFixedRate() checks whether the task has been cancelled
+		final ZonedDateTime next = getNextFixedRateTime(task,
+				time.toInstant().toEpochMilli());
+		runOnUiThread(() -> scheduleFixedRate(context, task, next));
+	}
+
+	/**
+	 * Returns the time of the next run of a task with schedule {@link
+	 * TaskSchedule.FixedRate TaskSchedule.FixedRate}. This is the first
+	 * multiple of the interval from the scheduled time of the current run
+	 * that is after now.
+	 *
+	 * @param task the task
+	 * @param timeMs the scheduled time of the current run as a unix time in
+	 * milliseconds
+	 * @return the time of the next run
+	 */
+	private ZonedDateTime getNextFixedRateTime(ScheduledTask task,
+			long timeMs) {
+		TaskSchedule.FixedRate schedule =
+				(TaskSchedule.FixedRate)task.getSchedule();
+		long interval = schedule.getInterval();
+		long nowMs = System.currentTimeMillis();
+		long iter = (nowMs - timeMs) / interval;
+		long next = timeMs + (iter + 1) * interval;
+		return ZonedDateTime.ofInstant(Instant.ofEpochMilli(next),
+				ZoneId.systemDefault());
 	}
 
 	/**
@@ -582,29 +851,35 @@ public abstract class TaskScheduler {
 	 */
 	private void scheduleTimeSchedule(Object context, ScheduledTask task,
 			LocalDateTime start) {
-		synchronized (lock) {
-			String taskId = task.getId();
-			if (!scheduledTasks.containsKey(taskId))
+		String taskId = task.getId();
+		TaskSchedule.TimeSchedule schedule =
+				(TaskSchedule.TimeSchedule)task.getSchedule();
+		LocalDateTime taskTime;
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			TaskSchedule.TimeSchedule schedule =
-					(TaskSchedule.TimeSchedule)task.getSchedule();
-			String logStr = String.format(
-					"Find next time for time schedule task \"%s\" (%s) at or after %s",
-					task.getName(), taskId,
-					start.format(DateTimeUtils.LOCAL_FORMAT));
-			LocalDateTime taskTime = getNextScheduledDateTime(start, schedule);
+			taskTime = schedule.getNextDateTime(start);
 			if (taskTime == null) {
-				logger.info(logStr + ": no next time");
 				scheduledTasks.remove(taskId);
-				return;
+				removeTaskInstance(taskId);
+			} else {
+				ScheduleParams scheduleParams = new ScheduleParams(taskTime,
+						true);
+				ScheduledTaskSpec taskSpec = new ScheduledTaskSpec(taskId,
+						task, scheduleParams);
+				putTaskInstance(task, taskSpec);
+				scheduleTask(context, taskSpec);
 			}
+		}
+		String logStr = String.format(
+				"Find next time for time schedule task \"%s\" (%s) at or after %s",
+				task.getName(), taskId,
+				start.format(DateTimeUtils.LOCAL_FORMAT));
+		if (taskTime == null) {
+			logger.info(logStr + ": no next time");
+		} else {
 			logger.info(logStr + ": " + taskTime.format(
 					DateTimeUtils.LOCAL_FORMAT));
-			ScheduleParams scheduleParams = new ScheduleParams(taskTime, true);
-			ScheduledTaskSpec taskSpec = new ScheduledTaskSpec(taskId, task,
-					scheduleParams);
-			scheduledTaskInstances.put(taskId, taskSpec);
-			scheduleTask(context, taskSpec);
 		}
 	}
 
@@ -622,9 +897,12 @@ public abstract class TaskScheduler {
 			final ScheduledTask task, final ZonedDateTime now,
 			final ScheduleParams scheduleParams) {
 		if (!canRunTaskOnMainThread() || task.isRunOnWorkerThread()) {
-			new Thread(() ->
-					runTimeSchedule(context, task, now, scheduleParams))
-					.start();
+			if (!runOnWorkerThread(task, () ->
+					runTimeSchedule(context, task, now, scheduleParams))) {
+				// skip this run and keep the chain going
+				scheduleTimeSchedule(context, task, getNextTimeScheduleStart(
+						scheduleParams.getLocalTime()));
+			}
 		} else {
 			runTimeSchedule(context, task, now, scheduleParams);
 		}
@@ -645,152 +923,55 @@ public abstract class TaskScheduler {
 			ZonedDateTime now, ScheduleParams scheduleParams) {
 		String taskId = task.getId();
 		LocalDateTime time = scheduleParams.getLocalTime();
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			logger.info(String.format(
-					"Start time schedule task \"%s\" (%s) scheduled at %s",
-					task.getName(), taskId,
-					time.format(DateTimeUtils.LOCAL_FORMAT)));
 			runningTasks.put(taskId, task);
 		}
+		logger.info(String.format(
+				"Start time schedule task \"%s\" (%s) scheduled at %s",
+				task.getName(), taskId,
+				time.format(DateTimeUtils.LOCAL_FORMAT)));
 		Throwable exception = null;
 		try {
 			task.run(context, taskId, now, scheduleParams);
 		} catch (Throwable ex) {
 			exception = ex;
 		}
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
 			runningTasks.remove(taskId);
-			if (exception == null) {
-				logger.info(String.format(
-						"Time schedule task \"%s\" (%s) completed",
-						task.getName(), taskId));
-			} else {
-				logger.error(String.format(
-						"Error in time schedule task \"%s\" (%s)",
-						task.getName(), taskId) + ": " + exception.getMessage(),
-						exception);
-			}
-			LocalDateTime start = DateTimeUtils.nowLocalMs();
-			if (!start.isAfter(time))
-				start = time.plus(1, ChronoUnit.MILLIS);
-			final LocalDateTime finalStart = start;
-			runOnUiThread(() ->
-					scheduleTimeSchedule(context, task, finalStart));
 		}
-	}
-
-	/**
-	 * Returns the next scheduled date/time at or after "start" according to a
-	 * time schedule. If there is no next date/time, this method returns null.
-	 *
-	 * @param start the time from where to start searching
-	 * @param timeSchedule the time schedule
-	 * @return the next date/time or null
-	 */
-	private LocalDateTime getNextScheduledDateTime(LocalDateTime start,
-			TaskSchedule.TimeSchedule timeSchedule) {
-		LocalDate startDate = start.toLocalDate();
-		LocalDate nextDate = getNextScheduledDate(startDate, timeSchedule);
-		if (nextDate == null)
-			return null;
-		LocalTime startDayTime = LocalTime.of(0, 0, 0);
-		LocalTime fromTime = nextDate.isEqual(startDate) ? start.toLocalTime() :
-				startDayTime;
-		LocalTime nextTime = getNextScheduledTime(fromTime, timeSchedule);
-		if (nextTime == null) {
-			nextDate = getNextScheduledDate(startDate.plusDays(1),
-					timeSchedule);
-			if (nextDate == null)
-				return null;
-			nextTime = getNextScheduledTime(startDayTime, timeSchedule);
-		}
-		return LocalDateTime.of(nextDate, nextTime);
-	}
-
-	/**
-	 * Returns the next scheduled date at or after the specified date according
-	 * to a time schedule. If there is no next date, this method returns null.
-	 *
-	 * @param date the date from where to start searching
-	 * @param timeSchedule the time schedule
-	 * @return the next date or null
-	 */
-	private LocalDate getNextScheduledDate(LocalDate date,
-			TaskSchedule.TimeSchedule timeSchedule) {
-		LocalDate startDate = timeSchedule.getStartDate();
-		if (!date.isAfter(startDate))
-			return startDate;
-		DateDuration repeat = timeSchedule.getRepeatDate();
-		if (repeat == null)
-			return null;
-		LocalDate nextDate;
-		if (repeat.getUnit() == DateUnit.YEAR) {
-			// get years rounded up
-			int years = (int)ChronoUnit.YEARS.between(
-					timeSchedule.getStartDate(), date.minusDays(1)) + 1;
-			int repeatCount = repeat.getCount();
-			// get iterations rounded up
-			int it = (years + repeatCount - 1) / repeatCount;
-			nextDate = startDate.plusYears((long)it * repeatCount);
-		} else if (repeat.getUnit() == DateUnit.MONTH) {
-			// get months rounded up
-			int months = (int)ChronoUnit.MONTHS.between(
-					timeSchedule.getStartDate(), date.minusDays(1)) + 1;
-			int repeatCount = repeat.getCount();
-			// get iterations rounded up
-			int it = (months + repeatCount - 1) / repeatCount;
-			nextDate = startDate.plusMonths((long)it * repeatCount);
+		if (exception == null) {
+			logger.info(String.format(
+					"Time schedule task \"%s\" (%s) completed",
+					task.getName(), taskId));
 		} else {
-			int days = (int)ChronoUnit.DAYS.between(timeSchedule.getStartDate(),
-					date);
-			int repeatCount = repeat.getUnit() == DateUnit.WEEK ?
-					7 * repeat.getCount() : repeat.getCount();
-			// get iterations rounded up
-			int it = (days + repeatCount - 1) / repeatCount;
-			nextDate = startDate.plusDays((long)it * repeatCount);
+			logger.error(String.format(
+					"Error in time schedule task \"%s\" (%s)",
+					task.getName(), taskId) + ": " + exception.getMessage(),
+					exception);
 		}
-		LocalDate endDate = timeSchedule.getEndDate();
-		if (endDate != null && !nextDate.isBefore(endDate))
-			return null;
-		return nextDate;
+		// scheduleTimeSchedule() checks whether the task has been cancelled
+		final LocalDateTime start = getNextTimeScheduleStart(time);
+		runOnUiThread(() -> scheduleTimeSchedule(context, task, start));
 	}
 
 	/**
-	 * Returns the next scheduled time at or after the specified time according
-	 * to a time schedule. If there is no next time, this method returns null.
-	 * If the specified time is 0:00, the result should never be null.
+	 * Returns the time at or after which the next run of a task with
+	 * schedule {@link TaskSchedule.TimeSchedule TaskSchedule.TimeSchedule}
+	 * should be scheduled. This is now, but at least 1 millisecond after the
+	 * scheduled time of the current run.
 	 *
-	 * @param time the time from where to start searching
-	 * @param timeSchedule the time schedule
-	 * @return the next time or null
+	 * @param time the scheduled time of the current run
+	 * @return the start time for the next run
 	 */
-	private LocalTime getNextScheduledTime(LocalTime time,
-			TaskSchedule.TimeSchedule timeSchedule) {
-		LocalTime startTime = timeSchedule.getStartTime();
-		if (!time.isAfter(startTime))
-			return startTime;
-		TimeDuration repeat = timeSchedule.getRepeatTime();
-		if (repeat == null)
-			return null;
-		int startMs = startTime.get(ChronoField.MILLI_OF_DAY);
-		int dayEndMs = 86400000;
-		int repeatMs = (int)repeat.getDuration();
-		int intervalMs = time.get(ChronoField.MILLI_OF_DAY) -
-				startTime.get(ChronoField.MILLI_OF_DAY);
-		int it = (intervalMs + repeatMs - 1) / repeatMs;
-		int nextMs = startMs + it * repeatMs;
-		if (nextMs >= dayEndMs)
-			return null;
-		LocalTime nextTime = LocalTime.of(0, 0, 0).plus(nextMs,
-				ChronoUnit.MILLIS);
-		LocalTime endTime = timeSchedule.getEndTime();
-		if (endTime != null && !nextTime.isBefore(endTime))
-			return null;
-		return nextTime;
+	private LocalDateTime getNextTimeScheduleStart(LocalDateTime time) {
+		LocalDateTime start = DateTimeUtils.nowLocalMs();
+		if (!start.isAfter(time))
+			start = time.plus(1, ChronoUnit.MILLIS);
+		return start;
 	}
 
 	/**
@@ -802,24 +983,24 @@ public abstract class TaskScheduler {
 	 * @param task the task
 	 */
 	private void scheduleLocalTime(Object context, ScheduledTask task) {
-		synchronized (lock) {
-			String taskId = task.getId();
-			if (!scheduledTasks.containsKey(taskId))
+		String taskId = task.getId();
+		TaskSchedule.LocalTime schedule =
+				(TaskSchedule.LocalTime)task.getSchedule();
+		LocalDateTime time = schedule.getTime();
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			TaskSchedule.LocalTime schedule =
-					(TaskSchedule.LocalTime)task.getSchedule();
-			LocalDateTime time = schedule.getTime();
-			logger.info(String.format(
-					"Schedule local time task \"%s\" (%s) at %s",
-					task.getName(), taskId,
-					time.format(DateTimeUtils.LOCAL_FORMAT)));
 			ScheduleParams scheduleParams = new ScheduleParams(time,
 					schedule.isExact());
 			ScheduledTaskSpec taskSpec = new ScheduledTaskSpec(taskId, task,
 					scheduleParams);
-			scheduledTaskInstances.put(taskId, taskSpec);
+			putTaskInstance(task, taskSpec);
 			scheduleTask(context, taskSpec);
 		}
+		logger.info(String.format(
+				"Schedule local time task \"%s\" (%s) at %s",
+				task.getName(), taskId,
+				time.format(DateTimeUtils.LOCAL_FORMAT)));
 	}
 
 	/**
@@ -835,8 +1016,10 @@ public abstract class TaskScheduler {
 	private void startLocalTime(final Object context, final ScheduledTask task,
 			final ZonedDateTime now, final ScheduleParams scheduleParams) {
 		if (!canRunTaskOnMainThread() || task.isRunOnWorkerThread()) {
-			new Thread(() -> runLocalTime(context, task, now, scheduleParams))
-					.start();
+			if (!runOnWorkerThread(task, () ->
+					runLocalTime(context, task, now, scheduleParams))) {
+				removeRejectedTask(task);
+			}
 		} else {
 			runLocalTime(context, task, now, scheduleParams);
 		}
@@ -856,37 +1039,37 @@ public abstract class TaskScheduler {
 	private void runLocalTime(Object context, ScheduledTask task,
 			ZonedDateTime now, ScheduleParams scheduleParams) {
 		String taskId = task.getId();
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			LocalDateTime time = scheduleParams.getLocalTime();
-			logger.info(String.format(
-					"Start local time task \"%s\" (%s) scheduled at %s",
-					task.getName(), taskId,
-					time.format(DateTimeUtils.LOCAL_FORMAT)));
 			runningTasks.put(taskId, task);
 		}
+		LocalDateTime time = scheduleParams.getLocalTime();
+		logger.info(String.format(
+				"Start local time task \"%s\" (%s) scheduled at %s",
+				task.getName(), taskId,
+				time.format(DateTimeUtils.LOCAL_FORMAT)));
 		Throwable exception = null;
 		try {
 			task.run(context, taskId, now, scheduleParams);
 		} catch (Throwable ex) {
 			exception = ex;
 		}
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
 			runningTasks.remove(taskId);
 			scheduledTasks.remove(taskId);
-			if (exception == null) {
-				logger.info(String.format(
-						"Local time task \"%s\" (%s) completed",
-						task.getName(), taskId));
-			} else {
-				logger.error(String.format(
-						"Error in local time task \"%s\" (%s)",
-						task.getName(), taskId) + ": " + exception.getMessage(),
-						exception);
-			}
+		}
+		if (exception == null) {
+			logger.info(String.format(
+					"Local time task \"%s\" (%s) completed",
+					task.getName(), taskId));
+		} else {
+			logger.error(String.format(
+					"Error in local time task \"%s\" (%s)",
+					task.getName(), taskId) + ": " + exception.getMessage(),
+					exception);
 		}
 	}
 
@@ -899,24 +1082,24 @@ public abstract class TaskScheduler {
 	 * @param task the task
 	 */
 	private void scheduleUtcTime(Object context, ScheduledTask task) {
-		synchronized (lock) {
-			String taskId = task.getId();
-			if (!scheduledTasks.containsKey(taskId))
+		String taskId = task.getId();
+		TaskSchedule.UtcTime schedule =
+				(TaskSchedule.UtcTime)task.getSchedule();
+		ZonedDateTime time = schedule.getTime();
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			TaskSchedule.UtcTime schedule =
-					(TaskSchedule.UtcTime)task.getSchedule();
-			ZonedDateTime time = schedule.getTime();
-			logger.info(String.format(
-					"Schedule UTC time task \"%s\" (%s) at %s",
-					task.getName(), taskId,
-					time.format(DateTimeUtils.ZONED_FORMAT)));
 			ScheduleParams scheduleParams = new ScheduleParams(
 					time.toInstant().toEpochMilli(), schedule.isExact());
 			ScheduledTaskSpec taskSpec = new ScheduledTaskSpec(taskId, task,
 					scheduleParams);
-			scheduledTaskInstances.put(taskId, taskSpec);
+			putTaskInstance(task, taskSpec);
 			scheduleTask(context, taskSpec);
 		}
+		logger.info(String.format(
+				"Schedule UTC time task \"%s\" (%s) at %s",
+				task.getName(), taskId,
+				time.format(DateTimeUtils.ZONED_FORMAT)));
 	}
 
 	/**
@@ -931,8 +1114,10 @@ public abstract class TaskScheduler {
 	private void startUtcTime(final Object context, final ScheduledTask task,
 			final ZonedDateTime now, final ScheduleParams scheduleParams) {
 		if (!canRunTaskOnMainThread() || task.isRunOnWorkerThread()) {
-			new Thread(() -> runUtcTime(context, task, now, scheduleParams))
-					.start();
+			if (!runOnWorkerThread(task, () ->
+					runUtcTime(context, task, now, scheduleParams))) {
+				removeRejectedTask(task);
+			}
 		} else {
 			runUtcTime(context, task, now, scheduleParams);
 		}
@@ -952,36 +1137,36 @@ public abstract class TaskScheduler {
 	private void runUtcTime(Object context, ScheduledTask task,
 			ZonedDateTime now, ScheduleParams scheduleParams) {
 		String taskId = task.getId();
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
-			ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochMilli(
-					scheduleParams.getUtcTime()), ZoneId.systemDefault());
-			logger.info(String.format(
-					"Start UTC time task \"%s\" (%s) scheduled at %s",
-					task.getName(), taskId,
-					time.format(DateTimeUtils.ZONED_FORMAT)));
 			runningTasks.put(taskId, task);
 		}
+		ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochMilli(
+				scheduleParams.getUtcTime()), ZoneId.systemDefault());
+		logger.info(String.format(
+				"Start UTC time task \"%s\" (%s) scheduled at %s",
+				task.getName(), taskId,
+				time.format(DateTimeUtils.ZONED_FORMAT)));
 		Throwable exception = null;
 		try {
 			task.run(context, taskId, now, scheduleParams);
 		} catch (Throwable ex) {
 			exception = ex;
 		}
-		synchronized (lock) {
-			if (!scheduledTasks.containsKey(taskId))
+		synchronized (lockFor(taskId)) {
+			if (scheduledTasks.get(taskId) != task)
 				return;
 			runningTasks.remove(taskId);
 			scheduledTasks.remove(taskId);
-			if (exception == null) {
-				logger.info(String.format("UTC time task \"%s\" (%s) completed",
-						task.getName(), taskId));
-			} else {
-				logger.error(String.format("Error in UTC time task \"%s\" (%s)",
-						task.getName(), taskId) + ": " + exception.getMessage(),
-						exception);
-			}
+		}
+		if (exception == null) {
+			logger.info(String.format("UTC time task \"%s\" (%s) completed",
+					task.getName(), taskId));
+		} else {
+			logger.error(String.format("Error in UTC time task \"%s\" (%s)",
+					task.getName(), taskId) + ": " + exception.getMessage(),
+					exception);
 		}
 	}
 
@@ -993,38 +1178,58 @@ public abstract class TaskScheduler {
 	 * @param taskSpec the specification of the task instance
 	 */
 	public void onTriggerTask(Object context, ScheduledTaskSpec taskSpec) {
-		synchronized (lock) {
-			ZonedDateTime now = DateTimeUtils.nowMs();
-			String taskId = taskSpec.getId();
+		ZonedDateTime now = DateTimeUtils.nowMs();
+		String taskId = taskSpec.getId();
+		ScheduledTask task = null;
+		synchronized (lockFor(taskId)) {
 			ScheduledTaskSpec scheduledSpec = scheduledTaskInstances.get(
 					taskId);
-			if (scheduledSpec == null || !scheduledSpec.equals(taskSpec)) {
-				logger.info(String.format(
-						"Scheduled task %s not found on trigger",
-						getScheduledTaskSpecLog(taskSpec)));
-				return;
-			}
-			logger.info("Start triggered task " +
-					getScheduledTaskSpecLog(taskSpec));
-			scheduledTaskInstances.remove(taskId);
-			ScheduledTask task = scheduledTasks.get(taskId);
-			TaskSchedule schedule = task.getSchedule();
-			if (schedule instanceof TaskSchedule.FixedDelay) {
-				startFixedDelay(context, task, now,
-						taskSpec.getScheduleParams());
-			} else if (schedule instanceof TaskSchedule.FixedRate) {
-				startFixedRate(context, task, now,
-						taskSpec.getScheduleParams());
-			} else if (schedule instanceof TaskSchedule.TimeSchedule) {
-				startTimeSchedule(context, task, now,
-						taskSpec.getScheduleParams());
-			} else if (schedule instanceof TaskSchedule.LocalTime) {
-				startLocalTime(context, task, now,
-						taskSpec.getScheduleParams());
-			} else if (schedule instanceof TaskSchedule.UtcTime) {
-				startUtcTime(context, task, now, taskSpec.getScheduleParams());
+			if (scheduledSpec != null && scheduledSpec.equals(taskSpec)) {
+				task = scheduledTasks.get(taskId);
+				if (task != null && isRepeating(task.getSchedule())) {
+					// keep the instance in the task store until it's
+					// replaced by the next instance, so it isn't lost if the
+					// process stops in between
+					scheduledTaskInstances.remove(taskId);
+				} else {
+					removeTaskInstance(taskId);
+				}
 			}
 		}
+		if (task == null) {
+			logger.info(String.format(
+					"Scheduled task %s not found on trigger",
+					getScheduledTaskSpecLog(taskSpec)));
+			return;
+		}
+		logger.info("Start triggered task " +
+				getScheduledTaskSpecLog(taskSpec));
+		// the start methods check whether the task has been cancelled
+		TaskSchedule schedule = task.getSchedule();
+		if (schedule instanceof TaskSchedule.FixedDelay) {
+			startFixedDelay(context, task, now, taskSpec.getScheduleParams());
+		} else if (schedule instanceof TaskSchedule.FixedRate) {
+			startFixedRate(context, task, now, taskSpec.getScheduleParams());
+		} else if (schedule instanceof TaskSchedule.TimeSchedule) {
+			startTimeSchedule(context, task, now,
+					taskSpec.getScheduleParams());
+		} else if (schedule instanceof TaskSchedule.LocalTime) {
+			startLocalTime(context, task, now, taskSpec.getScheduleParams());
+		} else if (schedule instanceof TaskSchedule.UtcTime) {
+			startUtcTime(context, task, now, taskSpec.getScheduleParams());
+		}
+	}
+
+	/**
+	 * Returns whether the specified schedule runs a task more than once.
+	 *
+	 * @param schedule the schedule
+	 * @return true if the schedule is repeating, false otherwise
+	 */
+	private boolean isRepeating(TaskSchedule schedule) {
+		return schedule instanceof TaskSchedule.FixedDelay ||
+				schedule instanceof TaskSchedule.FixedRate ||
+				schedule instanceof TaskSchedule.TimeSchedule;
 	}
 
 	/**
@@ -1086,4 +1291,28 @@ public abstract class TaskScheduler {
 		}
 		return task;
 	}
+
+	/**
+	 * Internal task that restores the next time window of task instances
+	 * from the task store. It is not saved in the task store itself.
+	 */
+	private class StoreRestoreTask extends AbstractScheduledTask {
+		private long window;
+
+		public StoreRestoreTask(long window) {
+			this.window = window;
+			setRunOnWorkerThread(true);
+		}
+
+		@Override
+		public String getName() {
+			return "Restore scheduled tasks";
+		}
+
+		@Override
+		public void run(Object context, String taskId, ZonedDateTime now,
+				ScheduleParams scheduleParams) {
+			restoreScheduledTasks(context, window);
+		}
+	}
 }
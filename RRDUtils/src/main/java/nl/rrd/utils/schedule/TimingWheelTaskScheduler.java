@@ -0,0 +1,384 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nl.rrd.utils.schedule;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.rrd.utils.datetime.DateTimeUtils;
+
+/**
+ * Implementation of {@link TaskScheduler TaskScheduler} that uses a hashed
+ * timing wheel. This is intended for large numbers of short-interval
+ * repeating tasks ({@link TaskSchedule.FixedRate TaskSchedule.FixedRate} and
+ * {@link TaskSchedule.FixedDelay TaskSchedule.FixedDelay}), which are
+ * rescheduled after every run.
+ *
+ * <p>The wheel consists of a number of buckets. Each bucket covers one tick,
+ * which has a configurable duration. A task instance is added to the bucket
+ * of the tick at which it is due, so scheduling and cancelling take O(1)
+ * time. A single ticker thread advances the wheel at every tick and hands
+ * the due task instances to a bounded pool of worker threads, which call
+ * {@link #onTriggerTask(Object, ScheduledTaskSpec) onTriggerTask()}. This
+ * means that a task may be triggered up to one tick later than scheduled.
+ * The ticker thread only runs as long as there are scheduled task
+ * instances.</p>
+ *
+ * <p>You can monitor the wheel with {@link #getTickLag() getTickLag()},
+ * {@link #getMaxTickLag() getMaxTickLag()} and {@link #getBucketOccupancy()
+ * getBucketOccupancy()}.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public class TimingWheelTaskScheduler extends TaskScheduler {
+	public static final long DEFAULT_TICK_DURATION = 10;
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private final Object lock = new Object();
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final WorkerExecutor workers;
+
+	private Thread ticker = null;
+	private long startTime;
+	private long currentTick;
+
+	// map from task ID to wheel entry
+	private Map<String,Entry> entryMap = new HashMap<>();
+
+	private long tickLag = 0;
+	private long maxTickLag = 0;
+
+	/**
+	 * Constructs a new scheduler with the default tick duration, the default
+	 * wheel size and as many worker threads as there are available processors.
+	 */
+	public TimingWheelTaskScheduler() {
+		this(DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE,
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a new scheduler. The wheel size is rounded up to a power of
+	 * two.
+	 *
+	 * @param tickDuration the tick duration in milliseconds
+	 * @param wheelSize the number of buckets in the wheel
+	 * @param workerCount the maximum number of worker threads
+	 */
+	public TimingWheelTaskScheduler(long tickDuration, int wheelSize,
+			int workerCount) {
+		if (tickDuration < 1) {
+			throw new IllegalArgumentException(
+					"Invalid tick duration: " + tickDuration);
+		}
+		if (wheelSize < 1 || wheelSize > (1 << 30)) {
+			throw new IllegalArgumentException(
+					"Invalid wheel size: " + wheelSize);
+		}
+		if (workerCount < 1) {
+			throw new IllegalArgumentException(
+					"Invalid worker count: " + workerCount);
+		}
+		this.tickDuration = tickDuration;
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		mask = size - 1;
+		workers = WorkerExecutor.newBounded(
+				getClass().getSimpleName() + "-trigger", workerCount,
+				Integer.MAX_VALUE, WorkerExecutor.RejectionPolicy.DISCARD);
+	}
+
+	/**
+	 * Returns the tick duration in milliseconds.
+	 *
+	 * @return the tick duration in milliseconds
+	 */
+	public long getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * Returns the number of buckets in the wheel.
+	 *
+	 * @return the number of buckets in the wheel
+	 */
+	public int getWheelSize() {
+		return wheel.length;
+	}
+
+	/**
+	 * Returns the number of task instances that are currently scheduled.
+	 *
+	 * @return the number of scheduled task instances
+	 */
+	public int getScheduledCount() {
+		synchronized (lock) {
+			return entryMap.size();
+		}
+	}
+
+	/**
+	 * Returns the lag of the last tick. This is the time in milliseconds
+	 * between the scheduled time of the tick and the time when the ticker
+	 * thread actually processed it.
+	 *
+	 * @return the lag of the last tick in milliseconds
+	 */
+	public long getTickLag() {
+		synchronized (lock) {
+			return tickLag;
+		}
+	}
+
+	/**
+	 * Returns the maximum tick lag since the construction of this scheduler
+	 * or the last call of {@link #resetMaxTickLag() resetMaxTickLag()}. See
+	 * also {@link #getTickLag() getTickLag()}.
+	 *
+	 * @return the maximum tick lag in milliseconds
+	 */
+	public long getMaxTickLag() {
+		synchronized (lock) {
+			return maxTickLag;
+		}
+	}
+
+	/**
+	 * Resets the maximum tick lag to 0.
+	 */
+	public void resetMaxTickLag() {
+		synchronized (lock) {
+			maxTickLag = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of task instances in each bucket of the wheel.
+	 *
+	 * @return the number of task instances in each bucket
+	 */
+	public int[] getBucketOccupancy() {
+		synchronized (lock) {
+			int[] result = new int[wheel.length];
+			for (int i = 0; i < wheel.length; i++) {
+				result[i] = wheel[i].size;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Returns the maximum number of task instances in one bucket of the
+	 * wheel.
+	 *
+	 * @return the maximum number of task instances in one bucket
+	 */
+	public int getMaxBucketOccupancy() {
+		synchronized (lock) {
+			int result = 0;
+			for (Bucket bucket : wheel) {
+				if (bucket.size > result)
+					result = bucket.size;
+			}
+			return result;
+		}
+	}
+
+	@Override
+	protected void scheduleTask(Object context, ScheduledTaskSpec taskSpec) {
+		ZonedDateTime time;
+		ScheduleParams scheduleParams = taskSpec.getScheduleParams();
+		if (scheduleParams.getLocalTime() != null) {
+			time = DateTimeUtils.localToUtcWithGapCorrection(
+					scheduleParams.getLocalTime(), ZoneId.systemDefault());
+		} else {
+			time = ZonedDateTime.ofInstant(Instant.ofEpochMilli(
+					scheduleParams.getUtcTime()), ZoneId.systemDefault());
+		}
+		long timeMs = time.toInstant().toEpochMilli();
+		synchronized (lock) {
+			Entry entry = entryMap.remove(taskSpec.getId());
+			if (entry != null)
+				entry.bucket.remove(entry);
+			if (ticker == null) {
+				startTime = System.currentTimeMillis();
+				currentTick = 0;
+			}
+			// round up to the next tick, but never schedule in the past
+			long tick = (timeMs - startTime + tickDuration - 1) / tickDuration;
+			if (tick <= currentTick)
+				tick = currentTick + 1;
+			entry = new Entry(taskSpec, tick);
+			entryMap.put(taskSpec.getId(), entry);
+			wheel[(int)(tick & mask)].add(entry);
+			if (ticker == null) {
+				ticker = new Thread(this::runTicker,
+						getClass().getSimpleName() + "-ticker");
+				ticker.start();
+			}
+		}
+	}
+
+	@Override
+	protected void cancelScheduledTask(Object context, String taskId) {
+		synchronized (lock) {
+			Entry entry = entryMap.remove(taskId);
+			if (entry != null)
+				entry.bucket.remove(entry);
+		}
+	}
+
+	@Override
+	protected void runOnUiThread(Runnable runnable) {
+		runnable.run();
+	}
+
+	@Override
+	protected boolean canRunTaskOnMainThread() {
+		return false;
+	}
+
+	/**
+	 * Cancels all scheduled task instances and stops the worker threads. Task
+	 * runs that have already been handed to a worker thread are completed.
+	 * After this method the scheduler can no longer be used.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			for (Entry entry : entryMap.values()) {
+				entry.bucket.remove(entry);
+			}
+			entryMap.clear();
+			lock.notifyAll();
+		}
+		workers.shutdown();
+	}
+
+	/**
+	 * Runs the ticker thread. At every tick it collects the due task
+	 * instances from the current bucket and posts them to the worker pool.
+	 * The thread exits when there are no more scheduled task instances.
+	 */
+	private void runTicker() {
+		List<ScheduledTaskSpec> dueSpecs = new ArrayList<>();
+		while (true) {
+			synchronized (lock) {
+				long tickTime = startTime + (currentTick + 1) * tickDuration;
+				long now = System.currentTimeMillis();
+				while (!entryMap.isEmpty() && now < tickTime) {
+					try {
+						lock.wait(tickTime - now);
+					} catch (InterruptedException ex) {
+						ticker = null;
+						return;
+					}
+					now = System.currentTimeMillis();
+				}
+				if (entryMap.isEmpty()) {
+					ticker = null;
+					return;
+				}
+				currentTick++;
+				tickLag = now - tickTime;
+				if (tickLag > maxTickLag)
+					maxTickLag = tickLag;
+				Bucket bucket = wheel[(int)(currentTick & mask)];
+				Entry entry = bucket.head;
+				while (entry != null) {
+					Entry next = entry.next;
+					if (entry.tick <= currentTick) {
+						bucket.remove(entry);
+						entryMap.remove(entry.taskSpec.getId());
+						dueSpecs.add(entry.taskSpec);
+					}
+					entry = next;
+				}
+			}
+			for (ScheduledTaskSpec taskSpec : dueSpecs) {
+				workers.execute(() -> onTriggerTask(null, taskSpec));
+			}
+			dueSpecs.clear();
+		}
+	}
+
+	/**
+	 * Doubly linked list of the entries in one bucket of the wheel.
+	 */
+	private static class Bucket {
+		public Entry head = null;
+		public Entry tail = null;
+		public int size = 0;
+
+		public void add(Entry entry) {
+			entry.bucket = this;
+			entry.prev = tail;
+			entry.next = null;
+			if (tail == null)
+				head = entry;
+			else
+				tail.next = entry;
+			tail = entry;
+			size++;
+		}
+
+		public void remove(Entry entry) {
+			if (entry.prev == null)
+				head = entry.next;
+			else
+				entry.prev.next = entry.next;
+			if (entry.next == null)
+				tail = entry.prev;
+			else
+				entry.next.prev = entry.prev;
+			entry.prev = null;
+			entry.next = null;
+			size--;
+		}
+	}
+
+	private static class Entry {
+		public ScheduledTaskSpec taskSpec;
+		public long tick;
+		public Bucket bucket = null;
+		public Entry prev = null;
+		public Entry next = null;
+
+		public Entry(ScheduledTaskSpec taskSpec, long tick) {
+			this.taskSpec = taskSpec;
+			this.tick = tick;
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2022 Roessingh Research and Development
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nl.rrd.utils.schedule;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor that runs code on worker threads. It is used by {@link
+ * TaskScheduler TaskScheduler} to run tasks that should not run on the main
+ * thread. You can create an instance with one of the static factory methods:
+ *
+ * <p><ul>
+ * <li>{@link #newThreadPerTask(String) newThreadPerTask()}: starts a new
+ * platform thread for every run. This is the default.</li>
+ * <li>{@link #newBounded(String, int, int, RejectionPolicy) newBounded()}:
+ * runs code on a bounded pool of platform threads with a queue and a
+ * rejection policy.</li>
+ * <li>{@link #newVirtualThreadPerTask() newVirtualThreadPerTask()}: starts a
+ * new virtual thread for every run. This requires Java 21 or higher.</li>
+ * </ul></p>
+ *
+ * <p>The executor keeps counters of queued, running, completed and rejected
+ * runs.</p>
+ *
+ * @author Dennis Hofs (RRD)
+ */
+public class WorkerExecutor implements Executor {
+	private static final long KEEP_ALIVE = 60000;
+
+	/**
+	 * Defines what happens if a bounded executor can't accept a new run
+	 * because all threads are busy and the queue is full.
+	 */
+	public enum RejectionPolicy {
+		/**
+		 * The run is rejected with a {@link RejectedExecutionException
+		 * RejectedExecutionException}.
+		 */
+		ABORT,
+
+		/**
+		 * The run is silently discarded. Only {@link
+		 * #executeOrReject(Runnable) executeOrReject()} reports it with a
+		 * {@link RejectedExecutionException RejectedExecutionException}.
+		 */
+		DISCARD,
+
+		/**
+		 * The code is run on the calling thread. This slows down the caller
+		 * until the executor catches up.
+		 */
+		CALLER_RUNS
+	}
+
+	private final Executor executor;
+	private final ExecutorService executorService;
+	private final boolean handlerCountsRejections;
+
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicInteger runningCount = new AtomicInteger();
+	private final AtomicLong completedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private WorkerExecutor(Executor executor, ExecutorService executorService,
+			boolean handlerCountsRejections) {
+		this.executor = executor;
+		this.executorService = executorService;
+		this.handlerCountsRejections = handlerCountsRejections;
+	}
+
+	/**
+	 * Creates an executor that starts a new platform thread for every run.
+	 *
+	 * @param name the name prefix for the threads
+	 * @return the executor
+	 */
+	public static WorkerExecutor newThreadPerTask(String name) {
+		AtomicInteger threadCount = new AtomicInteger();
+		return new WorkerExecutor(runnable -> new Thread(runnable,
+				name + "-" + threadCount.incrementAndGet()).start(), null,
+				false);
+	}
+
+	/**
+	 * Creates an executor that runs code on a bounded pool of platform
+	 * threads. Threads are started as needed up to the specified maximum.
+	 * Idle threads are stopped after a while. If all threads are busy, runs
+	 * are added to a queue with the specified capacity. If the queue is full,
+	 * the rejection policy is applied.
+	 *
+	 * @param name the name prefix for the threads
+	 * @param maxThreads the maximum number of threads
+	 * @param queueCapacity the queue capacity. Specify {@link
+	 * Integer#MAX_VALUE Integer.MAX_VALUE} for an unbounded queue.
+	 * @param policy the rejection policy
+	 * @return the executor
+	 */
+	public static WorkerExecutor newBounded(String name, int maxThreads,
+			int queueCapacity, RejectionPolicy policy) {
+		if (maxThreads < 1) {
+			throw new IllegalArgumentException(
+					"Invalid maximum number of threads: " + maxThreads);
+		}
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException(
+					"Invalid queue capacity: " + queueCapacity);
+		}
+		BlockingQueue<Runnable> queue;
+		if (queueCapacity == Integer.MAX_VALUE)
+			queue = new LinkedBlockingQueue<>();
+		else
+			queue = new ArrayBlockingQueue<>(queueCapacity);
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads,
+				maxThreads, KEEP_ALIVE,
+				java.util.concurrent.TimeUnit.MILLISECONDS, queue,
+				runnable -> new Thread(runnable,
+						name + "-" + threadCount.incrementAndGet()));
+		pool.allowCoreThreadTimeOut(true);
+		WorkerExecutor result = new WorkerExecutor(pool, pool, true);
+		pool.setRejectedExecutionHandler((runnable, executor) -> {
+			if (policy == RejectionPolicy.CALLER_RUNS &&
+					!executor.isShutdown()) {
+				runnable.run();
+				return;
+			}
+			result.queuedCount.decrementAndGet();
+			result.rejectedCount.incrementAndGet();
+			if (policy == RejectionPolicy.ABORT) {
+				throw new RejectedExecutionException(
+						"Worker executor \"" + name + "\" rejected run");
+			}
+			// execute() ignores this, executeOrReject() passes it on
+			throw new DiscardedRunException(
+					"Worker executor \"" + name + "\" discarded run");
+		});
+		return result;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for every run. This
+	 * requires Java 21 or higher. You can check this with {@link
+	 * #isVirtualThreadSupported() isVirtualThreadSupported()}.
+	 *
+	 * @return the executor
+	 * @throws UnsupportedOperationException if virtual threads are not
+	 * supported
+	 */
+	public static WorkerExecutor newVirtualThreadPerTask()
+			throws UnsupportedOperationException {
+		Method method = findVirtualThreadFactoryMethod();
+		if (method == null) {
+			throw new UnsupportedOperationException(
+					"Virtual threads are not supported");
+		}
+		ExecutorService executorService;
+		try {
+			executorService = (ExecutorService)method.invoke(null);
+		} catch (IllegalAccessException | InvocationTargetException ex) {
+			throw new UnsupportedOperationException(
+					"Can't create virtual thread executor: " +
+					ex.getMessage(), ex);
+		}
+		return new WorkerExecutor(executorService, executorService, false);
+	}
+
+	/**
+	 * Returns whether virtual threads are supported. This is true on Java 21
+	 * and higher.
+	 *
+	 * @return true if virtual threads are supported, false otherwise
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return findVirtualThreadFactoryMethod() != null;
+	}
+
+	private static Method findVirtualThreadFactoryMethod() {
+		try {
+			return Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Runs the specified code on a worker thread. If the run is discarded
+	 * because of the rejection policy, this method returns normally.
+	 *
+	 * @param runnable the code to run
+	 * @throws RejectedExecutionException if the run was rejected
+	 */
+	@Override
+	public void execute(Runnable runnable) throws RejectedExecutionException {
+		try {
+			executeOrReject(runnable);
+		} catch (DiscardedRunException ex) {
+		}
+	}
+
+	/**
+	 * Runs the specified code on a worker thread. Unlike {@link
+	 * #execute(Runnable) execute()}, this method also throws an exception if
+	 * the run is discarded because of the rejection policy. This is used by
+	 * a caller that must know whether the code will run.
+	 *
+	 * @param runnable the code to run
+	 * @throws RejectedExecutionException if the run was rejected or
+	 * discarded
+	 */
+	public void executeOrReject(Runnable runnable)
+			throws RejectedExecutionException {
+		queuedCount.incrementAndGet();
+		Runnable wrapper = () -> {
+			queuedCount.decrementAndGet();
+			runningCount.incrementAndGet();
+			try {
+				runnable.run();
+			} finally {
+				runningCount.decrementAndGet();
+				completedCount.incrementAndGet();
+			}
+		};
+		try {
+			executor.execute(wrapper);
+		} catch (RejectedExecutionException ex) {
+			if (!handlerCountsRejections) {
+				queuedCount.decrementAndGet();
+				rejectedCount.incrementAndGet();
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns the number of runs that have been submitted and that have not
+	 * been started yet.
+	 *
+	 * @return the number of queued runs
+	 */
+	public int getQueuedCount() {
+		return queuedCount.get();
+	}
+
+	/**
+	 * Returns the number of runs that are currently running.
+	 *
+	 * @return the number of running runs
+	 */
+	public int getRunningCount() {
+		return runningCount.get();
+	}
+
+	/**
+	 * Returns the number of runs that have been completed (normally or with
+	 * an exception).
+	 *
+	 * @return the number of completed runs
+	 */
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/**
+	 * Returns the number of runs that have been rejected or discarded.
+	 *
+	 * @return the number of rejected runs
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Shuts down this executor. Runs that have already been submitted are
+	 * completed, but new runs are rejected. For an executor created with
+	 * {@link #newThreadPerTask(String) newThreadPerTask()}, this method has
+	 * no effect.
+	 */
+	public void shutdown() {
+		if (executorService != null)
+			executorService.shutdown();
+	}
+
+	/**
+	 * Exception that the rejection handler of a bounded executor throws when
+	 * a run is silently discarded.
+	 */
+	private static class DiscardedRunException
+			extends RejectedExecutionException {
+		public DiscardedRunException(String message) {
+			super(message);
+		}
+	}
+}
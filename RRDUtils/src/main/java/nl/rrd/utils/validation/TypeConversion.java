@@ -30,6 +30,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import nl.rrd.utils.exception.ParseException;
+import nl.rrd.utils.json.ObjectMapperRegistry;
 
 /**
  * This class can perform various type conversions.
@@ -200,7 +201,7 @@ public class TypeConversion {
 			return null;
 		if (clazz.isInstance(obj))
 			return clazz.cast(obj);
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectMapper mapper = ObjectMapperRegistry.getDefault().getMapper();
 		try {
 			return mapper.convertValue(obj, clazz);
 		} catch (IllegalArgumentException ex) {
@@ -228,7 +229,7 @@ public class TypeConversion {
 			throws ParseException {
 		if (obj == null)
 			return null;
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectMapper mapper = ObjectMapperRegistry.getDefault().getMapper();
 		try {
 			return mapper.convertValue(obj, typeRef);
 		} catch (IllegalArgumentException ex) {
@@ -0,0 +1,247 @@
+package nl.rrd.utils.datetime;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.Temporal;
+import java.time.temporal.TemporalQuery;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.rrd.utils.exception.ParseException;
+
+public class FastDateTimeParserTest {
+	// the formatters that DateTimeUtils used before the fast parser
+	private static final DateTimeFormatter DATE_FORMAT =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd");
+	private static final DateTimeFormatter SQL_TIME_FORMAT =
+			DateTimeFormatter.ofPattern("HH:mm:ss");
+	private static final DateTimeFormatter ISO_TIME_PARSER =
+			DateTimeFormatter.ofPattern("HH:mm[:ss][.SSS]");
+	private static final DateTimeFormatter SQL_DATE_TIME_FORMAT =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final DateTimeFormatter LOCAL_ISO_PARSER =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm[:ss][.SSS]");
+	private static final DateTimeFormatter ZONED_ISO_PARSER =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm[:ss][.SSS]XXX");
+	private static final DateTimeFormatter ZONED_ISO_SHORT_OFFSET_PARSER =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm[:ss][.SSS]X");
+
+	private static final String[] INVALID_STRINGS = new String[] {
+		"", "x", "2022", "2022-10-17x", "x2022-10-17", "2022/10/17",
+		"22-10-17", "2022-1-17", "2022-10-7", "+2022-10-17", "-2022-10-17",
+		"2022-10-17 ", " 2022-10-17", "\uff12\uff10\uff12\uff12-10-17",
+		"2022-1\u0661-17"
+	};
+
+	@Test
+	public void runDateTest() {
+		List<String> strings = getDateStrings();
+		addInvalidStrings(strings);
+		for (String s : strings) {
+			assertEquivalent(s, parseOld(DATE_FORMAT, s, LocalDate::from),
+					FastDateTimeParser.parseDate(s), DateTimeUtils::parseDate);
+		}
+	}
+
+	@Test
+	public void runSqlTimeTest() {
+		List<String> strings = getTimeStrings();
+		addInvalidStrings(strings);
+		for (String s : strings) {
+			assertEquivalent(s, parseOld(SQL_TIME_FORMAT, s, LocalTime::from),
+					FastDateTimeParser.parseSqlTime(s),
+					DateTimeUtils::parseSqlTime);
+		}
+	}
+
+	@Test
+	public void runIsoTimeTest() {
+		List<String> strings = getTimeStrings();
+		addInvalidStrings(strings);
+		for (String s : strings) {
+			assertEquivalent(s, parseOld(ISO_TIME_PARSER, s, LocalTime::from),
+					FastDateTimeParser.parseIsoTime(s),
+					DateTimeUtils::parseIsoTime);
+		}
+	}
+
+	@Test
+	public void runSqlDateTimeTest() {
+		List<String> strings = getDateTimeStrings(" ", "");
+		addInvalidStrings(strings);
+		for (String s : strings) {
+			assertEquivalent(s, parseOld(SQL_DATE_TIME_FORMAT, s,
+					LocalDateTime::from),
+					FastDateTimeParser.parseSqlDateTime(s),
+					str -> DateTimeUtils.parseSqlDateTime(str,
+							LocalDateTime.class));
+		}
+	}
+
+	@Test
+	public void runLocalIsoDateTimeTest() {
+		List<String> strings = getDateTimeStrings("T", "");
+		addInvalidStrings(strings);
+		for (String s : strings) {
+			assertEquivalent(s, parseOld(LOCAL_ISO_PARSER, s,
+					LocalDateTime::from),
+					FastDateTimeParser.parseLocalIsoDateTime(s),
+					str -> DateTimeUtils.parseLocalIsoDateTime(str,
+							LocalDateTime.class));
+		}
+	}
+
+	@Test
+	public void runIsoDateTimeTest() {
+		List<String> strings = new ArrayList<>();
+		String[] zones = new String[] {
+			"", "Z", "+01:00", "-05:30", "+00:00", "-00:00", "+18:00",
+			"-18:00", "+18:01", "+19:00", "+01:60", "+0100", "+01", "-0530",
+			"z", "+1:00", "+01:0", "+01-00", "UTC"
+		};
+		for (String zone : zones) {
+			strings.addAll(getDateTimeStrings("T", zone));
+		}
+		addInvalidStrings(strings);
+		for (String s : strings) {
+			Temporal expected = parseIsoOld(s);
+			Class<? extends Temporal> clazz = expected instanceof
+					LocalDateTime ? LocalDateTime.class : ZonedDateTime.class;
+			assertEquivalent(s, expected,
+					FastDateTimeParser.parseIsoDateTime(s),
+					str -> DateTimeUtils.parseIsoDateTime(str, clazz));
+		}
+	}
+
+	/**
+	 * Asserts that the fast parser and DateTimeUtils return the same result
+	 * as the old formatter.
+	 *
+	 * @param s the string
+	 * @param expected the result of the old formatter or null if the string
+	 * is invalid
+	 * @param fastResult the result of the fast parser
+	 * @param parser the parse method in DateTimeUtils
+	 */
+	private <T> void assertEquivalent(String s, T expected, T fastResult,
+			Parser<? extends T> parser) {
+		// the fast parser may leave a string to the formatter, but if it
+		// returns a result, it must be the same
+		if (fastResult != null)
+			Assert.assertEquals(s, expected, fastResult);
+		T result;
+		try {
+			result = parser.parse(s);
+			Assert.assertNotNull(result);
+		} catch (ParseException ex) {
+			result = null;
+		}
+		Assert.assertEquals(s, expected, result);
+	}
+
+	private <T> T parseOld(DateTimeFormatter formatter, String s,
+			TemporalQuery<T> query) {
+		try {
+			return formatter.parse(s, query);
+		} catch (DateTimeParseException ex) {
+			return null;
+		}
+	}
+
+	private Temporal parseIsoOld(String s) {
+		ZonedDateTime result = parseOld(ZONED_ISO_PARSER, s,
+				ZonedDateTime::from);
+		if (result != null)
+			return result;
+		result = parseOld(ZONED_ISO_SHORT_OFFSET_PARSER, s,
+				ZonedDateTime::from);
+		if (result != null)
+			return result;
+		return parseOld(LOCAL_ISO_PARSER, s, LocalDateTime::from);
+	}
+
+	/**
+	 * Returns valid dates and dates with an invalid year, month or day,
+	 * including days that the formatter resolves to the end of the month.
+	 *
+	 * @return the date strings
+	 */
+	private List<String> getDateStrings() {
+		List<String> result = new ArrayList<>();
+		int[] years = new int[] { 0, 1, 1900, 2000, 2023, 2024, 9999 };
+		for (int year : years) {
+			for (int month = 0; month <= 13; month++) {
+				for (int day = 0; day <= 32; day++) {
+					result.add(String.format("%04d-%02d-%02d", year, month,
+							day));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns times with and without seconds and milliseconds, including
+	 * invalid times and times like "24:00" that the formatter resolves.
+	 *
+	 * @return the time strings
+	 */
+	private List<String> getTimeStrings() {
+		List<String> result = new ArrayList<>();
+		for (int hour : new int[] { 0, 9, 12, 23, 24, 25, 99 }) {
+			for (int minute : new int[] { 0, 45, 59, 60 }) {
+				String hm = String.format("%02d:%02d", hour, minute);
+				result.add(hm);
+				result.add(hm + ":00");
+				result.add(hm + ":59");
+				result.add(hm + ":60");
+				result.add(hm + ":23.768");
+				result.add(hm + ":23.000");
+			}
+		}
+		String[] others = new String[] {
+			"16:45:23.7", "16:45:23.76", "16:45:23.7681", "16:45:23,768",
+			"16:45:23.", "16:45:", "16:4", "1:45", "16-45-23", "16:45.768",
+			"16:45:23.76x", "16:45:23 "
+		};
+		for (String other : others) {
+			result.add(other);
+		}
+		return result;
+	}
+
+	private List<String> getDateTimeStrings(String separator, String zone) {
+		List<String> result = new ArrayList<>();
+		String[] dates = new String[] {
+			"2022-10-17", "2024-02-29", "2023-02-29", "2022-04-31",
+			"0000-01-01", "2022-13-01"
+		};
+		String[] times = new String[] {
+			"16:45", "16:45:23", "16:45:23.768", "00:00:00", "23:59:59.999",
+			"24:00", "24:00:00", "16:60:00", "16:45:23.7", "6:45:23"
+		};
+		for (String date : dates) {
+			for (String time : times) {
+				result.add(date + separator + time + zone);
+			}
+		}
+		return result;
+	}
+
+	private void addInvalidStrings(List<String> strings) {
+		for (String s : INVALID_STRINGS) {
+			strings.add(s);
+		}
+	}
+
+	private interface Parser<T> {
+		T parse(String s) throws ParseException;
+	}
+}
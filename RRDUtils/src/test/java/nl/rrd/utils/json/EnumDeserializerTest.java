@@ -0,0 +1,167 @@
+package nl.rrd.utils.json;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+public class EnumDeserializerTest {
+	@Test
+	public void runCodeTest() throws Exception {
+		SimpleModule module = new SimpleModule();
+		module.addSerializer(CodeEnum.class, new EnumCodeSerializer());
+		module.addDeserializer(CodeEnum.class,
+				new EnumCodeDeserializer<>(CodeEnum.class));
+		ObjectMapper mapper = new ObjectMapper().registerModule(module);
+		for (CodeEnum value : CodeEnum.values()) {
+			String json = mapper.writeValueAsString(value);
+			Assert.assertEquals(Integer.toString(value.code()), json);
+			Assert.assertEquals(value, mapper.readValue(json, CodeEnum.class));
+		}
+		// not in the code table: passed to forCode()
+		Assert.assertEquals(CodeEnum.RED, mapper.readValue("100",
+				CodeEnum.class));
+		Throwable error = readError(mapper, "99", CodeEnum.class);
+		Assert.assertTrue(findMessage(error, "Can't invoke forCode()"));
+	}
+
+	@Test
+	public void runCustomStringTest() throws Exception {
+		SimpleModule module = new SimpleModule();
+		module.addSerializer(StringEnum.class,
+				new EnumCustomStringSerializer());
+		module.addDeserializer(StringEnum.class,
+				new EnumCustomStringDeserializer<>(StringEnum.class));
+		ObjectMapper mapper = new ObjectMapper().registerModule(module);
+		for (StringEnum value : StringEnum.values()) {
+			String json = mapper.writeValueAsString(value);
+			Assert.assertEquals("\"" + value + "\"", json);
+			Assert.assertEquals(value, mapper.readValue(json,
+					StringEnum.class));
+		}
+		// not in the string table: passed to fromStringValue()
+		Assert.assertEquals(StringEnum.KMH, mapper.readValue("\"KMH\"",
+				StringEnum.class));
+		Throwable error = readError(mapper, "\"mph\"", StringEnum.class);
+		Assert.assertTrue(findMessage(error,
+				"Can't invoke fromStringValue()"));
+	}
+
+	@Test
+	public void runIgnoreCaseTest() throws Exception {
+		SimpleModule module = new SimpleModule();
+		module.addSerializer(StringEnum.class, new EnumLowercaseSerializer());
+		module.addDeserializer(StringEnum.class,
+				new EnumIgnoreCaseDeserializer<>(StringEnum.class));
+		ObjectMapper mapper = new ObjectMapper().registerModule(module);
+		for (StringEnum value : StringEnum.values()) {
+			String json = mapper.writeValueAsString(value);
+			Assert.assertEquals("\"" + value.toString().toLowerCase() + "\"",
+					json);
+			Assert.assertEquals(value, mapper.readValue(json,
+					StringEnum.class));
+		}
+		String[] inputs = new String[] {
+			"km/h", "KM/H", "Km/H", "m/s", "M/S",
+			"caf\u00e9", "CAF\u00c9", "Caf\u00c9",
+			"\u0131d", "ID", "\u0130D",
+			"cafe", "kmh", "", " km/h"
+		};
+		for (String input : inputs) {
+			// the result should be the same as with equalsIgnoreCase()
+			StringEnum expected = null;
+			for (StringEnum value : StringEnum.values()) {
+				if (value.toString().equalsIgnoreCase(input)) {
+					expected = value;
+					break;
+				}
+			}
+			String json = mapper.writeValueAsString(input);
+			if (expected != null) {
+				Assert.assertEquals(input, expected, mapper.readValue(json,
+						StringEnum.class));
+			} else {
+				Throwable error = readError(mapper, json, StringEnum.class);
+				Assert.assertTrue(error instanceof IOException);
+				Assert.assertTrue(error.getMessage().startsWith(
+						"Value not found: " + input));
+			}
+		}
+	}
+
+	private Throwable readError(ObjectMapper mapper, String json,
+			Class<?> clazz) {
+		try {
+			mapper.readValue(json, clazz);
+		} catch (IOException | RuntimeException ex) {
+			return ex;
+		}
+		Assert.fail("No exception for value: " + json);
+		return null;
+	}
+
+	private boolean findMessage(Throwable ex, String message) {
+		while (ex != null) {
+			if (ex.getMessage() != null && ex.getMessage().contains(message))
+				return true;
+			ex = ex.getCause();
+		}
+		return false;
+	}
+
+	public enum CodeEnum {
+		RED(1),
+		GREEN(2),
+		BLUE(3);
+
+		private final int code;
+
+		CodeEnum(int code) {
+			this.code = code;
+		}
+
+		public int code() {
+			return code;
+		}
+
+		public static CodeEnum forCode(int code) {
+			// 100 is an old code for RED
+			if (code == 100)
+				return RED;
+			for (CodeEnum value : values()) {
+				if (value.code == code)
+					return value;
+			}
+			throw new IllegalArgumentException("Code not found: " + code);
+		}
+	}
+
+	public enum StringEnum {
+		KMH("km/h"),
+		MS("m/s"),
+		CAFE("Caf\u00e9"),
+		ID("id");
+
+		private final String stringValue;
+
+		StringEnum(String stringValue) {
+			this.stringValue = stringValue;
+		}
+
+		public static StringEnum fromStringValue(String s) {
+			for (StringEnum value : values()) {
+				if (value.stringValue.equals(s) || value.name().equals(s))
+					return value;
+			}
+			throw new IllegalArgumentException("Value not found: " + s);
+		}
+
+		@Override
+		public String toString() {
+			return stringValue;
+		}
+	}
+}
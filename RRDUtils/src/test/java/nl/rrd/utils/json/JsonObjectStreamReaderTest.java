@@ -1,6 +1,8 @@
 package nl.rrd.utils.json;
 
+import java.io.ByteArrayInputStream;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -121,6 +123,94 @@ public class JsonObjectStreamReaderTest {
 		});
 	}
 	
+	@Test
+	public void runNumberArrayTest() throws Exception {
+		String json = "{\"time\":[1,2,3000000000],\"value\":[1.5,-2,3e2]}";
+		ReaderTest test = new ReaderTest() {
+			@Override
+			public void runTest(JsonObjectStreamReader reader)
+					throws Exception {
+				long[] times = new long[4];
+				double[] values = new double[4];
+				reader.readToken(Type.START_OBJECT);
+				Assert.assertEquals("time", reader.readString());
+				reader.readToken(Type.OBJECT_KEY_VALUE_SEPARATOR);
+				Assert.assertEquals(3, reader.readLongArray(times));
+				Assert.assertEquals(3000000000L, times[2]);
+				reader.readToken(Type.OBJECT_PAIR_SEPARATOR);
+				Assert.assertEquals("value", reader.readString());
+				reader.readToken(Type.OBJECT_KEY_VALUE_SEPARATOR);
+				reader.readToken(Type.START_LIST);
+				Assert.assertEquals(1.5, reader.nextDouble(), 0);
+				Assert.assertEquals(-2, reader.nextLong());
+				Assert.assertEquals(300, reader.nextDouble(), 0);
+				reader.readToken(Type.END_LIST);
+				reader.readToken(Type.END_OBJECT);
+				Assert.assertNull(reader.getToken());
+			}
+		};
+		runReaderTest(json, test);
+		runByteReaderTest(json, test);
+		runFailureTest("[1,2,3]", new ReaderTest() {
+			@Override
+			public void runTest(JsonObjectStreamReader reader)
+					throws Exception {
+				reader.readLongArray(new long[2]);
+			}
+		});
+		runFailureTest("[1,2.5]", new ReaderTest() {
+			@Override
+			public void runTest(JsonObjectStreamReader reader)
+					throws Exception {
+				reader.readLongArray(new long[2]);
+			}
+		});
+	}
+	
+	@Test
+	public void runSkipTest() throws Exception {
+		String json = "{\"items\":[{\"id\":1,\"x\":{\"id\":9}}," +
+				"{\"y\":[\"]\",\"\\\"\"],\"id\":\"b\"},{\"z\":1},5],\"id\":0}";
+		ReaderTest test = new ReaderTest() {
+			@Override
+			public void runTest(JsonObjectStreamReader reader)
+					throws Exception {
+				reader.readToken(Type.START_OBJECT);
+				Assert.assertEquals("items", reader.readString());
+				reader.readToken(Type.OBJECT_KEY_VALUE_SEPARATOR);
+				reader.skipValue();
+				reader.readToken(Type.OBJECT_PAIR_SEPARATOR);
+				Assert.assertEquals("id", reader.readString());
+				reader.readToken(Type.OBJECT_KEY_VALUE_SEPARATOR);
+				Assert.assertEquals(0, reader.readInt());
+				reader.readToken(Type.END_OBJECT);
+			}
+		};
+		runReaderTest(json, test);
+		runByteReaderTest(json, test);
+		test = new ReaderTest() {
+			@Override
+			public void runTest(JsonObjectStreamReader reader)
+					throws Exception {
+				List<Object> expected = new ArrayList<Object>();
+				expected.add(1);
+				expected.add("b");
+				Assert.assertEquals(expected, reader.readPath(
+						"$.items[*].id"));
+				Assert.assertNull(reader.getToken());
+			}
+		};
+		runReaderTest(json, test);
+		runByteReaderTest(json, test);
+		runFailureTest("[[1,2}]", new ReaderTest() {
+			@Override
+			public void runTest(JsonObjectStreamReader reader)
+					throws Exception {
+				reader.skipValue();
+			}
+		});
+	}
+	
 	private void runReaderTest(String json, ReaderTest test) throws Exception {
 		JsonStreamReader streamReader = new JsonStreamReader(new StringReader(
 				json));
@@ -133,6 +223,18 @@ public class JsonObjectStreamReaderTest {
 		}
 	}
 	
+	private void runByteReaderTest(String json, ReaderTest test)
+			throws Exception {
+		JsonObjectStreamReader reader = new JsonObjectStreamReader(
+				new ByteArrayInputStream(json.getBytes(
+				StandardCharsets.UTF_8)), 16);
+		try {
+			test.runTest(reader);
+		} finally {
+			reader.close();
+		}
+	}
+	
 	private void runFailureTest(String json, ReaderTest test) throws Exception {
 		JsonStreamReader streamReader = new JsonStreamReader(new StringReader(
 				json));
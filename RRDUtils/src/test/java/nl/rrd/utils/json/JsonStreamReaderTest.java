@@ -1,8 +1,10 @@
 package nl.rrd.utils.json;
 
+import java.io.ByteArrayInputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,23 +27,27 @@ public class JsonStreamReaderTest {
 	public void runTest() throws Exception {
 		Writer out = new OutputStreamWriter(System.out);
 		try {
-			runTest(out, true);
-			runTest(out, false);
+			runTest(out, true, false);
+			runTest(out, false, false);
+			runTest(out, true, true);
+			runTest(out, false, true);
 			TestCase longTestCase = fixture.getLongStringList();
-			readTokens(out, true, longTestCase);
+			readTokens(out, true, false, longTestCase);
+			readTokens(out, true, true, longTestCase);
 		} finally {
 			out.close();
 		}
 	}
 	
-	private void runTest(Writer out, boolean isStringAtomic) throws Exception {
+	private void runTest(Writer out, boolean isStringAtomic, boolean useBytes)
+			throws Exception {
 		for (TestCase testCase : fixture.getTestCases()) {
 			if (out != null)
 				out.write(testCase + newline);
 			JsonParseException exception = null;
 			List<JsonAtomicToken> tokens = null;
 			try {
-				tokens = readTokens(out, isStringAtomic, testCase);
+				tokens = readTokens(out, isStringAtomic, useBytes, testCase);
 			} catch (JsonParseException ex) {
 				exception = ex;
 			}
@@ -70,9 +76,17 @@ public class JsonStreamReaderTest {
 	}
 	
 	private List<JsonAtomicToken> readTokens(Writer out,
-			boolean isStringAtomic, TestCase testCase) throws Exception {
-		JsonStreamReader reader = new JsonStreamReader(
-				new StringReader(testCase.getJson()));
+			boolean isStringAtomic, boolean useBytes, TestCase testCase)
+			throws Exception {
+		JsonStreamReader reader;
+		if (useBytes) {
+			// small buffer to test tokens across buffer boundaries
+			reader = new JsonStreamReader(new ByteArrayInputStream(
+					testCase.getJson().getBytes(StandardCharsets.UTF_8)), 16);
+		} else {
+			reader = new JsonStreamReader(new StringReader(
+					testCase.getJson()));
+		}
 		reader.setIsStringAtomic(isStringAtomic);
 		List<JsonAtomicToken> tokens = new ArrayList<JsonAtomicToken>();
 		try {
@@ -0,0 +1,94 @@
+package nl.rrd.utils.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonStreamWriterTest {
+	@Test
+	public void runTest() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonStreamWriter writer = new JsonStreamWriter(out, 32);
+		writer.beginObject();
+		writer.name("a").value(1);
+		writer.name("b").value("x\"\\\n\u0001\u00e9\ud83d\ude00");
+		writer.name("c").beginList().value(2.5).value(true).nullValue()
+				.endList();
+		writer.name("d").beginObject().endObject();
+		writer.endObject();
+		writer.close();
+		String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		Assert.assertEquals("{\"a\":1,\"b\":\"x\\\"\\\\\\n\\u0001\u00e9" +
+				"\ud83d\ude00\",\"c\":[2.5,true,null],\"d\":{}}", json);
+
+		Map<String,Object> expected = new LinkedHashMap<String,Object>();
+		expected.put("a", 1);
+		expected.put("b", "x\"\\\n\u0001\u00e9\ud83d\ude00");
+		List<Object> list = new ArrayList<Object>();
+		list.add(2.5);
+		list.add(true);
+		list.add(null);
+		expected.put("c", list);
+		expected.put("d", new LinkedHashMap<String,Object>());
+		JsonObjectStreamReader reader = new JsonObjectStreamReader(
+				new ByteArrayInputStream(out.toByteArray()));
+		try {
+			Assert.assertEquals(expected, reader.readObject());
+		} finally {
+			reader.close();
+		}
+
+		out = new ByteArrayOutputStream();
+		writer = new JsonStreamWriter(out);
+		writer.value((Object)expected);
+		writer.value((Object)list);
+		writer.close();
+		Assert.assertEquals(json + "\n[2.5,true,null]",
+				new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+		writer = new JsonStreamWriter(new ByteArrayOutputStream());
+		writer.beginObject();
+		IllegalStateException exception = null;
+		try {
+			writer.value(1);
+		} catch (IllegalStateException ex) {
+			exception = ex;
+		}
+		Assert.assertNotNull(exception);
+	}
+
+	@Test
+	public void runFloatTest() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		float[] values = new float[] { 1.1f, 0.1f, Float.MAX_VALUE,
+				Float.MIN_VALUE, -2.5f, 3f, 1e7f };
+		for (float value : values) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			JsonStreamWriter writer = new JsonStreamWriter(out);
+			writer.value(value);
+			writer.value((Object)value);
+			writer.close();
+			String expected = mapper.writeValueAsString(value);
+			Assert.assertEquals(expected + "\n" + expected,
+					new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}
+		JsonStreamWriter writer = new JsonStreamWriter(
+				new ByteArrayOutputStream());
+		IllegalArgumentException exception = null;
+		try {
+			writer.value((Object)Float.NaN);
+		} catch (IllegalArgumentException ex) {
+			exception = ex;
+		}
+		Assert.assertNotNull(exception);
+	}
+}
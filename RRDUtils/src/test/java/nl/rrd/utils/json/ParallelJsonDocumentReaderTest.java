@@ -0,0 +1,135 @@
+package nl.rrd.utils.json;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelJsonDocumentReaderTest {
+	@Test
+	public void runOrderTest() throws Exception {
+		List<Map<String,Object>> expected = new ArrayList<>();
+		StringBuilder json = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			Map<String,Object> doc = new LinkedHashMap<>();
+			doc.put("index", i);
+			doc.put("text", "{[\"" + i + "\\]}");
+			expected.add(doc);
+			// mix NDJSON, pretty-printed documents and documents without
+			// whitespace in between
+			if (i % 3 == 0) {
+				json.append("{\"index\":" + i + ",\"text\":\"{[\\\"" + i +
+						"\\\\]}\"}\n");
+			} else if (i % 3 == 1) {
+				json.append("{\n  \"index\": " + i + ",\n  \"text\": " +
+						"\"{[\\\"" + i + "\\\\]}\"\n}\n");
+			} else {
+				json.append("{\"index\":" + i + ",\"text\":\"{[\\\"" + i +
+						"\\\\]}\"}");
+			}
+		}
+		File file = writeFile(json.toString());
+		try {
+			// small chunks, so many documents start near a chunk boundary
+			for (int chunkSize : new int[] { 1, 100, 4096 }) {
+				ParallelJsonDocumentReader reader =
+						new ParallelJsonDocumentReader(file, chunkSize);
+				try {
+					Assert.assertEquals(expected, reader.stream(true).collect(
+							Collectors.toList()));
+					Assert.assertEquals(expected, reader.stream(true)
+							.sequential().collect(Collectors.toList()));
+					Assert.assertEquals(new HashSet<>(expected),
+							reader.stream(false).collect(Collectors.toSet()));
+				} finally {
+					reader.close();
+				}
+			}
+		} finally {
+			Files.delete(file.toPath());
+		}
+	}
+
+	@Test
+	public void runEmptyFileTest() throws Exception {
+		for (String json : new String[] { "", " \r\n\t\n" }) {
+			File file = writeFile(json);
+			try {
+				ParallelJsonDocumentReader reader =
+						new ParallelJsonDocumentReader(file, 16);
+				try {
+					Assert.assertEquals(0, reader.stream(true).count());
+					Assert.assertTrue(reader.stream(false).collect(
+							Collectors.toList()).isEmpty());
+				} finally {
+					reader.close();
+				}
+			} finally {
+				Files.delete(file.toPath());
+			}
+		}
+	}
+
+	@Test
+	public void runErrorTest() throws Exception {
+		StringBuilder json = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			json.append("{\"index\":" + i + "}\n");
+		}
+		String valid = json.toString();
+		// invalid JSON inside a document: found by the parser
+		Throwable error = readError(valid + "{\"index\":,}\n" + valid);
+		Assert.assertTrue(findCause(error, JsonParseException.class));
+		// not an object: found by the scanner
+		error = readError(valid + "[1]\n" + valid);
+		Assert.assertTrue(error.getMessage().contains(
+				"Expected start of object"));
+		// incomplete object at the end
+		error = readError(valid + "{\"index\":100");
+		Assert.assertTrue(error.getMessage().contains("Incomplete object"));
+	}
+
+	private Throwable readError(String json) throws Exception {
+		File file = writeFile(json);
+		try {
+			ParallelJsonDocumentReader reader =
+					new ParallelJsonDocumentReader(file, 64);
+			try {
+				reader.stream(true).collect(Collectors.toList());
+			} catch (RuntimeException ex) {
+				return ex;
+			} finally {
+				reader.close();
+			}
+		} finally {
+			Files.delete(file.toPath());
+		}
+		Assert.fail("No exception for invalid JSON");
+		return null;
+	}
+
+	private boolean findCause(Throwable ex,
+			Class<? extends Throwable> causeClass) {
+		while (ex != null) {
+			if (causeClass.isInstance(ex))
+				return true;
+			ex = ex.getCause();
+		}
+		return false;
+	}
+
+	private File writeFile(String json) throws Exception {
+		File file = File.createTempFile("ParallelJsonDocumentReaderTest",
+				".json");
+		Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
@@ -0,0 +1,422 @@
+package nl.rrd.utils.json.rpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class JsonRpcHttpTest {
+	@Test
+	public void runRequestTest() throws Exception {
+		TestServer server = new TestServer();
+		JsonRpcHttp rpc = new JsonRpcHttp(server.url);
+		try {
+			Assert.assertEquals("hello", rpc.request("echo", "hello"));
+			Assert.assertEquals("async", rpc.requestAsync("echo", "async")
+					.get(10, TimeUnit.SECONDS));
+			try {
+				rpc.request("fail");
+				Assert.fail("No exception for error response");
+			} catch (JsonRpcException ex) {
+				Assert.assertEquals(-32000, ex.getCode());
+				Assert.assertEquals("Failed", ex.getMessage());
+			}
+			rpc.notify("log", "message");
+			Assert.assertEquals(List.of("echo", "echo", "fail", "log"),
+					server.getMethods());
+			Assert.assertEquals(4, server.getPostCount());
+		} finally {
+			rpc.close();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void runMaxInFlightTest() throws Exception {
+		TestServer server = new TestServer();
+		JsonRpcHttp rpc = new JsonRpcHttp(server.url, 2);
+		try {
+			List<CompletableFuture<Object>> results = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				results.add(rpc.requestAsync("block", i));
+			}
+			waitFor(() -> server.getInFlight() == 2, "Requests not received");
+			// give the queued calls time to arrive if they were not queued
+			Thread.sleep(200);
+			Assert.assertEquals(2, server.getInFlight());
+			server.release.countDown();
+			for (int i = 0; i < results.size(); i++) {
+				Assert.assertEquals(i, results.get(i).get(10,
+						TimeUnit.SECONDS));
+			}
+			Assert.assertEquals(2, server.getPeakInFlight());
+			Assert.assertEquals(6, server.getPostCount());
+		} finally {
+			rpc.close();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void runInterruptQueuedTest() throws Exception {
+		TestServer server = new TestServer();
+		JsonRpcHttp rpc = new JsonRpcHttp(server.url, 1);
+		try {
+			CompletableFuture<Object> blockResult = rpc.requestAsync("block");
+			waitFor(() -> server.getInFlight() == 1, "Request not received");
+			// this call is queued until the blocking call has completed
+			RequestThread thread = new RequestThread(rpc, "queued");
+			thread.start();
+			waitFor(() -> thread.getState() == Thread.State.WAITING,
+					"Request thread not waiting");
+			thread.interrupt();
+			thread.join(10000);
+			Assert.assertTrue(thread.error instanceof InterruptedIOException);
+			Assert.assertTrue(thread.interrupted);
+			server.release.countDown();
+			Assert.assertNull(blockResult.get(10, TimeUnit.SECONDS));
+			Assert.assertEquals("after", rpc.request("echo", "after"));
+			// the interrupted call was removed from the queue
+			Assert.assertEquals(List.of("block", "echo"), server.getMethods());
+			Assert.assertEquals(List.of("after"), server.getEchoes());
+		} finally {
+			rpc.close();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void runInterruptActiveTest() throws Exception {
+		TestServer server = new TestServer();
+		JsonRpcHttp rpc = new JsonRpcHttp(server.url, 1);
+		try {
+			RequestThread thread = new RequestThread(rpc, null);
+			thread.start();
+			waitFor(() -> server.getInFlight() == 1, "Request not received");
+			thread.interrupt();
+			thread.join(10000);
+			Assert.assertTrue(thread.error instanceof InterruptedIOException);
+			Assert.assertTrue(thread.interrupted);
+			// the HTTP request was cancelled, so the next call can run while
+			// the server is still blocked
+			Assert.assertEquals("after", rpc.request("echo", "after"));
+			Assert.assertEquals(1, server.getInFlight());
+		} finally {
+			server.release.countDown();
+			rpc.close();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void runBatchTest() throws Exception {
+		TestServer server = new TestServer();
+		JsonRpcHttp rpc = new JsonRpcHttp(server.url);
+		try {
+			JsonRpcHttp.Batch batch = rpc.createBatch();
+			CompletableFuture<Object> echoResult = batch.request("echo", "a");
+			CompletableFuture<Object> failResult = batch.request("fail");
+			batch.notify("log", "b");
+			Assert.assertEquals(3, batch.size());
+			batch.send().get(10, TimeUnit.SECONDS);
+			Assert.assertEquals("a", echoResult.get());
+			try {
+				failResult.get();
+				Assert.fail("No exception for error response");
+			} catch (ExecutionException ex) {
+				Assert.assertTrue(ex.getCause() instanceof JsonRpcException);
+				Assert.assertEquals(-32000,
+						((JsonRpcException)ex.getCause()).getCode());
+			}
+			Assert.assertEquals(List.of(3), server.getPostSizes());
+			Assert.assertEquals(List.of("echo", "fail", "log"),
+					server.getMethods());
+		} finally {
+			rpc.close();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void runCoalescingTest() throws Exception {
+		TestServer server = new TestServer();
+		JsonRpcHttp rpc = new JsonRpcHttp(server.url);
+		try {
+			rpc.enableCoalescing(200, 5);
+			List<CompletableFuture<Object>> results = new ArrayList<>();
+			for (int i = 0; i < 12; i++) {
+				results.add(rpc.requestAsync("echo", "value" + i));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				Assert.assertEquals("value" + i, results.get(i).get(10,
+						TimeUnit.SECONDS));
+			}
+			// two full batches and one batch at the end of the window
+			List<Integer> postSizes = server.getPostSizes();
+			Collections.sort(postSizes);
+			Assert.assertEquals(List.of(2, 5, 5), postSizes);
+		} finally {
+			rpc.close();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void runCloseTest() throws Exception {
+		TestServer server = new TestServer();
+		JsonRpcHttp rpc = new JsonRpcHttp(server.url, 1);
+		JsonRpcHttp coalescingRpc = new JsonRpcHttp(server.url);
+		try {
+			CompletableFuture<Object> activeResult = rpc.requestAsync(
+					"block");
+			waitFor(() -> server.getInFlight() == 1, "Request not received");
+			CompletableFuture<Object> queuedResult = rpc.requestAsync("echo",
+					"queued");
+			rpc.close();
+			assertClosed(activeResult);
+			assertClosed(queuedResult);
+			assertClosed(rpc.requestAsync("echo", "closed"));
+			coalescingRpc.enableCoalescing(60000, 10);
+			CompletableFuture<Object> pendingResult =
+					coalescingRpc.requestAsync("echo", "pending");
+			coalescingRpc.close();
+			assertClosed(pendingResult);
+			Assert.assertEquals(List.of("block"), server.getMethods());
+		} finally {
+			rpc.close();
+			coalescingRpc.close();
+			server.stop();
+		}
+	}
+
+	private void assertClosed(CompletableFuture<Object> result)
+			throws Exception {
+		try {
+			result.get(10, TimeUnit.SECONDS);
+			Assert.fail("No exception after close");
+		} catch (ExecutionException ex) {
+			Assert.assertTrue(ex.getCause() instanceof IOException);
+			Assert.assertEquals("JsonRpcHttp closed",
+					ex.getCause().getMessage());
+		}
+	}
+
+	private void waitFor(BooleanSupplier condition, String error)
+			throws InterruptedException {
+		long end = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < end) {
+			if (condition.getAsBoolean())
+				return;
+			Thread.sleep(10);
+		}
+		Assert.fail(error);
+	}
+
+	/**
+	 * Thread that makes an "echo" request, or a "block" request if the echo
+	 * value is null, and keeps the exception and interrupted status.
+	 */
+	private static class RequestThread extends Thread {
+		private JsonRpcHttp rpc;
+		private String echo;
+		private volatile Exception error = null;
+		private volatile boolean interrupted = false;
+
+		public RequestThread(JsonRpcHttp rpc, String echo) {
+			this.rpc = rpc;
+			this.echo = echo;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (echo != null)
+					rpc.request("echo", echo);
+				else
+					rpc.request("block");
+			} catch (Exception ex) {
+				error = ex;
+			}
+			interrupted = isInterrupted();
+		}
+	}
+
+	/**
+	 * JSON-RPC server on localhost. It supports these methods:
+	 *
+	 * <p><ul>
+	 * <li>echo: returns the first parameter</li>
+	 * <li>fail: returns an error response</li>
+	 * <li>block: waits until "release" is counted down and returns the first
+	 * parameter or null</li>
+	 * </ul></p>
+	 *
+	 * <p>It accepts any notification.</p>
+	 */
+	private static class TestServer {
+		private ObjectMapper mapper = new ObjectMapper();
+		private HttpServer server;
+		private ExecutorService executor;
+		private URL url;
+		private CountDownLatch release = new CountDownLatch(1);
+
+		private final Object lock = new Object();
+		private List<String> methods = new ArrayList<>();
+		private List<Object> echoes = new ArrayList<>();
+		private List<Integer> postSizes = new ArrayList<>();
+		private int inFlight = 0;
+		private int peakInFlight = 0;
+
+		public TestServer() throws IOException {
+			server = HttpServer.create(new InetSocketAddress("localhost", 0),
+					0);
+			executor = Executors.newCachedThreadPool();
+			server.setExecutor(executor);
+			server.createContext("/jsonrpc", this::handle);
+			server.start();
+			url = new URL("http://localhost:" +
+					server.getAddress().getPort() + "/jsonrpc");
+		}
+
+		public void stop() {
+			release.countDown();
+			server.stop(0);
+			executor.shutdownNow();
+		}
+
+		public List<String> getMethods() {
+			synchronized (lock) {
+				return new ArrayList<>(methods);
+			}
+		}
+
+		public List<Object> getEchoes() {
+			synchronized (lock) {
+				return new ArrayList<>(echoes);
+			}
+		}
+
+		public int getPostCount() {
+			synchronized (lock) {
+				return postSizes.size();
+			}
+		}
+
+		public List<Integer> getPostSizes() {
+			synchronized (lock) {
+				return new ArrayList<>(postSizes);
+			}
+		}
+
+		public int getInFlight() {
+			synchronized (lock) {
+				return inFlight;
+			}
+		}
+
+		public int getPeakInFlight() {
+			synchronized (lock) {
+				return peakInFlight;
+			}
+		}
+
+		private void handle(HttpExchange exchange) throws IOException {
+			synchronized (lock) {
+				inFlight++;
+				peakInFlight = Math.max(peakInFlight, inFlight);
+			}
+			try {
+				JsonNode request;
+				try (InputStream input = exchange.getRequestBody()) {
+					request = mapper.readTree(input);
+				}
+				JsonNode response;
+				if (request.isArray()) {
+					synchronized (lock) {
+						postSizes.add(request.size());
+					}
+					ArrayNode responses = mapper.createArrayNode();
+					for (JsonNode message : request) {
+						JsonNode messageResponse = handleMessage(message);
+						if (messageResponse != null)
+							responses.add(messageResponse);
+					}
+					response = responses.isEmpty() ? null : responses;
+				} else {
+					synchronized (lock) {
+						postSizes.add(1);
+					}
+					response = handleMessage(request);
+				}
+				if (response == null) {
+					exchange.sendResponseHeaders(204, -1);
+				} else {
+					byte[] body = mapper.writeValueAsBytes(response);
+					exchange.getResponseHeaders().set("Content-Type",
+							"application/json");
+					exchange.sendResponseHeaders(200, body.length);
+					try (OutputStream output = exchange.getResponseBody()) {
+						output.write(body);
+					}
+				}
+			} catch (InterruptedException ex) {
+				exchange.sendResponseHeaders(500, -1);
+			} finally {
+				exchange.close();
+				synchronized (lock) {
+					inFlight--;
+				}
+			}
+		}
+
+		private JsonNode handleMessage(JsonNode message)
+				throws InterruptedException {
+			String method = message.get("method").asText();
+			JsonNode params = message.get("params");
+			JsonNode param = params == null ? null : params.get(0);
+			synchronized (lock) {
+				methods.add(method);
+				if (method.equals("echo"))
+					echoes.add(param.asText());
+			}
+			JsonNode id = message.get("id");
+			if (id == null)
+				return null;
+			ObjectNode response = mapper.createObjectNode();
+			response.put("jsonrpc", "2.0");
+			if (method.equals("fail")) {
+				ObjectNode error = response.putObject("error");
+				error.put("code", -32000);
+				error.put("message", "Failed");
+			} else {
+				if (method.equals("block"))
+					release.await();
+				response.set("result", param);
+			}
+			response.set("id", id);
+			return response;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package nl.rrd.utils.log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileLoggerTest {
+	@Test
+	public void runCompressedBlockTest() throws Exception {
+		File dir = Files.createTempDirectory("FileLoggerTest").toFile();
+		try {
+			runCompressedBlockTest(dir);
+		} finally {
+			try (Stream<File> files = Files.walk(dir.toPath()).map(
+					Path::toFile)) {
+				files.sorted(Comparator.reverseOrder()).forEach(File::delete);
+			}
+		}
+	}
+
+	private void runCompressedBlockTest(File dir) throws Exception {
+		FileLogger logger = new FileLogger(dir);
+		logger.setFlushThresholds(1024, 60000);
+		logger.setCompressionMode(true);
+		logger.setAsyncMode(true);
+		LocalDate date = LocalDate.now();
+		Random random = new Random(1);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			StringBuilder msg = new StringBuilder("line " + i + " ");
+			int len = random.nextInt(200);
+			for (int j = 0; j < len; j++) {
+				msg.append(j % 10 == 0 ? '\u00e9' : (char)('a' + j % 26));
+			}
+			msg.append('\n');
+			expected.append(msg);
+			logger.printTaggedMessage(Logger.INFO, "test", date,
+					msg.toString());
+		}
+		logger.close();
+		String full = expected.toString();
+		Assert.assertEquals(full, readString(logger.openCompressedLog(date,
+				0)));
+
+		String dateStr = String.format("%04d%02d%02d", date.getYear(),
+				date.getMonthValue(), date.getDayOfMonth());
+		File file = new File(dir, dateStr + ".log.gz");
+		List<String> index = Files.readAllLines(new File(dir,
+				dateStr + ".idx").toPath());
+		Assert.assertTrue(index.size() > 10);
+		List<Long> offsets = new ArrayList<>();
+		for (String line : index) {
+			offsets.add(Long.parseLong(line.split(" ")[1]));
+		}
+		for (long offset : offsets) {
+			InputStream in = Files.newInputStream(file.toPath());
+			in.skip(offset);
+			String part = readString(new CompressedLogInputStream(in));
+			Assert.assertTrue(full.endsWith(part));
+			int start = full.length() - part.length();
+			Assert.assertTrue(start == 0 || full.charAt(start - 1) == '\n');
+		}
+
+		// cut the last member: the stream should end after the previous one
+		long lastOffset = offsets.get(offsets.size() - 1);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(lastOffset + (raf.length() - lastOffset) / 2);
+		}
+		String part = readString(logger.openCompressedLog(date, 0));
+		Assert.assertTrue(part.length() < full.length());
+		Assert.assertTrue(full.startsWith(part));
+		Assert.assertTrue(part.endsWith("\n"));
+	}
+
+	private String readString(InputStream in) throws IOException {
+		try (in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			in.transferTo(out);
+			return out.toString(StandardCharsets.UTF_8);
+		}
+	}
+}
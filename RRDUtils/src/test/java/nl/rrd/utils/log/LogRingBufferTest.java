@@ -0,0 +1,45 @@
+package nl.rrd.utils.log;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogRingBufferTest {
+	@Test
+	public void runHandlerErrorTest() throws Exception {
+		List<String> handled = new CopyOnWriteArrayList<>();
+		LogRingBuffer buffer = new LogRingBuffer(2,
+				AbstractLogDelegate.OverflowPolicy.BLOCK, 1,
+				(priority, tag, time, thread, msg, args, tr, extraTags) -> {
+			if (msg.equals("error"))
+				throw new AssertionError("Test error");
+			handled.add(msg);
+		});
+		// the stack trace of the error is printed to standard error
+		PrintStream stdErr = System.err;
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			ZonedDateTime now = ZonedDateTime.now();
+			String thread = Thread.currentThread().getName();
+			Assert.assertTrue(buffer.publish(Logger.INFO, "TEST", now, thread,
+					"error", null, null, null));
+			// more events than the capacity, so the producer has to wait for
+			// the consumer
+			for (int i = 0; i < 20; i++) {
+				Assert.assertTrue(buffer.publish(Logger.INFO, "TEST", now,
+						thread, "msg" + i, null, null, null));
+			}
+			buffer.close();
+		} finally {
+			System.setErr(stdErr);
+		}
+		Assert.assertEquals(20, handled.size());
+		Assert.assertEquals("msg19", handled.get(19));
+		Assert.assertEquals(0, buffer.getDroppedCount());
+	}
+}
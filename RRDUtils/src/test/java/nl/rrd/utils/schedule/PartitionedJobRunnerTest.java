@@ -0,0 +1,74 @@
+package nl.rrd.utils.schedule;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartitionedJobRunnerTest {
+	@Test
+	public void runFailedJobTest() throws Exception {
+		PartitionedJobRunner runner = new PartitionedJobRunner(1);
+		RecordListener listener = new RecordListener();
+		CountDownLatch done = new CountDownLatch(1);
+		Job failJob = new TestJob(() -> {
+			throw new RuntimeException("Test exception");
+		});
+		Job errorJob = new TestJob(() -> {
+			throw new AssertionError("Test error");
+		});
+		Job lastJob = new TestJob(done::countDown);
+		runner.postJob("key", failJob, listener);
+		runner.postJob("key", errorJob, listener);
+		runner.postJob("key", lastJob, listener);
+		// the partition continues after the error
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		long end = System.currentTimeMillis() + 10000;
+		while (listener.completed.isEmpty() &&
+				System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		// failed jobs are not reported as completed
+		Assert.assertEquals(1, listener.completed.size());
+		Assert.assertTrue(listener.completed.get(0) == lastJob);
+		Assert.assertTrue(runner.getJobs().isEmpty());
+		PartitionedJobRunner.PartitionStats stats =
+				runner.getPartitionStats().get(0);
+		Assert.assertEquals(1, stats.getCompletedCount());
+		Assert.assertEquals(2, stats.getFailedCount());
+		Assert.assertEquals(0, stats.getCancelledCount());
+	}
+
+	private static class TestJob implements Job {
+		private Runnable runnable;
+
+		public TestJob(Runnable runnable) {
+			this.runnable = runnable;
+		}
+
+		@Override
+		public void run() {
+			runnable.run();
+		}
+
+		@Override
+		public void cancel() {
+		}
+	}
+
+	private static class RecordListener implements JobListener {
+		private List<Job> completed = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void jobCompleted(Job job) {
+			completed.add(job);
+		}
+
+		@Override
+		public void jobCancelled(Job job) {
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package nl.rrd.utils.schedule;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TaskSchedulerTest {
+	@Test
+	public void runRejectedImmediateTest() {
+		TestTaskScheduler scheduler = new TestTaskScheduler();
+		scheduler.setWorkerExecutor(newShutDownExecutor());
+		CountTask task = new CountTask(new TaskSchedule.Immediate());
+		scheduler.scheduleTask(null, task, scheduler.generateTaskId());
+		Assert.assertTrue(scheduler.findTasksWithClass(
+				CountTask.class).isEmpty());
+		Assert.assertTrue(scheduler.instances.isEmpty());
+		Assert.assertEquals(1, task.latch.getCount());
+	}
+
+	@Test
+	public void runRejectedUtcTimeTest() throws Exception {
+		File file = File.createTempFile("TaskSchedulerTest", ".journal");
+		JournalScheduledTaskStore store = null;
+		try {
+			store = new JournalScheduledTaskStore(file);
+			TestTaskScheduler scheduler = new TestTaskScheduler();
+			scheduler.setTaskStore(store);
+			CountTask task = new CountTask(new TaskSchedule.UtcTime(
+					ZonedDateTime.now().plusHours(1), true));
+			scheduler.scheduleTask(null, task, scheduler.generateTaskId());
+			Assert.assertEquals(1, store.size());
+			ScheduledTaskSpec taskSpec = scheduler.instances.get(task.getId());
+			Assert.assertNotNull(taskSpec);
+			scheduler.setWorkerExecutor(newShutDownExecutor());
+			scheduler.trigger(taskSpec);
+			Assert.assertTrue(scheduler.findTasksWithClass(
+					CountTask.class).isEmpty());
+			Assert.assertEquals(0, store.size());
+			Assert.assertEquals(1, task.latch.getCount());
+		} finally {
+			if (store != null)
+				store.close();
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	@Test
+	public void runRejectedFixedRateTest() throws Exception {
+		TestTaskScheduler scheduler = new TestTaskScheduler();
+		scheduler.setWorkerExecutor(newShutDownExecutor());
+		CountTask task = new CountTask(new TaskSchedule.FixedRate(60000));
+		long start = System.currentTimeMillis();
+		scheduler.scheduleTask(null, task, scheduler.generateTaskId());
+		// the first run is rejected, so the next instance should be scheduled
+		ScheduledTaskSpec taskSpec = scheduler.instances.get(task.getId());
+		Assert.assertNotNull(taskSpec);
+		Assert.assertTrue(taskSpec.getScheduleParams().getUtcTime() > start);
+		Assert.assertEquals(1, scheduler.findTasksWithClass(
+				CountTask.class).size());
+		Assert.assertEquals(1, task.latch.getCount());
+		scheduler.setWorkerExecutor(WorkerExecutor.newThreadPerTask(
+				"TaskSchedulerTest"));
+		scheduler.trigger(taskSpec);
+		task.latch.await();
+	}
+
+	@Test
+	public void runDiscardedTest() throws Exception {
+		WorkerExecutor executor = WorkerExecutor.newBounded(
+				"TaskSchedulerTest", 1, 1,
+				WorkerExecutor.RejectionPolicy.DISCARD);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			// saturate the executor: one running and one queued run
+			CountDownLatch started = new CountDownLatch(1);
+			executor.execute(() -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException ex) {
+				}
+			});
+			started.await();
+			executor.execute(() -> {});
+			// execute() discards silently
+			executor.execute(() -> {});
+			Assert.assertEquals(1, executor.getRejectedCount());
+			TestTaskScheduler scheduler = new TestTaskScheduler();
+			scheduler.setWorkerExecutor(executor);
+			CountTask task = new CountTask(new TaskSchedule.Immediate());
+			scheduler.scheduleTask(null, task, scheduler.generateTaskId());
+			Assert.assertTrue(scheduler.findTasksWithClass(
+					CountTask.class).isEmpty());
+			CountTask repeatTask = new CountTask(new TaskSchedule.FixedDelay(
+					60000));
+			scheduler.scheduleTask(null, repeatTask,
+					scheduler.generateTaskId());
+			Assert.assertNotNull(scheduler.instances.get(repeatTask.getId()));
+			Assert.assertEquals(1, scheduler.findTasksWithClass(
+					CountTask.class).size());
+			Assert.assertEquals(3, executor.getRejectedCount());
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void runReplacedTaskTest() throws Exception {
+		WorkerExecutor executor = WorkerExecutor.newBounded(
+				"TaskSchedulerTest", 1, Integer.MAX_VALUE,
+				WorkerExecutor.RejectionPolicy.ABORT);
+		try {
+			TestTaskScheduler scheduler = new TestTaskScheduler();
+			scheduler.setWorkerExecutor(executor);
+			String taskId = scheduler.generateTaskId();
+			BlockTask oldTask = new BlockTask();
+			scheduler.scheduleTask(null, oldTask, taskId);
+			oldTask.started.await();
+			// replace the running task by a new task with the same ID
+			scheduler.cancelTask(null, taskId);
+			CountTask newTask = new CountTask(new TaskSchedule.UtcTime(
+					ZonedDateTime.now().plusHours(1), true));
+			scheduler.scheduleTask(null, newTask, taskId);
+			ScheduledTaskSpec newSpec = scheduler.instances.get(taskId);
+			oldTask.proceed.countDown();
+			// the executor has one thread, so this runs after the old run
+			CountDownLatch done = new CountDownLatch(1);
+			executor.execute(done::countDown);
+			done.await();
+			Assert.assertTrue(newSpec == scheduler.instances.get(taskId));
+			Assert.assertTrue(scheduler.findTasksWithClass(
+					BlockTask.class).isEmpty());
+			Assert.assertEquals(1, scheduler.findTasksWithClass(
+					CountTask.class).size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void runRepeatingStoreTest() throws Exception {
+		File file = File.createTempFile("TaskSchedulerTest", ".journal");
+		JournalScheduledTaskStore store = null;
+		try {
+			store = new JournalScheduledTaskStore(file);
+			TestTaskScheduler scheduler = new TestTaskScheduler();
+			scheduler.setTaskStore(store);
+			BlockTask task = new BlockTask();
+			scheduler.scheduleTask(null, task, scheduler.generateTaskId());
+			// the first run is immediate and schedules the next instance
+			task.started.await();
+			task.proceed.countDown();
+			ScheduledTaskSpec taskSpec = waitForInstance(scheduler,
+					task.getId());
+			Assert.assertEquals(1, store.size());
+			task.started = new CountDownLatch(1);
+			task.proceed = new CountDownLatch(1);
+			scheduler.trigger(taskSpec);
+			task.started.await();
+			// the triggered instance stays in the store while it runs
+			Assert.assertEquals(1, store.size());
+			task.proceed.countDown();
+			ScheduledTaskSpec nextSpec = waitForInstance(scheduler,
+					task.getId());
+			Assert.assertTrue(nextSpec.getScheduleParams().getUtcTime() >
+					taskSpec.getScheduleParams().getUtcTime());
+			Assert.assertEquals(1, store.size());
+			scheduler.cancelTask(null, task.getId());
+			Assert.assertEquals(0, store.size());
+		} finally {
+			if (store != null)
+				store.close();
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	@Test
+	public void runCompactTest() throws Exception {
+		File file = File.createTempFile("TaskSchedulerTest", ".journal");
+		JournalScheduledTaskStore store = null;
+		try {
+			store = new JournalScheduledTaskStore(file);
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < 10; i++) {
+				store.put(new ScheduledTaskSpec("task" + i, "Task " + i,
+						CountTask.class.getName(), null,
+						new ScheduleParams(now + i * 1000, true)));
+			}
+			for (int i = 0; i < 10; i += 2) {
+				store.remove("task" + i);
+			}
+			store.compact();
+			store.put(new ScheduledTaskSpec("task10", "Task 10",
+					CountTask.class.getName(), null,
+					new ScheduleParams(now + 10000, true)));
+			store.close();
+			store = new JournalScheduledTaskStore(file);
+			List<ScheduledTaskSpec> taskSpecs = store.readDueBefore(
+					Long.MAX_VALUE);
+			Assert.assertEquals(6, taskSpecs.size());
+			for (int i = 0; i < 5; i++) {
+				Assert.assertEquals("task" + (i * 2 + 1),
+						taskSpecs.get(i).getId());
+			}
+			Assert.assertEquals("task10", taskSpecs.get(5).getId());
+		} finally {
+			if (store != null)
+				store.close();
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	@Test
+	public void runRepeatedPutTest() throws Exception {
+		File file = File.createTempFile("TaskSchedulerTest", ".journal");
+		JournalScheduledTaskStore store = null;
+		try {
+			store = new JournalScheduledTaskStore(file);
+			long now = System.currentTimeMillis();
+			store.put(new ScheduledTaskSpec("task", "Task",
+					CountTask.class.getName(), null,
+					new ScheduleParams(now, true)));
+			store.flush();
+			long recordSize = file.length();
+			for (int i = 0; i < 20000; i++) {
+				store.put(new ScheduledTaskSpec("task", "Task",
+						CountTask.class.getName(), null,
+						new ScheduleParams(now + i, true)));
+			}
+			store.flush();
+			Assert.assertEquals(1, store.size());
+			Assert.assertTrue(file.length() <= recordSize *
+					(JournalScheduledTaskStore.COMPACT_MIN_GARBAGE + 1));
+		} finally {
+			if (store != null)
+				store.close();
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	private ScheduledTaskSpec waitForInstance(TestTaskScheduler scheduler,
+			String taskId) throws InterruptedException {
+		long end = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < end) {
+			ScheduledTaskSpec taskSpec = scheduler.instances.get(taskId);
+			if (taskSpec != null)
+				return taskSpec;
+			Thread.sleep(10);
+		}
+		Assert.fail("Next instance of task " + taskId + " not scheduled");
+		return null;
+	}
+
+	private WorkerExecutor newShutDownExecutor() {
+		WorkerExecutor executor = WorkerExecutor.newBounded(
+				"TaskSchedulerTest", 1, 1,
+				WorkerExecutor.RejectionPolicy.ABORT);
+		executor.shutdown();
+		return executor;
+	}
+
+	private static class TestTaskScheduler extends TaskScheduler {
+		private Map<String,ScheduledTaskSpec> instances =
+				new ConcurrentHashMap<>();
+
+		public void trigger(ScheduledTaskSpec taskSpec) {
+			instances.remove(taskSpec.getId());
+			onTriggerTask(null, taskSpec);
+		}
+
+		@Override
+		protected void scheduleTask(Object context,
+				ScheduledTaskSpec taskSpec) {
+			instances.put(taskSpec.getId(), taskSpec);
+		}
+
+		@Override
+		protected void cancelScheduledTask(Object context, String taskId) {
+			instances.remove(taskId);
+		}
+
+		@Override
+		protected void runOnUiThread(Runnable runnable) {
+			runnable.run();
+		}
+
+		@Override
+		protected boolean canRunTaskOnMainThread() {
+			return false;
+		}
+	}
+
+	public static class CountTask extends AbstractScheduledTask {
+		private CountDownLatch latch = new CountDownLatch(1);
+
+		public CountTask() {
+		}
+
+		public CountTask(TaskSchedule schedule) {
+			setSchedule(schedule);
+		}
+
+		@Override
+		public String getName() {
+			return "Count task";
+		}
+
+		@Override
+		public void run(Object context, String taskId, ZonedDateTime now,
+				ScheduleParams scheduleParams) {
+			latch.countDown();
+		}
+	}
+
+	public static class BlockTask extends AbstractScheduledTask {
+		private volatile CountDownLatch started = new CountDownLatch(1);
+		private volatile CountDownLatch proceed = new CountDownLatch(1);
+
+		public BlockTask() {
+			setSchedule(new TaskSchedule.FixedRate(60000));
+			setRunOnWorkerThread(true);
+		}
+
+		@Override
+		public String getName() {
+			return "Block task";
+		}
+
+		@Override
+		public void run(Object context, String taskId, ZonedDateTime now,
+				ScheduleParams scheduleParams) {
+			started.countDown();
+			try {
+				proceed.await();
+			} catch (InterruptedException ex) {
+			}
+		}
+	}
+}